@@ -33,6 +33,7 @@ import floetteroed.utilities.Tuple;
 import floetteroed.utilities.config.Config;
 import floetteroed.utilities.config.ConfigReader;
 import floetteroed.utilities.config.ConfigurableInstantiator;
+import floetteroed.utilities.math.MathHelpers;
 import floetteroed.utilities.networks.basic.BasicLink;
 import floetteroed.utilities.networks.basic.BasicNetwork;
 import floetteroed.utilities.networks.basic.BasicNode;
@@ -73,6 +74,8 @@ public class BiorouteRunner {
 
 	public static final String PATHWRITER_CONFIG_ELEMENT = "pathwriter";
 
+	public static final String WORKERS_ELEMENT = "workers";
+
 	// -------------------- IMPLEMENTATION --------------------
 
 	/**
@@ -237,7 +240,22 @@ public class BiorouteRunner {
 							PATHWRITER_CONFIG_ELEMENT, CLASSNAME_ELEMENT);
 
 			/*
-			 * (5) Instantiate and initialize the path generator.
+			 * (5) Run in parallel if a number of workers is specified.
+			 */
+			final Integer workerCnt = MathHelpers.parseInteger(config.get(
+					BIOROUTE_ELEMENT, WORKERS_ELEMENT));
+			if (workerCnt != null) {
+				final ParallelOdPairRunner runner = new ParallelOdPairRunner(
+						config, network, workerCnt);
+				pathWriter.open();
+				runner.run(extractOdPairs(network, config), pathWriter);
+				pathWriter.close();
+				System.out.println("..DONE");
+				return;
+			}
+
+			/*
+			 * (6) Instantiate and initialize the path generator.
 			 */
 			final PathGenerator pathGenerator = (PathGenerator) ConfigurableInstantiator
 					.newConfiguredInstance(config, BIOROUTE_ELEMENT,
@@ -246,7 +264,7 @@ public class BiorouteRunner {
 			pathGenerator.setPathWriter(pathWriter);
 
 			/*
-			 * (6) Run the whole thing.
+			 * (7) Run the whole thing.
 			 */
 			int i = 0;
 			pathWriter.open();
@@ -0,0 +1,272 @@
+/*
+ * BIOROUTE
+ *
+ * Copyright 2011-2016 Gunnar Flötteröd and Michel Bierlaire
+ * 
+ *
+ * This file is part of BIOROUTE.
+ *
+ * BIOROUTE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BIOROUTE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BIOROUTE.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.bioroute;
+
+import static floetteroed.bioroute.BiorouteRunner.BIOROUTE_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.CLASSNAME_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.PATHGENERATOR_ELEMENT;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import floetteroed.utilities.Tuple;
+import floetteroed.utilities.config.Config;
+import floetteroed.utilities.config.ConfigurableInstantiator;
+import floetteroed.utilities.networks.basic.BasicLink;
+import floetteroed.utilities.networks.basic.BasicNetwork;
+import floetteroed.utilities.networks.basic.BasicNode;
+
+/**
+ * Runs independent OD pairs on a bounded pool of worker threads. Every worker
+ * owns a separately configured <code>PathGenerator</code> (hence also its own
+ * random number generator and routing data structures) whose paths are
+ * buffered per OD pair and passed on to the actual <code>PathWriter</code> in
+ * OD pair order.
+ * <p>
+ * If the generators are <code>ReseedablePathGenerator</code>s, each OD pair is
+ * run with a random seed that only depends on the configured seed and the
+ * position of the OD pair, such that the output does not depend on the number
+ * of workers.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class ParallelOdPairRunner {
+
+	// -------------------- CONSTANTS --------------------
+
+	// maximum number of OD pairs in progress or waiting to be written
+	private static final int PENDING_ODPAIRS_PER_WORKER = 4;
+
+	private final int workerCnt;
+
+	// -------------------- MEMBERS --------------------
+
+	private final BlockingQueue<Worker> idleWorkers;
+
+	private final boolean reseedable;
+
+	private final long baseSeed;
+
+	// -------------------- INNER CLASSES --------------------
+
+	/**
+	 * Collects the paths of one OD pair.
+	 */
+	private static class RecordingPathWriter implements PathWriter {
+
+		private List<List<BasicLink>> paths = new ArrayList<List<BasicLink>>();
+
+		private List<Map<String, String>> attrs = new ArrayList<Map<String, String>>();
+
+		@Override
+		public void configure(final Config config) {
+		}
+
+		@Override
+		public void open() {
+		}
+
+		@Override
+		public void startOdPair(final String from, final String to) {
+		}
+
+		@Override
+		public void writePath(final List<BasicLink> path,
+				final Map<String, String> attrs) {
+			this.paths.add(new ArrayList<BasicLink>(path));
+			this.attrs.add(attrs);
+		}
+
+		@Override
+		public void endOdPair() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		/**
+		 * Hands over all paths recorded so far and starts a new recording.
+		 */
+		private RecordingPathWriter takeRecording() {
+			final RecordingPathWriter result = new RecordingPathWriter();
+			result.paths = this.paths;
+			result.attrs = this.attrs;
+			this.paths = new ArrayList<List<BasicLink>>();
+			this.attrs = new ArrayList<Map<String, String>>();
+			return result;
+		}
+
+		private void replay(final PathWriter target) {
+			for (int i = 0; i < this.paths.size(); i++) {
+				target.writePath(this.paths.get(i), this.attrs.get(i));
+			}
+		}
+	}
+
+	private static class Worker {
+
+		private final PathGenerator generator;
+
+		private final RecordingPathWriter recorder;
+
+		private Worker(final PathGenerator generator,
+				final RecordingPathWriter recorder) {
+			this.generator = generator;
+			this.recorder = recorder;
+		}
+	}
+
+	// -------------------- CONSTRUCTION --------------------
+
+	/**
+	 * Instantiates and configures workerCnt path generators according to the
+	 * <code>BIOROUTE_ELEMENT.PATHGENERATOR_ELEMENT</code> subtree of the
+	 * <em>full</em> configuration.
+	 * 
+	 * @param config
+	 *            the (full) configuration
+	 * @param network
+	 *            the (preprocessed) network, which is shared by all workers
+	 * @param workerCnt
+	 *            the number of worker threads
+	 */
+	public ParallelOdPairRunner(final Config config,
+			final BasicNetwork network, final int workerCnt) {
+		if (workerCnt < 1) {
+			throw new IllegalArgumentException("worker count " + workerCnt
+					+ " is not strictly positive");
+		}
+		this.workerCnt = workerCnt;
+		this.idleWorkers = new ArrayBlockingQueue<Worker>(workerCnt);
+		boolean reseedable = true;
+		for (int i = 0; i < workerCnt; i++) {
+			final PathGenerator generator = (PathGenerator) ConfigurableInstantiator
+					.newConfiguredInstance(config, BIOROUTE_ELEMENT,
+							PATHGENERATOR_ELEMENT, CLASSNAME_ELEMENT);
+			final RecordingPathWriter recorder = new RecordingPathWriter();
+			generator.setNetwork(network);
+			generator.setPathWriter(recorder);
+			reseedable &= (generator instanceof ReseedablePathGenerator);
+			this.idleWorkers.add(new Worker(generator, recorder));
+		}
+		this.reseedable = reseedable;
+		if (this.reseedable) {
+			this.baseSeed = ((ReseedablePathGenerator) this.idleWorkers.peek().generator)
+					.getRandomSeed();
+		} else {
+			this.baseSeed = 0;
+			System.out.println("Path generator cannot be re-seeded, "
+					+ "results depend on the distribution of OD pairs "
+					+ "over workers.");
+		}
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private long odPairSeed(final int odPairIndex) {
+		// odd multiplier spreads consecutive indices over the seed space
+		return this.baseSeed + 0x9E3779B97F4A7C15L * (odPairIndex + 1);
+	}
+
+	private Callable<RecordingPathWriter> newTask(final int odPairIndex,
+			final BasicNode origin, final BasicNode destination) {
+		return new Callable<RecordingPathWriter>() {
+			@Override
+			public RecordingPathWriter call() throws Exception {
+				final Worker worker = idleWorkers.take();
+				try {
+					if (reseedable) {
+						((ReseedablePathGenerator) worker.generator)
+								.setRandomSeed(odPairSeed(odPairIndex));
+					}
+					worker.generator.run(origin, destination);
+					return worker.recorder.takeRecording();
+				} finally {
+					idleWorkers.add(worker);
+				}
+			}
+		};
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * Generates paths for all OD pairs and writes them, in the order of
+	 * odPairs, to pathWriter. Does not open or close pathWriter.
+	 * 
+	 * @param odPairs
+	 *            the origin/destination pairs
+	 * @param pathWriter
+	 *            the path writer
+	 */
+	public void run(final List<Tuple<BasicNode, BasicNode>> odPairs,
+			final PathWriter pathWriter) {
+		final ExecutorService threadPool = Executors
+				.newFixedThreadPool(this.workerCnt);
+		final LinkedList<Future<RecordingPathWriter>> pending = new LinkedList<Future<RecordingPathWriter>>();
+		final int maxPending = PENDING_ODPAIRS_PER_WORKER * this.workerCnt;
+		int submitted = 0;
+		try {
+			for (int i = 0; i < odPairs.size(); i++) {
+				while (submitted < odPairs.size()
+						&& submitted - i < maxPending) {
+					final Tuple<BasicNode, BasicNode> odPair = odPairs
+							.get(submitted);
+					pending.add(threadPool.submit(this.newTask(submitted,
+							odPair.getA(), odPair.getB())));
+					submitted++;
+				}
+				final RecordingPathWriter recording = pending.removeFirst()
+						.get();
+				final Tuple<BasicNode, BasicNode> odPair = odPairs.get(i);
+				System.out.println("writing od pair #" + (i + 1) + "/"
+						+ odPairs.size() + " from node "
+						+ odPair.getA().getId() + " to node "
+						+ odPair.getB().getId());
+				pathWriter.startOdPair(odPair.getA().getId(), odPair.getB()
+						.getId());
+				recording.replay(pathWriter);
+				pathWriter.endOdPair();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			threadPool.shutdownNow();
+		}
+	}
+}
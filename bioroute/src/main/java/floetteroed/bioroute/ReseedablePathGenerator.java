@@ -0,0 +1,54 @@
+/*
+ * BIOROUTE
+ *
+ * Copyright 2011-2016 Gunnar Flötteröd and Michel Bierlaire
+ * 
+ *
+ * This file is part of BIOROUTE.
+ *
+ * BIOROUTE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BIOROUTE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BIOROUTE.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.bioroute;
+
+/**
+ * <strong>BIOROUTE</strong> interface. A <code>PathGenerator</code> whose
+ * random number generator can be re-seeded before every call to
+ * <code>run</code>. This allows to distribute OD pairs over several generator
+ * instances without making the results depend on that distribution.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public interface ReseedablePathGenerator extends PathGenerator {
+
+	/**
+	 * Returns the random seed this generator was configured with.
+	 * 
+	 * @return the configured random seed
+	 */
+	public long getRandomSeed();
+
+	/**
+	 * Re-seeds the random number generator used by subsequent calls to
+	 * <code>run</code>.
+	 * 
+	 * @param seed
+	 *            the new random seed
+	 */
+	public void setRandomSeed(final long seed);
+
+}
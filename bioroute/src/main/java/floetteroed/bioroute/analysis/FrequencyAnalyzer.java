@@ -93,8 +93,7 @@ class FrequencyAnalyzer implements PathHandler {
 			throw new IllegalArgumentException("to file is null");
 		}
 		this.toFile = toFile;
-		final PathXMLParser parser = new PathXMLParser(this.network);
-		parser.parse(fromFile, this);
+		PathFileParser.parse(this.network, fromFile, this);
 
 	}
 
@@ -0,0 +1,200 @@
+/*
+ * BIOROUTE
+ *
+ * Copyright 2011-2016 Gunnar Flötteröd and Michel Bierlaire
+ * 
+ *
+ * This file is part of BIOROUTE.
+ *
+ * BIOROUTE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BIOROUTE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BIOROUTE.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.bioroute.analysis;
+
+import static floetteroed.bioroute.pathwriter.PathBinaryWriter.ENDODPAIR_RECORD;
+import static floetteroed.bioroute.pathwriter.PathBinaryWriter.END_RECORD;
+import static floetteroed.bioroute.pathwriter.PathBinaryWriter.LINK_RECORD;
+import static floetteroed.bioroute.pathwriter.PathBinaryWriter.MAGIC;
+import static floetteroed.bioroute.pathwriter.PathBinaryWriter.ODPAIR_RECORD;
+import static floetteroed.bioroute.pathwriter.PathBinaryWriter.PATH_RECORD;
+import static floetteroed.bioroute.pathwriter.PathBinaryWriter.VERSION;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.xml.sax.helpers.AttributesImpl;
+
+import floetteroed.utilities.networks.basic.BasicLink;
+import floetteroed.utilities.networks.basic.BasicNetwork;
+import floetteroed.utilities.networks.basic.BasicNode;
+
+/**
+ * Streaming parser for binary path files created by
+ * <code>bioroute.pathwriter.PathBinaryWriter</code>, compressed or not.
+ * Calls an instance of <code>PathHandler</code> exactly like the
+ * <code>PathXMLParser</code> does.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class PathBinaryParser {
+
+	// -------------------- MEMBERS --------------------
+
+	private final BasicNetwork network;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public PathBinaryParser(final BasicNetwork network) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		this.network = network;
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static InputStream newInputStream(final String file)
+			throws IOException {
+		final InputStream in = new BufferedInputStream(new FileInputStream(
+				file), 1 << 16);
+		in.mark(2);
+		final int magic = in.read() | (in.read() << 8);
+		in.reset();
+		if (magic == GZIPInputStream.GZIP_MAGIC) {
+			return new BufferedInputStream(new GZIPInputStream(in, 1 << 16),
+					1 << 16);
+		} else {
+			return in;
+		}
+	}
+
+	public static int readVarInt(final DataInputStream in) throws IOException {
+		int result = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			result |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return result;
+	}
+
+	/**
+	 * Returns true if file starts like a (possibly compressed) binary path
+	 * file. Any problem with reading the file results in false.
+	 */
+	public static boolean isBinaryPathFile(final String file) {
+		try {
+			final DataInputStream in = new DataInputStream(
+					newInputStream(file));
+			try {
+				return (in.readInt() == MAGIC);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	public void parse(final String file, final PathHandler handler) {
+		if (file == null) {
+			throw new IllegalArgumentException("file is null");
+		}
+		if (handler == null) {
+			throw new IllegalArgumentException("handler is null");
+		}
+		try {
+			final DataInputStream in = new DataInputStream(
+					newInputStream(file));
+			try {
+				this.parse(in, handler);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void parse(final DataInputStream in, final PathHandler handler)
+			throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a binary path file");
+		}
+		final int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported path file version " + version);
+		}
+
+		final List<BasicLink> index2link = new ArrayList<BasicLink>();
+		BasicNode origin = null;
+		handler.startPaths(new AttributesImpl());
+		for (byte tag = in.readByte(); tag != END_RECORD; tag = in.readByte()) {
+			if (tag == LINK_RECORD) {
+				final String linkId = in.readUTF();
+				final BasicLink link = this.network.getLink(linkId);
+				if (link == null) {
+					throw new IOException("unknown link " + linkId);
+				}
+				index2link.add(link);
+			} else if (tag == ODPAIR_RECORD) {
+				origin = this.network.getNode(in.readUTF());
+				final BasicNode destination = this.network.getNode(in
+						.readUTF());
+				handler.startOdPair(origin, destination);
+			} else if (tag == PATH_RECORD) {
+				final int linkCnt = readVarInt(in);
+				final List<BasicLink> linkPath = new ArrayList<BasicLink>(
+						linkCnt);
+				final List<BasicNode> nodePath = new ArrayList<BasicNode>(
+						linkCnt + 1);
+				nodePath.add(origin);
+				for (int i = 0; i < linkCnt; i++) {
+					final BasicLink link = index2link.get(readVarInt(in));
+					linkPath.add(link);
+					nodePath.add(link.getToNode());
+				}
+				if (linkCnt > 0) {
+					nodePath.set(0, linkPath.get(0).getFromNode());
+				}
+				final AttributesImpl attrs = new AttributesImpl();
+				final int attrCnt = readVarInt(in);
+				for (int i = 0; i < attrCnt; i++) {
+					final String key = in.readUTF();
+					attrs.addAttribute("", key, key, "CDATA", in.readUTF());
+				}
+				handler.startPath(nodePath, linkPath, attrs);
+				handler.endPath();
+			} else if (tag == ENDODPAIR_RECORD) {
+				handler.endOdPair();
+			} else {
+				throw new IOException("unknown record tag " + tag);
+			}
+		}
+		handler.endPaths();
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * BIOROUTE
+ *
+ * Copyright 2011-2016 Gunnar Flötteröd and Michel Bierlaire
+ * 
+ *
+ * This file is part of BIOROUTE.
+ *
+ * BIOROUTE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BIOROUTE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BIOROUTE.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.bioroute.analysis;
+
+import floetteroed.utilities.networks.basic.BasicNetwork;
+
+/**
+ * Parses a path file with either the <code>PathBinaryParser</code> or the
+ * <code>PathXMLParser</code>, depending on the file content.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class PathFileParser {
+
+	private PathFileParser() {
+		// not to be instantiated
+	}
+
+	public static void parse(final BasicNetwork network, final String file,
+			final PathHandler handler) {
+		if (PathBinaryParser.isBinaryPathFile(file)) {
+			new PathBinaryParser(network).parse(file, handler);
+		} else {
+			new PathXMLParser(network).parse(file, handler);
+		}
+	}
+}
@@ -33,7 +33,8 @@ import floetteroed.utilities.networks.basic.BasicNode;
 
 
 /**
- * A handler for the <code>PathXMLParser</code>.
+ * A handler for the <code>PathXMLParser</code> and the
+ * <code>PathBinaryParser</code>.
  * 
  * @author Gunnar Flötteröd
  * 
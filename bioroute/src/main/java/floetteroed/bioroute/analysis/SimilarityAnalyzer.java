@@ -96,8 +96,7 @@ class SimilarityAnalyzer implements PathHandler {
 			throw new IllegalArgumentException("to file is null");
 		}
 		this.toFile = toFile;
-		final PathXMLParser parser = new PathXMLParser(this.network);
-		parser.parse(fromFile, this);
+		PathFileParser.parse(this.network, fromFile, this);
 	}
 
 	// -------------------- IMPLEMENTATION OF PathHandler --------------------
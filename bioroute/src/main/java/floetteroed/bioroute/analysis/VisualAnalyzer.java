@@ -116,8 +116,7 @@ class VisualAnalyzer extends DynamicDataXMLFileIO<BasicLink> implements
 		this.toConfigFile = toConfigFile;
 		this.toDataFile = toDataFile;
 
-		final PathXMLParser parser = new PathXMLParser(this.network);
-		parser.parse(fromFile, this);
+		PathFileParser.parse(this.network, fromFile, this);
 	}
 
 	// -------------------- IMPLEMENTATION OF PathHandler --------------------
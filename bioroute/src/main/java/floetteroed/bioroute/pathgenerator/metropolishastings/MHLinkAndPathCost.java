@@ -34,10 +34,10 @@ import java.util.Map;
 
 import floetteroed.utilities.config.Config;
 import floetteroed.utilities.math.MathHelpers;
-import floetteroed.utilities.math.metropolishastings.MHWeight;
+import floetteroed.utilities.math.metropolishastings.MHIncrementalWeight;
 import floetteroed.utilities.networks.basic.BasicLink;
 import floetteroed.utilities.networks.basic.BasicNetwork;
-import floetteroed.utilities.networks.shortestpaths.LinkCost;
+import floetteroed.utilities.networks.shortestpaths.VersionedLinkCost;
 
 
 /**
@@ -46,7 +46,8 @@ import floetteroed.utilities.networks.shortestpaths.LinkCost;
  * @author Gunnar Flötteröd
  * 
  */
-class MHLinkAndPathCost implements LinkCost, MHWeight<MHPath> {
+class MHLinkAndPathCost implements VersionedLinkCost,
+		MHIncrementalWeight<MHPath> {
 
 	// -------------------- CONSTANTS --------------------
 
@@ -85,6 +86,9 @@ class MHLinkAndPathCost implements LinkCost, MHWeight<MHPath> {
 
 	private Map<BasicLink, Double> link2weight = null;
 
+	// incremented whenever setNetwork changes link2weight
+	private long version = 0;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	public MHLinkAndPathCost() {
@@ -132,7 +136,7 @@ class MHLinkAndPathCost implements LinkCost, MHWeight<MHPath> {
 	// -------------------- SETTERS AND GETTERS --------------------
 
 	void setNetwork(final BasicNetwork network) {
-		this.link2weight = new HashMap<BasicLink, Double>();
+		final Map<BasicLink, Double> newLink2weight = new HashMap<BasicLink, Double>();
 		for (BasicLink link : network.getLinks()) {
 			double weight = 0;
 			for (int i = 0; i < this.attributes.size(); i++) {
@@ -140,7 +144,11 @@ class MHLinkAndPathCost implements LinkCost, MHWeight<MHPath> {
 						* Double.parseDouble(link.getAttr(this.attributes
 								.get(i)));
 			}
-			this.link2weight.put(link, weight);
+			newLink2weight.put(link, weight);
+		}
+		if (!newLink2weight.equals(this.link2weight)) {
+			this.link2weight = newLink2weight;
+			this.version++;
 		}
 	}
 
@@ -160,21 +168,24 @@ class MHLinkAndPathCost implements LinkCost, MHWeight<MHPath> {
 	// return this.nodeLoopScale;
 	// }
 
-	// -------------------- IMPLEMENTATION OF LinkCost --------------------
+	// -------------------- IMPLEMENTATION OF VersionedLinkCost --------------------
 
 	@Override
 	public double getCost(final BasicLink link) {
 		return this.link2weight.get(link);
 	}
 
+	@Override
+	public long getVersion() {
+		return this.version;
+	}
+
 	// -------------------- IMPLEMENTATION OF MHWeight --------------------
 
 	double logWeightWithoutCorrection(final MHPath path) {
 
-		double pathCost = 0;
-		for (BasicLink link : path.getLinks()) {
-			pathCost += this.getCost(link);
-		}
+		// MHPath evaluates only the links of a splice's new segment
+		final double pathCost = path.getCost();
 
 		return (-this.linkCostScale * pathCost);
 
@@ -202,4 +213,21 @@ class MHLinkAndPathCost implements LinkCost, MHWeight<MHPath> {
 		return (this.logWeightWithoutCorrection(path) - Math.log(path
 				.pointCombinationSize()));
 	}
+
+	// -------------------- IMPLEMENTATION OF MHIncrementalWeight --------------------
+
+	/**
+	 * A SHUFFLE or a rejected SPLICE leaves the nodes, and hence the weight,
+	 * unchanged. A SPLICE has replaced the A-C segment of the old path, which
+	 * the new path accounts for when computing its cost.
+	 */
+	@Override
+	public double logWeight(final MHPath newPath, final MHPath oldPath,
+			final double oldLogWeight) {
+		if (newPath.hasSameNodes(oldPath)) {
+			return oldLogWeight;
+		} else {
+			return this.logWeight(newPath);
+		}
+	}
 }
@@ -24,15 +24,17 @@
  */ 
 package floetteroed.bioroute.pathgenerator.metropolishastings;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import floetteroed.utilities.Triple;
 import floetteroed.utilities.networks.basic.BasicLink;
 import floetteroed.utilities.networks.basic.BasicNode;
+import floetteroed.utilities.networks.shortestpaths.LinkCost;
 import floetteroed.utilities.networks.shortestpaths.Router;
 
 
@@ -44,80 +46,9 @@ import floetteroed.utilities.networks.shortestpaths.Router;
  */
 public class MHPath {
 
-	// TODO >>>>>>>>>>>>>>>>>>>> NEW STUFF >>>>>>>>>>>>>>>>>>>>
-	//
-	// private final Router router1;
-	//
-	// private final Router router2;
-	//
-	// private BasicNode lastInsertNode = null;
-	//
-	// private List<BasicNode> lastSegmentAB = null;
-	//
-	// private List<BasicNode> lastSegmentBC = null;
-	//
-	// private static long calls = 0;
-	//
-	// private static long recalcs = 0;
-	//
-	// private Tuple<List<BasicNode>, List<BasicNode>> getSegmentsABC(
-	// final BasicNode insertNode) {
-	// calls++;
-	// // if (!insertNode.equals(this.lastInsertNode)) {
-	// recalcs++;
-	// final RouterThread threadAB = new RouterThread(this.router1, this,
-	// insertNode, RouterThread.MODE.AB);
-	// threadAB.start();
-	// final RouterThread threadBC = new RouterThread(this.router2, this,
-	// insertNode, RouterThread.MODE.BC);
-	// threadBC.start();
-	// // this.lastInsertNode = insertNode;
-	// try {
-	// threadAB.join();
-	// this.lastSegmentAB = threadAB.getResult();
-	// threadBC.join();
-	// this.lastSegmentBC = threadBC.getResult();
-	// } catch (InterruptedException e) {
-	// throw new RuntimeException(e);
-	// }
-	// // }
-	// if (calls % 100000 == 0) {
-	// System.out.println(calls + "\tcalls");
-	// System.out.println(recalcs + "\trecalculations");
-	// System.out.println(Thread.activeCount() + "\trunning threads");
-	// }
-	//
-	// return new Tuple<List<BasicNode>, List<BasicNode>>(this.lastSegmentAB,
-	// this.lastSegmentBC);
-	// }
-	//
-	// boolean isSpliceable() {
-	// if (this.spliceable == null) {
-	// final Tuple<List<BasicNode>, List<BasicNode>> pathsABC = this
-	// .getSegmentsABC(this.getNodeB());
-	// final List<BasicNode> pathAB = pathsABC.getA();
-	// final List<BasicNode> pathBC = pathsABC.getB();
-	// // final List<Node> pathAB =
-	// // this.newSpliceSegmentAB(this.getNodeB());
-	// if (!Router.equals(this.nodes, this.points.getA(),
-	// this.points.getB(), pathAB, 0, pathAB.size() - 1)) {
-	// this.spliceable = false;
-	// } else {
-	// // final List<Node> pathBC = this.newSpliceSegmentBC(this
-	// // .getNodeB());
-	// this.spliceable = (Router.equals(this.nodes,
-	// this.points.getB(), this.points.getC(), pathBC, 0,
-	// pathBC.size() - 1));
-	// }
-	// }
-	// return this.spliceable;
-	// }
-
-	// TODO <<<<<<<<<<<<<<<<<<<< NEW STUFF <<<<<<<<<<<<<<<<<<<<
-
 	// -------------------- CONSTANTS --------------------
 
-	private final Router router;
+	private final MHSpliceRouter router;
 
 	// -------------------- MEMBERS --------------------
 
@@ -125,26 +56,60 @@ public class MHPath {
 
 	private Triple<Integer, Integer, Integer> points;
 
+	// identical for all copies of a path until their nodes change
+	private Object nodeSequence = new Object();
+
 	// --------------- CACHED MEMBERS & ACCESS FUNCTIONS ---------------
 
+	/*
+	 * The link list and the cost prefix sums are never modified once they
+	 * exist and are hence shared with all copies of this path.
+	 */
 	private List<BasicLink> links = null;
 
-	private Double cost = null;
+	// costPrefix[i] = cost of the first i links
+	private double[] costPrefix = null;
 
 	private Boolean spliceable = null;
 
 	public List<BasicLink> getLinks() {
 		if (this.links == null) {
-			this.links = Router.toLinkRoute(this.nodes);
+			this.links = Collections.unmodifiableList(new ArrayList<BasicLink>(
+					Router.toLinkRoute(this.nodes)));
 		}
 		return this.links;
 	}
 
-	double getCost() {
-		if (this.cost == null) {
-			this.cost = this.router.cost(this.getLinks());
+	private static double[] costPrefix(final List<BasicLink> links,
+			final LinkCost linkCost, final double[] result, final int offset) {
+		for (int i = 0; i < links.size(); i++) {
+			result[offset + i + 1] = result[offset + i]
+					+ linkCost.getCost(links.get(i));
+		}
+		return result;
+	}
+
+	private double[] getCostPrefix() {
+		if (this.costPrefix == null) {
+			final List<BasicLink> links = this.getLinks();
+			this.costPrefix = costPrefix(links, this.router.getRouter()
+					.getLinkCost(), new double[links.size() + 1], 0);
 		}
-		return this.cost;
+		return this.costPrefix;
+	}
+
+	double getCost() {
+		final double[] costPrefix = this.getCostPrefix();
+		return costPrefix[costPrefix.length - 1];
+	}
+
+	/**
+	 * True if this path and other are copies of the same node sequence; this
+	 * is checked in constant time if they are.
+	 */
+	boolean hasSameNodes(final MHPath other) {
+		return (this.nodeSequence == other.nodeSequence)
+				|| this.nodes.equals(other.nodes);
 	}
 
 	// TODO WORKING ORIGINAL
@@ -169,54 +134,32 @@ public class MHPath {
 	// -------------------- CONSTRUCTION --------------------
 
 	MHPath(final LinkedList<BasicNode> nodes,
-			final Triple<Integer, Integer, Integer> points, final Router router) {
+			final Triple<Integer, Integer, Integer> points,
+			final MHSpliceRouter router) {
 		this.nodes = new LinkedList<BasicNode>(nodes);
 		this.points = points;
 		this.router = router;
-		// this.router1 = router1;
-		// this.router2 = router2;
 		this.links = null;
-		this.cost = null;
+		this.costPrefix = null;
 		this.spliceable = null;
 	}
 
 	MHPath(final MHPath parent) {
-		// this(parent.nodes, parent.points, parent.router1, parent.router2);
 		this(parent.nodes, parent.points, parent.router);
-		this.links = (parent.links == null ? null : new LinkedList<BasicLink>(
-				parent.links));
-		this.cost = parent.cost;
+		this.nodeSequence = parent.nodeSequence;
+		this.links = parent.links;
+		this.costPrefix = parent.costPrefix;
 		this.spliceable = parent.spliceable;
 	}
 
 	// -------------------- GETTERS --------------------
 
-	// TODO WORKING ORIGINAL
 	private LinkedList<BasicNode> newSpliceSegmentAB(final BasicNode insertNode) {
-		final Set<BasicNode> excludedNodes = new HashSet<BasicNode>(
-				this.nodes.subList(0, this.getPoints().getA()));
-		excludedNodes.addAll(this.nodes.subList(this.getPoints().getC(),
-				this.size()));
-		final Map<BasicNode, Double> modifiedFwdCost = this.router
-				.fwdCostWithoutExcludedNodes(this.getNodeA(), insertNode,
-						this.router.getNetwork().getNodes(), excludedNodes,
-						null);
-		return this.router.bestRouteFwd(this.getNodeA(), insertNode,
-				modifiedFwdCost);
+		return this.router.newSegmentAB(this, insertNode);
 	}
 
-	// TODO WORKING ORIGINAL
 	private LinkedList<BasicNode> newSpliceSegmentBC(final BasicNode insertNode) {
-		final Set<BasicNode> excludedNodes = new HashSet<BasicNode>(
-				this.nodes.subList(0, this.getPoints().getA() + 1));
-		excludedNodes.addAll(this.nodes.subList(this.getPoints().getC() + 1,
-				this.size()));
-		final Map<BasicNode, Double> modifiedBwdCost = this.router
-				.bwdCostWithoutExcludedNodes(this.getNodeC(), insertNode,
-						this.router.getNetwork().getNodes(), excludedNodes,
-						null);
-		return this.router.bestRouteBwd(insertNode, this.getNodeC(),
-				modifiedBwdCost);
+		return this.router.newSegmentBC(this, insertNode);
 	}
 
 	int size() {
@@ -271,7 +214,6 @@ public class MHPath {
 		/*
 		 * (1) compute new path segments
 		 */
-		// >>>>> TODO WORKING ORIGINAL >>>>>
 		final List<BasicNode> pathAB = this.newSpliceSegmentAB(nodeB);
 		if (pathAB == null) {
 			return false;
@@ -280,18 +222,6 @@ public class MHPath {
 		if (pathBC == null) {
 			return false;
 		}
-		// >>>>> TODO PARALLEL VERSION >>>>>
-		// final Tuple<List<BasicNode>, List<BasicNode>> pathsABC = this
-		// .getSegmentsABC(this.getNodeB());
-		// final List<BasicNode> pathAB = pathsABC.getA();
-		// if (pathAB == null) {
-		// return false;
-		// }
-		// final List<BasicNode> pathBC = pathsABC.getB();
-		// if (pathBC == null) {
-		// return false;
-		// }
-		// <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
 
 		/*
 		 * (2) build new path
@@ -310,10 +240,39 @@ public class MHPath {
 		final Triple<Integer, Integer, Integer> newPoints = new Triple<Integer, Integer, Integer>(
 				this.points.getA(), newB, newC);
 		/*
-		 * (4) clear/update internal cache
+		 * (4) clear/update internal cache; if the links and their cost are
+		 * known, only the links between A and the new C are evaluated
 		 */
-		this.links = null;
-		this.cost = null;
+		if (this.costPrefix != null) {
+			final List<BasicNode> segmentNodes = new ArrayList<BasicNode>(
+					pathAB);
+			segmentNodes.addAll(pathBC.subList(1, pathBC.size()));
+			final List<BasicLink> segmentLinks = Router
+					.toLinkRoute(segmentNodes);
+			final int oldA = this.points.getA();
+			final int oldC = this.points.getC();
+			final List<BasicLink> newLinks = new ArrayList<BasicLink>(
+					this.links.size() - (oldC - oldA) + segmentLinks.size());
+			newLinks.addAll(this.links.subList(0, oldA));
+			newLinks.addAll(segmentLinks);
+			newLinks.addAll(this.links.subList(oldC, this.links.size()));
+			final double[] newCostPrefix = Arrays.copyOf(this.costPrefix,
+					newLinks.size() + 1);
+			costPrefix(segmentLinks, this.router.getRouter().getLinkCost(),
+					newCostPrefix, oldA);
+			final double suffixShift = newCostPrefix[newC]
+					- this.costPrefix[oldC];
+			for (int i = oldC + 1; i < this.costPrefix.length; i++) {
+				newCostPrefix[newC + (i - oldC)] = this.costPrefix[i]
+						+ suffixShift;
+			}
+			this.links = Collections.unmodifiableList(newLinks);
+			this.costPrefix = newCostPrefix;
+		} else {
+			this.links = null;
+			this.costPrefix = null;
+		}
+		this.nodeSequence = new Object();
 		this.spliceable = true; // because this was created by a splice
 		/*
 		 * (5) update further data structures
@@ -29,14 +29,21 @@ import java.util.Map;
 import java.util.Random;
 
 import floetteroed.bioroute.BiorouteRunner;
-import floetteroed.bioroute.PathGenerator;
 import floetteroed.bioroute.PathWriter;
+import floetteroed.bioroute.ReseedablePathGenerator;
 import floetteroed.utilities.config.Config;
 import floetteroed.utilities.math.MathHelpers;
 import floetteroed.utilities.math.metropolishastings.MHAlgorithm;
+import floetteroed.utilities.math.metropolishastings.MHMultiChainAlgorithm;
+import floetteroed.utilities.math.metropolishastings.MHProposal;
+import floetteroed.utilities.math.metropolishastings.MHProposalFactory;
 import floetteroed.utilities.networks.basic.BasicNetwork;
 import floetteroed.utilities.networks.basic.BasicNode;
+import floetteroed.utilities.networks.shortestpaths.CompiledNetwork;
+import floetteroed.utilities.networks.shortestpaths.CostTree;
+import floetteroed.utilities.networks.shortestpaths.CostTreeCache;
 import floetteroed.utilities.networks.shortestpaths.Router;
+import floetteroed.utilities.networks.shortestpaths.RouterWorkspace;
 
 /**
  * A Metropolis-Hastings code for path sampling.
@@ -48,7 +55,7 @@ import floetteroed.utilities.networks.shortestpaths.Router;
  * @author Gunnar Flötteröd
  * 
  */
-public class MHPathGenerator implements PathGenerator {
+public class MHPathGenerator implements ReseedablePathGenerator {
 
 	// -------------------- CONSTANTS --------------------
 
@@ -64,6 +71,12 @@ public class MHPathGenerator implements PathGenerator {
 
 	public static final double DEFAULT_PROPOSALSCALEFACTOR = 1.0;
 
+	public static final int DEFAULT_COSTTREECACHESIZE = 0;
+
+	public static final int DEFAULT_PARALLELSPLICEMINNODES = 20000;
+
+	public static final int DEFAULT_CHAINS = 1;
+
 	// CONFIG ELEMENTS
 
 	public static final String RANDOMSEED_ELEMENT = "randomseed";
@@ -82,6 +95,18 @@ public class MHPathGenerator implements PathGenerator {
 
 	public static final String PROPOSALSCALEFACTOR_ELEMENT = "proposalscalefactor";
 
+	public static final String COSTTREECACHESIZE_ELEMENT = "costtreecachesize";
+
+	public static final String PARALLELSPLICEMINNODES_ELEMENT = "parallelspliceminnodes";
+
+	public static final String CHAINS_ELEMENT = "chains";
+
+	public static final String CONVERGENCECHECKINTERVAL_ELEMENT = "convergencecheckinterval";
+
+	public static final String MAXRHAT_ELEMENT = "maxrhat";
+
+	public static final String MINEFFECTIVESAMPLESIZE_ELEMENT = "mineffectivesamplesize";
+
 	// -------------------- MEMBERS --------------------
 
 	// CONFIGURATION
@@ -102,8 +127,22 @@ public class MHPathGenerator implements PathGenerator {
 
 	private Double proposalScaleFactor = null;
 
+	private Integer costTreeCacheSize = null;
+
+	private Integer parallelSpliceMinNodes = null;
+
+	private Integer chains = null;
+
+	private Integer convergenceCheckInterval = null;
+
+	private Double maxRHat = null;
+
+	private Double minEffectiveSampleSize = null;
+
 	// RUNTIME
 
+	private long randomSeed;
+
 	private Random rnd = null;
 
 	private MHLinkAndPathCost linkAndPathCost = null;
@@ -111,6 +150,16 @@ public class MHPathGenerator implements PathGenerator {
 	// private Network invertedNetwork = null;
 	private BasicNetwork network = null;
 
+	private CompiledNetwork compiledNetwork = null;
+
+	// reused across all OD pairs
+	private RouterWorkspace fwdWorkspace = null;
+
+	private RouterWorkspace bwdWorkspace = null;
+
+	// one-to-all trees of origins and destinations, reused across OD pairs
+	private CostTreeCache costTreeCache = null;
+
 	private PathWriter pathWriter = null;
 
 	// -------------------- CONSTRUCTION --------------------
@@ -131,6 +180,10 @@ public class MHPathGenerator implements PathGenerator {
 		return new MHLinkAndPathCost();
 	}
 	
+	protected MHSpliceRouter newSpliceRouter(final Router router) {
+		return new MHSpliceRouter(router, this.parallelSpliceMinNodes);
+	}
+
 	protected MHPath initialState(final BasicNode originNode,
 			final BasicNode destinationNode, final Router router) {
 		return null;
@@ -154,6 +207,7 @@ public class MHPathGenerator implements PathGenerator {
 		if (randomSeed == null) {
 			randomSeed = (new Random()).nextLong();
 		}
+		this.randomSeed = randomSeed;
 		this.rnd = new Random(randomSeed);
 		System.out.println("random seed = " + randomSeed);
 		// if (this.randomSeed == null) {
@@ -199,13 +253,67 @@ public class MHPathGenerator implements PathGenerator {
 			this.proposalScaleFactor = DEFAULT_PROPOSALSCALEFACTOR;
 		}
 
+		this.costTreeCacheSize = MathHelpers.parseInteger(config.get(
+				BiorouteRunner.PATHGENERATOR_ELEMENT,
+				COSTTREECACHESIZE_ELEMENT));
+		if (this.costTreeCacheSize == null) {
+			this.costTreeCacheSize = DEFAULT_COSTTREECACHESIZE;
+		}
+		this.costTreeCache = new CostTreeCache(this.costTreeCacheSize);
+
+		this.parallelSpliceMinNodes = MathHelpers.parseInteger(config.get(
+				BiorouteRunner.PATHGENERATOR_ELEMENT,
+				PARALLELSPLICEMINNODES_ELEMENT));
+		if (this.parallelSpliceMinNodes == null) {
+			this.parallelSpliceMinNodes = DEFAULT_PARALLELSPLICEMINNODES;
+		}
+
+		this.chains = MathHelpers.parseInteger(config.get(
+				BiorouteRunner.PATHGENERATOR_ELEMENT, CHAINS_ELEMENT));
+		if (this.chains == null) {
+			this.chains = DEFAULT_CHAINS;
+		}
+
+		this.convergenceCheckInterval = MathHelpers.parseInteger(config.get(
+				BiorouteRunner.PATHGENERATOR_ELEMENT,
+				CONVERGENCECHECKINTERVAL_ELEMENT));
+		if (this.convergenceCheckInterval == null) {
+			this.convergenceCheckInterval = MHMultiChainAlgorithm.DEFAULT_CHECKINTERVAL;
+		}
+
+		this.maxRHat = MathHelpers.parseDouble(config.get(
+				BiorouteRunner.PATHGENERATOR_ELEMENT, MAXRHAT_ELEMENT));
+		if (this.maxRHat == null) {
+			this.maxRHat = MHMultiChainAlgorithm.DEFAULT_MAXRHAT;
+		}
+
+		this.minEffectiveSampleSize = MathHelpers.parseDouble(config.get(
+				BiorouteRunner.PATHGENERATOR_ELEMENT,
+				MINEFFECTIVESAMPLESIZE_ELEMENT));
+		if (this.minEffectiveSampleSize == null) {
+			this.minEffectiveSampleSize = MHMultiChainAlgorithm.DEFAULT_MINEFFECTIVESAMPLESIZE;
+		}
+
 		// TODO NEW
 		this.linkAndPathCost = this.newConfiguredLinkAndPathCost(config);
 	}
 
+	@Override
+	public long getRandomSeed() {
+		return this.randomSeed;
+	}
+
+	@Override
+	public void setRandomSeed(final long seed) {
+		this.rnd = new Random(seed);
+	}
+
 	@Override
 	public void setNetwork(final BasicNetwork network) {
 		this.network = network;
+		this.compiledNetwork = new CompiledNetwork(network);
+		this.fwdWorkspace = new RouterWorkspace(this.compiledNetwork);
+		this.bwdWorkspace = new RouterWorkspace(this.compiledNetwork);
 		// this.invertedNetwork = NetworkInverter.newInvertedNetwork(network);
 	}
 
@@ -244,10 +352,14 @@ public class MHPathGenerator implements PathGenerator {
 		 * 
 		 * TODO CHANGED
 		 */
-		final Router router = new Router(this.network, this.linkAndPathCost);
+		final Router router = new Router(this.compiledNetwork,
+				this.linkAndPathCost);
+		final CostTree fwdCost = this.costTreeCache.getFwdTree(router,
+				originNode, this.fwdWorkspace);
+		final CostTree bwdCost = this.costTreeCache.getBwdTree(router,
+				destinationNode, this.bwdWorkspace);
 		if (this.relativeCostScale != null) {
-			final double linkCostSP = router.fwdCost(originNode,
-					destinationNode).get(destinationNode);
+			final double linkCostSP = fwdCost.getCost(destinationNode);
 			this.linkAndPathCost
 					.setLinkCostScale(Math.log(2.0)
 							/ (linkCostSP + (this.relativeCostOffset != null ? this.relativeCostOffset
@@ -272,18 +384,12 @@ public class MHPathGenerator implements PathGenerator {
 		 * TODO CHANGED
 		 */
 		final Map<BasicNode, Double> proposalProbabilities = new LinkedHashMap<BasicNode, Double>();
-		final Map<BasicNode, Double> fwdCost = router.fwdCost(originNode);
-		final Map<BasicNode, Double> bwdCost = router.bwdCost(destinationNode);
 		double minCost = Double.POSITIVE_INFINITY;
-		for (BasicNode node : this.network.getNodes()) {
-			final double cost;
-			if ((fwdCost.get(node) != null) && (bwdCost.get(node) != null)) {
-				cost = fwdCost.get(node) + bwdCost.get(node);
-			} else {
-				cost = Double.POSITIVE_INFINITY;
-			}
+		for (int i = 0; i < this.compiledNetwork.getNodeCnt(); i++) {
+			// infinite if unreachable in either direction
+			final double cost = fwdCost.getCost(i) + bwdCost.getCost(i);
 			minCost = Math.min(minCost, cost);
-			proposalProbabilities.put(node, cost);
+			proposalProbabilities.put(this.compiledNetwork.getNode(i), cost);
 		}
 		double weightSum = 0;
 		for (BasicNode node : this.network.getNodes()) {
@@ -335,8 +441,14 @@ public class MHPathGenerator implements PathGenerator {
 		 * 
 		 * TODO CHANGED
 		 */
+		if (this.chains > 1) {
+			this.runChains(originNode, destinationNode, router,
+					proposalProbabilities);
+			return;
+		}
 		final MHPathProposal_NEW proposal = new MHPathProposal_NEW(originNode,
-				destinationNode, router, this.spliceProbability,
+				destinationNode, this.newSpliceRouter(router),
+				this.spliceProbability,
 				proposalProbabilities, this.rnd);
 		final MHAlgorithm<MHPath> algo = new MHAlgorithm<MHPath>(proposal,
 				this.linkAndPathCost, this.rnd);
@@ -348,6 +460,9 @@ public class MHPathGenerator implements PathGenerator {
 		
 		algo.run(this.totalIterations);
 		System.out.println("total MH runtime = " + algo.getLastCompTime_ms());
+		if (this.costTreeCacheSize > 0) {
+			System.out.println(this.costTreeCache);
+		}
 		// final MHPathProposal proposal = new
 		// MHPathProposal(invertedOriginNode,
 		// invertedDestinationNode, router, this.spliceProbability,
@@ -361,4 +476,37 @@ public class MHPathGenerator implements PathGenerator {
 		// System.out.println("total MH runtime = " +
 		// algo.getLastCompTime_ms());
 	}
+
+	/*
+	 * Every chain has its own proposal and hence its own splice router and
+	 * initial state; initialState(..) is not used here because its result
+	 * would share one splice router between all chains.
+	 */
+	private void runChains(final BasicNode originNode,
+			final BasicNode destinationNode, final Router router,
+			final Map<BasicNode, Double> proposalProbabilities) {
+		final MHMultiChainAlgorithm<MHPath> algo = new MHMultiChainAlgorithm<MHPath>(
+				new MHProposalFactory<MHPath>() {
+					@Override
+					public MHProposal<MHPath> newProposal(final Random rnd) {
+						return new MHPathProposal_NEW(originNode,
+								destinationNode, newSpliceRouter(router),
+								spliceProbability, proposalProbabilities, rnd);
+					}
+				}, this.linkAndPathCost, this.chains, this.rnd);
+		algo.setMsgInterval(this.msgInterval);
+		algo.setCheckInterval(this.convergenceCheckInterval);
+		algo.setMaxRHat(this.maxRHat);
+		algo.setMinEffectiveSampleSize(this.minEffectiveSampleSize);
+		algo.addStateProcessor(new MHPathWriterWrapper(this.pathWriter,
+				this.sampleInterval, this.linkAndPathCost));
+		algo.run(this.totalIterations);
+		System.out.println("total MH runtime = " + algo.getLastCompTime_ms()
+				+ ", iterations per chain = " + algo.getLastIterations()
+				+ ", R-hat = " + algo.getLastRHat() + ", ESS = "
+				+ algo.getLastEffectiveSampleSize());
+		if (this.costTreeCacheSize > 0) {
+			System.out.println(this.costTreeCache);
+		}
+	}
 }
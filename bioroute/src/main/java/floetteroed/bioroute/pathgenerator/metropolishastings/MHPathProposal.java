@@ -54,6 +54,8 @@ class MHPathProposal implements MHProposal<MHPath> {
 
 	private final Router router;
 
+	private final MHSpliceRouter spliceRouter;
+
 	// private final Router router2;
 
 	private final Random rnd;
@@ -87,6 +89,7 @@ class MHPathProposal implements MHProposal<MHPath> {
 		this.origin = origin;
 		this.destination = destination;
 		this.router = router;
+		this.spliceRouter = new MHSpliceRouter(router);
 		this.spliceProbability = spliceProbability;
 		this.proposalProbabilities = new LinkedHashMap<BasicNode, Double>(
 				proposalProbabilities);
@@ -204,7 +207,7 @@ class MHPathProposal implements MHProposal<MHPath> {
 				this.destination);
 		final Triple<Integer, Integer, Integer> points = drawPoints(
 				nodes.size(), this.rnd);
-		return new MHPath(nodes, points, this.router);
+		return new MHPath(nodes, points, this.spliceRouter);
 	}
 
 	// TODO NEW
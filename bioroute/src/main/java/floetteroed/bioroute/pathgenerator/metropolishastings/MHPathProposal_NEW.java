@@ -54,6 +54,8 @@ class MHPathProposal_NEW implements MHProposal<MHPath> {
 
 	private final Router router;
 
+	private final MHSpliceRouter spliceRouter;
+
 	private final Random rnd;
 
 	// TODO NEW
@@ -67,21 +69,29 @@ class MHPathProposal_NEW implements MHProposal<MHPath> {
 	MHPathProposal_NEW(final BasicNode origin, final BasicNode destination,
 			final Router router, final double spliceProbability,
 			final Map<BasicNode, Double> proposalProbabilities, final Random rnd) {
+		this(origin, destination, new MHSpliceRouter(router),
+				spliceProbability, proposalProbabilities, rnd);
+	}
+
+	MHPathProposal_NEW(final BasicNode origin, final BasicNode destination,
+			final MHSpliceRouter spliceRouter, final double spliceProbability,
+			final Map<BasicNode, Double> proposalProbabilities, final Random rnd) {
 		if (origin == null) {
 			throw new IllegalArgumentException("origin is null");
 		}
 		if (destination == null) {
 			throw new IllegalArgumentException("destination is null");
 		}
-		if (router == null) {
-			throw new IllegalArgumentException("router is null");
+		if (spliceRouter == null) {
+			throw new IllegalArgumentException("splice router is null");
 		}
 		if (rnd == null) {
 			throw new IllegalArgumentException("rnd is null");
 		}
 		this.origin = origin;
 		this.destination = destination;
-		this.router = router;
+		this.router = spliceRouter.getRouter();
+		this.spliceRouter = spliceRouter;
 		this.spliceProbability = spliceProbability;
 		this.proposalProbabilities = new LinkedHashMap<BasicNode, Double>(
 				proposalProbabilities);
@@ -140,7 +150,7 @@ class MHPathProposal_NEW implements MHProposal<MHPath> {
 	private double transitionLogProb(final MHPath fromRoute,
 			final MHPath toRoute) {
 
-		if (!fromRoute.getNodes().equals(toRoute.getNodes())) {
+		if (!fromRoute.hasSameNodes(toRoute)) {
 			/*
 			 * different nodes -- a SPLICE has occurred
 			 */
@@ -238,7 +248,7 @@ class MHPathProposal_NEW implements MHProposal<MHPath> {
 				this.destination);
 		final Triple<Integer, Integer, Integer> points = drawPoints(
 				nodes.size(), this.rnd);
-		return new MHPath(nodes, points, this.router);
+		return new MHPath(nodes, points, this.spliceRouter);
 	}
 
 	// TODO NEW
@@ -0,0 +1,220 @@
+/*
+ * BIOROUTE
+ *
+ * Copyright 2011-2016 Gunnar Flötteröd and Michel Bierlaire
+ * 
+ *
+ * This file is part of BIOROUTE.
+ *
+ * BIOROUTE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BIOROUTE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BIOROUTE.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.bioroute.pathgenerator.metropolishastings;
+
+import static floetteroed.bioroute.BiorouteRunner.BIOROUTE_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.CLASSNAME_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.DESTINATION_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.NETWORKLOADER_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.NETWORKPREPROCESSOR_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.ODPAIRS_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.ODPAIR_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.ORIGIN_ELEMENT;
+import static floetteroed.bioroute.BiorouteRunner.PATHGENERATOR_ELEMENT;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import floetteroed.bioroute.PathWriter;
+import floetteroed.bioroute.utilities.NetworkInstantiator;
+import floetteroed.utilities.config.Config;
+import floetteroed.utilities.config.ConfigReader;
+import floetteroed.utilities.networks.basic.BasicLink;
+import floetteroed.utilities.networks.basic.BasicNetwork;
+import floetteroed.utilities.networks.basic.BasicNode;
+import floetteroed.utilities.networks.shortestpaths.Router;
+
+/**
+ * Measures SPLICE proposals per second of the first OD pair in a BIOROUTE
+ * configuration, with the two detour searches of every proposal run
+ * <ul>
+ * <li>in two freshly spawned threads (the former behavior);
+ * <li>inline, in the calling thread;
+ * <li>with the B-C search forked into the shared fork/join pool.
+ * </ul>
+ * All variants use the same random seed and hence do identical work.
+ * <p>
+ * Usage: <code>MHSpliceBenchmark configFile [repetitions]</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class MHSpliceBenchmark {
+
+	// -------------------- INNER CLASSES --------------------
+
+	private static enum Variant {
+		SPAWNED_THREADS, INLINE, FORK_JOIN
+	};
+
+	/**
+	 * Spawns one thread per detour search, like the former RouterThread.
+	 */
+	private static class ThreadSpawningSpliceRouter extends MHSpliceRouter {
+
+		private LinkedList<BasicNode> segmentAB = null;
+
+		private LinkedList<BasicNode> segmentBC = null;
+
+		private ThreadSpawningSpliceRouter(final Router router) {
+			super(router);
+		}
+
+		@Override
+		LinkedList<BasicNode> newSegmentAB(final MHPath path,
+				final BasicNode insertNode) {
+			final Thread threadAB = new Thread() {
+				@Override
+				public void run() {
+					segmentAB = computeSegmentAB(path, insertNode);
+				}
+			};
+			final Thread threadBC = new Thread() {
+				@Override
+				public void run() {
+					segmentBC = computeSegmentBC(path, insertNode);
+				}
+			};
+			threadAB.start();
+			threadBC.start();
+			try {
+				threadAB.join();
+				threadBC.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return this.segmentAB;
+		}
+
+		@Override
+		LinkedList<BasicNode> newSegmentBC(final MHPath path,
+				final BasicNode insertNode) {
+			return this.segmentBC;
+		}
+	}
+
+	// -------------------- CONSTRUCTION --------------------
+
+	private MHSpliceBenchmark() {
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	private static MHPathGenerator newGenerator(final Config config,
+			final BasicNetwork network, final Variant variant) {
+		final MHPathGenerator result = new MHPathGenerator() {
+			@Override
+			protected MHSpliceRouter newSpliceRouter(final Router router) {
+				if (Variant.SPAWNED_THREADS.equals(variant)) {
+					return new ThreadSpawningSpliceRouter(router);
+				} else if (Variant.INLINE.equals(variant)) {
+					return new MHSpliceRouter(router, Integer.MAX_VALUE);
+				} else {
+					return new MHSpliceRouter(router, 0);
+				}
+			}
+		};
+		result.configure(config.newSubConfig(BIOROUTE_ELEMENT,
+				PATHGENERATOR_ELEMENT));
+		result.setNetwork(network);
+		result.setPathWriter(new PathWriter() {
+			@Override
+			public void configure(final Config config) {
+			}
+
+			@Override
+			public void open() {
+			}
+
+			@Override
+			public void startOdPair(final String from, final String to) {
+			}
+
+			@Override
+			public void writePath(final List<BasicLink> path,
+					final Map<String, String> attrs) {
+			}
+
+			@Override
+			public void endOdPair() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		return result;
+	}
+
+	public static void main(String[] args) {
+
+		if (args == null || args.length == 0) {
+			System.err.println("name of configuration file is missing");
+			System.exit(-1);
+		}
+		final Config config = (new ConfigReader()).read(args[0]);
+		final int repetitions = (args.length > 1 ? Integer.parseInt(args[1])
+				: 3);
+		final int iterations = Integer.parseInt(config.get(BIOROUTE_ELEMENT,
+				PATHGENERATOR_ELEMENT,
+				MHPathGenerator.TOTALITERATIONS_ELEMENT));
+
+		final BasicNetwork network = NetworkInstantiator.loadNetwork(config,
+				BIOROUTE_ELEMENT, NETWORKLOADER_ELEMENT, CLASSNAME_ELEMENT);
+		NetworkInstantiator.preprocessNetwork(network, config,
+				BIOROUTE_ELEMENT, NETWORKPREPROCESSOR_ELEMENT,
+				CLASSNAME_ELEMENT);
+		final BasicNode origin = network.getNode(config.get(0,
+				BIOROUTE_ELEMENT, ODPAIRS_ELEMENT, ODPAIR_ELEMENT,
+				ORIGIN_ELEMENT));
+		final BasicNode destination = network.getNode(config.get(0,
+				BIOROUTE_ELEMENT, ODPAIRS_ELEMENT, ODPAIR_ELEMENT,
+				DESTINATION_ELEMENT));
+
+		final StringBuffer result = new StringBuffer();
+		for (Variant variant : Variant.values()) {
+			final MHPathGenerator generator = newGenerator(config, network,
+					variant);
+			// the first repetition only warms up
+			for (int r = 0; r <= repetitions; r++) {
+				generator.setRandomSeed(generator.getRandomSeed());
+				final long tick_ns = System.nanoTime();
+				generator.run(origin, destination);
+				final double time_s = (System.nanoTime() - tick_ns) * 1e-9;
+				if (r > 0) {
+					result.append(variant + "\t" + r + "\t"
+							+ Math.round(iterations / time_s)
+							+ " proposals/s\n");
+				}
+			}
+		}
+		System.out.println();
+		System.out.println("nodes = " + network.getNodes().size()
+				+ ", processors = "
+				+ Runtime.getRuntime().availableProcessors());
+		System.out.println(result);
+	}
+}
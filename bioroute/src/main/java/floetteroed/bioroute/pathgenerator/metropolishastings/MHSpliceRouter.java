@@ -0,0 +1,249 @@
+/*
+ * BIOROUTE
+ *
+ * Copyright 2011-2016 Gunnar Flötteröd and Michel Bierlaire
+ * 
+ *
+ * This file is part of BIOROUTE.
+ *
+ * BIOROUTE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BIOROUTE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BIOROUTE.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.bioroute.pathgenerator.metropolishastings;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import floetteroed.utilities.Triple;
+import floetteroed.utilities.networks.basic.BasicNode;
+import floetteroed.utilities.networks.shortestpaths.NodeMask;
+import floetteroed.utilities.networks.shortestpaths.Router;
+import floetteroed.utilities.networks.shortestpaths.RouterWorkspace;
+
+/**
+ * Computes the two detour segments A-B and B-C of a SPLICE proposal. Both
+ * searches stop at their single target and never enter the path's nodes
+ * up to A or from C on; each search has its own node mask, which is filled
+ * before and cleared after the search.
+ * <p>
+ * The B-C search may be forked into the shared fork/join pool when the
+ * A-B search is requested, such that both run concurrently. A forked search
+ * that is not needed after all is withdrawn if it has not started yet.
+ * Forking only pays off for large networks; on small networks, both searches
+ * run inline. Not thread-safe; there is one instance per proposal.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+class MHSpliceRouter {
+
+	// -------------------- CONSTANTS --------------------
+
+	private final Router router;
+
+	private final boolean forkSegmentBC;
+
+	// -------------------- MEMBERS --------------------
+
+	private final NodeMask excludedNodesAB;
+
+	private final NodeMask excludedNodesBC;
+
+	private final RouterWorkspace workspaceAB;
+
+	private final RouterWorkspace workspaceBC;
+
+	// the forked B-C search and the arguments it was forked for
+	private ForkJoinTask<LinkedList<BasicNode>> pendingBC = null;
+
+	private MHPath pendingPath = null;
+
+	private Triple<Integer, Integer, Integer> pendingPoints = null;
+
+	private BasicNode pendingInsertNode = null;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	MHSpliceRouter(final Router router) {
+		this(router, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param router
+	 *            the router
+	 * @param minNodesToFork
+	 *            the minimum number of network nodes for which the B-C search
+	 *            is forked
+	 */
+	MHSpliceRouter(final Router router, final int minNodesToFork) {
+		if (router == null) {
+			throw new IllegalArgumentException("router is null");
+		}
+		this.router = router;
+		this.forkSegmentBC = (router.getCompiledNetwork().getNodeCnt() >= minNodesToFork);
+		this.excludedNodesAB = new NodeMask(router.getCompiledNetwork());
+		this.excludedNodesBC = new NodeMask(router.getCompiledNetwork());
+		this.workspaceAB = router.newWorkspace();
+		this.workspaceBC = router.newWorkspace();
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	/*
+	 * Nodes A and C are contained as well. This is correct for both segments
+	 * because each search starts from one of them and a search never
+	 * re-enters its root.
+	 */
+	private static List<BasicNode> prefixUpToA(final List<BasicNode> nodes,
+			final Triple<Integer, Integer, Integer> points) {
+		return nodes.subList(0, points.getA() + 1);
+	}
+
+	private static List<BasicNode> suffixFromC(final List<BasicNode> nodes,
+			final Triple<Integer, Integer, Integer> points) {
+		return nodes.subList(points.getC(), nodes.size());
+	}
+
+	private static void excludeOutsideAC(final List<BasicNode> nodes,
+			final Triple<Integer, Integer, Integer> points,
+			final NodeMask excludedNodes) {
+		excludedNodes.addAll(prefixUpToA(nodes, points));
+		excludedNodes.addAll(suffixFromC(nodes, points));
+	}
+
+	private static void includeOutsideAC(final List<BasicNode> nodes,
+			final Triple<Integer, Integer, Integer> points,
+			final NodeMask excludedNodes) {
+		excludedNodes.removeAll(prefixUpToA(nodes, points));
+		excludedNodes.removeAll(suffixFromC(nodes, points));
+	}
+
+	/*
+	 * The points are passed separately because they may be replaced in the
+	 * path while a forked search is running; the nodes are only changed by
+	 * MHPath.insertDetour, which waits for that search via newSegmentAB.
+	 */
+	private LinkedList<BasicNode> computeSegmentBC(
+			final List<BasicNode> nodes,
+			final Triple<Integer, Integer, Integer> points,
+			final BasicNode insertNode) {
+		excludeOutsideAC(nodes, points, this.excludedNodesBC);
+		try {
+			return this.router.bwdTree(insertNode,
+					nodes.get(points.getC()), this.excludedNodesBC,
+					this.workspaceBC).getRoute(insertNode);
+		} finally {
+			includeOutsideAC(nodes, points, this.excludedNodesBC);
+		}
+	}
+
+	/**
+	 * Waits for a forked B-C search that is still running, or withdraws it if
+	 * it has not yet started. Afterwards, workspaceBC and excludedNodesBC are
+	 * free again.
+	 */
+	private LinkedList<BasicNode> finishPendingBC(final boolean needResult) {
+		final ForkJoinTask<LinkedList<BasicNode>> task = this.pendingBC;
+		this.pendingBC = null;
+		this.pendingPath = null;
+		this.pendingPoints = null;
+		this.pendingInsertNode = null;
+		if (task.tryUnfork()) {
+			return (needResult ? task.invoke() : null);
+		} else {
+			return task.join();
+		}
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	Router getRouter() {
+		return this.router;
+	}
+
+	/**
+	 * Computes the A-B segment in the calling thread.
+	 */
+	LinkedList<BasicNode> computeSegmentAB(final MHPath path,
+			final BasicNode insertNode) {
+		excludeOutsideAC(path.getNodes(), path.getPoints(),
+				this.excludedNodesAB);
+		try {
+			return this.router.fwdTree(path.getNodeA(), insertNode,
+					this.excludedNodesAB, this.workspaceAB).getRoute(
+					insertNode);
+		} finally {
+			includeOutsideAC(path.getNodes(), path.getPoints(),
+					this.excludedNodesAB);
+		}
+	}
+
+	/**
+	 * Computes the B-C segment in the calling thread.
+	 */
+	LinkedList<BasicNode> computeSegmentBC(final MHPath path,
+			final BasicNode insertNode) {
+		return this.computeSegmentBC(path.getNodes(), path.getPoints(),
+				insertNode);
+	}
+
+	/**
+	 * Returns the A-B segment. If forking is enabled, the B-C segment for the
+	 * same arguments is computed concurrently in anticipation of a subsequent
+	 * call to <code>newSegmentBC</code>.
+	 */
+	LinkedList<BasicNode> newSegmentAB(final MHPath path,
+			final BasicNode insertNode) {
+		if (this.pendingBC != null) {
+			this.finishPendingBC(false);
+		}
+		if (this.forkSegmentBC) {
+			final List<BasicNode> nodes = path.getNodes();
+			final Triple<Integer, Integer, Integer> points = path.getPoints();
+			this.pendingPath = path;
+			this.pendingPoints = points;
+			this.pendingInsertNode = insertNode;
+			this.pendingBC = new RecursiveTask<LinkedList<BasicNode>>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected LinkedList<BasicNode> compute() {
+					return computeSegmentBC(nodes, points, insertNode);
+				}
+			}.fork();
+		}
+		return this.computeSegmentAB(path, insertNode);
+	}
+
+	/**
+	 * Returns the B-C segment, from the forked search if there is one for the
+	 * same arguments.
+	 */
+	LinkedList<BasicNode> newSegmentBC(final MHPath path,
+			final BasicNode insertNode) {
+		if (this.pendingBC != null) {
+			if (this.pendingPath == path
+					&& this.pendingPoints == path.getPoints()
+					&& this.pendingInsertNode == insertNode) {
+				return this.finishPendingBC(true);
+			}
+			this.finishPendingBC(false);
+		}
+		return this.computeSegmentBC(path, insertNode);
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * BIOROUTE
+ *
+ * Copyright 2011-2016 Gunnar Flötteröd and Michel Bierlaire
+ * 
+ *
+ * This file is part of BIOROUTE.
+ *
+ * BIOROUTE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BIOROUTE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BIOROUTE.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.bioroute.pathwriter;
+
+import static floetteroed.bioroute.BiorouteRunner.PATHWRITER_CONFIG_ELEMENT;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import floetteroed.bioroute.PathWriter;
+import floetteroed.utilities.config.Config;
+import floetteroed.utilities.math.MathHelpers;
+import floetteroed.utilities.networks.basic.BasicLink;
+
+/**
+ * Writes paths in a compact binary file, optionally gzip-compressed.
+ * <p>
+ * The file starts with <code>MAGIC</code> and <code>VERSION</code> (two
+ * ints), followed by records that each start with a one-byte tag:
+ * <ul>
+ * <li><code>LINK_RECORD</code>: the id of the next link index (UTF string).
+ * Link indices are assigned in the order of first use, and a link is
+ * defined before the first path that contains it;
+ * <li><code>ODPAIR_RECORD</code>: origin and destination node id (UTF
+ * strings);
+ * <li><code>PATH_RECORD</code>: the number of links and the link indices
+ * (varints), the number of attributes (varint) and their key/value pairs
+ * (UTF strings);
+ * <li><code>ENDODPAIR_RECORD</code>;
+ * <li><code>END_RECORD</code>, which terminates the file.
+ * </ul>
+ * Varints are unsigned, little-endian base-128 numbers.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class PathBinaryWriter implements PathWriter {
+
+	// -------------------- CONSTANTS --------------------
+
+	// DEFAULT VALUES
+
+	public static final Boolean DEFAULT_SKIPDUPLICATES = false;
+
+	public static final Boolean DEFAULT_COMPRESS = false;
+
+	// CONFIGURATION XML SPECIFICATION
+
+	public static final String FILENAME_ELEMENT = "filename";
+
+	public static final String SKIPDUPLICATES_ELEMENT = "skipduplicates";
+
+	public static final String COMPRESS_ELEMENT = "compress";
+
+	// PATH FILE SPECIFICATION
+
+	public static final int MAGIC = 0x42525053; // "BRPS"
+
+	public static final int VERSION = 1;
+
+	public static final byte END_RECORD = 0;
+
+	public static final byte LINK_RECORD = 1;
+
+	public static final byte ODPAIR_RECORD = 2;
+
+	public static final byte PATH_RECORD = 3;
+
+	public static final byte ENDODPAIR_RECORD = 4;
+
+	// -------------------- MEMBERS --------------------
+
+	// CONFIGURATION
+
+	private String fileName = null;
+
+	private Boolean skipDuplicates = null;
+
+	private Boolean compress = null;
+
+	// RUNTIME
+
+	private DataOutputStream out = null;
+
+	private final Map<BasicLink, Integer> link2index = new HashMap<BasicLink, Integer>();
+
+	private final Set<Long> pathHashesSoFar = new HashSet<Long>();
+
+	// -------------------- CONSTUCTION --------------------
+
+	public PathBinaryWriter() {
+		// no-argument constructor for reflective instantiation
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	public static void writeVarInt(final DataOutputStream out, int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private int index(final BasicLink link) throws IOException {
+		Integer result = this.link2index.get(link);
+		if (result == null) {
+			result = this.link2index.size();
+			this.link2index.put(link, result);
+			this.out.writeByte(LINK_RECORD);
+			this.out.writeUTF(link.getId());
+		}
+		return result;
+	}
+
+	// -------------------- IMPLEMENTATION OF PathWriter --------------------
+
+	@Override
+	public void configure(final Config config) {
+
+		this.fileName = config.get(PATHWRITER_CONFIG_ELEMENT, FILENAME_ELEMENT);
+		if (fileName == null) {
+			throw new IllegalArgumentException(FILENAME_ELEMENT
+					+ " is not specified");
+		}
+		this.fileName = config.absolutePath(this.fileName);
+
+		this.skipDuplicates = MathHelpers.parseBoolean(config.get(
+				PATHWRITER_CONFIG_ELEMENT, SKIPDUPLICATES_ELEMENT));
+		if (this.skipDuplicates == null) {
+			this.skipDuplicates = DEFAULT_SKIPDUPLICATES;
+		}
+
+		this.compress = MathHelpers.parseBoolean(config.get(
+				PATHWRITER_CONFIG_ELEMENT, COMPRESS_ELEMENT));
+		if (this.compress == null) {
+			this.compress = DEFAULT_COMPRESS;
+		}
+	}
+
+	@Override
+	public void open() {
+		try {
+			OutputStream stream = new FileOutputStream(this.fileName);
+			if (this.compress) {
+				stream = new GZIPOutputStream(stream, 1 << 16);
+			}
+			this.out = new DataOutputStream(new BufferedOutputStream(stream,
+					1 << 16));
+			this.out.writeInt(MAGIC);
+			this.out.writeInt(VERSION);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		this.link2index.clear();
+	}
+
+	@Override
+	public void startOdPair(final String from, final String to) {
+		this.pathHashesSoFar.clear();
+		try {
+			this.out.writeByte(ODPAIR_RECORD);
+			this.out.writeUTF(from);
+			this.out.writeUTF(to);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void writePath(final List<BasicLink> linkPath,
+			final Map<String, String> attrs) {
+		if (this.skipDuplicates
+				&& !this.pathHashesSoFar.add(PathHash.of(linkPath))) {
+			return;
+		}
+		try {
+			final int[] indices = new int[linkPath.size()];
+			int i = 0;
+			for (BasicLink link : linkPath) {
+				indices[i++] = this.index(link);
+			}
+			this.out.writeByte(PATH_RECORD);
+			writeVarInt(this.out, indices.length);
+			for (int index : indices) {
+				writeVarInt(this.out, index);
+			}
+			if (attrs == null) {
+				writeVarInt(this.out, 0);
+			} else {
+				writeVarInt(this.out, attrs.size());
+				for (Map.Entry<String, String> entry : attrs.entrySet()) {
+					this.out.writeUTF(entry.getKey());
+					this.out.writeUTF(entry.getValue());
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void endOdPair() {
+		try {
+			this.out.writeByte(ENDODPAIR_RECORD);
+			this.out.flush(); // so one can follow the progress in the file
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			this.out.writeByte(END_RECORD);
+			this.out.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * BIOROUTE
+ *
+ * Copyright 2011-2016 Gunnar Flötteröd and Michel Bierlaire
+ * 
+ *
+ * This file is part of BIOROUTE.
+ *
+ * BIOROUTE is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BIOROUTE is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BIOROUTE.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.bioroute.pathwriter;
+
+import java.util.List;
+
+import floetteroed.utilities.networks.basic.BasicLink;
+
+/**
+ * 64-bit hash of a path's link id sequence, used to detect duplicate paths
+ * without keeping the paths themselves. Distinct paths collide with a
+ * probability of about 2^-64 per pair.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class PathHash {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// not a char value, hence separates the link ids unambiguously
+	private static final int SEPARATOR = 0x10000;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	private PathHash() {
+		// not to be instantiated
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * FNV-1a hash over the characters of all link ids.
+	 */
+	public static long of(final List<BasicLink> path) {
+		long result = FNV_OFFSET_BASIS;
+		for (BasicLink link : path) {
+			final String id = link.getId();
+			for (int i = 0; i < id.length(); i++) {
+				result ^= id.charAt(i);
+				result *= FNV_PRIME;
+			}
+			result ^= SEPARATOR;
+			result *= FNV_PRIME;
+		}
+		return result;
+	}
+}
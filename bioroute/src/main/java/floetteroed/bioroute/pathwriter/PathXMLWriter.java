@@ -86,7 +86,8 @@ public class PathXMLWriter implements PathWriter {
 
 	private PrintWriter writer = null;
 
-	private final Set<List<BasicLink>> pathsSoFar = new HashSet<List<BasicLink>>();
+	// hashes instead of the paths themselves, see PathHash
+	private final Set<Long> pathHashesSoFar = new HashSet<Long>();
 
 	// -------------------- CONSTUCTION --------------------
 
@@ -125,7 +126,7 @@ public class PathXMLWriter implements PathWriter {
 
 	@Override
 	public void startOdPair(final String from, final String to) {
-		this.pathsSoFar.clear();
+		this.pathHashesSoFar.clear();
 		this.writer.println("  <" + ODPAIR_ELEMENT + " " + FROM_ATTRIBUTE
 				+ "=\"" + from + "\" " + TO_ATTRIBUTE + "=\"" + to + "\">");
 	}
@@ -160,10 +161,10 @@ public class PathXMLWriter implements PathWriter {
 		// TODO NEW
 		// final List<String> path = this.pathNodeIDs(linkPath);
 
-		if (this.skipDuplicates && this.pathsSoFar.contains(linkPath)) {
+		if (this.skipDuplicates
+				&& !this.pathHashesSoFar.add(PathHash.of(linkPath))) {
 			return;
 		}
-		this.pathsSoFar.add(linkPath);
 
 		this.writer.print("    <" + PATH_ELEMENT + " ");
 
@@ -27,8 +27,9 @@ package floetteroed.cadyts.calibrators;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -46,7 +47,6 @@ import floetteroed.cadyts.measurements.MultiLinkMeasurement;
 import floetteroed.cadyts.measurements.SingleLinkMeasurement;
 import floetteroed.cadyts.supply.SimResults;
 import floetteroed.utilities.DynamicData;
-import floetteroed.utilities.Time;
 import floetteroed.utilities.math.MathHelpers;
 import floetteroed.utilities.math.Vector;
 
@@ -83,12 +83,18 @@ class Analyzer<L> implements Serializable {
 
 	private final Map<L, List<SingleLinkMeasurement<L>>> link2meas;
 
+	// frozen view of link2meas, built on demand after every change
+	private transient volatile LinkMeasurementIndex<L> linkMeasIndex;
+
 	// MULTI-LINK MEASUREMENTS
 
 	private final Set<L> observedLinks;
 
 	private final List<MultiLinkMeasurement<L>> allMultiLinkMeas;
 
+	// built on demand after every change of allMultiLinkMeas
+	private transient volatile MultiLinkMeasurementIndex<L> multiLinkMeasIndex;
+
 	private Vector matchList;
 
 	private Vector newMatchList;
@@ -140,10 +146,12 @@ class Analyzer<L> implements Serializable {
 	void addMeasurement(final SingleLinkMeasurement<L> meas) {
 		this.allSingleLinkMeas.add(meas);
 		this.allocateSingleLinkMeasurement(meas);
+		this.linkMeasIndex = null;
 	}
 
 	void addMeasurement(final MultiLinkMeasurement<L> meas) {
 		this.allMultiLinkMeas.add(meas);
+		this.multiLinkMeasIndex = null;
 		this.observedLinks.addAll(meas.getObservedLinks());
 	}
 
@@ -164,40 +172,35 @@ class Analyzer<L> implements Serializable {
 		}
 	}
 
-	// -------------------- MULTI-LINK-HELPERS --------------------
-
-	private int[] indicesInMeas(final Plan<L> plan) {
-		final int[] result = new int[this.allMultiLinkMeas.size()];
-		for (PlanStep<L> step : plan) {
-			for (int m = 0; m < this.allMultiLinkMeas.size(); m++) {
-				final MultiLinkMeasurement<L> meas = this.allMultiLinkMeas
-						.get(m);
-				final int indexInMeas = result[m];
-				if (indexInMeas < meas.size()
-						&& meas.appliesTo(indexInMeas, step)) {
-					result[m]++;
+	private LinkMeasurementIndex<L> linkMeasIndex() {
+		LinkMeasurementIndex<L> result = this.linkMeasIndex;
+		if (result == null) {
+			synchronized (this) {
+				result = this.linkMeasIndex;
+				if (result == null) {
+					result = new LinkMeasurementIndex<L>(this.link2meas);
+					this.linkMeasIndex = result;
 				}
 			}
 		}
 		return result;
 	}
 
-	private int numberOfMatches(int[] indicesInMeas) {
-		int result = 0;
-		for (int m = 0; m < this.allMultiLinkMeas.size(); m++) {
-			if (indicesInMeas[m] == this.allMultiLinkMeas.get(m).size()) {
-				result++;
-			}
-		}
-		return result;
-	}
+	// -------------------- MULTI-LINK-HELPERS --------------------
 
-	private List<Integer> matchingMeasurementIndices(final Plan<L> plan) {
-		final List<Integer> result = new ArrayList<Integer>();
-		final int[] indicesInMeas = this.indicesInMeas(plan);
-		for (int m = 0; m < this.allMultiLinkMeas.size(); m++) {
-			if (indicesInMeas[m] == this.allMultiLinkMeas.get(m).size()) {
-				result.add(m);
+	private MultiLinkMeasurementIndex<L> multiLinkMeasIndex() {
+		MultiLinkMeasurementIndex<L> result = this.multiLinkMeasIndex;
+		if (result == null) {
+			synchronized (this) {
+				result = this.multiLinkMeasIndex;
+				if (result == null) {
+					result = new MultiLinkMeasurementIndex<L>(
+							this.allMultiLinkMeas,
+							this.demand.getStartTime_s(),
+							this.demand.getBinSize_s(),
+							this.demand.getBinCnt());
+					this.multiLinkMeasIndex = result;
+				}
 			}
 		}
 		return result;
@@ -222,11 +225,12 @@ class Analyzer<L> implements Serializable {
 			if (this.newMatchList == null) {
 				this.newMatchList = new Vector(this.allMultiLinkMeas.size());
 			}
-			final List<Integer> matchingMeasIndices = this
-					.matchingMeasurementIndices(plan);
-			final double oneByMatches = 1.0 / matchingMeasIndices.size();
-			for (int m : matchingMeasIndices) {
-				this.newMatchList.add(m, oneByMatches);
+			final MultiLinkMeasurementIndex<L>.Matcher matcher = this
+					.multiLinkMeasIndex().matcher();
+			final int matchCnt = matcher.match(plan);
+			final double oneByMatches = 1.0 / matchCnt;
+			for (int i = 0; i < matchCnt; i++) {
+				this.newMatchList.add(matcher.getMatch(i), oneByMatches);
 			}
 		}
 		/*
@@ -242,35 +246,75 @@ class Analyzer<L> implements Serializable {
 	}
 
 	double calcLinearPlanEffect(final Plan<L> plan) {
+		return this.calcLinearPlanEffect(plan, null);
+	}
+
+	/**
+	 * Only reads the state of this instance if record is not null; the
+	 * lambdas are then registered with the record instead of the statistics
+	 * tracker. This allows for concurrent calls during a choice stage.
+	 */
+	double calcLinearPlanEffect(final Plan<L> plan,
+			final PlanEffectRecord record) {
 		if (plan == null) {
 			return 0.0;
 		}
 		double result = 0;
 		/*
 		 * (1) SINGLE-LINK MEASUREMENTS
+		 * 
+		 * Every measurement of a visited link contributes a lambda, which is
+		 * zero if the link is entered outside of the measurement interval.
 		 */
+		final LinkMeasurementIndex<L> index = this.linkMeasIndex();
 		for (PlanStep<L> step : plan) {
-			final List<SingleLinkMeasurement<L>> measList = this.link2meas
-					.get(step.getLink());
-			if (measList != null) {
-				for (SingleLinkMeasurement<L> meas : measList) {
-					final double lambda = meas.getLambda(step);
-					this.statisticsTracker.registerLinkLambda(lambda);
+			final int slot = index.slot(step.getLink());
+			if (slot < 0) {
+				continue;
+			}
+			int zeroCnt = index.end(slot) - index.first(slot);
+			if (index.isDisjoint(slot)) {
+				final int entry = index.find(slot, step.getEntryTime_s());
+				if (entry >= 0) {
+					final double lambda = index.getLambda(entry);
+					if (record != null) {
+						record.addLinkLambda(lambda);
+					} else {
+						this.statisticsTracker.registerLinkLambda(lambda);
+					}
 					result += lambda;
+					zeroCnt--;
+				}
+			} else {
+				for (int entry = index.first(slot); entry < index.end(slot); entry++) {
+					if (index.contains(entry, step.getEntryTime_s())) {
+						final double lambda = index.getLambda(entry);
+						if (record != null) {
+							record.addLinkLambda(lambda);
+						} else {
+							this.statisticsTracker.registerLinkLambda(lambda);
+						}
+						result += lambda;
+						zeroCnt--;
+					}
 				}
 			}
+			if (record != null) {
+				record.addZeroLinkLambdas(zeroCnt);
+			} else {
+				this.statisticsTracker.registerZeroLinkLambdas(zeroCnt);
+			}
 		}
 		/*
 		 * (2) MULTI-LINK MEASUREMENTS
 		 */
 		if (this.allMultiLinkMeas.size() > 0) {
-			final int[] indicesInMeas = this.indicesInMeas(plan);
-			final double numberOfMatches = this.numberOfMatches(indicesInMeas);
-			for (int m = 0; m < this.allMultiLinkMeas.size(); m++) {
-				if (indicesInMeas[m] == this.allMultiLinkMeas.get(m).size()) {
-					result += this.allMultiLinkMeas.get(m).dll_dMatches()
-							/ numberOfMatches;
-				}
+			final MultiLinkMeasurementIndex<L>.Matcher matcher = this
+					.multiLinkMeasIndex().matcher();
+			final int matchCnt = matcher.match(plan);
+			for (int i = 0; i < matchCnt; i++) {
+				result += this.allMultiLinkMeas.get(matcher.getMatch(i))
+						.dll_dMatches() / matchCnt;
 			}
 		}
 		/*
@@ -278,60 +322,56 @@ class Analyzer<L> implements Serializable {
 		 */
 		result = Math.min(result, maxAbsPlanLambda);
 		result = Math.max(result, -maxAbsPlanLambda);
-		this.statisticsTracker.registerPlanLambda(result);
+		if (record != null) {
+			record.addPlanLambda(result);
+		} else {
+			this.statisticsTracker.registerPlanLambda(result);
+		}
 		return result;
 	}
 
+	/**
+	 * Computes calcLinearPlanEffect(plan, record) for all plans; result must
+	 * have at least plans.size() elements.
+	 */
+	void calcLinearPlanEffects(final List<? extends Plan<L>> plans,
+			final double[] result, final PlanEffectRecord record) {
+		for (int i = 0; i < plans.size(); i++) {
+			result[i] = this.calcLinearPlanEffect(plans.get(i), record);
+		}
+	}
+
+	void register(final PlanEffectRecord record) {
+		record.replay(this.statisticsTracker);
+	}
+
+	/**
+	 * Passes the flow analysis of this iteration to flowAnalysisSink unless
+	 * it is null; a failure of the sink is logged but does not interrupt the
+	 * calibration.
+	 */
 	void afterNetworkLoading(final SimResults<L> simResults,
-			final String flowAnalysisFile) {
+			final FlowAnalysisSink flowAnalysisSink, final int iteration) {
 		/*
-		 * (0) dump flow analysis information
+		 * (0) pass on the flow analysis information
 		 */
-		if (flowAnalysisFile != null) {
+		if (flowAnalysisSink != null) {
+			final FlowAnalysisTable table = new FlowAnalysisTable(iteration,
+					this.allSingleLinkMeas.size());
+			for (SingleLinkMeasurement<L> meas : this.allSingleLinkMeas) {
+				final L link = meas.getLink();
+				final int start_s = meas.getStartTime_s();
+				final int end_s = meas.getEndTime_s();
+				table.add(String.valueOf(link), start_s, end_s, meas
+						.getType(), simResults.getSimValue(link, start_s,
+						end_s, meas.getType()), meas.getMeasValue(), meas
+						.getMeasStddev());
+			}
 			try {
-				final PrintWriter writer = new PrintWriter(flowAnalysisFile);
-				writer.println("link\tstart-time\tend-time\tstart-time(sec)\t"
-						+ "end-time(sec)\ttype\tsimulated\tmeasured\t"
-						+ "standard-deviation\terror\tabsolute-error\t"
-						+ "relative-error\trelative-absolute-error");
-				for (SingleLinkMeasurement<L> meas : this.allSingleLinkMeas) {
-					final L link = meas.getLink();
-					final SingleLinkMeasurement.TYPE type = meas.getType();
-					final int start_s = meas.getStartTime_s();
-					final int end_s = meas.getEndTime_s();
-					final double simValue = simResults.getSimValue(link,
-							start_s, end_s, type);
-					final double measValue = meas.getMeasValue();
-					writer.print(link);
-					writer.print("\t");
-					writer.print(Time.strFromSec(start_s, ':'));
-					writer.print("\t");
-					writer.print(Time.strFromSec(end_s, ':'));
-					writer.print("\t");
-					writer.print(start_s);
-					writer.print("\t");
-					writer.print(end_s);
-					writer.print("\t");
-					writer.print(type);
-					writer.print("\t");
-					writer.print(simValue);
-					writer.print("\t");
-					writer.print(measValue);
-					writer.print("\t");
-					writer.print(meas.getMeasStddev());
-					writer.print("\t");
-					writer.print(simValue - measValue);
-					writer.print("\t");
-					writer.print(Math.abs(simValue - measValue));
-					writer.print("\t");
-					writer.print((simValue - measValue) / measValue);
-					writer.print("\t");
-					writer.println(Math.abs(simValue - measValue) / measValue);
-				}
-				writer.flush();
-				writer.close();
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
+				flowAnalysisSink.write(table);
+			} catch (IOException e) {
+				Logger.getLogger(this.getClass().getName()).warning(
+						"unable to write the flow analysis: " + e);
 			}
 		}
 
@@ -392,6 +432,7 @@ class Analyzer<L> implements Serializable {
 		for (SingleLinkMeasurement<L> meas : this.allSingleLinkMeas) {
 			this.allocateSingleLinkMeasurement(meas);
 		}
+		this.linkMeasIndex = new LinkMeasurementIndex<L>(this.link2meas);
 		if (this.planListeningSingleLinkMeas.size() > 0) {
 			Logger.getLogger(this.getClass().getName()).info(
 					this.planListeningSingleLinkMeas.size()
@@ -399,6 +440,68 @@ class Analyzer<L> implements Serializable {
 		}
 	}
 
+	// -------------------- STATE SNAPSHOT --------------------
+
+	void writeState(final DataOutput out, final SnapshotKeyCodec<L> linkCodec)
+			throws IOException {
+
+		out.writeInt(this.demand.keySet().size());
+		for (L link : this.demand.keySet()) {
+			linkCodec.write(out, link);
+			for (int bin = 0; bin < this.demand.getBinCnt(); bin++) {
+				out.writeDouble(this.demand.getBinValue(link, bin));
+			}
+		}
+
+		Calibrator.writeString(out, this.statisticsTracker.getFileName());
+		this.statisticsTracker.writeState(out);
+
+		out.writeInt(this.allSingleLinkMeas.size());
+		for (SingleLinkMeasurement<L> meas : this.allSingleLinkMeas) {
+			meas.writeSnapshot(out, linkCodec);
+		}
+		out.writeInt(this.allMultiLinkMeas.size());
+		for (MultiLinkMeasurement<L> meas : this.allMultiLinkMeas) {
+			meas.writeSnapshot(out, linkCodec);
+		}
+		Calibrator.writeVector(out, this.matchList);
+		Calibrator.writeVector(out, this.newMatchList);
+	}
+
+	/**
+	 * Restores the state written by <code>writeState(..)</code> into this
+	 * freshly constructed instance. The measurements are initialized with the
+	 * given calibrator, which hence must already hold its restored parameters.
+	 */
+	void readState(final DataInput in, final SnapshotKeyCodec<L> linkCodec,
+			final Calibrator<L> calibrator) throws IOException {
+
+		final int linkCnt = in.readInt();
+		for (int i = 0; i < linkCnt; i++) {
+			final L link = linkCodec.read(in);
+			for (int bin = 0; bin < this.demand.getBinCnt(); bin++) {
+				this.demand.put(link, bin, in.readDouble());
+			}
+		}
+
+		this.statisticsTracker = new StatisticsTracker(
+				Calibrator.readString(in), false);
+		this.statisticsTracker.readState(in);
+
+		final int singleLinkMeasCnt = in.readInt();
+		for (int i = 0; i < singleLinkMeasCnt; i++) {
+			this.addMeasurement(SingleLinkMeasurement.readSnapshot(in,
+					linkCodec, calibrator));
+		}
+		final int multiLinkMeasCnt = in.readInt();
+		for (int i = 0; i < multiLinkMeasCnt; i++) {
+			this.addMeasurement(MultiLinkMeasurement.readSnapshot(in,
+					linkCodec, calibrator));
+		}
+		this.matchList = Calibrator.readVector(in);
+		this.newMatchList = Calibrator.readVector(in);
+	}
+
 	// -------------------- TRANSFORMATION INTO DynamicData --------------------
 
 	DynamicData<L> getLinkCostOffsets() {
@@ -0,0 +1,138 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Passes the flow analysis tables on to another sink in a background thread,
+ * in the order in which they are written. At most maxPending tables are
+ * queued; further writes block until the background thread catches up.
+ * <p>
+ * A failure of the background writing is reported by the next call to
+ * <code>write(..)</code> or <code>close()</code>. close() waits until all
+ * queued tables are written and then closes the wrapped sink.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class AsyncFlowAnalysisSink implements FlowAnalysisSink {
+
+	// -------------------- CONSTANTS --------------------
+
+	public static final int DEFAULT_MAX_PENDING = 2;
+
+	private final FlowAnalysisSink sink;
+
+	private final ExecutorService executor;
+
+	private final Semaphore pending;
+
+	// -------------------- MEMBER VARIABLES --------------------
+
+	private volatile IOException failure = null;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public AsyncFlowAnalysisSink(final FlowAnalysisSink sink,
+			final int maxPending) {
+		if (sink == null) {
+			throw new IllegalArgumentException("sink is null");
+		}
+		if (maxPending < 1) {
+			throw new IllegalArgumentException(
+					"at least one pending table must be allowed");
+		}
+		this.sink = sink;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread result = new Thread(runnable, "flow-analysis");
+				result.setDaemon(true);
+				return result;
+			}
+		});
+		this.pending = new Semaphore(maxPending);
+	}
+
+	public AsyncFlowAnalysisSink(final FlowAnalysisSink sink) {
+		this(sink, DEFAULT_MAX_PENDING);
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private void checkFailure() throws IOException {
+		final IOException e = this.failure;
+		if (e != null) {
+			throw new IOException("writing the flow analysis failed", e);
+		}
+	}
+
+	// -------------------- IMPLEMENTATION OF FlowAnalysisSink --------------------
+
+	@Override
+	public void write(final FlowAnalysisTable table) throws IOException {
+		this.checkFailure();
+		this.pending.acquireUninterruptibly();
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (failure == null) {
+						sink.write(table);
+					}
+				} catch (IOException e) {
+					failure = e;
+				} catch (RuntimeException e) {
+					failure = new IOException(e);
+				} finally {
+					pending.release();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.executor.shutdown();
+		try {
+			while (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+				Logger.getLogger(this.getClass().getName()).info(
+						"waiting for the flow analysis to be written");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while closing", e);
+		}
+		this.checkFailure();
+		this.sink.close();
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A SnapshotKeyCodec for keys that are Strings, Integers or Longs. Every key
+ * is preceded by a one-byte type tag, such that the key types may be mixed.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param <K>
+ *            the key type
+ */
+public class BasicSnapshotKeyCodec<K> implements SnapshotKeyCodec<K> {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final byte STRING = 1;
+
+	private static final byte INTEGER = 2;
+
+	private static final byte LONG = 3;
+
+	// -------------------- IMPLEMENTATION OF SnapshotKeyCodec --------------------
+
+	@Override
+	public void write(final DataOutput out, final K key) throws IOException {
+		if (key instanceof String) {
+			out.writeByte(STRING);
+			out.writeUTF((String) key);
+		} else if (key instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) key);
+		} else if (key instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) key);
+		} else {
+			throw new IOException("cannot write key " + key + " of type "
+					+ (key == null ? null : key.getClass().getName()));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public K read(final DataInput in) throws IOException {
+		final byte type = in.readByte();
+		if (type == STRING) {
+			return (K) in.readUTF();
+		} else if (type == INTEGER) {
+			return (K) Integer.valueOf(in.readInt());
+		} else if (type == LONG) {
+			return (K) Long.valueOf(in.readLong());
+		} else {
+			throw new IOException("unknown key type " + type);
+		}
+	}
+}
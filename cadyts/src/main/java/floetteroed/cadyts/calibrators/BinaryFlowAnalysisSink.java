@@ -0,0 +1,197 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+
+/**
+ * Writes the flow analysis of every iteration into its own binary file, in
+ * which the table is stored column by column. The file starts with
+ * <code>MAGIC</code>, <code>VERSION</code>, the iteration, and the number of
+ * rows (four ints), followed by the columns: links (UTF strings), start and
+ * end times (ints), type ordinals (bytes), simulated values, measured values,
+ * and standard deviations (doubles).
+ * <p>
+ * The history of a whole run can be loaded with
+ * <code>readHistory(String)</code>.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class BinaryFlowAnalysisSink extends FileFlowAnalysisSink {
+
+	// -------------------- CONSTANTS --------------------
+
+	public static final int MAGIC = 0x43464c41; // "CFLA"
+
+	public static final int VERSION = 1;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public BinaryFlowAnalysisSink(final String fileName) {
+		super(fileName, true);
+	}
+
+	// -------------------- IMPLEMENTATION OF FlowAnalysisSink --------------------
+
+	@Override
+	public void write(final FlowAnalysisTable table) throws IOException {
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(
+						this.fileName(table)), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(table.getIteration());
+			out.writeInt(table.size());
+			for (int row = 0; row < table.size(); row++) {
+				out.writeUTF(table.getLink(row));
+			}
+			for (int row = 0; row < table.size(); row++) {
+				out.writeInt(table.getStartTime_s(row));
+			}
+			for (int row = 0; row < table.size(); row++) {
+				out.writeInt(table.getEndTime_s(row));
+			}
+			for (int row = 0; row < table.size(); row++) {
+				out.writeByte(table.getType(row).ordinal());
+			}
+			for (int row = 0; row < table.size(); row++) {
+				out.writeDouble(table.getSimValue(row));
+			}
+			for (int row = 0; row < table.size(); row++) {
+				out.writeDouble(table.getMeasValue(row));
+			}
+			for (int row = 0; row < table.size(); row++) {
+				out.writeDouble(table.getMeasStddev(row));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// -------------------- READING --------------------
+
+	public static FlowAnalysisTable read(final String file) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a flow analysis file");
+			}
+			final int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("unsupported flow analysis file version "
+						+ version);
+			}
+			final int iteration = in.readInt();
+			final int size = in.readInt();
+			final String[] links = new String[size];
+			final int[] startTimes_s = new int[size];
+			final int[] endTimes_s = new int[size];
+			final SingleLinkMeasurement.TYPE[] types = new SingleLinkMeasurement.TYPE[size];
+			final double[] simValues = new double[size];
+			final double[] measValues = new double[size];
+			for (int row = 0; row < size; row++) {
+				links[row] = in.readUTF();
+			}
+			for (int row = 0; row < size; row++) {
+				startTimes_s[row] = in.readInt();
+			}
+			for (int row = 0; row < size; row++) {
+				endTimes_s[row] = in.readInt();
+			}
+			final SingleLinkMeasurement.TYPE[] allTypes = SingleLinkMeasurement.TYPE
+					.values();
+			for (int row = 0; row < size; row++) {
+				final int ordinal = in.readUnsignedByte();
+				if (ordinal >= allTypes.length) {
+					throw new IOException("unknown measurement type "
+							+ ordinal + " in " + file);
+				}
+				types[row] = allTypes[ordinal];
+			}
+			for (int row = 0; row < size; row++) {
+				simValues[row] = in.readDouble();
+			}
+			for (int row = 0; row < size; row++) {
+				measValues[row] = in.readDouble();
+			}
+			final FlowAnalysisTable result = new FlowAnalysisTable(iteration,
+					size);
+			for (int row = 0; row < size; row++) {
+				result.add(links[row], startTimes_s[row], endTimes_s[row],
+						types[row], simValues[row], measValues[row],
+						in.readDouble());
+			}
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads all iteration-indexed files that were written for the given file
+	 * name, keyed by iteration.
+	 */
+	public static SortedMap<Integer, FlowAnalysisTable> readHistory(
+			final String fileName) throws IOException {
+		final File dir = new File(fileName).getAbsoluteFile().getParentFile();
+		final String name = new File(fileName).getName();
+		final int dot = name.indexOf('.');
+		final String prefix = (dot < 0 ? name : name.substring(0, dot)) + ".";
+		final String suffix = (dot < 0 ? "" : name.substring(dot));
+		final SortedMap<Integer, FlowAnalysisTable> result = new TreeMap<Integer, FlowAnalysisTable>();
+		final String[] candidates = dir.list();
+		if (candidates == null) {
+			throw new IOException("cannot list directory " + dir);
+		}
+		for (String candidate : candidates) {
+			if (candidate.length() > prefix.length() + suffix.length()
+					&& candidate.startsWith(prefix)
+					&& candidate.endsWith(suffix)) {
+				final String iteration = candidate.substring(prefix.length(),
+						candidate.length() - suffix.length());
+				if (iteration.matches("\\d+")) {
+					final FlowAnalysisTable table = read(new File(dir,
+							candidate).getPath());
+					result.put(table.getIteration(), table);
+				}
+			}
+		}
+		return result;
+	}
+}
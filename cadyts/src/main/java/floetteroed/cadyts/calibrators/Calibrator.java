@@ -27,9 +27,16 @@ package floetteroed.cadyts.calibrators;
 import static java.lang.Math.max;
 import static java.lang.Math.sqrt;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -109,17 +116,23 @@ public class Calibrator<L> implements Serializable {
 	// TODO NEW
 	public static final boolean DEFAULT_COUNT_LAST_LINK = true;
 
+	// SNAPSHOTS
+
+	private static final int SNAPSHOT_MAGIC = 0x43445953; // "CDYS"
+
+	public static final int SNAPSHOT_VERSION = 1;
+
 	// -------------------- MEMBER VARIABLES --------------------
 
 	// MISC
 
-	private final String logFile;
+	private String logFile;
 
 	private final long randomSeed;
 
 	private final Analyzer<L> analyzer;
 
-	private final Random random;
+	private Random random;
 
 	// PARAMETERS
 
@@ -143,6 +156,8 @@ public class Calibrator<L> implements Serializable {
 
 	private String flowAnalysisFile = DEFAULT_FLOW_ANALYSIS_FILE;
 
+	private transient FlowAnalysisSink flowAnalysisSink = null;
+
 	private boolean countFirstLink = DEFAULT_COUNT_FIRST_LINK;
 
 	private boolean countLastLink = DEFAULT_COUNT_LAST_LINK;
@@ -301,6 +316,183 @@ public class Calibrator<L> implements Serializable {
 		initLogging();
 	}
 
+	// -------------------- STATE SNAPSHOT --------------------
+
+	/**
+	 * Writes the complete calibration state (parameters, measurements and
+	 * everything they have learned so far, demand and statistics of the
+	 * current iteration, random number generator) in a compact binary format
+	 * that is headed by SNAPSHOT_VERSION. Unlike Java serialization, the
+	 * format does not depend on the class layout of the calibrator.
+	 * 
+	 * @param out
+	 *            where the snapshot is written
+	 * @param linkCodec
+	 *            writes the links of the measurements and of the demand
+	 */
+	public void writeSnapshot(final DataOutput out,
+			final SnapshotKeyCodec<L> linkCodec) throws IOException {
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeInt(SNAPSHOT_VERSION);
+		out.writeUTF(this.getClass().getName());
+		out.writeLong(this.randomSeed);
+		out.writeInt(this.analyzer.getBinSize_s());
+		writeString(out, this.logFile);
+		this.writeState(out, linkCodec);
+	}
+
+	/**
+	 * Creates a calibrator from a snapshot that was written with
+	 * <code>writeSnapshot(..)</code>. The concrete calibrator class must
+	 * provide a (String logFile, Long randomSeed, int timeBinSize_s)
+	 * constructor.
+	 * 
+	 * @param in
+	 *            from where the snapshot is read
+	 * @param linkCodec
+	 *            reads the links of the measurements and of the demand
+	 */
+	@SuppressWarnings("unchecked")
+	public static <L, C extends Calibrator<L>> C readSnapshot(
+			final DataInput in, final SnapshotKeyCodec<L> linkCodec)
+			throws IOException {
+		if (in.readInt() != SNAPSHOT_MAGIC) {
+			throw new IOException("not a calibrator snapshot");
+		}
+		final int version = in.readInt();
+		if (version != SNAPSHOT_VERSION) {
+			throw new IOException("unsupported snapshot version " + version);
+		}
+		final String className = in.readUTF();
+		final long randomSeed = in.readLong();
+		final int timeBinSize_s = in.readInt();
+		final String logFile = readString(in);
+
+		final Calibrator<L> result;
+		try {
+			final Constructor<?> constructor = Class.forName(className)
+					.getDeclaredConstructor(String.class, Long.class,
+							int.class);
+			constructor.setAccessible(true);
+			// no log file yet, the constructor would delete the old one
+			result = (Calibrator<L>) constructor.newInstance(null,
+					randomSeed, timeBinSize_s);
+		} catch (Exception e) {
+			throw new IOException("unable to instantiate " + className, e);
+		}
+		result.logFile = logFile;
+		result.initLogging();
+		result.readState(in, linkCodec);
+		Logger.getLogger(result.myName).info(
+				"restored snapshot of iteration " + result.iteration);
+		return (C) result;
+	}
+
+	/**
+	 * Writes the state of this instance. Subclasses that add state extend
+	 * this function and <code>readState(..)</code> symmetrically, starting
+	 * with a call to the super implementation.
+	 */
+	protected void writeState(final DataOutput out,
+			final SnapshotKeyCodec<L> linkCodec) throws IOException {
+		out.writeDouble(this.regressionInertia);
+		out.writeInt(this.freezeIteration);
+		out.writeDouble(this.varianceScale);
+		for (SingleLinkMeasurement.TYPE type : SingleLinkMeasurement.TYPE
+				.values()) {
+			out.writeDouble(this.type2minStddev.get(type));
+		}
+		out.writeInt(this.preparatoryIterations);
+		out.writeBoolean(this.centerRegression);
+		out.writeBoolean(this.proportionalAssignment);
+		out.writeBoolean(this.debugMode);
+		writeString(out, this.flowAnalysisFile);
+		out.writeBoolean(this.countFirstLink);
+		out.writeBoolean(this.countLastLink);
+		out.writeInt(this.iteration);
+
+		/*
+		 * The state of java.util.Random is not accessible other than through
+		 * serialization, which is hence used for this small object.
+		 */
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream randomOut = new ObjectOutputStream(bytes);
+		randomOut.writeObject(this.random);
+		randomOut.close();
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+
+		this.analyzer.writeState(out, linkCodec);
+	}
+
+	protected void readState(final DataInput in,
+			final SnapshotKeyCodec<L> linkCodec) throws IOException {
+		this.regressionInertia = in.readDouble();
+		this.freezeIteration = in.readInt();
+		this.varianceScale = in.readDouble();
+		for (SingleLinkMeasurement.TYPE type : SingleLinkMeasurement.TYPE
+				.values()) {
+			this.type2minStddev.put(type, in.readDouble());
+		}
+		this.preparatoryIterations = in.readInt();
+		this.centerRegression = in.readBoolean();
+		this.proportionalAssignment = in.readBoolean();
+		this.debugMode = in.readBoolean();
+		this.setLogLevel();
+		this.flowAnalysisFile = readString(in);
+		this.countFirstLink = in.readBoolean();
+		this.countLastLink = in.readBoolean();
+		this.iteration = in.readInt();
+
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		final ObjectInputStream randomIn = new ObjectInputStream(
+				new ByteArrayInputStream(bytes));
+		try {
+			this.random = (Random) randomIn.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+		randomIn.close();
+
+		// needs the parameters above to initialize the measurements
+		this.analyzer.readState(in, linkCodec, this);
+	}
+
+	protected static void writeString(final DataOutput out, final String string)
+			throws IOException {
+		out.writeBoolean(string != null);
+		if (string != null) {
+			out.writeUTF(string);
+		}
+	}
+
+	protected static String readString(final DataInput in) throws IOException {
+		return (in.readBoolean() ? in.readUTF() : null);
+	}
+
+	protected static void writeVector(final DataOutput out, final Vector vector)
+			throws IOException {
+		out.writeInt(vector == null ? -1 : vector.size());
+		if (vector != null) {
+			for (int i = 0; i < vector.size(); i++) {
+				out.writeDouble(vector.get(i));
+			}
+		}
+	}
+
+	protected static Vector readVector(final DataInput in) throws IOException {
+		final int size = in.readInt();
+		if (size < 0) {
+			return null;
+		}
+		final Vector result = new Vector(size);
+		for (int i = 0; i < size; i++) {
+			result.set(i, in.readDouble());
+		}
+		return result;
+	}
+
 	// -------------------- GETTERS AND SETTERS --------------------
 
 	public long getRandomSeed() {
@@ -460,6 +652,23 @@ public class Calibrator<L> implements Serializable {
 		return this.flowAnalysisFile;
 	}
 
+	/**
+	 * Sets the sink that receives the flow analysis of every iteration. A
+	 * non-null sink takes precedence over the flow analysis file, which is
+	 * otherwise rewritten as text in every iteration. The sink is not part of
+	 * snapshots and is not closed by the calibrator; wrap it into an
+	 * <code>AsyncFlowAnalysisSink</code> to write it in a background thread.
+	 */
+	public void setFlowAnalysisSink(final FlowAnalysisSink flowAnalysisSink) {
+		this.flowAnalysisSink = flowAnalysisSink;
+		Logger.getLogger(this.myName).info(
+				"set flowAnalysisSink to " + this.flowAnalysisSink);
+	}
+
+	public FlowAnalysisSink getFlowAnalysisSink() {
+		return this.flowAnalysisSink;
+	}
+
 	public void setCountFirstLink(final boolean countFirstLink) {
 		this.countFirstLink = countFirstLink;
 		Logger.getLogger(this.myName).info(
@@ -507,6 +716,67 @@ public class Calibrator<L> implements Serializable {
 		}
 	}
 
+	/**
+	 * Like <code>calcLinearPlanEffect(Plan)</code>, but registers the
+	 * resulting statistics with the given record instead of with this
+	 * calibrator. This function only reads the calibrator state and may hence
+	 * be called concurrently, as long as no other functions of the calibrator
+	 * are called at the same time. The record is later passed to
+	 * <code>register(PlanEffectRecord)</code>.
+	 * 
+	 * @param plan
+	 *            the plan of a simulated traveler
+	 * @param record
+	 *            where the statistics of this call are collected
+	 * 
+	 * @return the approximate effect on the log-likelihood of executing the
+	 *         plan
+	 */
+	public double calcLinearPlanEffect(final Plan<L> plan,
+			final PlanEffectRecord record) {
+		if (this.iteration >= this.preparatoryIterations) {
+			return this.analyzer.calcLinearPlanEffect(plan, record);
+		} else {
+			return 0.0;
+		}
+	}
+
+	/**
+	 * Computes <code>calcLinearPlanEffect(Plan)</code> for a whole batch of
+	 * plans.
+	 * 
+	 * @param plans
+	 *            the plans of one or more simulated travelers
+	 * 
+	 * @return the approximate effects on the log-likelihood of executing the
+	 *         plans, in the order of the plans
+	 */
+	public double[] calcLinearPlanEffects(final List<? extends Plan<L>> plans) {
+		return this.calcLinearPlanEffects(plans, null);
+	}
+
+	/**
+	 * Like <code>calcLinearPlanEffects(List)</code>, but registers the
+	 * resulting statistics with the given record if it is not null; see
+	 * <code>calcLinearPlanEffect(Plan, PlanEffectRecord)</code>.
+	 */
+	public double[] calcLinearPlanEffects(final List<? extends Plan<L>> plans,
+			final PlanEffectRecord record) {
+		final double[] result = new double[plans.size()];
+		if (this.iteration >= this.preparatoryIterations) {
+			this.analyzer.calcLinearPlanEffects(plans, result, record);
+		}
+		return result;
+	}
+
+	/**
+	 * Registers the statistics collected in record by calls to
+	 * <code>calcLinearPlanEffect(Plan, PlanEffectRecord)</code>.
+	 */
+	public void register(final PlanEffectRecord record) {
+		this.analyzer.register(record);
+	}
+
 	/**
 	 * In every iteration, all plans that are actually selected for execution by
 	 * the traveler population must registered through this function, and no
@@ -605,7 +875,12 @@ public class Calibrator<L> implements Serializable {
 				|| (this.iteration == this.freezeIteration)) {
 			this.freeze();
 		}
-		this.analyzer.afterNetworkLoading(simResults, this.flowAnalysisFile);
+		FlowAnalysisSink sink = this.flowAnalysisSink;
+		if (sink == null && this.flowAnalysisFile != null) {
+			sink = new TextFlowAnalysisSink(this.flowAnalysisFile, false,
+					false);
+		}
+		this.analyzer.afterNetworkLoading(simResults, sink, this.iteration);
 		this.iteration++;
 		Logger.getLogger(this.myName).fine("exiting");
 	}
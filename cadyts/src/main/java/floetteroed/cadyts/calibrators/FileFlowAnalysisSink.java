@@ -0,0 +1,96 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Base class of sinks that write the flow analysis of an iteration into one
+ * file, which is either overwritten in every iteration or indexed by the
+ * iteration. An iteration-indexed file name is obtained by inserting the
+ * iteration before the first dot of the file name, e.g. "flows.txt.gz"
+ * becomes "flows.12.txt.gz" in iteration 12.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public abstract class FileFlowAnalysisSink implements FlowAnalysisSink {
+
+	// -------------------- CONSTANTS --------------------
+
+	private final String fileName;
+
+	private final boolean perIteration;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	protected FileFlowAnalysisSink(final String fileName,
+			final boolean perIteration) {
+		if (fileName == null) {
+			throw new IllegalArgumentException("file name is null");
+		}
+		this.fileName = fileName;
+		this.perIteration = perIteration;
+	}
+
+	// -------------------- FILE NAMES --------------------
+
+	public static String iterationFileName(final String fileName,
+			final int iteration) {
+		final int nameStart = Math.max(fileName.lastIndexOf('/'),
+				fileName.lastIndexOf(File.separatorChar)) + 1;
+		final int dot = fileName.indexOf('.', nameStart);
+		if (dot < 0) {
+			return fileName + "." + iteration;
+		} else {
+			return fileName.substring(0, dot) + "." + iteration
+					+ fileName.substring(dot);
+		}
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	public boolean isPerIteration() {
+		return this.perIteration;
+	}
+
+	protected String fileName(final FlowAnalysisTable table) {
+		return (this.perIteration ? iterationFileName(this.fileName,
+				table.getIteration()) : this.fileName);
+	}
+
+	// -------------------- IMPLEMENTATION OF FlowAnalysisSink --------------------
+
+	/**
+	 * Every file is completed within write(FlowAnalysisTable); there is
+	 * nothing left to do.
+	 */
+	@Override
+	public void close() throws IOException {
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+
+import floetteroed.cadyts.calibrators.analytical.AnalyticalCalibrator;
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+import floetteroed.cadyts.supply.BasicSimResults;
+
+/**
+ * Measures how long the flow analysis output keeps the calibrator's
+ * afterNetworkLoading(..) busy, for the text file that is rewritten in every
+ * iteration and for background text, gzip, and binary sinks with
+ * iteration-indexed files. Checks that the binary history of the run can be
+ * read back unchanged.
+ * <p>
+ * Usage: <code>FlowAnalysisBenchmark [measurements [iterations]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class FlowAnalysisBenchmark {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int BIN_SIZE_S = 3600;
+
+	private FlowAnalysisBenchmark() {
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static boolean equal(final FlowAnalysisTable table1,
+			final FlowAnalysisTable table2) {
+		if (table1.getIteration() != table2.getIteration()
+				|| table1.size() != table2.size()) {
+			return false;
+		}
+		for (int row = 0; row < table1.size(); row++) {
+			if (!table1.getLink(row).equals(table2.getLink(row))
+					|| table1.getStartTime_s(row) != table2
+							.getStartTime_s(row)
+					|| table1.getEndTime_s(row) != table2.getEndTime_s(row)
+					|| table1.getType(row) != table2.getType(row)
+					|| Double.compare(table1.getSimValue(row),
+							table2.getSimValue(row)) != 0
+					|| Double.compare(table1.getMeasValue(row),
+							table2.getMeasValue(row)) != 0
+					|| Double.compare(table1.getMeasStddev(row),
+							table2.getMeasStddev(row)) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the iterations and returns the time spent in
+	 * afterNetworkLoading(..) and the total time including closing the sink.
+	 */
+	private static long[] run(final int measCnt, final int iterations,
+			final String flowAnalysisFile, final FlowAnalysisSink sink,
+			final List<FlowAnalysisTable> tables) throws IOException {
+		final AnalyticalCalibrator<String> calibrator = new AnalyticalCalibrator<String>(
+				null, 4711L, BIN_SIZE_S);
+		calibrator.setStatisticsFile(null);
+		calibrator.setFlowAnalysisFile(flowAnalysisFile);
+		if (sink != null) {
+			calibrator.setFlowAnalysisSink(tables == null ? sink
+					: new FlowAnalysisSink() {
+						@Override
+						public void write(final FlowAnalysisTable table)
+								throws IOException {
+							tables.add(table);
+							sink.write(table);
+						}
+
+						@Override
+						public void close() throws IOException {
+							sink.close();
+						}
+					});
+		}
+		final Random rnd = new Random(4711);
+		final int linkCnt = Math.max(1, measCnt / 4);
+		for (int m = 0; m < measCnt; m++) {
+			final int start_s = (6 + (m / linkCnt) % 4) * 3600;
+			calibrator.addMeasurement("link-" + (m % linkCnt), start_s,
+					start_s + BIN_SIZE_S, 1 + rnd.nextInt(1000),
+					SingleLinkMeasurement.TYPE.COUNT_VEH);
+		}
+		long loadingTime_ms = 0;
+		final long start_ms = System.currentTimeMillis();
+		for (int it = 0; it < iterations; it++) {
+			final BasicSimResults<String> simResults = new BasicSimResults<String>(
+					0, BIN_SIZE_S, 24);
+			for (int link = 0; link < linkCnt; link++) {
+				for (int bin = 6; bin < 10; bin++) {
+					simResults.getSimResults(
+							SingleLinkMeasurement.TYPE.COUNT_VEH).put(
+							"link-" + link, bin, 1000.0 * rnd.nextDouble());
+				}
+			}
+			final long tick_ms = System.currentTimeMillis();
+			calibrator.afterNetworkLoading(simResults);
+			loadingTime_ms += System.currentTimeMillis() - tick_ms;
+		}
+		if (sink != null) {
+			calibrator.getFlowAnalysisSink().close();
+		}
+		return new long[] { loadingTime_ms,
+				System.currentTimeMillis() - start_ms };
+	}
+
+	private static void report(final String label, final long[] times_ms,
+			final File dir) {
+		long bytes = 0;
+		for (File file : dir.listFiles()) {
+			bytes += file.length();
+			file.delete();
+		}
+		System.out.println(label + ": afterNetworkLoading " + times_ms[0]
+				+ " ms, total " + times_ms[1] + " ms, " + (bytes / 1024)
+				+ " kB written");
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) throws IOException {
+
+		final int measCnt = (args.length > 0 ? Integer.parseInt(args[0])
+				: 50 * 1000);
+		final int iterations = (args.length > 1 ? Integer.parseInt(args[1])
+				: 10);
+		final File dir = Files.createTempDirectory("flowanalysis").toFile();
+		final String txt = new File(dir, "flows.txt").getPath();
+
+		// warm up the JIT
+		run(measCnt, 2, txt, null, null);
+		report("warm-up", run(measCnt, 2, null, new AsyncFlowAnalysisSink(
+				new BinaryFlowAnalysisSink(txt)), null), dir);
+
+		report("no flow analysis", run(measCnt, iterations, null, null, null),
+				dir);
+		report("text file, rewritten", run(measCnt, iterations, txt, null,
+				null), dir);
+		report("text files, background",
+				run(measCnt, iterations, null, new AsyncFlowAnalysisSink(
+						new TextFlowAnalysisSink(txt, true, false)), null), dir);
+		report("gzip files, background", run(measCnt, iterations, null,
+				new AsyncFlowAnalysisSink(new TextFlowAnalysisSink(
+						new File(dir, "flows.txt.gz").getPath(), true, true)),
+				null), dir);
+
+		final String bin = new File(dir, "flows.bin").getPath();
+		final List<FlowAnalysisTable> tables = new ArrayList<FlowAnalysisTable>();
+		final long[] binTimes_ms = run(measCnt, iterations, null,
+				new AsyncFlowAnalysisSink(new BinaryFlowAnalysisSink(bin)),
+				tables);
+		final long tick_ms = System.currentTimeMillis();
+		final SortedMap<Integer, FlowAnalysisTable> history = BinaryFlowAnalysisSink
+				.readHistory(bin);
+		final long readTime_ms = System.currentTimeMillis() - tick_ms;
+		boolean identical = (history.size() == tables.size());
+		for (FlowAnalysisTable table : tables) {
+			identical &= history.containsKey(table.getIteration())
+					&& equal(table, history.get(table.getIteration()));
+		}
+		report("binary files, background", binTimes_ms, dir);
+		System.out.println("binary history: " + history.size()
+				+ " iterations read in " + readTime_ms + " ms, "
+				+ (identical ? "identical" : "DIFFERENT"));
+		dir.delete();
+	}
+}
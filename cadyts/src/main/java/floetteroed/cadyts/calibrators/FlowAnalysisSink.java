@@ -0,0 +1,45 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.io.IOException;
+
+/**
+ * Receives the flow analysis of every iteration; see
+ * <code>Calibrator.setFlowAnalysisSink(FlowAnalysisSink)</code>.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public interface FlowAnalysisSink {
+
+	public void write(FlowAnalysisTable table) throws IOException;
+
+	/**
+	 * Completes all writing; the sink must not be used afterwards.
+	 */
+	public void close() throws IOException;
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+
+/**
+ * The flow analysis of one iteration in columnar form: for every single-link
+ * measurement its link, time interval, and type, together with the simulated
+ * value, the measured value, and the measurement's standard deviation. Links
+ * are represented by their <code>toString()</code> values.
+ * <p>
+ * The table is filled by the calibrator before it is passed on to a
+ * <code>FlowAnalysisSink</code> and is not modified afterwards, such that
+ * sinks may process it in another thread.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class FlowAnalysisTable {
+
+	// -------------------- MEMBER VARIABLES --------------------
+
+	private final int iteration;
+
+	private final String[] links;
+
+	private final int[] startTimes_s;
+
+	private final int[] endTimes_s;
+
+	private final SingleLinkMeasurement.TYPE[] types;
+
+	private final double[] simValues;
+
+	private final double[] measValues;
+
+	private final double[] measStddevs;
+
+	private int size = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	FlowAnalysisTable(final int iteration, final int capacity) {
+		this.iteration = iteration;
+		this.links = new String[capacity];
+		this.startTimes_s = new int[capacity];
+		this.endTimes_s = new int[capacity];
+		this.types = new SingleLinkMeasurement.TYPE[capacity];
+		this.simValues = new double[capacity];
+		this.measValues = new double[capacity];
+		this.measStddevs = new double[capacity];
+	}
+
+	void add(final String link, final int start_s, final int end_s,
+			final SingleLinkMeasurement.TYPE type, final double simValue,
+			final double measValue, final double measStddev) {
+		this.links[this.size] = link;
+		this.startTimes_s[this.size] = start_s;
+		this.endTimes_s[this.size] = end_s;
+		this.types[this.size] = type;
+		this.simValues[this.size] = simValue;
+		this.measValues[this.size] = measValue;
+		this.measStddevs[this.size] = measStddev;
+		this.size++;
+	}
+
+	// -------------------- CONTENT ACCESS --------------------
+
+	public int getIteration() {
+		return this.iteration;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public String getLink(final int row) {
+		return this.links[row];
+	}
+
+	public int getStartTime_s(final int row) {
+		return this.startTimes_s[row];
+	}
+
+	public int getEndTime_s(final int row) {
+		return this.endTimes_s[row];
+	}
+
+	public SingleLinkMeasurement.TYPE getType(final int row) {
+		return this.types[row];
+	}
+
+	public double getSimValue(final int row) {
+		return this.simValues[row];
+	}
+
+	public double getMeasValue(final int row) {
+		return this.measValues[row];
+	}
+
+	public double getMeasStddev(final int row) {
+		return this.measStddevs[row];
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import floetteroed.cadyts.calibrators.analytical.AnalyticalCalibrator;
+import floetteroed.cadyts.demand.Plan;
+import floetteroed.cadyts.demand.PlanBuilder;
+import floetteroed.cadyts.demand.PlanStep;
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+import floetteroed.cadyts.supply.BasicSimResults;
+
+/**
+ * Compares the single-link plan effects of the calibrator, which are looked up
+ * in a <code>LinkMeasurementIndex</code>, to a reference implementation that
+ * walks the measurement lists per link, on synthetic plans. Every tenth link
+ * carries overlapping measurements, which are not binary searchable. Reports
+ * run times and whether the plan effects are bit-identical.
+ * <p>
+ * Usage: <code>LinkIndexBenchmark [planSteps [links]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class LinkIndexBenchmark {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int BIN_SIZE_S = 3600;
+
+	private static final int STEP_CNT = 10;
+
+	private static final int PLAN_CNT = 100 * 1000;
+
+	private static final double MAX_ABS_PLAN_LAMBDA = 15;
+
+	private LinkIndexBenchmark() {
+	}
+
+	// -------------------- REFERENCE --------------------
+
+	private static double referencePlanEffect(final Plan<String> plan,
+			final Map<String, List<SingleLinkMeasurement<String>>> link2meas) {
+		double result = 0;
+		for (PlanStep<String> step : plan) {
+			final List<SingleLinkMeasurement<String>> measList = link2meas
+					.get(step.getLink());
+			if (measList != null) {
+				for (SingleLinkMeasurement<String> meas : measList) {
+					result += meas.getLambda(step);
+				}
+			}
+		}
+		result = Math.min(result, MAX_ABS_PLAN_LAMBDA);
+		return Math.max(result, -MAX_ABS_PLAN_LAMBDA);
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) {
+
+		final long stepCnt = (args.length > 0 ? Long.parseLong(args[0])
+				: 10L * 1000 * 1000);
+		final int linkCnt = (args.length > 1 ? Integer.parseInt(args[1])
+				: 1000);
+
+		/*
+		 * calibrator with warmed-up measurements
+		 */
+		final AnalyticalCalibrator<String> calibrator = new AnalyticalCalibrator<String>(
+				null, 4711L, BIN_SIZE_S);
+		calibrator.setProportionalAssignment(true);
+		final Map<String, List<SingleLinkMeasurement<String>>> link2meas = new LinkedHashMap<String, List<SingleLinkMeasurement<String>>>();
+		final Random rnd = new Random(4711);
+		for (int link = 0; link < linkCnt; link++) {
+			final List<SingleLinkMeasurement<String>> measList = new ArrayList<SingleLinkMeasurement<String>>();
+			for (int start_s = 0; start_s < 24 * 3600; start_s += BIN_SIZE_S) {
+				measList.add(new SingleLinkMeasurement<String>(Integer
+						.toString(link), 1 + rnd.nextInt(200), 100.0, start_s,
+						start_s + BIN_SIZE_S,
+						SingleLinkMeasurement.TYPE.COUNT_VEH));
+			}
+			if (link % 10 == 0) {
+				measList.add(new SingleLinkMeasurement<String>(Integer
+						.toString(link), 1 + rnd.nextInt(1000), 100.0,
+						6 * 3600, 10 * 3600,
+						SingleLinkMeasurement.TYPE.FLOW_VEH_H));
+			}
+			for (SingleLinkMeasurement<String> meas : measList) {
+				calibrator.addMeasurement(meas);
+			}
+			link2meas.put(Integer.toString(link), measList);
+		}
+		for (int it = 0; it < 3; it++) {
+			final BasicSimResults<String> simResults = new BasicSimResults<String>(
+					0, BIN_SIZE_S, 24);
+			for (int link = 0; link < linkCnt; link++) {
+				for (int bin = 0; bin < 24; bin++) {
+					simResults.getSimResults(
+							SingleLinkMeasurement.TYPE.COUNT_VEH).put(
+							Integer.toString(link), bin, rnd.nextInt(200));
+					simResults.getSimResults(
+							SingleLinkMeasurement.TYPE.FLOW_VEH_H).put(
+							Integer.toString(link), bin, rnd.nextInt(1000));
+				}
+			}
+			calibrator.afterNetworkLoading(simResults);
+		}
+
+		/*
+		 * synthetic plans, evaluated repeatedly until stepCnt is reached
+		 */
+		final PlanBuilder<String> builder = calibrator.newPlanBuilder();
+		final List<Plan<String>> plans = new ArrayList<Plan<String>>(PLAN_CNT);
+		long planStepCnt = 0;
+		for (int n = 0; n < PLAN_CNT; n++) {
+			final int dpt_s = rnd.nextInt(20 * 3600);
+			builder.reset();
+			builder.addEntry(Integer.toString(rnd.nextInt(linkCnt)), dpt_s);
+			for (int step = 1; step <= STEP_CNT; step++) {
+				builder.addTurn(Integer.toString(rnd.nextInt(linkCnt)), dpt_s
+						+ 300 * step);
+			}
+			builder.addExit(dpt_s + 300 * STEP_CNT);
+			final Plan<String> plan = builder.getResult();
+			plans.add(plan);
+			for (@SuppressWarnings("unused")
+			PlanStep<String> step : plan) {
+				planStepCnt++;
+			}
+		}
+		final int rounds = (int) Math.max(1, stepCnt / planStepCnt);
+		final double[] reference = new double[plans.size()];
+		final double[] single = new double[plans.size()];
+		double[] batch = null;
+
+		for (int warmUp = 0; warmUp < 2; warmUp++) {
+			long tick_ms = System.currentTimeMillis();
+			for (int r = 0; r < rounds; r++) {
+				for (int n = 0; n < plans.size(); n++) {
+					reference[n] = referencePlanEffect(plans.get(n), link2meas);
+				}
+			}
+			final long referenceTime_ms = System.currentTimeMillis() - tick_ms;
+
+			tick_ms = System.currentTimeMillis();
+			for (int r = 0; r < rounds; r++) {
+				for (int n = 0; n < plans.size(); n++) {
+					single[n] = calibrator.calcLinearPlanEffect(plans.get(n));
+				}
+			}
+			final long singleTime_ms = System.currentTimeMillis() - tick_ms;
+
+			tick_ms = System.currentTimeMillis();
+			for (int r = 0; r < rounds; r++) {
+				batch = calibrator.calcLinearPlanEffects(plans);
+			}
+			final long batchTime_ms = System.currentTimeMillis() - tick_ms;
+
+			if (warmUp == 1) {
+				final long steps = rounds * planStepCnt;
+				System.out.println(steps + " plan steps, " + linkCnt
+						+ " links");
+				System.out.println("reference:  " + referenceTime_ms + " ms, "
+						+ Math.round(1000.0 * steps / Math.max(referenceTime_ms, 1))
+						+ " steps/s");
+				System.out.println("index:      " + singleTime_ms + " ms, "
+						+ Math.round(1000.0 * steps / Math.max(singleTime_ms, 1))
+						+ " steps/s");
+				System.out.println("index batch: " + batchTime_ms + " ms, "
+						+ Math.round(1000.0 * steps / Math.max(batchTime_ms, 1))
+						+ " steps/s");
+			}
+		}
+
+		int mismatches = 0;
+		for (int n = 0; n < plans.size(); n++) {
+			if (Double.doubleToLongBits(reference[n]) != Double
+					.doubleToLongBits(single[n])
+					|| Double.doubleToLongBits(reference[n]) != Double
+							.doubleToLongBits(batch[n])) {
+				mismatches++;
+			}
+		}
+		System.out.println("plan effects "
+				+ (mismatches == 0 ? "identical" : "DIFFERENT in " + mismatches
+						+ " plans"));
+	}
+}
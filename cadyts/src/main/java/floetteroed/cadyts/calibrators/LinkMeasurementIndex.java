@@ -0,0 +1,171 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+
+/**
+ * Frozen, array-based view of the single-link measurements per link, with the
+ * lambda coefficients of all measurements precomputed. It is only valid as
+ * long as the measurements do not change, i.e. between two network loadings.
+ * <p>
+ * The entries of a link occupy the positions first(slot) .. end(slot)-1. If
+ * the time intervals of a link are disjoint, they are sorted by their start
+ * times and at most one of them contains a given time, which is found by
+ * binary search. Otherwise, they are kept in the order of the measurement
+ * list of that link and need to be scanned.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param L
+ *            the network link type
+ * 
+ */
+class LinkMeasurementIndex<L> {
+
+	// -------------------- MEMBER VARIABLES --------------------
+
+	private final Map<L, Integer> link2slot;
+
+	// slot -> position of its first entry; one more element than slots
+	private final int[] firstEntry;
+
+	private final boolean[] disjoint;
+
+	private final int[] start_s;
+
+	private final int[] end_s;
+
+	private final double[] lambda;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	LinkMeasurementIndex(final Map<L, List<SingleLinkMeasurement<L>>> link2meas) {
+
+		this.link2slot = new HashMap<L, Integer>(2 * link2meas.size());
+		this.firstEntry = new int[link2meas.size() + 1];
+		this.disjoint = new boolean[link2meas.size()];
+		int entryCnt = 0;
+		for (List<SingleLinkMeasurement<L>> measList : link2meas.values()) {
+			entryCnt += measList.size();
+		}
+		this.start_s = new int[entryCnt];
+		this.end_s = new int[entryCnt];
+		this.lambda = new double[entryCnt];
+
+		int slot = 0;
+		int entry = 0;
+		for (Map.Entry<L, List<SingleLinkMeasurement<L>>> link2measEntry : link2meas
+				.entrySet()) {
+			final L link = link2measEntry.getKey();
+			final List<SingleLinkMeasurement<L>> sorted = new ArrayList<SingleLinkMeasurement<L>>(
+					link2measEntry.getValue());
+			Collections.sort(sorted, new Comparator<SingleLinkMeasurement<L>>() {
+				@Override
+				public int compare(final SingleLinkMeasurement<L> meas1,
+						final SingleLinkMeasurement<L> meas2) {
+					return Integer.compare(meas1.getStartTime_s(),
+							meas2.getStartTime_s());
+				}
+			});
+			boolean disjoint = true;
+			for (int i = 1; i < sorted.size(); i++) {
+				disjoint &= (sorted.get(i - 1).getEndTime_s() <= sorted.get(i)
+						.getStartTime_s());
+			}
+			this.link2slot.put(link, slot);
+			this.firstEntry[slot] = entry;
+			this.disjoint[slot] = disjoint;
+			for (SingleLinkMeasurement<L> meas : (disjoint ? sorted
+					: link2measEntry.getValue())) {
+				this.start_s[entry] = meas.getStartTime_s();
+				this.end_s[entry] = meas.getEndTime_s();
+				this.lambda[entry] = meas.getLambdaCoefficient(link);
+				entry++;
+			}
+			slot++;
+		}
+		this.firstEntry[slot] = entry;
+	}
+
+	// -------------------- CONTENT ACCESS --------------------
+
+	/**
+	 * Returns the slot of the given link, or -1 if it is not relevant for any
+	 * single-link measurement.
+	 */
+	int slot(final L link) {
+		final Integer result = this.link2slot.get(link);
+		return (result == null ? -1 : result);
+	}
+
+	int first(final int slot) {
+		return this.firstEntry[slot];
+	}
+
+	int end(final int slot) {
+		return this.firstEntry[slot + 1];
+	}
+
+	boolean isDisjoint(final int slot) {
+		return this.disjoint[slot];
+	}
+
+	/**
+	 * Returns the position of the entry of a slot with disjoint intervals
+	 * that contains time_s, or -1 if there is none.
+	 */
+	int find(final int slot, final int time_s) {
+		final int first = this.firstEntry[slot];
+		final int end = this.firstEntry[slot + 1];
+		int pos = Arrays.binarySearch(this.start_s, first, end, time_s);
+		if (pos < 0) {
+			// the last entry that starts before time_s
+			pos = -pos - 2;
+		} else {
+			// equal start times only occur for empty intervals
+			while (pos + 1 < end && this.start_s[pos + 1] == time_s) {
+				pos++;
+			}
+		}
+		return (pos >= first && this.contains(pos, time_s) ? pos : -1);
+	}
+
+	boolean contains(final int entry, final int time_s) {
+		return (time_s >= this.start_s[entry] && time_s < this.end_s[entry]);
+	}
+
+	double getLambda(final int entry) {
+		return this.lambda[entry];
+	}
+}
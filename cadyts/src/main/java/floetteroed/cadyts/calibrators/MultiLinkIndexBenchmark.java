@@ -0,0 +1,235 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import floetteroed.cadyts.calibrators.analytical.AnalyticalCalibrator;
+import floetteroed.cadyts.demand.Plan;
+import floetteroed.cadyts.demand.PlanBuilder;
+import floetteroed.cadyts.demand.PlanStep;
+import floetteroed.cadyts.measurements.MultiLinkMeasurement;
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+import floetteroed.cadyts.supply.BasicSimResults;
+
+/**
+ * Compares the multi-link plan effects of the calibrator, which are matched
+ * through a <code>MultiLinkMeasurementIndex</code>, to a reference
+ * implementation that scans every plan step against every multi-link
+ * measurement. Every measurement observes a short random route in consecutive
+ * time windows; half of the synthetic plans follow the route of a random
+ * measurement. Reports run times and whether the plan effects are
+ * bit-identical.
+ * <p>
+ * Usage: <code>MultiLinkIndexBenchmark [measurements [planSteps [links]]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class MultiLinkIndexBenchmark {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int BIN_SIZE_S = 3600;
+
+	private static final int PLAN_CNT = 20 * 1000;
+
+	private static final int STEP_CNT = 10;
+
+	private static final double MAX_ABS_PLAN_LAMBDA = 15;
+
+	private MultiLinkIndexBenchmark() {
+	}
+
+	// -------------------- REFERENCE --------------------
+
+	private static double referencePlanEffect(final Plan<String> plan,
+			final List<MultiLinkMeasurement<String>> allMeas) {
+		final int[] indicesInMeas = new int[allMeas.size()];
+		for (PlanStep<String> step : plan) {
+			for (int m = 0; m < allMeas.size(); m++) {
+				final MultiLinkMeasurement<String> meas = allMeas.get(m);
+				if (indicesInMeas[m] < meas.size()
+						&& meas.appliesTo(indicesInMeas[m], step)) {
+					indicesInMeas[m]++;
+				}
+			}
+		}
+		int matchCnt = 0;
+		for (int m = 0; m < allMeas.size(); m++) {
+			if (indicesInMeas[m] == allMeas.get(m).size()) {
+				matchCnt++;
+			}
+		}
+		double result = 0;
+		for (int m = 0; m < allMeas.size(); m++) {
+			if (indicesInMeas[m] == allMeas.get(m).size()) {
+				result += allMeas.get(m).dll_dMatches() / matchCnt;
+			}
+		}
+		result = Math.min(result, MAX_ABS_PLAN_LAMBDA);
+		return Math.max(result, -MAX_ABS_PLAN_LAMBDA);
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) {
+
+		final int measCnt = (args.length > 0 ? Integer.parseInt(args[0])
+				: 5000);
+		final long stepCnt = (args.length > 1 ? Long.parseLong(args[1])
+				: 200 * 1000);
+		final int linkCnt = (args.length > 2 ? Integer.parseInt(args[2])
+				: 2000);
+
+		/*
+		 * measurements of short routes in consecutive time windows
+		 */
+		final AnalyticalCalibrator<String> calibrator = new AnalyticalCalibrator<String>(
+				null, 4711L, BIN_SIZE_S);
+		calibrator.setProportionalAssignment(true);
+		final Random rnd = new Random(4711);
+		final List<MultiLinkMeasurement<String>> allMeas = new ArrayList<MultiLinkMeasurement<String>>();
+		final List<String[]> routes = new ArrayList<String[]>();
+		final List<Integer> routeStarts_s = new ArrayList<Integer>();
+		for (int m = 0; m < measCnt; m++) {
+			final MultiLinkMeasurement<String> meas = new MultiLinkMeasurement<String>(
+					rnd.nextInt(50), 0.5);
+			final String[] route = new String[2 + rnd.nextInt(4)];
+			final int start_s = 6 * 3600 + rnd.nextInt(12 * 3600);
+			for (int i = 0; i < route.length; i++) {
+				route[i] = Integer.toString(rnd.nextInt(linkCnt));
+				meas.addObservation(route[i], start_s + 300 * i, start_s + 300
+						* i + 1800);
+			}
+			calibrator.addMeasurement(meas);
+			allMeas.add(meas);
+			routes.add(route);
+			routeStarts_s.add(start_s);
+		}
+
+		/*
+		 * plans, half of which follow a measured route
+		 */
+		final PlanBuilder<String> builder = calibrator.newPlanBuilder();
+		final List<Plan<String>> plans = new ArrayList<Plan<String>>(PLAN_CNT);
+		long planStepCnt = 0;
+		for (int n = 0; n < PLAN_CNT; n++) {
+			final List<String> links = new ArrayList<String>();
+			final int dpt_s;
+			if (n % 2 == 0) {
+				final int m = rnd.nextInt(measCnt);
+				dpt_s = routeStarts_s.get(m) + rnd.nextInt(600);
+				for (String link : routes.get(m)) {
+					links.add(link);
+				}
+			} else {
+				dpt_s = rnd.nextInt(24 * 3600);
+			}
+			while (links.size() < STEP_CNT) {
+				links.add(rnd.nextInt(links.size() + 1),
+						Integer.toString(rnd.nextInt(linkCnt)));
+			}
+			builder.reset();
+			builder.addEntry(links.get(0), dpt_s);
+			for (int i = 1; i < links.size(); i++) {
+				builder.addTurn(links.get(i), dpt_s + 60 * i);
+			}
+			builder.addExit(dpt_s + 60 * links.size());
+			final Plan<String> plan = builder.getResult();
+			plans.add(plan);
+			for (@SuppressWarnings("unused")
+			PlanStep<String> step : plan) {
+				planStepCnt++;
+			}
+		}
+
+		/*
+		 * warm-up iterations with all plans chosen
+		 */
+		for (int it = 0; it < 3; it++) {
+			for (Plan<String> plan : plans) {
+				calibrator.addToDemand(plan);
+			}
+			final BasicSimResults<String> simResults = new BasicSimResults<String>(
+					0, BIN_SIZE_S, 24);
+			for (int link = 0; link < linkCnt; link++) {
+				for (int bin = 0; bin < 24; bin++) {
+					simResults.getSimResults(
+							SingleLinkMeasurement.TYPE.COUNT_VEH).put(
+							Integer.toString(link), bin, rnd.nextInt(200));
+				}
+			}
+			calibrator.afterNetworkLoading(simResults);
+		}
+
+		final int rounds = (int) Math.max(1, stepCnt / planStepCnt);
+		final double[] reference = new double[plans.size()];
+		final double[] indexed = new double[plans.size()];
+		long tick_ms = System.currentTimeMillis();
+		for (int r = 0; r < rounds; r++) {
+			for (int n = 0; n < plans.size(); n++) {
+				reference[n] = referencePlanEffect(plans.get(n), allMeas);
+			}
+		}
+		final long referenceTime_ms = System.currentTimeMillis() - tick_ms;
+		tick_ms = System.currentTimeMillis();
+		for (int r = 0; r < rounds; r++) {
+			for (int n = 0; n < plans.size(); n++) {
+				indexed[n] = calibrator.calcLinearPlanEffect(plans.get(n));
+			}
+		}
+		final long indexTime_ms = System.currentTimeMillis() - tick_ms;
+
+		int mismatches = 0;
+		int nonZero = 0;
+		for (int n = 0; n < plans.size(); n++) {
+			if (Double.doubleToLongBits(reference[n]) != Double
+					.doubleToLongBits(indexed[n])) {
+				mismatches++;
+			}
+			if (reference[n] != 0.0) {
+				nonZero++;
+			}
+		}
+		final long steps = rounds * planStepCnt;
+		System.out.println(measCnt + " multi-link measurements, " + steps
+				+ " plan steps, " + nonZero + " of " + plans.size()
+				+ " plans with non-zero effect");
+		System.out.println("reference: " + referenceTime_ms + " ms, "
+				+ Math.round(1000.0 * steps / Math.max(referenceTime_ms, 1))
+				+ " steps/s");
+		System.out.println("index:     " + indexTime_ms + " ms, "
+				+ Math.round(1000.0 * steps / Math.max(indexTime_ms, 1))
+				+ " steps/s");
+		System.out.println("speedup = "
+				+ Math.round(10.0 * referenceTime_ms / Math.max(indexTime_ms, 1))
+				/ 10.0 + ", plan effects "
+				+ (mismatches == 0 ? "identical" : "DIFFERENT in " + mismatches
+						+ " plans"));
+	}
+}
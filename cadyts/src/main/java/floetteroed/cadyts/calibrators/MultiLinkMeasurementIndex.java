@@ -0,0 +1,331 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import floetteroed.cadyts.demand.Plan;
+import floetteroed.cadyts.demand.PlanStep;
+import floetteroed.cadyts.measurements.MultiLinkMeasurement;
+
+/**
+ * Index from (link, time bin) to the observations of multi-link measurements
+ * that may apply to a plan step on that link in that time bin. Time bins
+ * outside of the analysis period are clamped to its first or last bin.
+ * <p>
+ * A <code>Matcher</code> uses the index to determine the multi-link
+ * measurements that match a plan with the same result as a scan of every
+ * plan step against every measurement, but its effort only depends on the
+ * number of candidate observations of the plan's steps.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param L
+ *            the network link type
+ * 
+ */
+class MultiLinkMeasurementIndex<L> {
+
+	// -------------------- MEMBER VARIABLES --------------------
+
+	private final int startTime_s;
+
+	private final int binSize_s;
+
+	private final int binCnt;
+
+	private final Map<L, Integer> link2slot;
+
+	// per slot: smallest bin, number of bins, and position of its first bin
+	private final int[] slotMinBin;
+
+	private final int[] slotBinCnt;
+
+	private final int[] slotFirstBin;
+
+	// per bin of all slots: position of its first entry; one more element
+	private final int[] binFirstEntry;
+
+	// per entry: measurement, observation index, time interval
+	private final int[] entryMeas;
+
+	private final int[] entryObs;
+
+	private final int[] entryStart_s;
+
+	private final int[] entryEnd_s;
+
+	// per measurement: number of observations
+	private final int[] measSize;
+
+	// measurements without observations, which match every plan
+	private final int[] emptyMeas;
+
+	private final ThreadLocal<Matcher> matchers = new ThreadLocal<Matcher>() {
+		@Override
+		protected Matcher initialValue() {
+			return new Matcher();
+		}
+	};
+
+	// -------------------- CONSTRUCTION --------------------
+
+	MultiLinkMeasurementIndex(
+			final List<MultiLinkMeasurement<L>> allMultiLinkMeas,
+			final int startTime_s, final int binSize_s, final int binCnt) {
+
+		this.startTime_s = startTime_s;
+		this.binSize_s = binSize_s;
+		this.binCnt = binCnt;
+		this.measSize = new int[allMultiLinkMeas.size()];
+
+		/*
+		 * (1) collect the observations per link
+		 */
+		this.link2slot = new HashMap<L, Integer>();
+		final List<List<int[]>> slot2obs = new ArrayList<List<int[]>>();
+		int emptyMeasCnt = 0;
+		for (int m = 0; m < allMultiLinkMeas.size(); m++) {
+			final MultiLinkMeasurement<L> meas = allMultiLinkMeas.get(m);
+			this.measSize[m] = meas.size();
+			if (meas.size() == 0) {
+				emptyMeasCnt++;
+			}
+			for (int i = 0; i < meas.size(); i++) {
+				if (meas.getObservationStartTime_s(i) >= meas
+						.getObservationEndTime_s(i)) {
+					continue; // cannot apply to any plan step
+				}
+				final L link = meas.getObservedLink(i);
+				Integer slot = this.link2slot.get(link);
+				if (slot == null) {
+					slot = slot2obs.size();
+					this.link2slot.put(link, slot);
+					slot2obs.add(new ArrayList<int[]>());
+				}
+				slot2obs.get(slot).add(new int[] { m, i });
+			}
+		}
+		this.emptyMeas = new int[emptyMeasCnt];
+		emptyMeasCnt = 0;
+		for (int m = 0; m < allMultiLinkMeas.size(); m++) {
+			if (this.measSize[m] == 0) {
+				this.emptyMeas[emptyMeasCnt++] = m;
+			}
+		}
+
+		/*
+		 * (2) lay out the bins of every slot
+		 */
+		final int slotCnt = slot2obs.size();
+		this.slotMinBin = new int[slotCnt];
+		this.slotBinCnt = new int[slotCnt];
+		this.slotFirstBin = new int[slotCnt];
+		int totalBinCnt = 0;
+		int totalEntryCnt = 0;
+		for (int slot = 0; slot < slotCnt; slot++) {
+			int minBin = Integer.MAX_VALUE;
+			int maxBin = Integer.MIN_VALUE;
+			for (int[] obs : slot2obs.get(slot)) {
+				final MultiLinkMeasurement<L> meas = allMultiLinkMeas
+						.get(obs[0]);
+				final int firstBin = this.bin(meas
+						.getObservationStartTime_s(obs[1]));
+				final int lastBin = this.bin(meas
+						.getObservationEndTime_s(obs[1]) - 1);
+				minBin = Math.min(minBin, firstBin);
+				maxBin = Math.max(maxBin, lastBin);
+				totalEntryCnt += lastBin - firstBin + 1;
+			}
+			this.slotMinBin[slot] = minBin;
+			this.slotBinCnt[slot] = maxBin - minBin + 1;
+			this.slotFirstBin[slot] = totalBinCnt;
+			totalBinCnt += this.slotBinCnt[slot];
+		}
+
+		/*
+		 * (3) count and then fill the entries of every bin
+		 */
+		this.binFirstEntry = new int[totalBinCnt + 1];
+		for (int slot = 0; slot < slotCnt; slot++) {
+			for (int[] obs : slot2obs.get(slot)) {
+				final MultiLinkMeasurement<L> meas = allMultiLinkMeas
+						.get(obs[0]);
+				for (int bin = this.bin(meas.getObservationStartTime_s(obs[1])); bin <= this
+						.bin(meas.getObservationEndTime_s(obs[1]) - 1); bin++) {
+					this.binFirstEntry[this.slotFirstBin[slot] + bin
+							- this.slotMinBin[slot] + 1]++;
+				}
+			}
+		}
+		for (int bin = 0; bin < totalBinCnt; bin++) {
+			this.binFirstEntry[bin + 1] += this.binFirstEntry[bin];
+		}
+		this.entryMeas = new int[totalEntryCnt];
+		this.entryObs = new int[totalEntryCnt];
+		this.entryStart_s = new int[totalEntryCnt];
+		this.entryEnd_s = new int[totalEntryCnt];
+		final int[] nextEntry = Arrays.copyOf(this.binFirstEntry, totalBinCnt);
+		for (int slot = 0; slot < slotCnt; slot++) {
+			for (int[] obs : slot2obs.get(slot)) {
+				final MultiLinkMeasurement<L> meas = allMultiLinkMeas
+						.get(obs[0]);
+				final int start_s = meas.getObservationStartTime_s(obs[1]);
+				final int end_s = meas.getObservationEndTime_s(obs[1]);
+				for (int bin = this.bin(start_s); bin <= this.bin(end_s - 1); bin++) {
+					final int entry = nextEntry[this.slotFirstBin[slot] + bin
+							- this.slotMinBin[slot]]++;
+					this.entryMeas[entry] = obs[0];
+					this.entryObs[entry] = obs[1];
+					this.entryStart_s[entry] = start_s;
+					this.entryEnd_s[entry] = end_s;
+				}
+			}
+		}
+	}
+
+	private int bin(final int time_s) {
+		if (time_s < this.startTime_s) {
+			return 0;
+		}
+		return (int) Math.min((((long) time_s) - this.startTime_s)
+				/ this.binSize_s, this.binCnt - 1);
+	}
+
+	// -------------------- CONTENT ACCESS --------------------
+
+	/**
+	 * Returns a matcher that is exclusive to the calling thread.
+	 */
+	Matcher matcher() {
+		return this.matchers.get();
+	}
+
+	// -------------------- MATCHER --------------------
+
+	/**
+	 * Advances every measurement through its observations along the steps of
+	 * a plan, in the same way as <code>Analyzer</code> did by scanning all
+	 * measurements per step: a step advances a measurement by at most one
+	 * observation, and only if it applies to the next not yet matched
+	 * observation of that measurement.
+	 * <p>
+	 * Only the measurements that were advanced by a plan are reset before the
+	 * next plan; a step stamp prevents advancing a measurement twice in one
+	 * step.
+	 */
+	class Matcher {
+
+		// per measurement: number of matched observations
+		private final int[] progress;
+
+		// per measurement: stamp of the step that last advanced it
+		private final int[] stepStamp;
+
+		private int step = 0;
+
+		// measurements with non-zero progress, in the order they were touched
+		private final int[] touched;
+
+		private int touchedCnt = 0;
+
+		private final int[] matches;
+
+		private int matchCnt = 0;
+
+		private Matcher() {
+			this.progress = new int[measSize.length];
+			this.stepStamp = new int[measSize.length];
+			this.touched = new int[measSize.length];
+			this.matches = new int[measSize.length];
+		}
+
+		private void advance(final PlanStep<L> planStep) {
+			final Integer slot = link2slot.get(planStep.getLink());
+			if (slot == null) {
+				return;
+			}
+			final int time_s = planStep.getEntryTime_s();
+			final int bin = bin(time_s) - slotMinBin[slot];
+			if (bin < 0 || bin >= slotBinCnt[slot]) {
+				return;
+			}
+			if (this.step == Integer.MAX_VALUE) {
+				Arrays.fill(this.stepStamp, 0);
+				this.step = 0;
+			}
+			this.step++;
+			final int binIndex = slotFirstBin[slot] + bin;
+			for (int entry = binFirstEntry[binIndex]; entry < binFirstEntry[binIndex + 1]; entry++) {
+				final int m = entryMeas[entry];
+				if (this.progress[m] == entryObs[entry]
+						&& this.stepStamp[m] != this.step
+						&& time_s >= entryStart_s[entry]
+						&& time_s < entryEnd_s[entry]) {
+					if (this.progress[m] == 0) {
+						this.touched[this.touchedCnt++] = m;
+					}
+					this.progress[m]++;
+					this.stepStamp[m] = this.step;
+				}
+			}
+		}
+
+		/**
+		 * Matches the plan and returns the number of matching measurements.
+		 * The matches of the last call are then available in ascending order
+		 * through getMatch(int).
+		 */
+		int match(final Plan<L> plan) {
+			for (int i = 0; i < this.touchedCnt; i++) {
+				this.progress[this.touched[i]] = 0;
+			}
+			this.touchedCnt = 0;
+			for (PlanStep<L> planStep : plan) {
+				this.advance(planStep);
+			}
+			this.matchCnt = 0;
+			for (int i = 0; i < this.touchedCnt; i++) {
+				final int m = this.touched[i];
+				if (this.progress[m] == measSize[m]) {
+					this.matches[this.matchCnt++] = m;
+				}
+			}
+			for (int m : emptyMeas) {
+				this.matches[this.matchCnt++] = m;
+			}
+			Arrays.sort(this.matches, 0, this.matchCnt);
+			return this.matchCnt;
+		}
+
+		int getMatch(final int i) {
+			return this.matches[i];
+		}
+	}
+}
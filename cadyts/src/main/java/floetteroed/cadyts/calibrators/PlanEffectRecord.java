@@ -0,0 +1,125 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.util.Arrays;
+
+/**
+ * Collects the link and plan lambdas that are computed while evaluating plan
+ * effects, such that the evaluation can run outside of the calibrator's
+ * thread. Registering the record with the calibrator afterwards yields the
+ * same statistics as if the lambdas had been computed by the calibrator
+ * itself, in the same order.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class PlanEffectRecord {
+
+	// -------------------- MEMBERS --------------------
+
+	private double[] linkLambdas = new double[1024];
+
+	private int linkLambdaCnt = 0;
+
+	private int zeroLinkLambdaCnt = 0;
+
+	private double[] planLambdas = new double[256];
+
+	private int planLambdaCnt = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public PlanEffectRecord() {
+	}
+
+	/**
+	 * Creates a record with the given initial capacities, which grow as
+	 * needed.
+	 */
+	public PlanEffectRecord(final int linkLambdaCapacity,
+			final int planLambdaCapacity) {
+		this.linkLambdas = new double[Math.max(1, linkLambdaCapacity)];
+		this.planLambdas = new double[Math.max(1, planLambdaCapacity)];
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	void addLinkLambda(final double lambda) {
+		if (this.linkLambdaCnt == this.linkLambdas.length) {
+			this.linkLambdas = Arrays.copyOf(this.linkLambdas,
+					2 * this.linkLambdas.length);
+		}
+		this.linkLambdas[this.linkLambdaCnt++] = lambda;
+	}
+
+	void addZeroLinkLambdas(final int cnt) {
+		this.zeroLinkLambdaCnt += cnt;
+	}
+
+	void addPlanLambda(final double lambda) {
+		if (this.planLambdaCnt == this.planLambdas.length) {
+			this.planLambdas = Arrays.copyOf(this.planLambdas,
+					2 * this.planLambdas.length);
+		}
+		this.planLambdas[this.planLambdaCnt++] = lambda;
+	}
+
+	void replay(final StatisticsTracker tracker) {
+		for (int i = 0; i < this.linkLambdaCnt; i++) {
+			tracker.registerLinkLambda(this.linkLambdas[i]);
+		}
+		tracker.registerZeroLinkLambdas(this.zeroLinkLambdaCnt);
+		for (int i = 0; i < this.planLambdaCnt; i++) {
+			tracker.registerPlanLambda(this.planLambdas[i]);
+		}
+	}
+
+	/**
+	 * Replaces the content of this record by that of other, reusing this
+	 * record's arrays where they are large enough.
+	 */
+	public void set(final PlanEffectRecord other) {
+		if (this.linkLambdas.length < other.linkLambdaCnt) {
+			this.linkLambdas = new double[other.linkLambdaCnt];
+		}
+		System.arraycopy(other.linkLambdas, 0, this.linkLambdas, 0,
+				other.linkLambdaCnt);
+		this.linkLambdaCnt = other.linkLambdaCnt;
+		this.zeroLinkLambdaCnt = other.zeroLinkLambdaCnt;
+		if (this.planLambdas.length < other.planLambdaCnt) {
+			this.planLambdas = new double[other.planLambdaCnt];
+		}
+		System.arraycopy(other.planLambdas, 0, this.planLambdas, 0,
+				other.planLambdaCnt);
+		this.planLambdaCnt = other.planLambdaCnt;
+	}
+
+	public void clear() {
+		this.linkLambdaCnt = 0;
+		this.zeroLinkLambdaCnt = 0;
+		this.planLambdaCnt = 0;
+	}
+}
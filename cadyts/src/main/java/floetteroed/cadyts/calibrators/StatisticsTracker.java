@@ -25,6 +25,8 @@
 package floetteroed.cadyts.calibrators;
 
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
@@ -70,10 +72,18 @@ public class StatisticsTracker implements Serializable {
 	// -------------------- CONSTRUCTION AND INITIALIZATION --------------------
 
 	public StatisticsTracker(final String fileName) {
+		this(fileName, true);
+	}
+
+	/**
+	 * If createFile is false, an existing statistics file is continued
+	 * instead of being (re)created with a header line.
+	 */
+	StatisticsTracker(final String fileName, final boolean createFile) {
 		this.fileName = fileName;
 		this.clear();
 
-		if (this.fileName != null) {
+		if (this.fileName != null && createFile) {
 			try {
 				final BufferedWriter writer = new BufferedWriter(
 						new FileWriter(this.fileName, false));
@@ -139,6 +149,10 @@ public class StatisticsTracker implements Serializable {
 		this.linkLambda.add(val);
 	}
 
+	public void registerZeroLinkLambdas(final int cnt) {
+		this.linkLambda.addZeros(cnt);
+	}
+
 	public void registerPlanLambda(final double val) {
 		this.planLambda.add(val);
 	}
@@ -147,6 +161,32 @@ public class StatisticsTracker implements Serializable {
 		this.choices++;
 	}
 
+	// -------------------- STATE SNAPSHOT --------------------
+
+	void writeState(final DataOutput out) throws IOException {
+		out.writeDouble(this.logLikelihood);
+		out.writeBoolean(this.logLikelihoodRegistered);
+		out.writeDouble(this.logLikelihoodPredErr);
+		out.writeBoolean(this.logLikelihoodPredErrRegistered);
+		out.writeDouble(this.p2pLogLikelihood);
+		out.writeBoolean(this.p2pLogLikelihoodRegistered);
+		this.linkLambda.writeState(out);
+		this.planLambda.writeState(out);
+		out.writeLong(this.choices);
+	}
+
+	void readState(final DataInput in) throws IOException {
+		this.logLikelihood = in.readDouble();
+		this.logLikelihoodRegistered = in.readBoolean();
+		this.logLikelihoodPredErr = in.readDouble();
+		this.logLikelihoodPredErrRegistered = in.readBoolean();
+		this.p2pLogLikelihood = in.readDouble();
+		this.p2pLogLikelihoodRegistered = in.readBoolean();
+		this.linkLambda.readState(in);
+		this.planLambda.readState(in);
+		this.choices = in.readLong();
+	}
+
 	// -------------------- FILE WRITING --------------------
 
 	public void writeToFile() {
@@ -0,0 +1,117 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import floetteroed.utilities.Time;
+
+/**
+ * Writes the flow analysis as a tab-separated text file with one line per
+ * single-link measurement, optionally gzip-compressed.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class TextFlowAnalysisSink extends FileFlowAnalysisSink {
+
+	// -------------------- CONSTANTS --------------------
+
+	public static final String HEADER = "link\tstart-time\tend-time\tstart-time(sec)\t"
+			+ "end-time(sec)\ttype\tsimulated\tmeasured\t"
+			+ "standard-deviation\terror\tabsolute-error\t"
+			+ "relative-error\trelative-absolute-error";
+
+	private static final String NEWLINE = System.getProperty("line.separator");
+
+	private final boolean compress;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public TextFlowAnalysisSink(final String fileName,
+			final boolean perIteration, final boolean compress) {
+		super(fileName, perIteration);
+		this.compress = compress;
+	}
+
+	// -------------------- IMPLEMENTATION OF FlowAnalysisSink --------------------
+
+	@Override
+	public void write(final FlowAnalysisTable table) throws IOException {
+		OutputStream stream = new FileOutputStream(this.fileName(table));
+		if (this.compress) {
+			stream = new GZIPOutputStream(stream, 1 << 16);
+		}
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(
+				stream), 1 << 16);
+		try {
+			final StringBuilder line = new StringBuilder(256);
+			writer.write(HEADER);
+			writer.write(NEWLINE);
+			for (int row = 0; row < table.size(); row++) {
+				final int start_s = table.getStartTime_s(row);
+				final int end_s = table.getEndTime_s(row);
+				final double simValue = table.getSimValue(row);
+				final double measValue = table.getMeasValue(row);
+				line.setLength(0);
+				line.append(table.getLink(row));
+				line.append('\t');
+				line.append(Time.strFromSec(start_s, ':'));
+				line.append('\t');
+				line.append(Time.strFromSec(end_s, ':'));
+				line.append('\t');
+				line.append(start_s);
+				line.append('\t');
+				line.append(end_s);
+				line.append('\t');
+				line.append(table.getType(row));
+				line.append('\t');
+				line.append(simValue);
+				line.append('\t');
+				line.append(measValue);
+				line.append('\t');
+				line.append(table.getMeasStddev(row));
+				line.append('\t');
+				line.append(simValue - measValue);
+				line.append('\t');
+				line.append(Math.abs(simValue - measValue));
+				line.append('\t');
+				line.append((simValue - measValue) / measValue);
+				line.append('\t');
+				line.append(Math.abs(simValue - measValue) / measValue);
+				line.append(NEWLINE);
+				writer.append(line);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
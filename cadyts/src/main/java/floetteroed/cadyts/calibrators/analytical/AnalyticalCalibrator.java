@@ -27,11 +27,17 @@ package floetteroed.cadyts.calibrators.analytical;
 import static floetteroed.utilities.math.MathHelpers.draw;
 import static java.lang.Math.exp;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.logging.Logger;
 
 import floetteroed.cadyts.calibrators.Calibrator;
+import floetteroed.cadyts.calibrators.PlanEffectRecord;
+import floetteroed.cadyts.calibrators.SnapshotKeyCodec;
 import floetteroed.cadyts.demand.Plan;
 import floetteroed.utilities.math.Vector;
 
@@ -98,6 +104,26 @@ public class AnalyticalCalibrator<L> extends Calibrator<L> {
 		return this.lastChoiceIndex;
 	}
 
+	// -------------------- STATE SNAPSHOT --------------------
+
+	@Override
+	protected void writeState(final DataOutput out,
+			final SnapshotKeyCodec<L> linkCodec) throws IOException {
+		super.writeState(out, linkCodec);
+		out.writeBoolean(this.bruteForce);
+		writeVector(out, this.lastChoiceProbs);
+		out.writeInt(this.lastChoiceIndex);
+	}
+
+	@Override
+	protected void readState(final DataInput in,
+			final SnapshotKeyCodec<L> linkCodec) throws IOException {
+		super.readState(in, linkCodec);
+		this.bruteForce = in.readBoolean();
+		this.lastChoiceProbs = readVector(in);
+		this.lastChoiceIndex = in.readInt();
+	}
+
 	// -------------------- IMPLEMENTATION --------------------
 
 	public int selectPlan(final List<? extends Plan<L>> plans,
@@ -110,6 +136,30 @@ public class AnalyticalCalibrator<L> extends Calibrator<L> {
 
 		// CHECK
 
+		checkChoiceSet(plans, choiceProbs);
+		if (overrideChoice != null
+				&& (overrideChoice < 0 || overrideChoice >= plans.size())) {
+			throw new IllegalArgumentException("overriding choice "
+					+ overrideChoice + "is not in {0,...," + (plans.size() - 1)
+					+ "}");
+		}
+
+		// CONTINUE
+
+		final Vector calibratedChoiceProbs = this.calcChoiceProbs(plans,
+				choiceProbs, null);
+		final int choiceIndex;
+		if (overrideChoice == null) {
+			choiceIndex = draw(calibratedChoiceProbs, this.getRandom());
+		} else {
+			choiceIndex = overrideChoice;
+		}
+		this.registerChoice(plans, calibratedChoiceProbs, choiceIndex);
+		return this.getLastChoiceIndex();
+	}
+
+	private static void checkChoiceSet(final List<?> plans,
+			final Vector choiceProbs) {
 		if (plans == null) {
 			throw new IllegalArgumentException("plans list ist null");
 		}
@@ -129,21 +179,53 @@ public class AnalyticalCalibrator<L> extends Calibrator<L> {
 					+ " elements, but choice probability list has "
 					+ choiceProbs.size() + " elements");
 		}
-		if (overrideChoice != null
-				&& (overrideChoice < 0 || overrideChoice >= plans.size())) {
-			throw new IllegalArgumentException("overriding choice "
-					+ overrideChoice + "is not in {0,...," + (plans.size() - 1)
-					+ "}");
+	}
+
+	private double calcLinearPlanEffect(final Plan<L> plan,
+			final boolean concurrent, final PlanEffectRecord record) {
+		if (concurrent) {
+			return this.calcLinearPlanEffect(plan, record);
+		} else {
+			return this.calcLinearPlanEffect(plan);
 		}
+	}
 
-		// CONTINUE
+	// -------------------- CONCURRENT PLAN CHOICE --------------------
+
+	/*
+	 * selectPlan(..) split into a part that only reads the calibrator state
+	 * and may run concurrently for many agents, and a part that registers the
+	 * choice and must be called in agent order.
+	 */
 
+	/**
+	 * Computes the calibrated choice distribution that selectPlan(..) draws
+	 * from. If record is not null, the state of this calibrator is only read
+	 * and the statistics of the computation are collected in record.
+	 * 
+	 * @param plans
+	 *            the choice set of an agent
+	 * @param choiceProbs
+	 *            the prior choice probabilities of the plans
+	 * @param record
+	 *            where the statistics are collected; null to register them
+	 *            directly with this calibrator
+	 * @return the calibrated choice probabilities
+	 */
+	public Vector calcChoiceProbs(final List<? extends Plan<L>> plans,
+			final Vector choiceProbs, final PlanEffectRecord record) {
+
+		checkChoiceSet(plans, choiceProbs);
+		final boolean concurrent = (record != null);
+
+		final Vector result;
 		if (this.bruteForce) {
 			final List<Integer> bestIndices = new ArrayList<Integer>(plans
 					.size());
 			double bestLambda = Double.NEGATIVE_INFINITY;
 			for (int i = 0; i < plans.size(); i++) {
-				final double lambda = this.calcLinearPlanEffect(plans.get(i));
+				final double lambda = this.calcLinearPlanEffect(plans.get(i),
+						concurrent, record);
 				if (lambda > bestLambda) {
 					bestIndices.clear();
 					bestIndices.add(i);
@@ -152,33 +234,59 @@ public class AnalyticalCalibrator<L> extends Calibrator<L> {
 					bestIndices.add(i);
 				}
 			}
-			this.lastChoiceProbs = new Vector(plans.size());
+			result = new Vector(plans.size());
 			for (Integer index : bestIndices) {
-				this.lastChoiceProbs.set(index, Math.max(MIN_PROB, choiceProbs
-						.get(index)));
+				result.set(index, Math.max(MIN_PROB, choiceProbs.get(index)));
 			}
 		} else {
-			this.lastChoiceProbs = choiceProbs.copy();
+			result = choiceProbs.copy();
 			final Vector lambdas = new Vector(plans.size());
 			for (int i = 0; i < plans.size(); i++) {
-				lambdas.set(i, this.calcLinearPlanEffect(plans.get(i)));
+				lambdas.set(i, this.calcLinearPlanEffect(plans.get(i),
+						concurrent, record));
 			}
 			final double maxLambda = lambdas.max();
 			for (int i = 0; i < plans.size(); i++) {
-				this.lastChoiceProbs.mult(i, exp(lambdas.get(i) - maxLambda));
-				this.lastChoiceProbs.set(i, Math.max(MIN_PROB,
-						this.lastChoiceProbs.get(i)));
+				result.mult(i, exp(lambdas.get(i) - maxLambda));
+				result.set(i, Math.max(MIN_PROB, result.get(i)));
 			}
 		}
-		this.lastChoiceProbs.mult(1.0 / this.lastChoiceProbs.sum());
+		result.mult(1.0 / result.sum());
+		return result;
+	}
 
-		if (overrideChoice == null) {
-			this.lastChoiceIndex = draw(this.lastChoiceProbs, this.getRandom());
-		} else {
-			this.lastChoiceIndex = overrideChoice;
-		}
+	/**
+	 * Returns a random number generator for the choice of the agent at
+	 * position agentIndex of the current choice stage. It depends only on the
+	 * random seed, the iteration and agentIndex, such that concurrently made
+	 * choices do not depend on the number or the scheduling of the threads.
+	 */
+	public Random newChoiceRandom(final long agentIndex) {
+		return new Random(this.getChoiceSeed(agentIndex));
+	}
 
-		this.addToDemand(plans.get(this.getLastChoiceIndex()));
-		return this.getLastChoiceIndex();
+	/**
+	 * Returns the seed of newChoiceRandom(agentIndex). Reseeding one Random
+	 * with it yields the same draws without allocating a generator per agent.
+	 */
+	public long getChoiceSeed(final long agentIndex) {
+		long z = this.getRandomSeed()
+				^ (0x9E3779B97F4A7C15L * (this.getIteration() + 1L))
+				^ (0xC2B2AE3D27D4EB4FL * (agentIndex + 1L));
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return (z ^ (z >>> 31));
+	}
+
+	/**
+	 * Completes a choice from a distribution computed by
+	 * calcChoiceProbs(..): updates the last choice and adds the chosen plan
+	 * to the demand. Must be called once per agent, in agent order.
+	 */
+	public void registerChoice(final List<? extends Plan<L>> plans,
+			final Vector calibratedChoiceProbs, final int choiceIndex) {
+		this.lastChoiceProbs = calibratedChoiceProbs;
+		this.lastChoiceIndex = choiceIndex;
+		this.addToDemand(plans.get(choiceIndex));
 	}
 }
@@ -0,0 +1,275 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators.filebased;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import floetteroed.cadyts.calibrators.BasicSnapshotKeyCodec;
+import floetteroed.cadyts.calibrators.Calibrator;
+import floetteroed.cadyts.calibrators.analytical.AnalyticalCalibrator;
+import floetteroed.cadyts.demand.Plan;
+import floetteroed.cadyts.demand.PlanBuilder;
+import floetteroed.cadyts.demand.PlanChoiceModel;
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+import floetteroed.cadyts.supply.BasicSimResults;
+import floetteroed.utilities.commandlineparser.CommandLineParser;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Measures the agent throughput of the CHOICE stage of
+ * <code>FileBasedController</code> on a synthetic population that is
+ * generated on the fly, for choices in the calling thread (zero threads) and
+ * for concurrent choices with different numbers of threads. All runs start
+ * from the same calibrator snapshot; the concurrent runs must yield identical
+ * choices.
+ * <p>
+ * Usage:
+ * <code>ParallelChoiceBenchmark [agentCnt [threadCnt1,threadCnt2,.. [batchSize]]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class ParallelChoiceBenchmark
+		extends
+		FileBasedController<AnalyticalCalibrator<String>, ParallelChoiceBenchmark.BenchmarkAgent, Plan<String>, String> {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int BIN_SIZE_S = 3600;
+
+	private static final int LINK_CNT = 500;
+
+	private static final int PLAN_CNT = 4;
+
+	private static final int STEP_CNT = 10;
+
+	// -------------------- SYNTHETIC POPULATION --------------------
+
+	static class BenchmarkAgent extends
+			Agent<Plan<String>, PlanChoiceModel<Plan<String>>> {
+
+		BenchmarkAgent(final Object id,
+				final PlanChoiceModel<Plan<String>> planChoiceModel) {
+			super(id, planChoiceModel);
+		}
+	}
+
+	private static final PlanChoiceModel<Plan<String>> UNIFORM = new PlanChoiceModel<Plan<String>>() {
+		@Override
+		public Vector getChoiceProbabilities(
+				final List<? extends Plan<String>> plans) {
+			final Vector result = new Vector(plans.size());
+			result.fill(1.0 / plans.size());
+			return result;
+		}
+	};
+
+	private final int agentCnt;
+
+	private long checksum;
+
+	private ParallelChoiceBenchmark(final int agentCnt) {
+		this.agentCnt = agentCnt;
+	}
+
+	@Override
+	protected PopulationFileReader<BenchmarkAgent> newPopulationReader(
+			final AnalyticalCalibrator<String> calibrator,
+			final CommandLineParser clp) {
+		final PlanBuilder<String> builder = calibrator.newPlanBuilder();
+		return new PopulationFileReader<BenchmarkAgent>() {
+			@Override
+			public Iterable<BenchmarkAgent> getPopulationSource(
+					final String populationFile) {
+				return new Iterable<BenchmarkAgent>() {
+					@Override
+					public Iterator<BenchmarkAgent> iterator() {
+						final Random rnd = new Random(4711);
+						return new Iterator<BenchmarkAgent>() {
+							private int n = 0;
+
+							@Override
+							public boolean hasNext() {
+								return (this.n < agentCnt);
+							}
+
+							@Override
+							public BenchmarkAgent next() {
+								final BenchmarkAgent agent = new BenchmarkAgent(
+										this.n++, UNIFORM);
+								final int dpt_s = 6 * 3600 + rnd
+										.nextInt(3 * 3600);
+								for (int i = 0; i < PLAN_CNT; i++) {
+									builder.reset();
+									builder.addEntry(Integer.toString(rnd
+											.nextInt(LINK_CNT)), dpt_s);
+									for (int step = 1; step <= STEP_CNT; step++) {
+										builder.addTurn(Integer.toString(rnd
+												.nextInt(LINK_CNT)), dpt_s
+												+ 120 * step);
+									}
+									builder.addExit(dpt_s + 120 * STEP_CNT);
+									agent.addPlan(builder.getResult());
+								}
+								return agent;
+							}
+
+							@Override
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	protected ChoiceFileWriter<BenchmarkAgent, Plan<String>> newChoiceFileWriter(
+			final AnalyticalCalibrator<String> calibrator) {
+		return new ChoiceFileWriter<BenchmarkAgent, Plan<String>>() {
+			@Override
+			public void open(final String choiceFile) {
+				checksum = 17;
+			}
+
+			@Override
+			public void write(final BenchmarkAgent agent,
+					final Plan<String> plan) {
+				checksum = 31 * checksum + agent.getPlans().indexOf(plan);
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	@Override
+	protected AnalyticalCalibrator<String> newCalibrator(
+			final CommandLineParser clp) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void loadMeasurements(
+			final AnalyticalCalibrator<String> calibrator, final String measFile) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void update(final AnalyticalCalibrator<String> calibrator,
+			final CommandLineParser clp) {
+		throw new UnsupportedOperationException();
+	}
+
+	// -------------------- MAIN --------------------
+
+	private static byte[] newCalibratorSnapshot() throws IOException {
+		final AnalyticalCalibrator<String> calibrator = new AnalyticalCalibrator<String>(
+				null, 4711L, BIN_SIZE_S);
+		calibrator.setProportionalAssignment(true);
+		final Random rnd = new Random(4711);
+		for (int link = 0; link < LINK_CNT; link++) {
+			for (int start_s = 6 * 3600; start_s < 10 * 3600; start_s += BIN_SIZE_S) {
+				calibrator.addMeasurement(Integer.toString(link), start_s,
+						start_s + BIN_SIZE_S, rnd.nextInt(200),
+						SingleLinkMeasurement.TYPE.COUNT_VEH);
+			}
+		}
+		for (int it = 0; it < 3; it++) {
+			final BasicSimResults<String> simResults = new BasicSimResults<String>(
+					0, BIN_SIZE_S, 24);
+			for (int link = 0; link < LINK_CNT; link++) {
+				for (int bin = 6; bin < 10; bin++) {
+					simResults.getSimResults(
+							SingleLinkMeasurement.TYPE.COUNT_VEH).put(
+							Integer.toString(link), bin, rnd.nextInt(200));
+				}
+			}
+			calibrator.afterNetworkLoading(simResults);
+		}
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		calibrator.writeSnapshot(out, new BasicSnapshotKeyCodec<String>());
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		final int agentCnt = (args.length > 0 ? Integer.parseInt(args[0])
+				: 1000 * 1000);
+		final String[] threadCnts = (args.length > 1 ? args[1] : "0,1,2,4")
+				.split(",");
+		final String batchSize = (args.length > 2 ? args[2] : Integer
+				.toString(DEFAULT_CHOICE_BATCHSIZE));
+
+		final byte[] snapshot = newCalibratorSnapshot();
+		final ParallelChoiceBenchmark benchmark = new ParallelChoiceBenchmark(
+				agentCnt);
+		Long concurrentChecksum = null;
+		boolean identical = true;
+		for (String threadCnt : threadCnts) {
+			final AnalyticalCalibrator<String> calibrator = Calibrator
+					.readSnapshot(new DataInputStream(new ByteArrayInputStream(
+							snapshot)), new BasicSnapshotKeyCodec<String>());
+			final CommandLineParser clp = new CommandLineParser();
+			benchmark.prepareCommandLineParserCHOICE(clp);
+			clp.parse(new String[] { CHOICESETFILE_KEY, "synthetic",
+					CHOICEFILE_KEY, "none", CHOICETHREADS_KEY, threadCnt,
+					CHOICEBATCHSIZE_KEY, batchSize });
+			final long tick_ms = System.currentTimeMillis();
+			benchmark.selectPlans(calibrator, clp);
+			final long time_ms = System.currentTimeMillis() - tick_ms;
+			if (Integer.parseInt(threadCnt) > 0) {
+				if (concurrentChecksum == null) {
+					concurrentChecksum = benchmark.checksum;
+				}
+				identical &= (concurrentChecksum == benchmark.checksum);
+			}
+			System.out.println(("0".equals(threadCnt) ? "calling thread"
+					: threadCnt + " thread(s)")
+					+ ": "
+					+ time_ms
+					+ " ms, "
+					+ Math.round(1000.0 * agentCnt / Math.max(time_ms, 1))
+					+ " agents/s, choice checksum "
+					+ Long.toHexString(benchmark.checksum));
+		}
+		System.out.println("available processors = "
+				+ Runtime.getRuntime().availableProcessors()
+				+ ", concurrent choices "
+				+ (identical ? "identical" : "DIFFERENT"));
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators.filebased.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded hand-over of agents from one producer (the parser thread) to one
+ * consumer. Agents are transferred in batches, such that producer and
+ * consumer only synchronize once per batch. At most batchCapacity full
+ * batches are pending at any time.
+ * <p>
+ * The producer ends the stream either with <code>close()</code> or with
+ * <code>fail(Throwable)</code>; in the latter case, the consumer receives the
+ * agents parsed so far and then a RuntimeException that wraps the failure.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param <A>
+ *            the agent type
+ */
+class AgentQueue<A> {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final long CANCELCHECK_INTERVAL_MS = 100;
+
+	private final int batchSize;
+
+	private final BlockingQueue<List<A>> batches;
+
+	// identity marker for the end of the stream
+	private final List<A> endOfStream = new ArrayList<A>(0);
+
+	// -------------------- MEMBERS --------------------
+
+	// PRODUCER SIDE
+
+	private List<A> putBatch;
+
+	private volatile boolean cancelled = false;
+
+	private volatile Throwable failure = null;
+
+	// CONSUMER SIDE
+
+	private List<A> takeBatch = null;
+
+	private int takeIndex = 0;
+
+	private boolean ended = false;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	AgentQueue(final int batchSize, final int batchCapacity) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		if (batchCapacity < 1) {
+			throw new IllegalArgumentException("batchCapacity must be positive");
+		}
+		this.batchSize = batchSize;
+		this.batches = new ArrayBlockingQueue<List<A>>(batchCapacity);
+		this.putBatch = new ArrayList<A>(batchSize);
+	}
+
+	// -------------------- PRODUCER SIDE --------------------
+
+	private void enqueue(final List<A> batch) {
+		try {
+			while (!this.batches.offer(batch, CANCELCHECK_INTERVAL_MS,
+					TimeUnit.MILLISECONDS)) {
+				if (this.cancelled) {
+					throw new CancellationException("agent queue is cancelled");
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void flush() {
+		if (!this.putBatch.isEmpty()) {
+			this.enqueue(this.putBatch);
+			this.putBatch = new ArrayList<A>(this.batchSize);
+		}
+	}
+
+	void put(final A agent) {
+		if (this.cancelled) {
+			throw new CancellationException("agent queue is cancelled");
+		}
+		this.putBatch.add(agent);
+		if (this.putBatch.size() == this.batchSize) {
+			this.flush();
+		}
+	}
+
+	void close() {
+		this.flush();
+		this.enqueue(this.endOfStream);
+	}
+
+	void fail(final Throwable failure) {
+		this.failure = failure;
+		if (!this.cancelled) {
+			this.flush();
+			this.enqueue(this.endOfStream);
+		}
+	}
+
+	/**
+	 * Makes the producer stop at its next <code>put</code>; meant for a
+	 * consumer that abandons the stream.
+	 */
+	void cancel() {
+		this.cancelled = true;
+		this.batches.clear();
+	}
+
+	boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	// -------------------- CONSUMER SIDE --------------------
+
+	/**
+	 * Returns the next agent, or null at the end of the stream.
+	 */
+	A take() {
+		if (this.takeBatch != null && this.takeIndex < this.takeBatch.size()) {
+			return this.takeBatch.get(this.takeIndex++);
+		}
+		if (this.ended) {
+			return null;
+		}
+		try {
+			this.takeBatch = this.batches.take();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		if (this.takeBatch == this.endOfStream) {
+			this.ended = true;
+			if (this.failure != null) {
+				throw new RuntimeException("reading the population failed",
+						this.failure);
+			}
+			return null;
+		}
+		this.takeIndex = 1;
+		return this.takeBatch.get(0);
+	}
+}
@@ -25,13 +25,21 @@
 package floetteroed.cadyts.calibrators.filebased.xml;
 
 import java.util.Iterator;
-import java.util.logging.Logger;
 
 import org.xml.sax.helpers.DefaultHandler;
 
 import floetteroed.cadyts.calibrators.filebased.Agent;
 
 /**
+ * Hands the agents built by a SAX parser thread over to the thread that
+ * iterates over this instance, through a bounded queue that transfers the
+ * agents in batches of batchSize. An exception in the parser thread is
+ * re-thrown (wrapped in a RuntimeException) to the iterating thread once it
+ * has consumed all agents parsed before the exception.
+ * <p>
+ * An instance can only be fed by one parser thread at a time; use one
+ * instance (and one <code>XMLPopulationFileReader</code>) per concurrently
+ * read population file.
  * 
  * @author Gunnar Flötteröd
  * 
@@ -41,58 +49,101 @@ import floetteroed.cadyts.calibrators.filebased.Agent;
 public class PopulationHandler<A extends Agent<?, ?>> extends DefaultHandler
 		implements Iterable<A> {
 
+	// -------------------- CONSTANTS --------------------
+
+	public static final int DEFAULT_BATCHSIZE = 1024;
+
+	public static final int DEFAULT_BATCHCAPACITY = 16;
+
 	// -------------------- MEMBER VARIABLES --------------------
 
-	private A bufferedAgent = null;
+	private int batchSize = DEFAULT_BATCHSIZE;
+
+	private int batchCapacity = DEFAULT_BATCHCAPACITY;
 
-	private boolean noData = true;
+	private volatile AgentQueue<A> queue = null;
 
 	// -------------------- CONSTRUCTION --------------------
 
 	public PopulationHandler() {
 	}
 
-	// -------------------- SYNCHRONIZED BUFFER UPDATE --------------------
-
-	public synchronized A getNextAgent() {
-		Logger.getLogger(this.getClass().getName()).fine(
-				"waiting until there is a pending agent");
-		while (this.noData) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
-			}
+	// -------------------- SETTERS --------------------
+
+	/**
+	 * Takes effect for the next population file that is read.
+	 */
+	public void setBatchSize(final int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive");
 		}
-		this.noData = true;
-		notifyAll();
-		Logger.getLogger(this.getClass().getName()).fine(
-				"returning pending agent");
-		return this.bufferedAgent;
+		this.batchSize = batchSize;
 	}
 
-	protected synchronized void putNextAgent(final A agent) {
-		Logger.getLogger(this.getClass().getName()).fine(
-				"waiting until there is no pending agent (next agent is "
-						+ agent + ")");
-		while (!this.noData) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
-			}
+	/**
+	 * Takes effect for the next population file that is read.
+	 */
+	public void setBatchCapacity(final int batchCapacity) {
+		if (batchCapacity < 1) {
+			throw new IllegalArgumentException("batchCapacity must be positive");
 		}
-		this.bufferedAgent = agent;
-		this.noData = false;
-		notifyAll();
+		this.batchCapacity = batchCapacity;
+	}
+
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	public int getBatchCapacity() {
+		return this.batchCapacity;
+	}
+
+	// -------------------- QUEUE MANAGEMENT --------------------
+
+	/**
+	 * Makes a previous parser thread that may still be running because its
+	 * agents were not consumed completely terminate.
+	 */
+	void cancelQueue() {
+		if (this.queue != null) {
+			this.queue.cancel();
+		}
+	}
+
+	/**
+	 * Called before a new parser thread is started, after the previous one
+	 * has terminated.
+	 */
+	void newQueue() {
+		this.queue = new AgentQueue<A>(this.batchSize, this.batchCapacity);
+	}
+
+	void parsingFailed(final Throwable failure) {
+		this.queue.fail(failure);
+	}
+
+	private AgentQueue<A> queue() {
+		final AgentQueue<A> result = this.queue;
+		if (result == null) {
+			throw new IllegalStateException("no population file is read");
+		}
+		return result;
+	}
+
+	// -------------------- BUFFER UPDATE --------------------
+
+	/**
+	 * Returns the next agent, or null if there are no more agents.
+	 */
+	public A getNextAgent() {
+		return this.queue().take();
+	}
 
+	protected void putNextAgent(final A agent) {
 		if (agent != null) {
-			Logger.getLogger(this.getClass().getName()).fine(
-					"...received new pending agent");
+			this.queue().put(agent);
 		} else {
-			Logger.getLogger(this.getClass().getName()).fine(
-					"parser thread returns immediately because "
-							+ "it wrote a null agent (end of file)");
+			this.queue().close();
 		}
 	}
 
@@ -109,8 +160,8 @@ public class PopulationHandler<A extends Agent<?, ?>> extends DefaultHandler
 	 * Subclasses should override DefaultHandler with functions that use the
 	 * data provided by the SAX parser to build instances of the agent type A.
 	 * Once a complete agent is built, that agent should be registered by a call
-	 * to putAgent(A). If there are no more agents, this should be indicated by
-	 * a call to putAgent(null), like in the default implementation of
+	 * to putNextAgent(A). If there are no more agents, this should be indicated
+	 * by a call to putNextAgent(null), like in the default implementation of
 	 * endDocument() given below. This default implementation generates an
 	 * Iterator over an empty population, independently of the contents of the
 	 * xml file.
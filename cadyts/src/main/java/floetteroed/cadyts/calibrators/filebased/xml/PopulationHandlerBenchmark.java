@@ -0,0 +1,201 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators.filebased.xml;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+
+import floetteroed.cadyts.calibrators.filebased.Agent;
+import floetteroed.cadyts.demand.Plan;
+import floetteroed.cadyts.demand.PlanBuilder;
+import floetteroed.cadyts.demand.PlanChoiceModel;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Measures the agent throughput of <code>XMLPopulationFileReader</code> on a
+ * synthetic population file with one single-plan agent per element, for a
+ * single-slot hand-over (batch size and capacity one), for the default
+ * batching, and for two files that are read concurrently.
+ * <p>
+ * Usage: <code>PopulationHandlerBenchmark [agentCnt]</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class PopulationHandlerBenchmark {
+
+	private static final String AGENT_ELEMENT = "agent";
+
+	private static final String ID_ATTR = "id";
+
+	private static final String ROUTE_ATTR = "route";
+
+	private static final String DEPARTURE_ATTR = "departure";
+
+	private PopulationHandlerBenchmark() {
+	}
+
+	static class BenchmarkAgent extends Agent<Plan<String>, PlanChoiceModel<Plan<String>>> {
+
+		private static final PlanChoiceModel<Plan<String>> CHOICE_MODEL = new PlanChoiceModel<Plan<String>>() {
+			@Override
+			public Vector getChoiceProbabilities(
+					final List<? extends Plan<String>> plans) {
+				return new Vector(plans.size());
+			}
+		};
+
+		BenchmarkAgent(final String id) {
+			super(id, CHOICE_MODEL);
+		}
+	}
+
+	static class BenchmarkHandler extends PopulationHandler<BenchmarkAgent> {
+
+		private final PlanBuilder<String> planBuilder = new PlanBuilder<String>();
+
+		@Override
+		public void startElement(final String uri, final String localName,
+				final String qName, final Attributes attrs) {
+			if (AGENT_ELEMENT.equals(qName)) {
+				final BenchmarkAgent agent = new BenchmarkAgent(
+						attrs.getValue(ID_ATTR));
+				int time_s = Integer.parseInt(attrs.getValue(DEPARTURE_ATTR));
+				this.planBuilder.reset();
+				boolean first = true;
+				for (String link : attrs.getValue(ROUTE_ATTR).split(" ")) {
+					if (first) {
+						this.planBuilder.addEntry(link, time_s);
+						first = false;
+					} else {
+						this.planBuilder.addTurn(link, time_s);
+					}
+					time_s += 60;
+				}
+				this.planBuilder.addExit(time_s);
+				agent.addPlan(this.planBuilder.getResult());
+				this.putNextAgent(agent);
+			}
+		}
+	}
+
+	static void writePopulation(final File file, final int agentCnt)
+			throws IOException {
+		final PrintWriter writer = new PrintWriter(new BufferedWriter(
+				new FileWriter(file), 1 << 16));
+		writer.println("<population>");
+		for (int i = 0; i < agentCnt; i++) {
+			writer.println("  <" + AGENT_ELEMENT + " " + ID_ATTR + "=\"" + i
+					+ "\" " + DEPARTURE_ATTR + "=\"" + (i % 86400) + "\" "
+					+ ROUTE_ATTR + "=\"" + (i % 1000) + " " + (i % 997) + " "
+					+ (i % 991) + "\"/>");
+		}
+		writer.println("</population>");
+		writer.close();
+	}
+
+	private static long consume(final Iterable<BenchmarkAgent> source) {
+		long result = 0;
+		for (BenchmarkAgent agent : source) {
+			result += agent.getPlans().size();
+		}
+		return result;
+	}
+
+	private static void run(final String label, final File file,
+			final int batchSize, final int batchCapacity) {
+		final BenchmarkHandler handler = new BenchmarkHandler();
+		handler.setBatchSize(batchSize);
+		handler.setBatchCapacity(batchCapacity);
+		final XMLPopulationFileReader<BenchmarkAgent> reader = new XMLPopulationFileReader<BenchmarkAgent>();
+		reader.setPopulationHandler(handler);
+		final long tick_ms = System.currentTimeMillis();
+		final long agentCnt = consume(reader.getPopulationSource(file
+				.getPath()));
+		final long time_ms = Math.max(1, System.currentTimeMillis() - tick_ms);
+		System.out.println(label + ": " + agentCnt + " agents in " + time_ms
+				+ " ms = " + (1000 * agentCnt / time_ms) + " agents/s");
+	}
+
+	private static void runConcurrently(final File file1, final File file2)
+			throws InterruptedException {
+		final long[] agentCnts = new long[2];
+		final File[] files = new File[] { file1, file2 };
+		final Thread[] consumers = new Thread[2];
+		final long tick_ms = System.currentTimeMillis();
+		for (int i = 0; i < 2; i++) {
+			final int index = i;
+			consumers[i] = new Thread() {
+				@Override
+				public void run() {
+					final XMLPopulationFileReader<BenchmarkAgent> reader = new XMLPopulationFileReader<BenchmarkAgent>();
+					reader.setPopulationHandler(new BenchmarkHandler());
+					agentCnts[index] = consume(reader
+							.getPopulationSource(files[index].getPath()));
+				}
+			};
+			consumers[i].start();
+		}
+		for (Thread consumer : consumers) {
+			consumer.join();
+		}
+		final long time_ms = Math.max(1, System.currentTimeMillis() - tick_ms);
+		final long agentCnt = agentCnts[0] + agentCnts[1];
+		System.out.println("two concurrent readers: " + agentCnt
+				+ " agents in " + time_ms + " ms = "
+				+ (1000 * agentCnt / time_ms) + " agents/s");
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		final int agentCnt = (args.length > 0 ? Integer.parseInt(args[0])
+				: 5000000);
+
+		final File file = File.createTempFile("population", ".xml");
+		file.deleteOnExit();
+		long tick_ms = System.currentTimeMillis();
+		writePopulation(file, agentCnt);
+		System.out.println("wrote " + agentCnt + " agents ("
+				+ (file.length() >> 20) + " MB) in "
+				+ (System.currentTimeMillis() - tick_ms) + " ms");
+
+		run("single slot", file, 1, 1);
+		run("batches of " + PopulationHandler.DEFAULT_BATCHSIZE, file,
+				PopulationHandler.DEFAULT_BATCHSIZE,
+				PopulationHandler.DEFAULT_BATCHCAPACITY);
+
+		final File half = File.createTempFile("population", ".xml");
+		half.deleteOnExit();
+		writePopulation(half, agentCnt / 2);
+		runConcurrently(half, half);
+	}
+}
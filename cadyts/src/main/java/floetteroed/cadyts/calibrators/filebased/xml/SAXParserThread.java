@@ -24,59 +24,28 @@
  */ 
 package floetteroed.cadyts.calibrators.filebased.xml;
 
-import java.util.logging.Logger;
-
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
-import org.xml.sax.helpers.DefaultHandler;
-
 /**
+ * Parses one population file into a <code>PopulationHandler</code>. A
+ * parsing failure is passed on to the handler, which re-throws it to the
+ * consuming thread.
  * 
  * @author Gunnar Flötteröd
  * 
  */
 class SAXParserThread extends Thread {
 
-	// -------------------- SINGLETON ACCESS --------------------
-
-	private static SAXParserThread instance = null;
-
-	static synchronized SAXParserThread newInstance(final String fileName,
-			final DefaultHandler handler) {
-		/*
-		 * (1) make sure that the previous thread is done
-		 */
-		if (instance != null && instance.isAlive()) {
-			try {
-				Logger.getLogger(SAXParserThread.class.getName()).fine(
-						"waiting for previous parser thread to terminate");
-				final long waitStart_ms = System.currentTimeMillis();
-				instance.join();
-				Logger.getLogger(SAXParserThread.class.getName()).fine(
-						"previous parser thread terminated after "
-								+ (System.currentTimeMillis() - waitStart_ms)
-								+ " ms");
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
-			}
-		}
-		/*
-		 * (2) only now create a new thread
-		 */
-		instance = new SAXParserThread(fileName, handler);
-		return instance;
-	}
-
 	// -------------------- CONSTANTS AND MEMBERS --------------------
 
 	private final String fileName;
 
-	private final DefaultHandler handler;
+	private final PopulationHandler<?> handler;
 
 	// -------------------- CONSTRUCTION --------------------
 
-	private SAXParserThread(final String fileName, final DefaultHandler handler) {
+	SAXParserThread(final String fileName, final PopulationHandler<?> handler) {
 
 		// CHECK
 
@@ -91,6 +60,7 @@ class SAXParserThread extends Thread {
 
 		this.fileName = fileName;
 		this.handler = handler;
+		this.setName("population parser: " + fileName);
 	}
 
 	// -------------------- OVERRIDING OF Thread --------------------
@@ -102,7 +72,7 @@ class SAXParserThread extends Thread {
 			final SAXParser saxParser = factory.newSAXParser();
 			saxParser.parse(this.fileName, this.handler);
 		} catch (Exception e) {
-			throw new RuntimeException(e);
+			this.handler.parsingFailed(e);
 		}
 	}
 }
@@ -45,6 +45,8 @@ public class XMLPopulationFileReader<A extends Agent<?, ?>> implements
 
 	private PopulationHandler<A> populationHandler = null;
 
+	private SAXParserThread parserThread = null;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	public XMLPopulationFileReader() {
@@ -65,9 +67,26 @@ public class XMLPopulationFileReader<A extends Agent<?, ?>> implements
 
 	@Override
 	public Iterable<A> getPopulationSource(final String populationFile) {
-		final SAXParserThread parserThread = SAXParserThread.newInstance(
-				populationFile, this.populationHandler);
-		parserThread.start();
+		if (this.populationHandler == null) {
+			throw new IllegalStateException("population handler is not set");
+		}
+		/*
+		 * The handler can only serve one parser at a time: stop a previous
+		 * parser that may still be running because its agents were not
+		 * consumed completely.
+		 */
+		if (this.parserThread != null) {
+			this.populationHandler.cancelQueue();
+			try {
+				this.parserThread.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		this.populationHandler.newQueue();
+		this.parserThread = new SAXParserThread(populationFile,
+				this.populationHandler);
+		this.parserThread.start();
 		return this.populationHandler;
 	}
 }
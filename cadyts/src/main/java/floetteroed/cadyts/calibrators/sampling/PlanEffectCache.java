@@ -0,0 +1,355 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators.sampling;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import floetteroed.cadyts.calibrators.PlanEffectRecord;
+import floetteroed.cadyts.demand.Plan;
+import floetteroed.cadyts.demand.PlanStep;
+
+/**
+ * Bounded cache of linear plan effects, keyed by the plan's links and entry
+ * times. Plans with the same steps hence share their entry regardless of
+ * their identity. Each entry may keep the statistics record of its
+ * computation, to be registered again on every hit.
+ * <p>
+ * Every link is given a dense index when it is first seen, such that the
+ * links must implement equals(..) and hashCode() consistently. An entry is
+ * found through a 64-bit fingerprint of the link indices and entry times,
+ * and it keeps these numbers to check a hit against the looked-up plan. The
+ * cache hence holds no references to the plans or to their links, other than
+ * the one instance per link that serves as key of its index.
+ * <p>
+ * The cache is 4-way set associative; a full set evicts its least recently
+ * used entry. All entries are invalidated in constant time through a
+ * generation counter, which is due whenever the linear plan effects change,
+ * i.e. after every network loading.
+ * <p>
+ * Not thread-safe.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param L
+ *            the network link type
+ * 
+ */
+public class PlanEffectCache<L> {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int WAYS = 4;
+
+	private final int setMask;
+
+	// -------------------- MEMBER VARIABLES --------------------
+
+	private final long[] keys;
+
+	private final double[] values;
+
+	private final PlanEffectRecord[] records;
+
+	// link indices and entry times of the cached plans, alternating; the
+	// arrays are reused by later entries
+
+	private final int[] stepCnts;
+
+	private final int[][] steps;
+
+	private final Map<L, Integer> linkIndices = new HashMap<L, Integer>();
+
+	// the plan last passed to encode(..), until the next put(..)
+
+	private Plan<L> encodedPlan = null;
+
+	private long encodedFingerprint = 0;
+
+	private int[] encodedSteps = new int[32];
+
+	private int encodedStepCnt = 0;
+
+	// an entry is valid only if its generation equals the current one
+	private final int[] generations;
+
+	private final long[] lastUse;
+
+	private int generation = 1;
+
+	private long tick = 0;
+
+	// STATISTICS
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private long evictions = 0;
+
+	private long invalidations = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	/**
+	 * The capacity is rounded up to a power of two of at least
+	 * <code>WAYS</code> entries; zero disables caching.
+	 */
+	public PlanEffectCache(final int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative");
+		}
+		int entryCnt = 0;
+		if (capacity > 0) {
+			entryCnt = WAYS;
+			while (entryCnt < capacity) {
+				entryCnt <<= 1;
+			}
+		}
+		this.setMask = entryCnt / WAYS - 1;
+		this.keys = new long[entryCnt];
+		this.values = new double[entryCnt];
+		this.records = new PlanEffectRecord[entryCnt];
+		this.stepCnts = new int[entryCnt];
+		this.steps = new int[entryCnt][];
+		this.generations = new int[entryCnt];
+		this.lastUse = new long[entryCnt];
+	}
+
+	// -------------------- FINGERPRINT --------------------
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private int linkIndex(final L link) {
+		Integer result = this.linkIndices.get(link);
+		if (result == null) {
+			result = this.linkIndices.size();
+			this.linkIndices.put(link, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the link indices and entry times of plan into encodedSteps and
+	 * returns their fingerprint. A put(..) that follows the lookup(..) of the
+	 * same plan reuses the encoding.
+	 */
+	private long encode(final Plan<L> plan) {
+		if (plan == this.encodedPlan) {
+			return this.encodedFingerprint;
+		}
+		if (this.encodedSteps.length < 2 * plan.size()) {
+			this.encodedSteps = new int[2 * plan.size()];
+		}
+		long result = 0x9e3779b97f4a7c15L;
+		int pos = 0;
+		for (PlanStep<L> step : plan) {
+			final int linkIndex = this.linkIndex(step.getLink());
+			this.encodedSteps[pos++] = linkIndex;
+			this.encodedSteps[pos++] = step.getEntryTime_s();
+			result = mix(result
+					+ (((long) linkIndex) << 32 | (step
+							.getEntryTime_s() & 0xffffffffL)));
+		}
+		this.encodedStepCnt = pos / 2;
+		this.encodedPlan = plan;
+		this.encodedFingerprint = mix(result + this.encodedStepCnt);
+		return this.encodedFingerprint;
+	}
+
+	private boolean hasEncodedSteps(final int pos) {
+		if (this.stepCnts[pos] != this.encodedStepCnt) {
+			return false;
+		}
+		final int[] entrySteps = this.steps[pos];
+		for (int i = 0; i < 2 * this.encodedStepCnt; i++) {
+			if (entrySteps[i] != this.encodedSteps[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// -------------------- CONTENT ACCESS --------------------
+
+	public int getCapacity() {
+		return this.keys.length;
+	}
+
+	/**
+	 * Returns the position of the valid entry for the encoded plan, or -1.
+	 */
+	private int find(final long fingerprint) {
+		final int first = ((int) (fingerprint >>> 32) & this.setMask) * WAYS;
+		for (int pos = first; pos < first + WAYS; pos++) {
+			if (this.generations[pos] == this.generation
+					&& this.keys[pos] == fingerprint
+					&& this.hasEncodedSteps(pos)) {
+				return pos;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the entry for plan, which can be passed to
+	 * getValue(int) and getRecord(int) until the next call to put(..), or -1
+	 * if there is none.
+	 */
+	public int lookup(final Plan<L> plan) {
+		if (this.keys.length > 0) {
+			final int pos = this.find(this.encode(plan));
+			if (pos >= 0) {
+				this.lastUse[pos] = ++this.tick;
+				this.hits++;
+				return pos;
+			}
+		}
+		this.misses++;
+		return -1;
+	}
+
+	public double getValue(final int pos) {
+		return this.values[pos];
+	}
+
+	public PlanEffectRecord getRecord(final int pos) {
+		return this.records[pos];
+	}
+
+	/**
+	 * Returns the cached plan effect for plan, or NaN if there is none.
+	 */
+	public double get(final Plan<L> plan) {
+		final int pos = this.lookup(plan);
+		return (pos >= 0 ? this.values[pos] : Double.NaN);
+	}
+
+	public void put(final Plan<L> plan, final double planEffect) {
+		this.put(plan, planEffect, null);
+	}
+
+	/**
+	 * Caches planEffect together with a copy of the statistics record of its
+	 * computation, which may be null. The copy is made into the record that
+	 * the entry already owns, such that a full cache does not allocate.
+	 */
+	public void put(final Plan<L> plan, final double planEffect,
+			final PlanEffectRecord record) {
+		if (this.keys.length == 0) {
+			return;
+		}
+		final long fingerprint = this.encode(plan);
+		int pos = this.find(fingerprint);
+		if (pos < 0) {
+			final int first = ((int) (fingerprint >>> 32) & this.setMask)
+					* WAYS;
+			pos = first;
+			for (int candidate = first; candidate < first + WAYS; candidate++) {
+				if (this.generations[candidate] != this.generation) {
+					pos = candidate;
+					break;
+				} else if (this.lastUse[candidate] < this.lastUse[pos]) {
+					pos = candidate;
+				}
+			}
+			if (this.generations[pos] == this.generation) {
+				this.evictions++;
+			}
+		}
+		this.keys[pos] = fingerprint;
+		if (this.steps[pos] == null
+				|| this.steps[pos].length < 2 * this.encodedStepCnt) {
+			this.steps[pos] = new int[2 * this.encodedStepCnt];
+		}
+		System.arraycopy(this.encodedSteps, 0, this.steps[pos], 0,
+				2 * this.encodedStepCnt);
+		this.stepCnts[pos] = this.encodedStepCnt;
+		this.encodedPlan = null;
+		this.values[pos] = planEffect;
+		if (record == null) {
+			this.records[pos] = null;
+		} else {
+			if (this.records[pos] == null) {
+				this.records[pos] = new PlanEffectRecord(16, 1);
+			}
+			this.records[pos].set(record);
+		}
+		this.generations[pos] = this.generation;
+		this.lastUse[pos] = ++this.tick;
+	}
+
+	/**
+	 * Removes all entries; the link indices are kept.
+	 */
+	public void invalidate() {
+		if (this.generation == Integer.MAX_VALUE) {
+			Arrays.fill(this.generations, 0);
+			this.generation = 0;
+		}
+		this.generation++;
+		this.invalidations++;
+	}
+
+	// -------------------- STATISTICS --------------------
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	public long getMisses() {
+		return this.misses;
+	}
+
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	public long getInvalidations() {
+		return this.invalidations;
+	}
+
+	public void clearStatistics() {
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+		this.invalidations = 0;
+	}
+
+	@Override
+	public String toString() {
+		final long lookups = this.hits + this.misses;
+		return "capacity " + this.getCapacity() + ", " + lookups
+				+ " lookups, " + this.hits + " hits ("
+				+ (lookups == 0 ? 0 : Math.round(100.0 * this.hits / lookups))
+				+ "%), " + this.evictions + " evictions, "
+				+ this.invalidations + " invalidations";
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators.sampling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import floetteroed.cadyts.demand.Plan;
+import floetteroed.cadyts.demand.PlanBuilder;
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+import floetteroed.cadyts.supply.BasicSimResults;
+
+/**
+ * Runs the sampling-based plan choice of a synthetic population for some
+ * iterations with and without a <code>PlanEffectCache</code>. Every draw
+ * rebuilds the drawn plan, as simulators that re-create their plans do, such
+ * that only fingerprints can recognize repeated plans. Reports run times,
+ * cache statistics, and whether all runs make identical choices and write
+ * identical calibration statistics, also with a cache that is too small.
+ * <p>
+ * Usage:
+ * <code>PlanEffectCacheBenchmark [agents [iterations [cacheSize]]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class PlanEffectCacheBenchmark {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int BIN_SIZE_S = 3600;
+
+	private static final int LINK_CNT = 500;
+
+	private static final int PLAN_CNT = 8;
+
+	private static final int STEP_CNT = 10;
+
+	private PlanEffectCacheBenchmark() {
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static Plan<String> newPlan(final PlanBuilder<String> builder,
+			final int[] links, final int dpt_s) {
+		builder.reset();
+		builder.addEntry(Integer.toString(links[0]), dpt_s);
+		for (int step = 1; step < links.length; step++) {
+			builder.addTurn(Integer.toString(links[step]), dpt_s + 300 * step);
+		}
+		builder.addExit(dpt_s + 300 * links.length);
+		return builder.getResult();
+	}
+
+	/**
+	 * Returns the run time, the hits and lookups of the last iteration, and a
+	 * checksum of all choices.
+	 */
+	private static long[] run(final int agentCnt, final int iterations,
+			final int cacheSize, final String statisticsFile) {
+
+		final SamplingCalibrator<String> calibrator = new SamplingCalibrator<String>(
+				null, 4711L, BIN_SIZE_S);
+		calibrator.setStatisticsFile(statisticsFile);
+		calibrator.setProportionalAssignment(true);
+		calibrator.setPlanEffectCacheSize(cacheSize);
+		final Random rnd = new Random(4711);
+		for (int link = 0; link < LINK_CNT; link++) {
+			for (int start_s = 6 * 3600; start_s < 10 * 3600; start_s += BIN_SIZE_S) {
+				calibrator.addMeasurement(Integer.toString(link), start_s,
+						start_s + BIN_SIZE_S, rnd.nextInt(200),
+						SingleLinkMeasurement.TYPE.COUNT_VEH);
+			}
+		}
+
+		final int[][][] choiceSets = new int[agentCnt][PLAN_CNT][STEP_CNT];
+		final int[] dpts_s = new int[agentCnt];
+		for (int n = 0; n < agentCnt; n++) {
+			dpts_s[n] = 6 * 3600 + rnd.nextInt(3 * 3600);
+			for (int i = 0; i < PLAN_CNT; i++) {
+				for (int step = 0; step < STEP_CNT; step++) {
+					choiceSets[n][i][step] = rnd.nextInt(LINK_CNT);
+				}
+			}
+		}
+
+		final PlanBuilder<String> builder = calibrator.newPlanBuilder();
+		final Random drawRnd = new Random(4711);
+		long checksum = 17;
+		long hits = 0;
+		long lookups = 0;
+		final long start_ms = System.currentTimeMillis();
+		for (int it = 0; it < iterations; it++) {
+			for (int n = 0; n < agentCnt; n++) {
+				final ChoiceSampler<String> sampler = calibrator.getSampler(n);
+				int choice;
+				do {
+					choice = drawRnd.nextInt(PLAN_CNT);
+				} while (!sampler.isAccepted(newPlan(builder,
+						choiceSets[n][choice], dpts_s[n])));
+				checksum = 31 * checksum + choice;
+			}
+			hits = calibrator.getPlanEffectCache().getHits();
+			lookups = hits + calibrator.getPlanEffectCache().getMisses();
+			final BasicSimResults<String> simResults = new BasicSimResults<String>(
+					0, BIN_SIZE_S, 24);
+			for (int link = 0; link < LINK_CNT; link++) {
+				for (int bin = 6; bin < 10; bin++) {
+					simResults.getSimResults(
+							SingleLinkMeasurement.TYPE.COUNT_VEH).put(
+							Integer.toString(link), bin, rnd.nextInt(200));
+				}
+			}
+			calibrator.afterNetworkLoading(simResults);
+		}
+		return new long[] { System.currentTimeMillis() - start_ms, hits,
+				lookups, checksum };
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) throws IOException {
+
+		final int agentCnt = (args.length > 0 ? Integer.parseInt(args[0])
+				: 50 * 1000);
+		final int iterations = (args.length > 1 ? Integer.parseInt(args[1])
+				: 5);
+		final int cacheSize = (args.length > 2 ? Integer.parseInt(args[2])
+				: SamplingCalibrator.DEFAULT_PLAN_EFFECT_CACHE_SIZE);
+
+		// warm up the JIT
+		run(agentCnt / 10, 2, cacheSize, null);
+
+		final File uncachedStats = File.createTempFile("uncached", ".txt");
+		final File cachedStats = File.createTempFile("cached", ".txt");
+		final File smallCacheStats = File.createTempFile("smallcache", ".txt");
+		final long[] uncached = run(agentCnt, iterations, 0,
+				uncachedStats.getPath());
+		final long[] cached = run(agentCnt, iterations, cacheSize,
+				cachedStats.getPath());
+		final long[] smallCache = run(agentCnt, iterations, 64,
+				smallCacheStats.getPath());
+		System.out.println("without cache: " + uncached[0] + " ms");
+		System.out.println("cache size " + cacheSize + ": " + cached[0]
+				+ " ms, last iteration " + cached[1] + " hits in "
+				+ cached[2] + " lookups");
+		System.out.println("choices "
+				+ (uncached[3] == cached[3] && uncached[3] == smallCache[3] ? "identical"
+						: "DIFFERENT"));
+		final byte[] uncachedBytes = Files.readAllBytes(uncachedStats.toPath());
+		System.out.println("statistics files "
+				+ (uncachedBytes.length > 0
+						&& Arrays.equals(uncachedBytes,
+								Files.readAllBytes(cachedStats.toPath()))
+						&& Arrays.equals(uncachedBytes,
+								Files.readAllBytes(smallCacheStats.toPath())) ? "identical"
+						: "DIFFERENT"));
+		uncachedStats.delete();
+		cachedStats.delete();
+		smallCacheStats.delete();
+	}
+}
@@ -24,12 +24,13 @@
  */ 
 package floetteroed.cadyts.calibrators.sampling;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.logging.Logger;
 
 import floetteroed.cadyts.demand.Plan;
-import floetteroed.cadyts.demand.PlanStep;
 import floetteroed.utilities.math.PolynomialTrendFilter;
 
 /**
@@ -42,7 +43,11 @@ import floetteroed.utilities.math.PolynomialTrendFilter;
  * @author Gunnar Flötteröd
  * 
  */
-public class RecursiveSampler<L> implements ChoiceSampler<L> {
+public class RecursiveSampler<L> implements ChoiceSampler<L>, Serializable {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final long serialVersionUID = 1L;
 
 	// -------------------- MEMBERS --------------------
 
@@ -52,8 +57,6 @@ public class RecursiveSampler<L> implements ChoiceSampler<L> {
 
 	// runtime parameters
 
-	private final Map<Iterable<PlanStep<L>>, Double> plan2linEffect = new HashMap<Iterable<PlanStep<L>>, Double>();
-
 	private int draws = 0;
 
 	private double likelihoodSum = 0;
@@ -76,7 +79,6 @@ public class RecursiveSampler<L> implements ChoiceSampler<L> {
 	private void init() {
 		this.likelihoodTrendFilter.setLambda(this.calibrator
 				.getRegressionInertia());
-		this.plan2linEffect.clear();
 		this.draws = 0;
 		this.likelihoodSum = 0;
 		this.acceptNext = false;
@@ -93,15 +95,48 @@ public class RecursiveSampler<L> implements ChoiceSampler<L> {
 		return this.likelihoodTrendFilter;
 	}
 
+	// -------------------- PRIMITIVE STATE --------------------
+
+	int getStateSize() {
+		return this.likelihoodTrendFilter.getStateSize() + 3;
+	}
+
+	void getState(final double[] state, int offset) {
+		this.likelihoodTrendFilter.getState(state, offset);
+		offset += this.likelihoodTrendFilter.getStateSize();
+		state[offset++] = this.draws;
+		state[offset++] = this.likelihoodSum;
+		state[offset] = (this.acceptNext ? 1.0 : 0.0);
+	}
+
+	void setState(final double[] state, int offset) {
+		this.likelihoodTrendFilter.setState(state, offset);
+		offset += this.likelihoodTrendFilter.getStateSize();
+		this.draws = (int) state[offset++];
+		this.likelihoodSum = state[offset++];
+		this.acceptNext = (state[offset] != 0.0);
+	}
+
+	// -------------------- STATE SNAPSHOT --------------------
+
+	void writeState(final DataOutput out) throws IOException {
+		this.likelihoodTrendFilter.writeState(out);
+		out.writeInt(this.draws);
+		out.writeDouble(this.likelihoodSum);
+		out.writeBoolean(this.acceptNext);
+	}
+
+	void readState(final DataInput in) throws IOException {
+		this.likelihoodTrendFilter.readState(in);
+		this.draws = in.readInt();
+		this.likelihoodSum = in.readDouble();
+		this.acceptNext = in.readBoolean();
+	}
+
 	// -------------------- ACCEPT/REJECT FUNCTIONALITY --------------------
 
 	private double likelihood(final Plan<L> plan) {
-		Double linEffect = this.plan2linEffect.get(plan);
-		if (linEffect == null) {
-			linEffect = this.calibrator.calcLinearPlanEffect(plan);
-			this.plan2linEffect.put(plan, linEffect);
-		}
-		return Math.exp(linEffect);
+		return Math.exp(this.calibrator.getCachedLinearPlanEffect(plan));
 	}
 
 	@Override
@@ -0,0 +1,155 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators.sampling;
+
+import java.io.File;
+import java.lang.ref.Reference;
+import java.util.Random;
+
+import floetteroed.cadyts.demand.PlanBuilder;
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+import floetteroed.cadyts.supply.BasicSimResults;
+
+/**
+ * Runs the sampling-based plan choice of a synthetic population with one
+ * RecursiveSampler object per agent, with compact sampler state on the heap,
+ * and with compact sampler state that is spilled to a memory-mapped file.
+ * Reports the memory footprint of the sampler state per million agents, the
+ * run times, and whether all runs make identical choices.
+ * <p>
+ * Usage: <code>SamplerStateBenchmark [agents [iterations]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class SamplerStateBenchmark {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int BIN_SIZE_S = 3600;
+
+	private static final int LINK_CNT = 100;
+
+	private static final int PLAN_CNT = 4;
+
+	private SamplerStateBenchmark() {
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Returns the heap bytes and the off-heap bytes of the sampler state, the
+	 * run time, and a checksum of all choices.
+	 */
+	private static long[] run(final int agentCnt, final int iterations,
+			final boolean compact, final File spillFile) {
+
+		final SamplingCalibrator<String> calibrator = new SamplingCalibrator<String>(
+				null, 4711L, BIN_SIZE_S);
+		calibrator.setStatisticsFile(null);
+		calibrator.setProportionalAssignment(true);
+		calibrator.setCompactSamplerState(compact,
+				(spillFile == null ? null : spillFile.getAbsolutePath()));
+		final Random rnd = new Random(4711);
+		for (int link = 0; link < LINK_CNT; link++) {
+			calibrator.addMeasurement(Integer.toString(link), 7 * 3600,
+					8 * 3600, rnd.nextInt(200 * agentCnt / LINK_CNT),
+					SingleLinkMeasurement.TYPE.COUNT_VEH);
+		}
+		final PlanBuilder<String> builder = calibrator.newPlanBuilder();
+
+		final long baseline = usedHeap();
+		final Random drawRnd = new Random(4711);
+		long checksum = 17;
+		final long start_ms = System.currentTimeMillis();
+		for (int it = 0; it < iterations; it++) {
+			for (int n = 0; n < agentCnt; n++) {
+				final ChoiceSampler<String> sampler = calibrator.getSampler(n);
+				int choice;
+				do {
+					choice = drawRnd.nextInt(PLAN_CNT);
+					builder.reset();
+					builder.addEntry(Integer.toString((n + 31 * choice)
+							% LINK_CNT), 7 * 3600 + (n % 3600));
+					builder.addExit(8 * 3600);
+				} while (!sampler.isAccepted(builder.getResult()));
+				checksum = 31 * checksum + choice;
+			}
+			final BasicSimResults<String> simResults = new BasicSimResults<String>(
+					0, BIN_SIZE_S, 24);
+			for (int link = 0; link < LINK_CNT; link++) {
+				simResults.getSimResults(SingleLinkMeasurement.TYPE.COUNT_VEH)
+						.put(Integer.toString(link), 7,
+								rnd.nextInt(200 * agentCnt / LINK_CNT));
+			}
+			calibrator.afterNetworkLoading(simResults);
+		}
+		final long time_ms = System.currentTimeMillis() - start_ms;
+		final long heap = usedHeap() - baseline;
+		final long offHeap = (spillFile == null ? 0 : calibrator
+				.getCompactSamplerStateBytes());
+		Reference.reachabilityFence(calibrator);
+		return new long[] { heap, offHeap, time_ms, checksum };
+	}
+
+	private static void report(final String label, final long[] result,
+			final int agentCnt) {
+		System.out.println(label + ": " + (result[0] * 1000000L / agentCnt)
+				+ " heap bytes and " + (result[1] * 1000000L / agentCnt)
+				+ " mapped bytes per million agents, " + result[2] + " ms");
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) throws Exception {
+
+		final int agentCnt = (args.length > 0 ? Integer.parseInt(args[0])
+				: 200 * 1000);
+		final int iterations = (args.length > 1 ? Integer.parseInt(args[1])
+				: 3);
+		final File spillFile = File.createTempFile("samplers", ".bin");
+
+		// warm up the JIT
+		run(agentCnt / 10, 2, true, null);
+
+		final long[] objects = run(agentCnt, iterations, false, null);
+		final long[] heap = run(agentCnt, iterations, true, null);
+		final long[] mapped = run(agentCnt, iterations, true, spillFile);
+		report("sampler objects", objects, agentCnt);
+		report("compact on heap", heap, agentCnt);
+		report("compact mapped ", mapped, agentCnt);
+		System.out.println("choices "
+				+ (objects[3] == heap[3] && objects[3] == mapped[3] ? "identical"
+						: "DIFFERENT"));
+	}
+}
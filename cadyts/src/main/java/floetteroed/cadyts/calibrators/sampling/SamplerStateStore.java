@@ -0,0 +1,188 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators.sampling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores a fixed number of doubles per agent in chunks of primitive arrays
+ * that are addressed by a dense agent index. The chunks are either kept on the
+ * heap or mapped from a spill file, in which case the operating system pages
+ * out the state of agents that are not replanning.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+class SamplerStateStore {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int CHUNK_SHIFT = 16;
+
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	// -------------------- MEMBERS --------------------
+
+	private final int stride;
+
+	private final File spillFile;
+
+	private final List<double[]> heapChunks = new ArrayList<double[]>();
+
+	private final List<DoubleBuffer> mappedChunks = new ArrayList<DoubleBuffer>();
+
+	private RandomAccessFile spill = null;
+
+	private int size = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	/**
+	 * @param stride
+	 *            the number of doubles per agent
+	 * @param spillFile
+	 *            the file the state is mapped from; null keeps it on the heap.
+	 *            An existing file is overwritten, and the file is deleted when
+	 *            the store is closed.
+	 */
+	SamplerStateStore(final int stride, final File spillFile) {
+		if (stride <= 0) {
+			throw new IllegalArgumentException("stride must be positive");
+		}
+		this.stride = stride;
+		this.spillFile = spillFile;
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private int chunkSize() {
+		return (1 << CHUNK_SHIFT) * this.stride;
+	}
+
+	private void addChunk() throws IOException {
+		if (this.spillFile == null) {
+			this.heapChunks.add(new double[this.chunkSize()]);
+		} else {
+			if (this.spill == null) {
+				this.spill = new RandomAccessFile(this.spillFile, "rw");
+				this.spill.setLength(0);
+				this.spillFile.deleteOnExit();
+			}
+			final long bytes = 8L * this.chunkSize();
+			this.mappedChunks.add(this.spill.getChannel()
+					.map(FileChannel.MapMode.READ_WRITE,
+							bytes * this.mappedChunks.size(), bytes)
+					.order(ByteOrder.nativeOrder()).asDoubleBuffer());
+		}
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	int getStride() {
+		return this.stride;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	boolean isMapped() {
+		return (this.spillFile != null);
+	}
+
+	/**
+	 * Returns the number of bytes allocated for the stored state, on the heap
+	 * or in the spill file.
+	 */
+	long getAllocatedBytes() {
+		return 8L * this.chunkSize()
+				* (this.heapChunks.size() + this.mappedChunks.size());
+	}
+
+	/**
+	 * Appends the first stride entries of state and returns their index.
+	 */
+	int add(final double[] state) {
+		if ((this.size & CHUNK_MASK) == 0) {
+			try {
+				this.addChunk();
+			} catch (IOException e) {
+				throw new RuntimeException("cannot extend spill file "
+						+ this.spillFile, e);
+			}
+		}
+		this.set(this.size, state);
+		return this.size++;
+	}
+
+	void get(final int index, final double[] state) {
+		final int pos = (index & CHUNK_MASK) * this.stride;
+		if (this.spillFile == null) {
+			System.arraycopy(this.heapChunks.get(index >>> CHUNK_SHIFT), pos,
+					state, 0, this.stride);
+		} else {
+			final DoubleBuffer chunk = this.mappedChunks
+					.get(index >>> CHUNK_SHIFT);
+			for (int i = 0; i < this.stride; i++) {
+				state[i] = chunk.get(pos + i);
+			}
+		}
+	}
+
+	void set(final int index, final double[] state) {
+		final int pos = (index & CHUNK_MASK) * this.stride;
+		if (this.spillFile == null) {
+			System.arraycopy(state, 0, this.heapChunks
+					.get(index >>> CHUNK_SHIFT), pos, this.stride);
+		} else {
+			final DoubleBuffer chunk = this.mappedChunks
+					.get(index >>> CHUNK_SHIFT);
+			for (int i = 0; i < this.stride; i++) {
+				chunk.put(pos + i, state[i]);
+			}
+		}
+	}
+
+	/**
+	 * Releases the stored state and deletes the spill file, if any.
+	 */
+	void close() throws IOException {
+		this.heapChunks.clear();
+		this.mappedChunks.clear();
+		this.size = 0;
+		if (this.spill != null) {
+			this.spill.close();
+			this.spill = null;
+			this.spillFile.delete();
+		}
+	}
+}
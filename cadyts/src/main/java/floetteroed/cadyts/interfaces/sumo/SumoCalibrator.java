@@ -24,8 +24,12 @@
  */ 
 package floetteroed.cadyts.interfaces.sumo;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.logging.Logger;
 
+import floetteroed.cadyts.calibrators.SnapshotKeyCodec;
 import floetteroed.cadyts.calibrators.analytical.AnalyticalCalibrator;
 import floetteroed.utilities.DynamicData;
 
@@ -141,4 +145,52 @@ class SumoCalibrator extends AnalyticalCalibrator<String> {
 	String getClonePostfix() {
 		return this.clonePostfix;
 	}
+
+	// -------------------- STATE SNAPSHOT --------------------
+
+	@Override
+	protected void writeState(final DataOutput out,
+			final SnapshotKeyCodec<String> linkCodec) throws IOException {
+		super.writeState(out, linkCodec);
+		out.writeDouble(this.demandScale);
+		out.writeBoolean(this.overrideTravelTimes);
+		writeString(out, this.fmaPrefix);
+		writeString(out, this.clonePostfix);
+		out.writeBoolean(this.travelTimes != null);
+		if (this.travelTimes != null) {
+			out.writeInt(this.travelTimes.getStartTime_s());
+			out.writeInt(this.travelTimes.getBinSize_s());
+			out.writeInt(this.travelTimes.getBinCnt());
+			out.writeInt(this.travelTimes.keySet().size());
+			for (String link : this.travelTimes.keySet()) {
+				linkCodec.write(out, link);
+				for (int bin = 0; bin < this.travelTimes.getBinCnt(); bin++) {
+					out.writeDouble(this.travelTimes.getBinValue(link, bin));
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void readState(final DataInput in,
+			final SnapshotKeyCodec<String> linkCodec) throws IOException {
+		super.readState(in, linkCodec);
+		this.demandScale = in.readDouble();
+		this.overrideTravelTimes = in.readBoolean();
+		this.fmaPrefix = readString(in);
+		this.clonePostfix = readString(in);
+		if (in.readBoolean()) {
+			this.travelTimes = new DynamicData<String>(in.readInt(),
+					in.readInt(), in.readInt());
+			final int linkCnt = in.readInt();
+			for (int i = 0; i < linkCnt; i++) {
+				final String link = linkCodec.read(in);
+				for (int bin = 0; bin < this.travelTimes.getBinCnt(); bin++) {
+					this.travelTimes.put(link, bin, in.readDouble());
+				}
+			}
+		} else {
+			this.travelTimes = null;
+		}
+	}
 }
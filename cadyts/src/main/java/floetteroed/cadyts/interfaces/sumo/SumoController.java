@@ -30,6 +30,8 @@ import static floetteroed.cadyts.interfaces.sumo.SumoCalibrator.DEFAULT_OVERRIDE
 import java.io.IOException;
 import java.util.logging.Logger;
 
+import floetteroed.cadyts.calibrators.BasicSnapshotKeyCodec;
+import floetteroed.cadyts.calibrators.SnapshotKeyCodec;
 import floetteroed.cadyts.calibrators.filebased.ChoiceFileWriter;
 import floetteroed.cadyts.calibrators.filebased.FileBasedController;
 import floetteroed.cadyts.calibrators.filebased.PopulationFileReader;
@@ -54,6 +56,13 @@ public class SumoController extends
 	public static final String FMAPREFIX_KEY = "-fmaprefix";
 	public static final String CLONEPOSTFIX_KEY = "-clonepostfix";
 
+	// -------------------- STAGE COUPLING --------------------
+
+	@Override
+	protected SnapshotKeyCodec<String> newLinkCodec() {
+		return new BasicSnapshotKeyCodec<String>();
+	}
+
 	// -------------------- extending the INIT stage --------------------
 
 	@Override
@@ -24,6 +24,9 @@
  */ 
 package floetteroed.cadyts.measurements;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
@@ -32,6 +35,7 @@ import java.util.Set;
 import java.util.logging.Logger;
 
 import floetteroed.cadyts.calibrators.Calibrator;
+import floetteroed.cadyts.calibrators.SnapshotKeyCodec;
 import floetteroed.cadyts.calibrators.TimedElement;
 import floetteroed.cadyts.demand.Demand;
 import floetteroed.cadyts.demand.PlanStep;
@@ -142,6 +146,18 @@ public class MultiLinkMeasurement<L> implements Serializable {
 		return this.observedLinks;
 	}
 
+	public L getObservedLink(final int observationIndex) {
+		return this.loadings.get(observationIndex).getLink();
+	}
+
+	public int getObservationStartTime_s(final int observationIndex) {
+		return this.loadings.get(observationIndex).getStartTime_s();
+	}
+
+	public int getObservationEndTime_s(final int observationIndex) {
+		return this.loadings.get(observationIndex).getEndTime_s();
+	}
+
 	// -------------------- SIMPLE FUNCTIONALITY --------------------
 
 	public void freeze() {
@@ -206,6 +222,55 @@ public class MultiLinkMeasurement<L> implements Serializable {
 		return this.sensitivity * e_veh / var_veh2() * this.eta;
 	}
 
+	// -------------------- STATE SNAPSHOT --------------------
+
+	/**
+	 * Writes the definition and the learned state of this (initialized)
+	 * measurement.
+	 */
+	public void writeSnapshot(final DataOutput out,
+			final SnapshotKeyCodec<L> linkCodec) throws IOException {
+		out.writeInt(this.value_veh);
+		out.writeDouble(this.eta);
+		out.writeInt(this.loadings.size());
+		for (LinkLoading<L> loading : this.loadings) {
+			linkCodec.write(out, loading.getLink());
+			out.writeInt(loading.getStartTime_s());
+			out.writeInt(loading.getEndTime_s());
+		}
+		out.writeDouble(this.sensitivity);
+		this.avgMatches_veh.writeState(out);
+		for (LinkLoading<L> loading : this.loadings) {
+			loading.writeState(out);
+		}
+	}
+
+	/**
+	 * Reads a measurement that was written with
+	 * <code>writeSnapshot(..)</code> and initializes it with the given
+	 * calibrator before its learned state is restored.
+	 */
+	public static <L> MultiLinkMeasurement<L> readSnapshot(
+			final DataInput in, final SnapshotKeyCodec<L> linkCodec,
+			final Calibrator<L> calibrator) throws IOException {
+		final MultiLinkMeasurement<L> result = new MultiLinkMeasurement<L>(
+				in.readInt(), in.readDouble());
+		final int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			final L link = linkCodec.read(in);
+			final int start_s = in.readInt();
+			final int end_s = in.readInt();
+			result.addObservation(link, start_s, end_s);
+		}
+		result.init(calibrator);
+		result.sensitivity = in.readDouble();
+		result.avgMatches_veh.readState(in);
+		for (LinkLoading<L> loading : result.loadings) {
+			loading.readState(in);
+		}
+		return result;
+	}
+
 	// -------------------- OVERRIDING OF Object --------------------
 
 	@Override
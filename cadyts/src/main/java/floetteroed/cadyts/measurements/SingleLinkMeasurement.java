@@ -24,11 +24,15 @@
  */ 
 package floetteroed.cadyts.measurements;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Set;
 import java.util.logging.Logger;
 
 import floetteroed.cadyts.calibrators.Calibrator;
+import floetteroed.cadyts.calibrators.SnapshotKeyCodec;
 import floetteroed.cadyts.calibrators.TimedElement;
 import floetteroed.cadyts.demand.Demand;
 import floetteroed.cadyts.demand.Plan;
@@ -243,6 +247,52 @@ public class SingleLinkMeasurement<L> extends TimedElement implements
 		return result.toString();
 	}
 
+	// -------------------- STATE SNAPSHOT --------------------
+
+	/**
+	 * Writes the definition and the learned state of this (initialized)
+	 * measurement.
+	 */
+	public void writeSnapshot(final DataOutput out,
+			final SnapshotKeyCodec<L> linkCodec) throws IOException {
+		linkCodec.write(out, this.link);
+		out.writeDouble(this.measValue);
+		out.writeDouble(this.measVariance);
+		out.writeInt(this.getStartTime_s());
+		out.writeInt(this.getEndTime_s());
+		out.writeByte(this.type.ordinal());
+		this.loading.writeState(out);
+		this.avgLinkFeature.writeState(out);
+		out.writeDouble(this.lastLL);
+		out.writeDouble(this.lastLLPredErr);
+		out.writeDouble(this.lastLinkFeaturePredErr);
+	}
+
+	/**
+	 * Reads a measurement that was written with
+	 * <code>writeSnapshot(..)</code> and initializes it with the given
+	 * calibrator before its learned state is restored.
+	 */
+	public static <L> SingleLinkMeasurement<L> readSnapshot(
+			final DataInput in, final SnapshotKeyCodec<L> linkCodec,
+			final Calibrator<L> calibrator) throws IOException {
+		final L link = linkCodec.read(in);
+		final double measValue = in.readDouble();
+		final double measVariance = in.readDouble();
+		final int start_s = in.readInt();
+		final int end_s = in.readInt();
+		final TYPE type = TYPE.values()[in.readByte()];
+		final SingleLinkMeasurement<L> result = new SingleLinkMeasurement<L>(
+				link, measValue, measVariance, start_s, end_s, type);
+		result.init(calibrator);
+		result.loading.readState(in);
+		result.avgLinkFeature.readState(in);
+		result.lastLL = in.readDouble();
+		result.lastLLPredErr = in.readDouble();
+		result.lastLinkFeaturePredErr = in.readDouble();
+		return result;
+	}
+
 	// -------------------- PLAIN LL EVALUATION --------------------
 
 	// TODO NEW
@@ -24,6 +24,9 @@
  */ 
 package floetteroed.cadyts.supply;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Set;
 
@@ -60,4 +63,8 @@ public interface LinkLoading<L> extends Serializable {
 
 	public double get_dLinkFeature_dDemand(L link);
 
+	public void writeState(DataOutput out) throws IOException;
+
+	public void readState(DataInput in) throws IOException;
+
 }
@@ -24,6 +24,9 @@
  */ 
 package floetteroed.cadyts.supply;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -140,4 +143,16 @@ public class LinkLoadingLocal<L> extends TimedElement implements LinkLoading<L>
 	@Override
 	public void notifyPlanChoice(final Plan<L> plan) {
 	}
+
+	@Override
+	public void writeState(final DataOutput out) throws IOException {
+		this.regression.writeState(out);
+		out.writeInt(this.iteration);
+	}
+
+	@Override
+	public void readState(final DataInput in) throws IOException {
+		this.regression.readState(in);
+		this.iteration = in.readInt();
+	}
 }
@@ -24,6 +24,9 @@
  */ 
 package floetteroed.cadyts.supply;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -148,4 +151,15 @@ public class LinkLoadingProportional<L> extends TimedElement implements
 	public void notifyPlanChoice(final Plan<L> plan) {
 	}
 
+	@Override
+	public void writeState(final DataOutput out) throws IOException {
+		this.avgDemand_veh.writeState(out);
+		this.avgLinkFeature.writeState(out);
+	}
+
+	@Override
+	public void readState(final DataInput in) throws IOException {
+		this.avgDemand_veh.readState(in);
+		this.avgLinkFeature.readState(in);
+	}
 }
@@ -0,0 +1,323 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import floetteroed.cadyts.calibrators.analytical.AnalyticalCalibrator;
+import floetteroed.cadyts.calibrators.sampling.ChoiceSampler;
+import floetteroed.cadyts.calibrators.sampling.SamplingCalibrator;
+import floetteroed.cadyts.demand.Plan;
+import floetteroed.cadyts.demand.PlanBuilder;
+import floetteroed.cadyts.demand.PlanStep;
+import floetteroed.cadyts.measurements.MultiLinkMeasurement;
+import floetteroed.cadyts.measurements.SingleLinkMeasurement;
+import floetteroed.cadyts.supply.BasicSimResults;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Checks that a calibrator that is restored from a snapshot, or from Java
+ * serialization, makes exactly the same plan choices as the original
+ * calibrator. A synthetic scenario is run
+ * for some iterations, a snapshot is taken between the choice and the update
+ * of an iteration, and then both calibrators are continued side by side. Plan
+ * choices and choice probabilities are compared bit by bit.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class SnapshotRoundTripTest {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int BIN_SIZE_S = 3600;
+
+	private static final int LINK_CNT = 12;
+
+	private static final int PLAN_CNT = 4;
+
+	private static final int FIRST_DPT_S = 6 * 3600;
+
+	private static final int LAST_DPT_S = 9 * 3600;
+
+	private static final int AGENT_CNT = 200;
+
+	private static final int WARM_UP_ITERATIONS = 10;
+
+	private static final int ITERATIONS = 10;
+
+	private static final long SEED = 4711;
+
+	// -------------------- SCENARIO --------------------
+	private static List<List<Plan<String>>> newChoiceSets(final int agentCnt,
+			final PlanBuilder<String> builder, final Random rnd) {
+		final List<List<Plan<String>>> result = new ArrayList<List<Plan<String>>>();
+		for (int n = 0; n < agentCnt; n++) {
+			final int dpt_s = FIRST_DPT_S
+					+ rnd.nextInt(LAST_DPT_S - FIRST_DPT_S);
+			final List<Plan<String>> plans = new ArrayList<Plan<String>>();
+			for (int i = 0; i < PLAN_CNT; i++) {
+				builder.reset();
+				builder.addEntry(Integer.toString(rnd.nextInt(LINK_CNT)), dpt_s);
+				for (int step = 1; step <= 3; step++) {
+					builder.addTurn(Integer.toString(rnd.nextInt(LINK_CNT)),
+							dpt_s + 300 * step);
+				}
+				builder.addExit(dpt_s + 1200);
+				plans.add(builder.getResult());
+			}
+			result.add(plans);
+		}
+		return result;
+	}
+
+	private static void addMeasurements(final Calibrator<String> calibrator,
+			final Random rnd) {
+		for (int link = 0; link < LINK_CNT - 2; link++) {
+			for (int start_s = FIRST_DPT_S; start_s < LAST_DPT_S; start_s += BIN_SIZE_S) {
+				calibrator.addMeasurement(Integer.toString(link), start_s,
+						start_s + BIN_SIZE_S, 5 + rnd.nextInt(30),
+						SingleLinkMeasurement.TYPE.COUNT_VEH);
+			}
+		}
+		for (int link = LINK_CNT - 2; link < LINK_CNT; link++) {
+			calibrator.addMeasurement(Integer.toString(link), FIRST_DPT_S,
+					LAST_DPT_S, 5 + rnd.nextInt(30),
+					SingleLinkMeasurement.TYPE.FLOW_VEH_H);
+		}
+		final MultiLinkMeasurement<String> meas = new MultiLinkMeasurement<String>(
+				10, 0.5);
+		meas.addObservation("0", FIRST_DPT_S, LAST_DPT_S);
+		meas.addObservation("1", FIRST_DPT_S, LAST_DPT_S + 3600);
+		calibrator.addMeasurement(meas);
+	}
+
+	private static BasicSimResults<String> simulate(
+			final List<Plan<String>> chosenPlans, final Random rnd) {
+		final BasicSimResults<String> result = new BasicSimResults<String>(0,
+				BIN_SIZE_S, 24);
+		for (Plan<String> plan : chosenPlans) {
+			for (PlanStep<String> step : plan) {
+				final int bin = step.getEntryTime_s() / BIN_SIZE_S;
+				final double veh = 0.8 + 0.4 * rnd.nextDouble();
+				for (SingleLinkMeasurement.TYPE type : SingleLinkMeasurement.TYPE
+						.values()) {
+					result.getSimResults(type).add(step.getLink(), bin, veh);
+				}
+			}
+		}
+		return result;
+	}
+
+	// -------------------- CHOICE STAGE --------------------
+
+	/**
+	 * Lets all agents choose and appends the choices and the bits of all
+	 * choice probabilities to trace. The choice probabilities of a
+	 * SamplingCalibrator are proportional to the (here uniform) prior times
+	 * the exponentiated linear plan effects; these are computed with a
+	 * separate record such that the calibrator state is not changed.
+	 */
+	private static List<Plan<String>> choose(
+			final Calibrator<String> calibrator,
+			final List<List<Plan<String>>> choiceSets, final Random priorRnd,
+			final List<Long> trace) {
+		final List<Plan<String>> result = new ArrayList<Plan<String>>();
+		for (int n = 0; n < choiceSets.size(); n++) {
+			final List<Plan<String>> plans = choiceSets.get(n);
+			int choice;
+			final Vector probs;
+			if (calibrator instanceof AnalyticalCalibrator) {
+				final AnalyticalCalibrator<String> analytical = (AnalyticalCalibrator<String>) calibrator;
+				final Vector priorProbs = new Vector(plans.size());
+				for (int i = 0; i < plans.size(); i++) {
+					priorProbs.set(i, 1.0 + i);
+				}
+				priorProbs.mult(1.0 / priorProbs.sum());
+				choice = analytical.selectPlan(plans, priorProbs);
+				probs = analytical.getLastChoiceProbs();
+			} else {
+				final SamplingCalibrator<String> sampling = (SamplingCalibrator<String>) calibrator;
+				final double[] planEffects = sampling.calcLinearPlanEffects(
+						plans, new PlanEffectRecord());
+				probs = new Vector(plans.size());
+				for (int i = 0; i < plans.size(); i++) {
+					probs.set(i, Math.exp(planEffects[i]));
+				}
+				probs.mult(1.0 / probs.sum());
+				final ChoiceSampler<String> sampler = sampling.getSampler(n);
+				int draws = 0;
+				do {
+					choice = priorRnd.nextInt(plans.size());
+					draws++;
+				} while (!sampler.isAccepted(plans.get(choice))
+						&& draws < sampling.getMaxDraws());
+			}
+			for (int i = 0; i < probs.size(); i++) {
+				trace.add(Double.doubleToLongBits(probs.get(i)));
+			}
+			trace.add((long) choice);
+			result.add(plans.get(choice));
+		}
+		return result;
+	}
+
+	// -------------------- SNAPSHOT --------------------
+
+	private static byte[] snapshot(final Calibrator<String> calibrator)
+			throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		calibrator.writeSnapshot(out, new BasicSnapshotKeyCodec<String>());
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Calibrator<String> restore(final byte[] snapshot)
+			throws IOException {
+		return Calibrator.readSnapshot(new DataInputStream(
+				new ByteArrayInputStream(snapshot)),
+				new BasicSnapshotKeyCodec<String>());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Calibrator<String> serializeAndDeserialize(
+			final Calibrator<String> calibrator) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(calibrator);
+		out.close();
+		final ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		try {
+			return (Calibrator<String>) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static void assertRoundTrip(final Calibrator<String> original,
+			final boolean javaSerialization) throws IOException {
+
+		final List<List<Plan<String>>> choiceSets = newChoiceSets(AGENT_CNT,
+				original.newPlanBuilder(), new Random(SEED));
+		addMeasurements(original, new Random(SEED));
+		final Random priorRnd = new Random(SEED + 1);
+		final Random simRnd = new Random(SEED + 2);
+		for (int it = 0; it < WARM_UP_ITERATIONS; it++) {
+			original.afterNetworkLoading(simulate(
+					choose(original, choiceSets, priorRnd, new ArrayList<Long>()),
+					simRnd));
+		}
+		final List<Plan<String>> pendingChoices = choose(original, choiceSets,
+				priorRnd, new ArrayList<Long>());
+
+		final byte[] snapshot = snapshot(original);
+		final Calibrator<String> restored = (javaSerialization ? serializeAndDeserialize(original)
+				: restore(snapshot));
+		assertEquals(original.getClass(), restored.getClass());
+		assertArrayEquals(snapshot, snapshot(restored));
+
+		final List<List<Long>> traces = new ArrayList<List<Long>>();
+		for (Calibrator<String> calibrator : Arrays.asList(original, restored)) {
+			final Random continuedPriorRnd = new Random(SEED + 3);
+			final Random continuedSimRnd = new Random(SEED + 4);
+			final List<Long> trace = new ArrayList<Long>();
+			calibrator.afterNetworkLoading(simulate(pendingChoices,
+					continuedSimRnd));
+			for (int it = 0; it < ITERATIONS; it++) {
+				calibrator.afterNetworkLoading(simulate(
+						choose(calibrator, choiceSets, continuedPriorRnd, trace),
+						continuedSimRnd));
+			}
+			traces.add(trace);
+		}
+
+		assertEquals(ITERATIONS * AGENT_CNT * (PLAN_CNT + 1), traces.get(0)
+				.size());
+		assertEquals(traces.get(0), traces.get(1));
+		assertArrayEquals(snapshot(original), snapshot(restored));
+	}
+
+	// -------------------- TESTS --------------------
+
+	private static SamplingCalibrator<String> newSamplingCalibrator(
+			final boolean compactSamplerState) {
+		final SamplingCalibrator<String> result = new SamplingCalibrator<String>(
+				null, SEED, BIN_SIZE_S);
+		result.setProportionalAssignment(true);
+		if (compactSamplerState) {
+			result.setCompactSamplerState(true, null);
+		}
+		return result;
+	}
+
+	@Test
+	public void testAnalyticalCalibrator() throws IOException {
+		assertRoundTrip(new AnalyticalCalibrator<String>(null, SEED,
+				BIN_SIZE_S), false);
+	}
+
+	@Test
+	public void testSamplingCalibrator() throws IOException {
+		assertRoundTrip(newSamplingCalibrator(false), false);
+	}
+
+	@Test
+	public void testSamplingCalibratorWithCompactSamplerState()
+			throws IOException {
+		assertRoundTrip(newSamplingCalibrator(true), false);
+	}
+
+	@Test
+	public void testSamplingCalibratorJavaSerialization() throws IOException {
+		assertRoundTrip(newSamplingCalibrator(false), true);
+	}
+
+	@Test
+	public void testSamplingCalibratorWithCompactSamplerStateJavaSerialization()
+			throws IOException {
+		assertRoundTrip(newSamplingCalibrator(true), true);
+	}
+}
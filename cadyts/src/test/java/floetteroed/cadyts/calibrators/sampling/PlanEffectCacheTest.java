@@ -0,0 +1,121 @@
+/*
+ * Cadyts - Calibration of dynamic traffic simulations
+ *
+ * Copyright 2009-2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Cadyts.
+ *
+ * Cadyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cadyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cadyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.cadyts.calibrators.sampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import floetteroed.cadyts.demand.Plan;
+import floetteroed.cadyts.demand.PlanBuilder;
+
+/**
+ * Checks that plans whose links have equal hash codes but differ otherwise do
+ * not share a cache entry.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class PlanEffectCacheTest {
+
+	// -------------------- INTERNALS --------------------
+
+	/**
+	 * A link whose hash code does not depend on its id.
+	 */
+	private static class CollidingLink {
+
+		private final String id;
+
+		private CollidingLink(final String id) {
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			return (other instanceof CollidingLink)
+					&& this.id.equals(((CollidingLink) other).id);
+		}
+
+		@Override
+		public int hashCode() {
+			return 42;
+		}
+	}
+
+	private static Plan<CollidingLink> newPlan(final String... linkIds) {
+		final PlanBuilder<CollidingLink> builder = new PlanBuilder<CollidingLink>(
+				true, true);
+		int time_s = 0;
+		for (String linkId : linkIds) {
+			builder.addTurn(new CollidingLink(linkId), time_s);
+			time_s += 60;
+		}
+		builder.addExit(time_s);
+		return builder.getResult();
+	}
+
+	// -------------------- TESTS --------------------
+
+	@Test
+	public void testCollidingLinks() {
+		final Plan<CollidingLink> plan1 = newPlan("a", "b");
+		final Plan<CollidingLink> plan2 = newPlan("a", "c");
+		assertEquals(plan1.getStep(1).getLink().hashCode(), plan2.getStep(1)
+				.getLink().hashCode());
+
+		final PlanEffectCache<CollidingLink> cache = new PlanEffectCache<
+				CollidingLink>(16);
+		cache.put(plan1, 1.0);
+		assertTrue(Double.isNaN(cache.get(plan2)));
+		cache.put(plan2, 2.0);
+		assertEquals(1.0, cache.get(plan1), 0.0);
+		assertEquals(2.0, cache.get(plan2), 0.0);
+
+		// a plan with the same steps shares the entry
+		assertEquals(1.0, cache.get(newPlan("a", "b")), 0.0);
+		assertTrue(Double.isNaN(cache.get(newPlan("a", "b", "c"))));
+		assertTrue(Double.isNaN(cache.get(newPlan("a"))));
+
+		cache.invalidate();
+		assertTrue(Double.isNaN(cache.get(plan1)));
+	}
+
+	@Test
+	public void testReusedStepArrays() {
+		// a single set: every put evicts the least recently used entry
+		final PlanEffectCache<CollidingLink> cache = new PlanEffectCache<
+				CollidingLink>(1);
+		for (int i = 0; i < 20; i++) {
+			final String[] linkIds = new String[1 + (i * 7) % 5];
+			for (int j = 0; j < linkIds.length; j++) {
+				linkIds[j] = Integer.toString(i + j);
+			}
+			cache.put(newPlan(linkIds), i);
+			assertEquals(i, cache.get(newPlan(linkIds)), 0.0);
+		}
+	}
+}
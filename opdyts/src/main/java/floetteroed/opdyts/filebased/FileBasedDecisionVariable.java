@@ -54,6 +54,12 @@ public class FileBasedDecisionVariable implements DecisionVariable {
 		this.newDecisionVariableFileName = decisionVariableFileName;
 	}
 
+	// -------------------- GETTERS --------------------
+
+	public String getDecisionVariableId() {
+		return this.decisionVariableId;
+	}
+
 	// -------------------- FILE-BASED FUNCTIONALITY --------------------
 
 	public void writeToNewDecisionVariableFile(final String folder, final String fileName) {
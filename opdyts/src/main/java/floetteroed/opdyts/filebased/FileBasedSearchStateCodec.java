@@ -0,0 +1,93 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.opdyts.filebased;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import floetteroed.opdyts.SimulatorState;
+import floetteroed.opdyts.searchalgorithms.SearchStateCodec;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Checkpoints file-based decision variables by their ids and file-based
+ * simulator states by their objective function values and state vectors.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class FileBasedSearchStateCodec implements SearchStateCodec<FileBasedDecisionVariable> {
+
+	// -------------------- CONSTANTS --------------------
+
+	private final String executionFolder;
+
+	private final String decisionVariableFileName;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	/**
+	 * The parameters are those with which the decision variables are created.
+	 */
+	public FileBasedSearchStateCodec(final String executionFolder, final String decisionVariableFileName) {
+		this.executionFolder = executionFolder;
+		this.decisionVariableFileName = decisionVariableFileName;
+	}
+
+	// --------------- IMPLEMENTATION OF SearchStateCodec ---------------
+
+	@Override
+	public void writeDecisionVariable(final FileBasedDecisionVariable decisionVariable, final DataOutput out)
+			throws IOException {
+		out.writeUTF(decisionVariable.getDecisionVariableId());
+	}
+
+	@Override
+	public FileBasedDecisionVariable readDecisionVariable(final DataInput in) throws IOException {
+		return new FileBasedDecisionVariable(in.readUTF(), this.executionFolder, this.decisionVariableFileName);
+	}
+
+	@Override
+	public void writeSimulatorState(final SimulatorState state, final DataOutput out) throws IOException {
+		final FileBasedSimulatorState fileBasedState = (FileBasedSimulatorState) state;
+		out.writeDouble(fileBasedState.getObjectiveFunctionValue());
+		final Vector vector = fileBasedState.getReferenceToVectorRepresentation();
+		out.writeInt(vector.size());
+		for (int i = 0; i < vector.size(); i++) {
+			out.writeDouble(vector.get(i));
+		}
+	}
+
+	@Override
+	public SimulatorState readSimulatorState(final DataInput in) throws IOException {
+		final double objectiveFunctionValue = in.readDouble();
+		final double[] vector = new double[in.readInt()];
+		for (int i = 0; i < vector.length; i++) {
+			vector[i] = in.readDouble();
+		}
+		return new FileBasedSimulatorState(objectiveFunctionValue, new Vector(vector));
+	}
+}
@@ -27,7 +27,7 @@ package floetteroed.opdyts.filebased;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import floetteroed.opdyts.SimulatorState;
@@ -36,6 +36,9 @@ import floetteroed.opdyts.trajectorysampling.TrajectorySampler;
 import floetteroed.utilities.math.Vector;
 
 /**
+ * Advances an external simulation either by running a command per iteration
+ * that writes the new state into a text file, or by exchanging binary frames
+ * with a long-lived process through a {@link SimulationWorker}.
  * 
  * @author Gunnar Flötteröd
  *
@@ -50,6 +53,8 @@ public class FileBasedSimulator implements Simulator<FileBasedDecisionVariable,
 
 	private final String newStateFileName;
 
+	private final SimulationWorker worker;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	public FileBasedSimulator(final String executionFolder, final String advanceSimulationCommand,
@@ -57,6 +62,40 @@ public class FileBasedSimulator implements Simulator<FileBasedDecisionVariable,
 		this.executionFolder = executionFolder;
 		this.advanceSimulationCommand = advanceSimulationCommand;
 		this.newStateFileName = newStateFileName;
+		this.worker = null;
+	}
+
+	public FileBasedSimulator(final SimulationWorker worker) {
+		if (worker == null) {
+			throw new IllegalArgumentException("worker is null");
+		}
+		this.executionFolder = null;
+		this.advanceSimulationCommand = null;
+		this.newStateFileName = null;
+		this.worker = worker;
+	}
+
+	/**
+	 * Creates simulators that each keep their own simulation process alive, for
+	 * use with <code>RandomSearch.setParallelSimulators(..)</code>.
+	 */
+	public static List<FileBasedSimulator> newWorkerPool(final String executionFolder, final String workerCommand,
+			final long timeout_ms, final int size) {
+		final List<FileBasedSimulator> result = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(new FileBasedSimulator(new SimulationWorker(executionFolder, workerCommand, timeout_ms,
+					SimulationWorker.DEFAULT_MAX_RESTARTS)));
+		}
+		return result;
+	}
+
+	/**
+	 * Ends the simulation process of a worker-based simulator.
+	 */
+	public void close() {
+		if (this.worker != null) {
+			this.worker.close();
+		}
 	}
 
 	// -------------------- INTERNALS --------------------
@@ -76,7 +115,7 @@ public class FileBasedSimulator implements Simulator<FileBasedDecisionVariable,
 	}
 
 	private FileBasedSimulatorState loadNewState() {
-		final List<Double> numbers = new LinkedList<>();
+		final List<Double> numbers = new ArrayList<>();
 		try {
 			String line;
 			final BufferedReader reader = new BufferedReader(
@@ -105,8 +144,14 @@ public class FileBasedSimulator implements Simulator<FileBasedDecisionVariable,
 		// evaluator.initialize();
 		FileBasedSimulatorState newState = null;
 		while (!evaluator.foundSolution()) {
-			this.advanceSimulation();
-			newState = this.loadNewState();
+			if (this.worker != null) {
+				final FileBasedDecisionVariable decisionVariable = evaluator.getCurrentDecisionVariable();
+				newState = this.worker
+						.advance(decisionVariable != null ? decisionVariable.getDecisionVariableId() : null);
+			} else {
+				this.advanceSimulation();
+				newState = this.loadNewState();
+			}
 			evaluator.afterIteration(newState);
 		}
 		return newState;
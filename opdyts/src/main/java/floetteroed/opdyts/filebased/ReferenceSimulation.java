@@ -0,0 +1,183 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.opdyts.filebased;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A tiny deterministic simulation for trying out the file-based interfaces.
+ * The decision variable id is a number u, and each iteration moves the state
+ * vector x towards (sin(u), sin(2u), ...). The objective function value is
+ * the squared deviation of the mean of x from 0.3.
+ * <p>
+ * Usage:
+ * <ul>
+ * <li><code>ReferenceSimulation once dim decisionVariableFile stateFile</code>
+ * performs one iteration from the state in the text file (zeros if it does not
+ * exist) and overwrites it with the new state, as expected by
+ * <code>FileBasedSimulator</code>.
+ * <li><code>ReferenceSimulation worker dim [failEvery crash|hang]</code> serves
+ * the protocol of {@link SimulationWorker} and, for trying out failure
+ * handling, dies or hangs at every failEvery-th request.
+ * </ul>
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class ReferenceSimulation {
+
+	// -------------------- MEMBERS --------------------
+
+	private double u = 0;
+
+	private double[] x;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	private ReferenceSimulation(final int dim) {
+		this.x = new double[dim];
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private void advance() {
+		for (int i = 0; i < this.x.length; i++) {
+			this.x[i] = 0.5 * this.x[i] + 0.5 * Math.sin(this.u * (i + 1));
+		}
+	}
+
+	private double objectiveFunctionValue() {
+		double mean = 0;
+		for (double xi : this.x) {
+			mean += xi;
+		}
+		mean /= this.x.length;
+		return (mean - 0.3) * (mean - 0.3);
+	}
+
+	private void runOnce(final File decisionVariableFile, final File stateFile) throws IOException {
+		if (decisionVariableFile.exists()) {
+			final BufferedReader reader = new BufferedReader(new FileReader(decisionVariableFile));
+			this.u = Double.parseDouble(reader.readLine().trim());
+			reader.close();
+		}
+		if (stateFile.exists()) {
+			final List<Double> numbers = new ArrayList<>();
+			final BufferedReader reader = new BufferedReader(new FileReader(stateFile));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				numbers.add(Double.parseDouble(line.trim()));
+			}
+			reader.close();
+			for (int i = 0; i < this.x.length; i++) {
+				this.x[i] = numbers.get(i + 1);
+			}
+		}
+		this.advance();
+		final PrintWriter writer = new PrintWriter(stateFile);
+		writer.println(this.objectiveFunctionValue());
+		for (double xi : this.x) {
+			writer.println(xi);
+		}
+		writer.close();
+	}
+
+	private void serve(final int failEvery, final boolean hang) throws IOException, InterruptedException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+		out.writeInt(SimulationWorker.HANDSHAKE);
+		out.flush();
+		int requestCnt = 0;
+		while (true) {
+			final int request;
+			try {
+				request = in.readInt();
+			} catch (EOFException e) {
+				return;
+			}
+			if (request == SimulationWorker.SHUTDOWN) {
+				return;
+			} else if (request != SimulationWorker.ADVANCE) {
+				out.writeInt(SimulationWorker.ERROR);
+				out.writeUTF("unknown request " + request);
+				out.flush();
+				return;
+			}
+			if (in.readBoolean()) {
+				this.u = Double.parseDouble(in.readUTF());
+			}
+			final int dim = in.readInt();
+			if (dim >= 0) {
+				final double[] fromState = new double[dim];
+				for (int i = 0; i < dim; i++) {
+					fromState[i] = in.readDouble();
+				}
+				this.x = fromState;
+			}
+
+			if (failEvery > 0 && ++requestCnt % failEvery == 0) {
+				if (hang) {
+					Thread.sleep(Long.MAX_VALUE);
+				} else {
+					System.exit(3);
+				}
+			}
+
+			this.advance();
+			out.writeInt(SimulationWorker.OK);
+			out.writeDouble(this.objectiveFunctionValue());
+			out.writeInt(this.x.length);
+			for (double xi : this.x) {
+				out.writeDouble(xi);
+			}
+			out.flush();
+		}
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) throws Exception {
+		final ReferenceSimulation simulation = new ReferenceSimulation(Integer.parseInt(args[1]));
+		if ("once".equals(args[0])) {
+			simulation.runOnce(new File(args[2]), new File(args[3]));
+		} else if ("worker".equals(args[0])) {
+			simulation.serve(args.length > 2 ? Integer.parseInt(args[2]) : 0,
+					args.length > 3 && "hang".equals(args[3]));
+		} else {
+			throw new IllegalArgumentException("unknown mode " + args[0]);
+		}
+	}
+}
@@ -0,0 +1,381 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.opdyts.filebased;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Keeps an external simulation process alive across simulation iterations.
+ * The process is started in the execution folder and exchanges binary frames,
+ * as written by <code>java.io.DataOutputStream</code>, through its standard
+ * input and output:
+ * <ul>
+ * <li>After start-up, the process writes the int <code>HANDSHAKE</code>.
+ * <li>An iteration request consists of the int <code>ADVANCE</code>, a boolean
+ * that indicates if a new decision variable follows, that decision variable's
+ * id (<code>writeUTF</code>), and an int n followed by n doubles. If n is not
+ * -1, the process continues from that state vector instead of its own state.
+ * <li>The process answers with the int <code>OK</code>, the objective function
+ * value, an int n and the n doubles of the new state vector, or with the int
+ * <code>ERROR</code> and a message (<code>writeUTF</code>).
+ * <li>The int <code>SHUTDOWN</code>, or the end of its standard input, asks
+ * the process to exit.
+ * </ul>
+ * A process that dies or does not answer within the timeout is killed and
+ * restarted. The new process is sent the last decision variable and continues
+ * from the last state vector reported before the failure. An error reported by
+ * the process itself is not retried. Standard error is inherited from this
+ * JVM.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class SimulationWorker implements Closeable {
+
+	// -------------------- CONSTANTS --------------------
+
+	public static final int HANDSHAKE = 0x4f504459;
+
+	public static final int SHUTDOWN = 0;
+
+	public static final int ADVANCE = 1;
+
+	public static final int OK = 0;
+
+	public static final int ERROR = 1;
+
+	public static final long DEFAULT_TIMEOUT_MS = 60 * 1000;
+
+	public static final int DEFAULT_MAX_RESTARTS = 3;
+
+	private final Logger log = Logger.getLogger(this.getClass().getName());
+
+	private final String executionFolder;
+
+	private final List<String> command;
+
+	private final long timeout_ms;
+
+	private final int maxRestarts;
+
+	private final ExecutorService exchanger;
+
+	// -------------------- MEMBERS --------------------
+
+	private Process process = null;
+
+	private DataOutputStream out = null;
+
+	private DataInputStream in = null;
+
+	// the decision variable known to the current process
+	private String processDecisionVariableId = null;
+
+	private String decisionVariableId = null;
+
+	private FileBasedSimulatorState lastState = null;
+
+	private boolean resumeLastState = false;
+
+	private int failureCnt = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	/**
+	 * @param executionFolder
+	 *            the working directory of the simulation process
+	 * @param command
+	 *            the command that starts the simulation process, tokenized at
+	 *            white space like <code>Runtime.exec(String)</code> does
+	 * @param timeout_ms
+	 *            how long to wait for the process to start up or to answer a
+	 *            request
+	 * @param maxRestarts
+	 *            how often the process may be restarted in a row before an
+	 *            iteration is given up
+	 */
+	public SimulationWorker(final String executionFolder, final String command, final long timeout_ms,
+			final int maxRestarts) {
+		if (command == null || command.trim().isEmpty()) {
+			throw new IllegalArgumentException("no simulation command given");
+		}
+		if (timeout_ms <= 0) {
+			throw new IllegalArgumentException("timeout must be strictly positive");
+		}
+		if (maxRestarts < 0) {
+			throw new IllegalArgumentException("maximum number of restarts is negative");
+		}
+		this.executionFolder = executionFolder;
+		this.command = new ArrayList<>();
+		final StringTokenizer tokenizer = new StringTokenizer(command);
+		while (tokenizer.hasMoreTokens()) {
+			this.command.add(tokenizer.nextToken());
+		}
+		this.timeout_ms = timeout_ms;
+		this.maxRestarts = maxRestarts;
+		this.exchanger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread result = new Thread(runnable, "simulation-worker");
+				result.setDaemon(true);
+				return result;
+			}
+		});
+	}
+
+	public SimulationWorker(final String executionFolder, final String command) {
+		this(executionFolder, command, DEFAULT_TIMEOUT_MS, DEFAULT_MAX_RESTARTS);
+	}
+
+	// -------------------- GETTERS --------------------
+
+	/**
+	 * Number of times the simulation process died or timed out.
+	 */
+	public synchronized int getFailureCnt() {
+		return this.failureCnt;
+	}
+
+	public synchronized FileBasedSimulatorState getLastState() {
+		return this.lastState;
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private <T> T exchange(final Callable<T> exchange, final String what) throws IOException {
+		final Future<T> future = this.exchanger.submit(exchange);
+		try {
+			return future.get(this.timeout_ms, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new IOException("no " + what + " within " + this.timeout_ms + " ms");
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for " + what);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	private void start() throws IOException {
+		final ProcessBuilder builder = new ProcessBuilder(this.command);
+		if (this.executionFolder != null) {
+			builder.directory(new File(this.executionFolder));
+		}
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		this.process = builder.start();
+		this.out = new DataOutputStream(new BufferedOutputStream(this.process.getOutputStream()));
+		this.in = new DataInputStream(new BufferedInputStream(this.process.getInputStream()));
+		this.processDecisionVariableId = null;
+		final DataInputStream in = this.in; // inner class requires final
+		final int handshake = this.exchange(new Callable<Integer>() {
+			@Override
+			public Integer call() throws IOException {
+				return in.readInt();
+			}
+		}, "handshake");
+		if (handshake != HANDSHAKE) {
+			throw new IOException("unexpected handshake " + Integer.toHexString(handshake));
+		}
+	}
+
+	private void stop() {
+		if (this.process == null) {
+			return;
+		}
+		for (Iterator<ProcessHandle> it = this.process.descendants().iterator(); it.hasNext();) {
+			it.next().destroyForcibly();
+		}
+		this.process.destroyForcibly();
+		try {
+			this.process.waitFor(this.timeout_ms, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			this.out.close();
+		} catch (IOException e) {
+			// the process is gone anyway
+		}
+		try {
+			this.in.close();
+		} catch (IOException e) {
+			// the process is gone anyway
+		}
+		this.process = null;
+		this.out = null;
+		this.in = null;
+	}
+
+	private String describeFailure(final IOException e) {
+		if (this.process == null) {
+			return "simulation process could not be started (" + e.getMessage() + ")";
+		}
+		try {
+			// an end of stream usually shortly precedes the exit
+			this.process.waitFor(100, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e2) {
+			Thread.currentThread().interrupt();
+		}
+		if (!this.process.isAlive()) {
+			return "simulation process terminated with exit code " + this.process.exitValue() + " (" + e.getMessage()
+					+ ")";
+		} else {
+			return "simulation process failed (" + e.getMessage() + ")";
+		}
+	}
+
+	private FileBasedSimulatorState request() throws IOException {
+		final DataOutputStream out = this.out;
+		final DataInputStream in = this.in;
+		final String newDecisionVariableId = (this.decisionVariableId != null
+				&& !this.decisionVariableId.equals(this.processDecisionVariableId)) ? this.decisionVariableId : null;
+		final double[] fromState = (this.resumeLastState
+				? this.lastState.getReferenceToVectorRepresentation().toArray() : null);
+		final FileBasedSimulatorState result = this.exchange(new Callable<FileBasedSimulatorState>() {
+			@Override
+			public FileBasedSimulatorState call() throws IOException {
+				out.writeInt(ADVANCE);
+				out.writeBoolean(newDecisionVariableId != null);
+				if (newDecisionVariableId != null) {
+					out.writeUTF(newDecisionVariableId);
+				}
+				if (fromState != null) {
+					out.writeInt(fromState.length);
+					for (double x : fromState) {
+						out.writeDouble(x);
+					}
+				} else {
+					out.writeInt(-1);
+				}
+				out.flush();
+
+				final int status = in.readInt();
+				if (status == OK) {
+					final double objectiveFunctionValue = in.readDouble();
+					final double[] state = new double[in.readInt()];
+					for (int i = 0; i < state.length; i++) {
+						state[i] = in.readDouble();
+					}
+					return new FileBasedSimulatorState(objectiveFunctionValue, new Vector(state));
+				} else if (status == ERROR) {
+					throw new RuntimeException("simulation process reported: " + in.readUTF());
+				} else {
+					throw new IOException("unexpected status " + status);
+				}
+			}
+		}, "answer");
+		if (newDecisionVariableId != null) {
+			this.processDecisionVariableId = newDecisionVariableId;
+		}
+		return result;
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * Lets the simulation process perform one iteration and returns the new
+	 * state.
+	 * 
+	 * @param decisionVariableId
+	 *            the id of the decision variable to simulate, or null to keep
+	 *            the previous one
+	 */
+	public synchronized FileBasedSimulatorState advance(final String decisionVariableId) {
+		if (decisionVariableId != null) {
+			this.decisionVariableId = decisionVariableId;
+		}
+		IOException failure = null;
+		for (int attempt = 0; attempt <= this.maxRestarts; attempt++) {
+			try {
+				if (this.process == null) {
+					this.start();
+				}
+				this.lastState = this.request();
+				this.resumeLastState = false;
+				return this.lastState;
+			} catch (IOException e) {
+				failure = e;
+				this.failureCnt++;
+				this.log.warning(this.describeFailure(e));
+				this.stop();
+				this.resumeLastState = (this.lastState != null);
+			}
+		}
+		throw new RuntimeException(
+				"simulation process failed " + (this.maxRestarts + 1) + " times in a row: " + this.command, failure);
+	}
+
+	/**
+	 * Asks the simulation process to exit and kills it if it does not do so
+	 * within the timeout. A later call to <code>advance(String)</code> starts a
+	 * new process, which continues from the last state.
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.process == null) {
+			return;
+		}
+		try {
+			this.out.writeInt(SHUTDOWN);
+			this.out.flush();
+			this.process.waitFor(this.timeout_ms, TimeUnit.MILLISECONDS);
+		} catch (IOException e) {
+			// the process is gone already
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.stop();
+		this.resumeLastState = (this.lastState != null);
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.opdyts.filebased;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import floetteroed.opdyts.ObjectiveFunction;
+import floetteroed.opdyts.SimulatorState;
+import floetteroed.opdyts.convergencecriteria.ConvergenceCriterionResult;
+import floetteroed.opdyts.trajectorysampling.SamplingStage;
+import floetteroed.opdyts.trajectorysampling.TrajectorySampler;
+import floetteroed.utilities.statisticslogging.Statistic;
+
+/**
+ * Runs the {@link ReferenceSimulation} through a {@link FileBasedSimulator},
+ * once with a new process and a state text file per iteration and once with a
+ * persistent {@link SimulationWorker}, and then lets the worker process crash
+ * or hang at regular intervals. Reports the time per iteration and checks
+ * that all runs produce the same trajectory.
+ * <p>
+ * Usage: <code>SimulationWorkerBenchmark [stateDimension]</code>
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class SimulationWorkerBenchmark {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final String DECISION_VARIABLE_FILE = "decisionvariable.txt";
+
+	private static final String STATE_FILE = "state.txt";
+
+	private static final int ITERATIONS_PER_DECISION_VARIABLE = 5;
+
+	private SimulationWorkerBenchmark() {
+	}
+
+	// -------------------- SAMPLER --------------------
+
+	/**
+	 * Switches through the decision variables at a fixed rhythm and records
+	 * the objective function values.
+	 */
+	private static class FixedSequenceSampler
+			implements TrajectorySampler<FileBasedDecisionVariable, SimulatorState> {
+
+		private final List<FileBasedDecisionVariable> decisionVariables;
+
+		private final int iterations;
+
+		private final List<Double> objectiveFunctionValues = new ArrayList<>();
+
+		private FileBasedDecisionVariable currentDecisionVariable;
+
+		private FixedSequenceSampler(final List<FileBasedDecisionVariable> decisionVariables, final int iterations) {
+			this.decisionVariables = decisionVariables;
+			this.iterations = iterations;
+			this.currentDecisionVariable = decisionVariables.get(0);
+			this.currentDecisionVariable.implementInSimulation();
+		}
+
+		@Override
+		public boolean foundSolution() {
+			return (this.objectiveFunctionValues.size() >= this.iterations);
+		}
+
+		@Override
+		public FileBasedDecisionVariable getCurrentDecisionVariable() {
+			return this.currentDecisionVariable;
+		}
+
+		@Override
+		public int getTotalTransitionCnt() {
+			return this.objectiveFunctionValues.size();
+		}
+
+		@Override
+		public Map<FileBasedDecisionVariable, ConvergenceCriterionResult> getDecisionVariable2convergenceResultView() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addStatistic(final String logFileName,
+				final Statistic<SamplingStage<FileBasedDecisionVariable>> statistic) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setStandardLogFileName(final String logFileName) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void afterIteration(final SimulatorState newState) {
+			this.objectiveFunctionValues.add(((FileBasedSimulatorState) newState).getObjectiveFunctionValue());
+			final int cnt = this.objectiveFunctionValues.size();
+			if (cnt % ITERATIONS_PER_DECISION_VARIABLE == 0) {
+				this.currentDecisionVariable = this.decisionVariables
+						.get((cnt / ITERATIONS_PER_DECISION_VARIABLE) % this.decisionVariables.size());
+				this.currentDecisionVariable.implementInSimulation();
+			}
+		}
+
+		@Override
+		public ObjectiveFunction<SimulatorState> getObjectiveFunction() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static List<Double> run(final FileBasedSimulator simulator, final List<FileBasedDecisionVariable> decisionVariables,
+			final int iterations, final String label) {
+		final FixedSequenceSampler sampler = new FixedSequenceSampler(decisionVariables, iterations);
+		final long start_ms = System.currentTimeMillis();
+		simulator.run(sampler);
+		final long time_ms = System.currentTimeMillis() - start_ms;
+		System.out.println(label + ": " + iterations + " iterations in " + time_ms + " ms, "
+				+ ((double) time_ms / iterations) + " ms per iteration");
+		return sampler.objectiveFunctionValues;
+	}
+
+	private static String same(final List<Double> values, final List<Double> reference) {
+		return (values.equals(reference.subList(0, values.size())) ? "same trajectory" : "DIFFERENT trajectory");
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) throws IOException {
+
+		final int dim = (args.length > 0 ? Integer.parseInt(args[0]) : 1000);
+		Logger.getLogger(SimulationWorker.class.getName()).setLevel(Level.SEVERE);
+
+		final File folder = Files.createTempDirectory("opdyts").toFile();
+		final String folderName = folder.getAbsolutePath();
+		final List<FileBasedDecisionVariable> decisionVariables = new ArrayList<>();
+		for (int k = 1; k <= 4; k++) {
+			decisionVariables.add(new FileBasedDecisionVariable(Double.toString(0.1 * k), folderName,
+					DECISION_VARIABLE_FILE));
+		}
+		final StringBuffer classPath = new StringBuffer();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if (classPath.length() > 0) {
+				classPath.append(File.pathSeparator);
+			}
+			classPath.append(new File(entry).getAbsolutePath());
+		}
+		final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java -cp "
+				+ classPath + " " + ReferenceSimulation.class.getName();
+
+		final List<Double> perProcess = run(new FileBasedSimulator(folderName,
+				java + " once " + dim + " " + DECISION_VARIABLE_FILE + " " + STATE_FILE, STATE_FILE),
+				decisionVariables, 20, "process per iteration");
+
+		final FileBasedSimulator worker = new FileBasedSimulator(
+				new SimulationWorker(folderName, java + " worker " + dim));
+		final List<Double> persistent = run(worker, decisionVariables, 2000, "persistent worker");
+		worker.close();
+		System.out.println("  " + same(perProcess, persistent));
+
+		final SimulationWorker crashingWorker = new SimulationWorker(folderName, java + " worker " + dim + " 7 crash");
+		final List<Double> crashing = run(new FileBasedSimulator(crashingWorker), decisionVariables, 50,
+				"worker crashing every 7th iteration");
+		crashingWorker.close();
+		System.out.println("  " + crashingWorker.getFailureCnt() + " restarts, " + same(crashing, persistent));
+
+		final SimulationWorker hangingWorker = new SimulationWorker(folderName, java + " worker " + dim + " 7 hang",
+				3000, SimulationWorker.DEFAULT_MAX_RESTARTS);
+		final List<Double> hanging = run(new FileBasedSimulator(hangingWorker), decisionVariables, 20,
+				"worker hanging every 7th iteration, 3 s timeout");
+		hangingWorker.close();
+		System.out.println("  " + hangingWorker.getFailureCnt() + " restarts, " + same(hanging, persistent));
+
+		new File(folder, DECISION_VARIABLE_FILE).delete();
+		new File(folder, STATE_FILE).delete();
+		folder.delete();
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.opdyts.searchalgorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import floetteroed.opdyts.DecisionVariable;
+import floetteroed.opdyts.ObjectiveFunction;
+import floetteroed.opdyts.SimulatorState;
+import floetteroed.opdyts.convergencecriteria.ConvergenceCriterionResult;
+import floetteroed.opdyts.trajectorysampling.MultiTrajectorySampler;
+import floetteroed.opdyts.trajectorysampling.MultiTrajectorySampler.Assignment;
+import floetteroed.opdyts.trajectorysampling.SamplingStage;
+import floetteroed.opdyts.trajectorysampling.TrajectorySampler;
+import floetteroed.utilities.statisticslogging.Statistic;
+
+/**
+ * Advances different decision variables of a MultiTrajectorySampler in several
+ * independent simulator instances at the same time. Each simulator runs in its
+ * own thread. The simulators advance in rounds of one iteration each, after
+ * which their new states are fed to the sampler in the order of the
+ * simulators, such that a run is reproducible. The run ends when the sampler
+ * has found a solution; the results of the other simulators in that round are
+ * discarded.
+ * <p>
+ * The implementInSimulation() calls of decision variables and simulator states
+ * are made by the thread that runs the respective simulator, which can be
+ * identified through getCurrentSimulatorIndex().
+ * <p>
+ * Statistics that a simulator adds to its TrajectorySampler are added to the
+ * shared MultiTrajectorySampler, such that each simulator adding the same
+ * statistic results in as many copies of it in the log.
+ * <p>
+ * Any other TrajectorySampler is passed to the first simulator.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class ParallelSimulator<U extends DecisionVariable, X extends SimulatorState> implements Simulator<U, X> {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final ThreadLocal<Integer> currentSimulatorIndex = new ThreadLocal<>();
+
+	// -------------------- MEMBERS --------------------
+
+	private final List<Simulator<U, X>> simulators;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public ParallelSimulator(final List<? extends Simulator<U, X>> simulators) {
+		if ((simulators == null) || (simulators.size() == 0)) {
+			throw new IllegalArgumentException("there must be at least one simulator");
+		}
+		this.simulators = new ArrayList<>(simulators);
+	}
+
+	// -------------------- STATIC HELPERS --------------------
+
+	/**
+	 * Returns the index of the simulator that is run by the calling thread, or
+	 * zero if that thread is not run by a ParallelSimulator.
+	 */
+	public static int getCurrentSimulatorIndex() {
+		final Integer result = currentSimulatorIndex.get();
+		return (result == null ? 0 : result);
+	}
+
+	// -------------------- LANE MACHINERY --------------------
+
+	/*
+	 * A message from the coordinating thread to a simulator thread: an
+	 * assignment or, if that is null, the request to stop.
+	 */
+	private static class Instruction<U extends DecisionVariable> {
+
+		private final Assignment<U> assignment;
+
+		private Instruction(final Assignment<U> assignment) {
+			this.assignment = assignment;
+		}
+	}
+
+	/*
+	 * A message from a simulator thread to the coordinating thread: a new
+	 * state or a failure.
+	 */
+	private static class Report<X extends SimulatorState> {
+
+		private final X newState;
+
+		private final RuntimeException failure;
+
+		private Report(final X newState, final RuntimeException failure) {
+			this.newState = newState;
+			this.failure = failure;
+		}
+	}
+
+	/*
+	 * What a simulator sees as its TrajectorySampler. Hands every new state to
+	 * the coordinating thread and waits for the next instruction.
+	 */
+	private class LaneSampler implements TrajectorySampler<U, X> {
+
+		private final MultiTrajectorySampler<U, X> sampler;
+
+		private final BlockingQueue<Report<X>> reports = new LinkedBlockingQueue<>();
+
+		private final BlockingQueue<Instruction<U>> instructions = new LinkedBlockingQueue<>();
+
+		private volatile boolean stopped = false;
+
+		private volatile U currentDecisionVariable = null;
+
+		private LaneSampler(final MultiTrajectorySampler<U, X> sampler) {
+			this.sampler = sampler;
+		}
+
+		@Override
+		public boolean foundSolution() {
+			return this.stopped;
+		}
+
+		@Override
+		public U getCurrentDecisionVariable() {
+			return this.currentDecisionVariable;
+		}
+
+		@Override
+		public int getTotalTransitionCnt() {
+			return this.sampler.getTotalTransitionCnt();
+		}
+
+		@Override
+		public Map<U, ConvergenceCriterionResult> getDecisionVariable2convergenceResultView() {
+			return this.sampler.getDecisionVariable2convergenceResultView();
+		}
+
+		@Override
+		public void addStatistic(final String logFileName, final Statistic<SamplingStage<U>> statistic) {
+			synchronized (this.sampler) {
+				this.sampler.addStatistic(logFileName, statistic);
+			}
+		}
+
+		@Override
+		public void setStandardLogFileName(final String logFileName) {
+			synchronized (this.sampler) {
+				this.sampler.setStandardLogFileName(logFileName);
+			}
+		}
+
+		@Override
+		public ObjectiveFunction<X> getObjectiveFunction() {
+			return this.sampler.getObjectiveFunction();
+		}
+
+		@Override
+		public void afterIteration(final X newState) {
+			this.reports.add(new Report<X>(newState, null));
+			final Instruction<U> instruction;
+			try {
+				instruction = this.instructions.take();
+			} catch (InterruptedException e) {
+				this.stopped = true;
+				return;
+			}
+			if (instruction.assignment == null) {
+				this.stopped = true;
+			} else {
+				this.currentDecisionVariable = instruction.assignment.getDecisionVariable();
+				instruction.assignment.implementInSimulation();
+			}
+		}
+	}
+
+	private Report<X> awaitReport(final LaneSampler lane) {
+		try {
+			return lane.reports.take();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// -------------------- IMPLEMENTATION OF Simulator --------------------
+
+	@Override
+	public SimulatorState run(final TrajectorySampler<U, X> evaluator) {
+		return this.run(evaluator, null);
+	}
+
+	@Override
+	public SimulatorState run(final TrajectorySampler<U, X> evaluator, final SimulatorState initialState) {
+
+		if ((this.simulators.size() == 1) || !(evaluator instanceof MultiTrajectorySampler)) {
+			return this.simulators.get(0).run(evaluator, initialState);
+		}
+		final MultiTrajectorySampler<U, X> sampler = (MultiTrajectorySampler<U, X>) evaluator;
+
+		final List<LaneSampler> lanes = new ArrayList<>(this.simulators.size());
+		final List<Thread> threads = new ArrayList<>(this.simulators.size());
+		for (int i = 0; i < this.simulators.size(); i++) {
+			final int index = i; // inner class requires final
+			final Simulator<U, X> simulator = this.simulators.get(i);
+			final LaneSampler lane = new LaneSampler(sampler);
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					currentSimulatorIndex.set(index);
+					try {
+						simulator.run(lane, initialState);
+						if (!lane.stopped) {
+							lane.reports.add(new Report<X>(null, new RuntimeException(
+									"simulator " + index + " terminated before a solution was found")));
+						}
+					} catch (RuntimeException e) {
+						lane.reports.add(new Report<X>(null, e));
+					} catch (Error e) {
+						lane.reports.add(new Report<X>(null, new RuntimeException(e)));
+					}
+				}
+			}, "opdyts-simulator-" + i);
+			thread.setDaemon(true);
+			lanes.add(lane);
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		final boolean[] running = new boolean[lanes.size()];
+		Arrays.fill(running, true);
+		final List<X> lastStates = new ArrayList<>(lanes.size());
+		for (int i = 0; i < lanes.size(); i++) {
+			lastStates.add(null);
+		}
+		X result = null;
+		try {
+			while (result == null) {
+
+				// all running simulators complete one iteration
+				for (int i = 0; i < lanes.size(); i++) {
+					if (running[i]) {
+						final Report<X> report = this.awaitReport(lanes.get(i));
+						if (report.failure != null) {
+							throw report.failure;
+						}
+						lastStates.set(i, report.newState);
+					}
+				}
+
+				// simulators that add statistics meanwhile must wait
+				synchronized (sampler) {
+
+					// their states are fed in the order of the simulators
+					for (int i = 0; (i < lanes.size()) && (result == null); i++) {
+						if (running[i]) {
+							final Assignment<U> assignment = sampler.afterIteration(i, lastStates.get(i));
+							if (sampler.foundSolution()) {
+								result = lastStates.get(i);
+							} else if (assignment != null) {
+								lanes.get(i).instructions.add(new Instruction<U>(assignment));
+							} else {
+								running[i] = false;
+							}
+						}
+					}
+
+					// waiting simulators may now be able to continue
+					boolean anyRunning = false;
+					for (int i = 0; (i < lanes.size()) && (result == null); i++) {
+						if (!running[i]) {
+							final Assignment<U> assignment = sampler.nextAssignment(i);
+							if (sampler.foundSolution()) {
+								result = lastStates.get(i);
+							} else if (assignment != null) {
+								lanes.get(i).instructions.add(new Instruction<U>(assignment));
+								running[i] = true;
+							}
+						}
+						anyRunning |= running[i];
+					}
+					if ((result == null) && !anyRunning) {
+						throw new IllegalStateException("no simulator has anything to do");
+					}
+				}
+			}
+		} finally {
+			for (LaneSampler lane : lanes) {
+				lane.instructions.add(new Instruction<U>(null));
+			}
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		return result;
+	}
+}
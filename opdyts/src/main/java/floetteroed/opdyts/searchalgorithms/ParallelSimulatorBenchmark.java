@@ -0,0 +1,225 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.opdyts.searchalgorithms;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import floetteroed.opdyts.DecisionVariable;
+import floetteroed.opdyts.ObjectiveFunction;
+import floetteroed.opdyts.SimulatorState;
+import floetteroed.opdyts.convergencecriteria.ConvergenceCriterionResult;
+import floetteroed.opdyts.convergencecriteria.FixedIterationNumberConvergenceCriterion;
+import floetteroed.opdyts.trajectorysampling.MultiTrajectorySampler;
+import floetteroed.opdyts.trajectorysampling.TrajectorySampler;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Runs one stage of trajectory sampling over 16 candidate decision variables
+ * of a toy simulator whose iterations take a fixed wall-clock time, once with
+ * a single simulator and twice with a pool of ParallelSimulator instances.
+ * Reports the run times and transition counts, and whether the two parallel
+ * runs are identical.
+ * <p>
+ * Usage: <code>ParallelSimulatorBenchmark [simulators [iterationMillis]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class ParallelSimulatorBenchmark {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int CANDIDATE_CNT = 16;
+
+	private static final int DIM = 10;
+
+	private ParallelSimulatorBenchmark() {
+	}
+
+	// -------------------- TOY SIMULATION --------------------
+
+	private static class ToyState implements SimulatorState {
+
+		private final List<ToySimulator> simulators;
+
+		private final Vector x;
+
+		private ToyState(final List<ToySimulator> simulators, final Vector x) {
+			this.simulators = simulators;
+			this.x = x;
+		}
+
+		@Override
+		public Vector getReferenceToVectorRepresentation() {
+			return this.x;
+		}
+
+		@Override
+		public void implementInSimulation() {
+			this.simulators.get(ParallelSimulator.getCurrentSimulatorIndex()).x = this.x.copy();
+		}
+	}
+
+	private static class ToyDecisionVariable implements DecisionVariable {
+
+		private final List<ToySimulator> simulators;
+
+		private final double u;
+
+		private ToyDecisionVariable(final List<ToySimulator> simulators, final double u) {
+			this.simulators = simulators;
+			this.u = u;
+		}
+
+		@Override
+		public void implementInSimulation() {
+			this.simulators.get(ParallelSimulator.getCurrentSimulatorIndex()).u = this.u;
+		}
+
+		@Override
+		public String toString() {
+			return Double.toString(this.u);
+		}
+	}
+
+	private static class ToySimulator implements Simulator<ToyDecisionVariable, ToyState> {
+
+		private final List<ToySimulator> simulators;
+
+		private final Random rnd;
+
+		private final long iterationMillis;
+
+		private Vector x = new Vector(DIM);
+
+		private double u = 0;
+
+		private ToySimulator(final List<ToySimulator> simulators, final long seed, final long iterationMillis) {
+			this.simulators = simulators;
+			this.rnd = new Random(seed);
+			this.iterationMillis = iterationMillis;
+		}
+
+		@Override
+		public SimulatorState run(final TrajectorySampler<ToyDecisionVariable, ToyState> evaluator) {
+			return this.run(evaluator, null);
+		}
+
+		@Override
+		public SimulatorState run(final TrajectorySampler<ToyDecisionVariable, ToyState> evaluator,
+				final SimulatorState initialState) {
+			if (initialState != null) {
+				initialState.implementInSimulation();
+			}
+			ToyState newState = null;
+			while (!evaluator.foundSolution()) {
+				try {
+					Thread.sleep(this.iterationMillis);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				final Vector newX = new Vector(DIM);
+				for (int i = 0; i < DIM; i++) {
+					newX.set(i, 0.6 * this.x.get(i) + 0.4 * Math.sin(this.u * (i + 1)) + 0.05 * this.rnd.nextGaussian());
+				}
+				this.x = newX;
+				newState = new ToyState(this.simulators, newX.copy());
+				evaluator.afterIteration(newState);
+			}
+			return newState;
+		}
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	/**
+	 * Returns the run time, the number of transitions, and a fingerprint of
+	 * the converged decision variables and objective function values.
+	 */
+	private static Object[] run(final int simulatorCnt, final long iterationMillis) {
+
+		final List<ToySimulator> simulators = new ArrayList<>();
+		for (int i = 0; i < simulatorCnt; i++) {
+			simulators.add(new ToySimulator(simulators, 4711 + i, iterationMillis));
+		}
+		final Set<ToyDecisionVariable> candidates = new LinkedHashSet<>();
+		for (int k = 0; k < CANDIDATE_CNT; k++) {
+			candidates.add(new ToyDecisionVariable(simulators, 0.1 * k));
+		}
+		final ObjectiveFunction<ToyState> objectiveFunction = new ObjectiveFunction<ToyState>() {
+			@Override
+			public double value(final ToyState state) {
+				final double mean = state.x.sum() / DIM;
+				return (mean - 0.3) * (mean - 0.3);
+			}
+		};
+
+		final MultiTrajectorySampler<ToyDecisionVariable, ToyState> sampler = new MultiTrajectorySampler<>(
+				candidates, objectiveFunction, new FixedIterationNumberConvergenceCriterion(15, 5), new Random(4711),
+				1.0, 1.0, false, Integer.MAX_VALUE, Integer.MAX_VALUE, true, 1, false);
+		final long start_ms = System.currentTimeMillis();
+		new ParallelSimulator<ToyDecisionVariable, ToyState>(simulators).run(sampler, null);
+		final long time_ms = System.currentTimeMillis() - start_ms;
+
+		final StringBuffer fingerprint = new StringBuffer();
+		for (Map.Entry<ToyDecisionVariable, ConvergenceCriterionResult> entry : sampler
+				.getDecisionVariable2convergenceResultView().entrySet()) {
+			fingerprint.append(entry.getKey() + "=" + entry.getValue().finalObjectiveFunctionValue + ";");
+		}
+		fingerprint.append(sampler.getTransitions().size());
+		return new Object[] { time_ms, sampler.getTotalTransitionCnt(), fingerprint.toString() };
+	}
+
+	private static void report(final String label, final Object[] result) {
+		final long time_ms = (Long) result[0];
+		final int transitionCnt = (Integer) result[1];
+		System.out.println(label + ": " + time_ms + " ms, " + transitionCnt + " transitions ("
+				+ (1000 * transitionCnt / Math.max(1, time_ms)) + " per second), converged " + result[2]);
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) {
+
+		final int simulatorCnt = (args.length > 0 ? Integer.parseInt(args[0]) : 4);
+		final long iterationMillis = (args.length > 1 ? Long.parseLong(args[1]) : 50);
+		Logger.getLogger("floetteroed.opdyts").setLevel(Level.WARNING);
+
+		final Object[] sequential = run(1, iterationMillis);
+		final Object[] parallel = run(simulatorCnt, iterationMillis);
+		final Object[] parallelAgain = run(simulatorCnt, iterationMillis);
+		report("1 simulator", sequential);
+		report(simulatorCnt + " simulators", parallel);
+		System.out.println("parallel runs " + (parallel[2].equals(parallelAgain[2])
+				&& parallel[1].equals(parallelAgain[1]) ? "identical" : "DIFFERENT"));
+	}
+}
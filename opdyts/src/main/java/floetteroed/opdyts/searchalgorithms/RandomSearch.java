@@ -24,12 +24,24 @@
  */
 package floetteroed.opdyts.searchalgorithms;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
@@ -74,7 +86,8 @@ public class RandomSearch<U extends DecisionVariable, X extends SimulatorState>
 
 	private final SelfTuner selfTuner;
 
-	private final Random rnd;
+	// replaced by the checkpointed generator when resuming
+	private Random rnd;
 
 	private final DecisionVariableRandomizer<U> decisionVariableRandomizer;
 
@@ -161,6 +174,48 @@ public class RandomSearch<U extends DecisionVariable, X extends SimulatorState>
 
 	// ------------------------------------------------------------
 
+	private Simulator<U, X> parallelSimulator = null;
+
+	/**
+	 * Lets the given, independent simulator instances advance different
+	 * candidate decision variables in parallel; see ParallelSimulator. The
+	 * simulator passed to the constructor is then not used. Default is
+	 * "null", meaning that only that simulator is used.
+	 */
+	public void setParallelSimulators(final List<? extends Simulator<U, X>> simulators) {
+		this.parallelSimulator = (simulators == null ? null : new ParallelSimulator<U, X>(simulators));
+	}
+
+	// ------------------------------------------------------------
+
+	private String checkpointFileName = null;
+
+	private int checkpointInterval = 1;
+
+	private SearchStateCodec<U> checkpointCodec = null;
+
+	/**
+	 * Writes the state of the search into the given file after every
+	 * checkpointInterval-th outer iteration, from where resume() continues the
+	 * search. Default is "null", meaning that no checkpoints are written.
+	 */
+	public void setCheckpointing(final String checkpointFileName, final int checkpointInterval,
+			final SearchStateCodec<U> checkpointCodec) {
+		if (checkpointFileName != null) {
+			if (checkpointInterval < 1) {
+				throw new IllegalArgumentException("checkpoint interval must be strictly positive");
+			}
+			if (checkpointCodec == null) {
+				throw new IllegalArgumentException("checkpoint codec is null");
+			}
+		}
+		this.checkpointFileName = checkpointFileName;
+		this.checkpointInterval = checkpointInterval;
+		this.checkpointCodec = checkpointCodec;
+	}
+
+	// ------------------------------------------------------------
+
 	private String logFileName = null;
 
 	/**
@@ -222,6 +277,108 @@ public class RandomSearch<U extends DecisionVariable, X extends SimulatorState>
 	// this.includeCurrentBest = includeCurrentBest;
 	// }
 
+	// -------------------- CHECKPOINTS --------------------
+
+	private static final int CHECKPOINT_MAGIC = 0x4f50434b; // "OPCK"
+
+	private static final int CHECKPOINT_VERSION = 1;
+
+	/**
+	 * The state of a search between two outer iterations. Everything else is
+	 * rebuilt within an outer iteration.
+	 */
+	private static class Checkpoint<U> {
+
+		private int nextIteration = 0;
+
+		private int totalTransitionCnt = 0;
+
+		private double equilibriumGapWeight;
+
+		private double uniformityGapWeight;
+
+		private U bestDecisionVariable;
+
+		private Double bestObjectiveFunctionValue = null;
+
+		private SimulatorState bestInitialState = null;
+	}
+
+	private void writeCheckpoint(final Checkpoint<U> checkpoint) throws IOException {
+		final File file = new File(this.checkpointFileName);
+		final File tmpFile = new File(this.checkpointFileName + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try {
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeInt(checkpoint.nextIteration);
+			out.writeInt(checkpoint.totalTransitionCnt);
+			out.writeDouble(checkpoint.equilibriumGapWeight);
+			out.writeDouble(checkpoint.uniformityGapWeight);
+			this.checkpointCodec.writeDecisionVariable(checkpoint.bestDecisionVariable, out);
+			out.writeBoolean(checkpoint.bestObjectiveFunctionValue != null);
+			if (checkpoint.bestObjectiveFunctionValue != null) {
+				out.writeDouble(checkpoint.bestObjectiveFunctionValue);
+			}
+			out.writeBoolean(checkpoint.bestInitialState != null);
+			if (checkpoint.bestInitialState != null) {
+				this.checkpointCodec.writeSimulatorState(checkpoint.bestInitialState, out);
+			}
+			this.selfTuner.writeState(out);
+			final ByteArrayOutputStream rndBytes = new ByteArrayOutputStream();
+			final ObjectOutputStream rndOut = new ObjectOutputStream(rndBytes);
+			rndOut.writeObject(this.rnd);
+			rndOut.close();
+			out.writeInt(rndBytes.size());
+			rndBytes.writeTo(out);
+		} finally {
+			out.close();
+		}
+		// an interrupted write leaves the previous checkpoint intact
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Checkpoint<U> readCheckpoint() throws IOException {
+		final Checkpoint<U> checkpoint = new Checkpoint<>();
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(this.checkpointFileName)));
+		try {
+			if (in.readInt() != CHECKPOINT_MAGIC) {
+				throw new IOException(this.checkpointFileName + " is not a search checkpoint");
+			}
+			final int version = in.readInt();
+			if (version != CHECKPOINT_VERSION) {
+				throw new IOException("unsupported search checkpoint version " + version);
+			}
+			checkpoint.nextIteration = in.readInt();
+			checkpoint.totalTransitionCnt = in.readInt();
+			checkpoint.equilibriumGapWeight = in.readDouble();
+			checkpoint.uniformityGapWeight = in.readDouble();
+			checkpoint.bestDecisionVariable = this.checkpointCodec.readDecisionVariable(in);
+			if (in.readBoolean()) {
+				checkpoint.bestObjectiveFunctionValue = in.readDouble();
+			}
+			if (in.readBoolean()) {
+				checkpoint.bestInitialState = this.checkpointCodec.readSimulatorState(in);
+			}
+			this.selfTuner.readState(in);
+			final byte[] rndBytes = new byte[in.readInt()];
+			in.readFully(rndBytes);
+			final ObjectInputStream rndIn = new ObjectInputStream(new ByteArrayInputStream(rndBytes));
+			try {
+				this.rnd = (Random) rndIn.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			} finally {
+				rndIn.close();
+			}
+		} finally {
+			in.close();
+		}
+		return checkpoint;
+	}
+
 	// -------------------- IMPLEMENTATION --------------------
 
 	private void deleteIfPossible(final String fileName) {
@@ -245,6 +402,28 @@ public class RandomSearch<U extends DecisionVariable, X extends SimulatorState>
 	// public void run(double equilibriumGapWeight, double uniformityGapWeight,
 	// SelfTuner weightOptimizer) {
 	public void run() {
+		this.run(null);
+	}
+
+	/**
+	 * Continues a search from the checkpoint file set with
+	 * setCheckpointing(..), taking the same subsequent decisions as the
+	 * interrupted search given that the simulator, the decision variable
+	 * randomizer and the program control parameters behave as they did there.
+	 * The random generator passed to the constructor is replaced by the
+	 * checkpointed one. Log files are appended to.
+	 */
+	public void resume() throws IOException {
+		if (this.checkpointFileName == null) {
+			throw new IllegalStateException("no checkpoint file set");
+		}
+		final Checkpoint<U> checkpoint = this.readCheckpoint();
+		Logger.getLogger(this.getClass().getName()).info("Resuming from " + this.checkpointFileName
+				+ " before iteration " + (checkpoint.nextIteration + 1));
+		this.run(checkpoint);
+	}
+
+	private void run(final Checkpoint<U> resumed) {
 
 		// TODO NEW 2018-09-25
 		double equilibriumGapWeight = this.selfTuner.getEquilibriumGapWeight();
@@ -254,26 +433,39 @@ public class RandomSearch<U extends DecisionVariable, X extends SimulatorState>
 
 		int totalTransitionCnt = 0;
 
-		this.deleteIfPossible(this.logFileName);
-		this.deleteIfPossible(this.convergenceTrackingFileName);
-		this.deleteIfPossible(this.outerIterationLogFileName);
+		U bestDecisionVariable = this.initialDecisionVariable;
+		Double bestObjectiveFunctionValue = null;
+		SimulatorState bestInitialState = null;
+
+		int firstIt = 0;
+
+		if (resumed == null) {
+			this.deleteIfPossible(this.logFileName);
+			this.deleteIfPossible(this.convergenceTrackingFileName);
+			this.deleteIfPossible(this.outerIterationLogFileName);
+		} else {
+			equilibriumGapWeight = resumed.equilibriumGapWeight;
+			uniformityGapWeight = resumed.uniformityGapWeight;
+			totalTransitionCnt = resumed.totalTransitionCnt;
+			bestDecisionVariable = resumed.bestDecisionVariable;
+			bestObjectiveFunctionValue = resumed.bestObjectiveFunctionValue;
+			bestInitialState = resumed.bestInitialState;
+			firstIt = resumed.nextIteration;
+		}
 
 		final StatisticsWriter<OuterIterationStatistics> outerIterationStatsWriter;
 		if (this.outerIterationLogFileName != null) {
 			outerIterationStatsWriter = new StatisticsWriter<OuterIterationStatistics>(this.outerIterationLogFileName,
-					false);
+					new File(this.outerIterationLogFileName).exists());
 			OuterIterationStatistics.initializeWriter(outerIterationStatsWriter);
 		} else {
 			outerIterationStatsWriter = null;
 		}
 
-		U bestDecisionVariable = this.initialDecisionVariable;
-		Double bestObjectiveFunctionValue = null;
-		SimulatorState bestInitialState = null;
-
 		SimulatorState newInitialState = null;
 
-		for (int it = 0; it < this.maxOptimizationStages && totalTransitionCnt < this.maxSimulationTransitions; it++) {
+		for (int it = firstIt; it < this.maxOptimizationStages
+				&& totalTransitionCnt < this.maxSimulationTransitions; it++) {
 
 			Logger.getLogger(this.getClass().getName())
 					.info("Iteration " + (it + 1) + " of " + this.maxOptimizationStages + ", transitions "
@@ -367,7 +559,8 @@ public class RandomSearch<U extends DecisionVariable, X extends SimulatorState>
 			}
 
 			// newInitialState = this.simulator.run(sampler, newInitialState);
-			newInitialState = this.simulator.run(sampler, bestInitialState);
+			newInitialState = (this.parallelSimulator != null ? this.parallelSimulator : this.simulator).run(sampler,
+					bestInitialState);
 			newBestDecisionVariable = sampler.getDecisionVariable2convergenceResultView().keySet().iterator().next();
 			newBestObjectiveFunctionValue = sampler.getDecisionVariable2convergenceResultView()
 					.get(newBestDecisionVariable).finalObjectiveFunctionValue;
@@ -481,6 +674,23 @@ public class RandomSearch<U extends DecisionVariable, X extends SimulatorState>
 			if (outerIterationStatsWriter != null) {
 				outerIterationStatsWriter.writeToFile(outerIterationStats);
 			}
+
+			if (this.checkpointFileName != null && (it + 1) % this.checkpointInterval == 0) {
+				final Checkpoint<U> checkpoint = new Checkpoint<>();
+				checkpoint.nextIteration = it + 1;
+				checkpoint.totalTransitionCnt = totalTransitionCnt;
+				checkpoint.equilibriumGapWeight = equilibriumGapWeight;
+				checkpoint.uniformityGapWeight = uniformityGapWeight;
+				checkpoint.bestDecisionVariable = bestDecisionVariable;
+				checkpoint.bestObjectiveFunctionValue = bestObjectiveFunctionValue;
+				checkpoint.bestInitialState = bestInitialState;
+				try {
+					this.writeCheckpoint(checkpoint);
+				} catch (IOException e) {
+					Logger.getLogger(this.getClass().getName())
+							.warning("could not write checkpoint: " + e.getMessage());
+				}
+			}
 		}
 	}
 }
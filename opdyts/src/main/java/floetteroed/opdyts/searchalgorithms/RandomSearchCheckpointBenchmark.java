@@ -0,0 +1,292 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.opdyts.searchalgorithms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import floetteroed.opdyts.DecisionVariable;
+import floetteroed.opdyts.DecisionVariableRandomizer;
+import floetteroed.opdyts.ObjectiveFunction;
+import floetteroed.opdyts.SimulatorState;
+import floetteroed.opdyts.convergencecriteria.FixedIterationNumberConvergenceCriterion;
+import floetteroed.opdyts.trajectorysampling.TrajectorySampler;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Runs a RandomSearch on a toy problem once without interruption and once
+ * stopped after half of the stages and resumed from its checkpoint with a
+ * newly created simulator and a differently seeded random generator. Checks
+ * that both produce the same simulated trajectory and the same final
+ * checkpoint, and reports the checkpoint size and reading time.
+ * <p>
+ * Usage: <code>RandomSearchCheckpointBenchmark [stages]</code>
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class RandomSearchCheckpointBenchmark {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int DIM = 10;
+
+	private RandomSearchCheckpointBenchmark() {
+	}
+
+	// -------------------- TOY PROBLEM --------------------
+
+	private static class ToyDecisionVariable implements DecisionVariable {
+
+		private final ToySimulator simulator;
+
+		private final double u;
+
+		private ToyDecisionVariable(final ToySimulator simulator, final double u) {
+			this.simulator = simulator;
+			this.u = u;
+		}
+
+		@Override
+		public void implementInSimulation() {
+			this.simulator.u = this.u;
+		}
+
+		@Override
+		public String toString() {
+			return Double.toString(this.u);
+		}
+	}
+
+	/**
+	 * The decision variable in effect belongs to the simulation state.
+	 */
+	private static class ToyState implements SimulatorState {
+
+		private final ToySimulator simulator;
+
+		private final double u;
+
+		private final Vector x;
+
+		private ToyState(final ToySimulator simulator, final double u, final Vector x) {
+			this.simulator = simulator;
+			this.u = u;
+			this.x = x;
+		}
+
+		@Override
+		public Vector getReferenceToVectorRepresentation() {
+			return this.x;
+		}
+
+		@Override
+		public void implementInSimulation() {
+			this.simulator.u = this.u;
+			this.simulator.x = this.x.copy();
+		}
+	}
+
+	private static class ToySimulator implements Simulator<ToyDecisionVariable, ToyState> {
+
+		private final List<Double> trajectory = new ArrayList<>();
+
+		private double u = 0;
+
+		private Vector x = new Vector(DIM);
+
+		@Override
+		public SimulatorState run(final TrajectorySampler<ToyDecisionVariable, ToyState> evaluator) {
+			return this.run(evaluator, null);
+		}
+
+		@Override
+		public SimulatorState run(final TrajectorySampler<ToyDecisionVariable, ToyState> evaluator,
+				final SimulatorState initialState) {
+			if (initialState != null) {
+				initialState.implementInSimulation();
+			}
+			ToyState newState = null;
+			while (!evaluator.foundSolution()) {
+				// the noise is a function of the simulation state
+				final Random noise = new Random(Arrays.hashCode(this.x.toArray()) + Double.doubleToLongBits(this.u));
+				final Vector newX = new Vector(DIM);
+				for (int i = 0; i < DIM; i++) {
+					newX.set(i, 0.6 * this.x.get(i) + 0.4 * Math.sin(this.u * (i + 1)) + 0.05 * noise.nextGaussian());
+				}
+				this.x = newX;
+				newState = new ToyState(this, this.u, newX.copy());
+				this.trajectory.add(newX.sum());
+				evaluator.afterIteration(newState);
+			}
+			return newState;
+		}
+	}
+
+	private static class ToyRandomizer implements DecisionVariableRandomizer<ToyDecisionVariable> {
+
+		private final ToySimulator simulator;
+
+		private ToyRandomizer(final ToySimulator simulator) {
+			this.simulator = simulator;
+		}
+
+		@Override
+		public Collection<ToyDecisionVariable> newRandomVariations(final ToyDecisionVariable decisionVariable,
+				final int searchIteration) {
+			final List<ToyDecisionVariable> result = new ArrayList<>();
+			final double step = 0.5 / (1.0 + searchIteration);
+			for (int k = -3; k <= 3; k++) {
+				result.add(new ToyDecisionVariable(this.simulator, decisionVariable.u + k * step));
+			}
+			return result;
+		}
+	}
+
+	private static class ToyCodec implements SearchStateCodec<ToyDecisionVariable> {
+
+		private final ToySimulator simulator;
+
+		private ToyCodec(final ToySimulator simulator) {
+			this.simulator = simulator;
+		}
+
+		@Override
+		public void writeDecisionVariable(final ToyDecisionVariable decisionVariable, final DataOutput out)
+				throws IOException {
+			out.writeDouble(decisionVariable.u);
+		}
+
+		@Override
+		public ToyDecisionVariable readDecisionVariable(final DataInput in) throws IOException {
+			return new ToyDecisionVariable(this.simulator, in.readDouble());
+		}
+
+		@Override
+		public void writeSimulatorState(final SimulatorState state, final DataOutput out) throws IOException {
+			final ToyState toyState = (ToyState) state;
+			out.writeDouble(toyState.u);
+			for (int i = 0; i < DIM; i++) {
+				out.writeDouble(toyState.x.get(i));
+			}
+		}
+
+		@Override
+		public SimulatorState readSimulatorState(final DataInput in) throws IOException {
+			final double u = in.readDouble();
+			final Vector x = new Vector(DIM);
+			for (int i = 0; i < DIM; i++) {
+				x.set(i, in.readDouble());
+			}
+			return new ToyState(this.simulator, u, x);
+		}
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static RandomSearch<ToyDecisionVariable, ToyState> newSearch(final ToySimulator simulator,
+			final long seed, final int stages, final File checkpointFile) {
+		final ObjectiveFunction<ToyState> objectiveFunction = new ObjectiveFunction<ToyState>() {
+			@Override
+			public double value(final ToyState state) {
+				final double mean = state.x.sum() / DIM;
+				return (mean - 0.3) * (mean - 0.3);
+			}
+		};
+		final RandomSearch<ToyDecisionVariable, ToyState> result = new RandomSearch<>(simulator,
+				new FixedIterationNumberConvergenceCriterion(10, 5), objectiveFunction, new SelfTuner(1.0, 1.0),
+				new Random(seed), new ToyRandomizer(simulator), new ToyDecisionVariable(simulator, 0.0), stages,
+				Integer.MAX_VALUE);
+		result.setCheckpointing(checkpointFile.getPath(), 1, new ToyCodec(simulator));
+		return result;
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) throws IOException {
+
+		final int stages = (args.length > 0 ? Integer.parseInt(args[0]) : 8);
+		Logger.getLogger("floetteroed.opdyts").setLevel(Level.WARNING);
+		final File folder = Files.createTempDirectory("opdyts").toFile();
+
+		final File uninterruptedFile = new File(folder, "uninterrupted.chk");
+		final ToySimulator uninterruptedSimulator = new ToySimulator();
+		final long start_ms = System.currentTimeMillis();
+		newSearch(uninterruptedSimulator, 4711, stages, uninterruptedFile).run();
+		final long time_ms = System.currentTimeMillis() - start_ms;
+
+		final File resumedFile = new File(folder, "resumed.chk");
+		final ToySimulator interruptedSimulator = new ToySimulator();
+		newSearch(interruptedSimulator, 4711, stages / 2, resumedFile).run();
+		final long checkpointBytes = resumedFile.length();
+		final ToySimulator resumedSimulator = new ToySimulator();
+		newSearch(resumedSimulator, 1234, stages, resumedFile).resume();
+
+		final List<Double> resumedTrajectory = new ArrayList<>(interruptedSimulator.trajectory);
+		resumedTrajectory.addAll(resumedSimulator.trajectory);
+		final boolean sameTrajectory = uninterruptedSimulator.trajectory.equals(resumedTrajectory);
+		final boolean sameCheckpoint = Arrays.equals(Files.readAllBytes(uninterruptedFile.toPath()),
+				Files.readAllBytes(resumedFile.toPath()));
+
+		// without the checkpointed generator, the search would diverge
+		final ToySimulator otherSeedSimulator = new ToySimulator();
+		newSearch(otherSeedSimulator, 1234, stages, new File(folder, "otherseed.chk")).run();
+		final boolean otherSeedSame = uninterruptedSimulator.trajectory.equals(otherSeedSimulator.trajectory);
+
+		// resuming a completed search only reads its checkpoint
+		final RandomSearch<ToyDecisionVariable, ToyState> completed = newSearch(new ToySimulator(), 4711, stages,
+				uninterruptedFile);
+		final int reads = 1000;
+		final long readStart_ns = System.nanoTime();
+		for (int i = 0; i < reads; i++) {
+			completed.resume();
+		}
+		final long readTime_ns = System.nanoTime() - readStart_ns;
+
+		System.out.println(stages + " stages, " + uninterruptedSimulator.trajectory.size() + " iterations in "
+				+ time_ms + " ms");
+		System.out.println("checkpoint after " + (stages / 2) + " stages: " + checkpointBytes + " bytes");
+		System.out.println("resumed run: " + (sameTrajectory ? "same trajectory" : "DIFFERENT trajectory") + ", "
+				+ (sameCheckpoint ? "same final checkpoint" : "DIFFERENT final checkpoint"));
+		System.out.println("fresh run with the resumed run's seed: "
+				+ (otherSeedSame ? "same trajectory" : "different trajectory"));
+		System.out.println("reading a checkpoint: " + (readTime_ns / reads / 1000) + " us");
+
+		for (File file : folder.listFiles()) {
+			file.delete();
+		}
+		folder.delete();
+	}
+}
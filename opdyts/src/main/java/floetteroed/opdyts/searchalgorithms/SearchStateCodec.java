@@ -0,0 +1,54 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.opdyts.searchalgorithms;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import floetteroed.opdyts.DecisionVariable;
+import floetteroed.opdyts.SimulatorState;
+
+/**
+ * Writes and reads the problem-specific parts of a RandomSearch checkpoint.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public interface SearchStateCodec<U extends DecisionVariable> {
+
+	public void writeDecisionVariable(U decisionVariable, DataOutput out) throws IOException;
+
+	public U readDecisionVariable(DataInput in) throws IOException;
+
+	/**
+	 * Writes a simulator state that was returned by a Simulator. The restored
+	 * state is implemented in the simulation when the search is resumed.
+	 */
+	public void writeSimulatorState(SimulatorState state, DataOutput out) throws IOException;
+
+	public SimulatorState readSimulatorState(DataInput in) throws IOException;
+
+}
@@ -26,6 +26,9 @@ package floetteroed.opdyts.searchalgorithms;
 
 import static java.lang.Math.abs;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -199,4 +202,54 @@ public class SelfTuner {
 		Logger.getLogger(this.getClass().getName())
 				.info("v=" + this.equilibriumGapWeight + ", w=" + this.uniformityGapWeight);
 	}
+
+	// ==================== STATE SNAPSHOT ====================
+
+	private static void writeList(final List<Double> list, final DataOutput out) throws IOException {
+		out.writeInt(list.size());
+		for (double val : list) {
+			out.writeDouble(val);
+		}
+	}
+
+	private static List<Double> readList(final DataInput in) throws IOException {
+		final int size = in.readInt();
+		final List<Double> result = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(in.readDouble());
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the current weights and the history from which they were fitted.
+	 * The program control parameters are not written.
+	 */
+	public void writeState(final DataOutput out) throws IOException {
+		out.writeDouble(this.equilibriumGapWeight);
+		out.writeDouble(this.uniformityGapWeight);
+		out.writeInt(this.finalObjFctVals.size());
+		for (int i = 0; i < this.finalObjFctVals.size(); i++) {
+			writeList(this.equililibriumGaps.get(i), out);
+			writeList(this.uniformityGaps.get(i), out);
+			writeList(this.avgObjFctVals.get(i), out);
+			out.writeDouble(this.finalObjFctVals.get(i));
+		}
+	}
+
+	public void readState(final DataInput in) throws IOException {
+		this.equilibriumGapWeight = in.readDouble();
+		this.uniformityGapWeight = in.readDouble();
+		this.equililibriumGaps.clear();
+		this.uniformityGaps.clear();
+		this.avgObjFctVals.clear();
+		this.finalObjFctVals.clear();
+		final int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			this.equililibriumGaps.add(readList(in));
+			this.uniformityGaps.add(readList(in));
+			this.avgObjFctVals.add(readList(in));
+			this.finalObjFctVals.add(in.readDouble());
+		}
+	}
 }
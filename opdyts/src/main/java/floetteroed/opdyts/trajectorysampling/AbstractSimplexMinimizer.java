@@ -0,0 +1,180 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.opdyts.trajectorysampling;
+
+import java.util.logging.Logger;
+
+import org.apache.commons.math3.analysis.MultivariateFunction;
+import org.apache.commons.math3.analysis.MultivariateVectorFunction;
+
+import floetteroed.opdyts.trajectorysampling.FrankWolfe.LineSearch;
+
+/**
+ * Common machinery of the simplex minimizers that exploit the structure of
+ * the simplex instead of solving linear programs: the smallest gradient
+ * coordinate identifies the best vertex, and line search steps are kept
+ * feasible and monotone.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+abstract class AbstractSimplexMinimizer implements SimplexMinimizer {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int MAX_BACKTRACKS = 50;
+
+	// -------------------- MEMBERS --------------------
+
+	private final MultivariateFunction objectiveFunction;
+
+	private final MultivariateVectorFunction gradientFunction;
+
+	private final LineSearch lineSearch;
+
+	private final int maxIts = 1000;
+
+	private final double eps;
+
+	private Double value = null;
+
+	private double[] point = null;
+
+	private int iterations = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	AbstractSimplexMinimizer(final MultivariateFunction objectiveFunction,
+			final MultivariateVectorFunction gradientFunction,
+			final LineSearch lineSearch, final double eps) {
+		this.objectiveFunction = objectiveFunction;
+		this.gradientFunction = gradientFunction;
+		this.lineSearch = lineSearch;
+		this.eps = eps;
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	static int argMin(final double[] v) {
+		int result = 0;
+		for (int i = 1; i < v.length; i++) {
+			if (v[i] < v[result]) {
+				result = i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The Frank-Wolfe gap, which bounds the distance of the current value to
+	 * the optimal one for convex objective functions.
+	 */
+	static double frankWolfeGap(final double[] point, final double[] grad) {
+		return FrankWolfe.innerProd(grad, point) - grad[argMin(grad)];
+	}
+
+	double[] gradient(final double[] point) {
+		return this.gradientFunction.value(point);
+	}
+
+	boolean converged(final double gap) {
+		return (gap <= this.eps * Math.max(1.0, Math.abs(this.value)));
+	}
+
+	/**
+	 * Moves the current point along dir by eta, restricted to [0, maxStep].
+	 * The step is halved until the objective function decreases. Returns the
+	 * realized step length, which is zero if no descent was found.
+	 */
+	private double backtrack(final double[] dir, double eta) {
+		final double[] newPoint = new double[this.point.length];
+		for (int backtrack = 0; backtrack <= MAX_BACKTRACKS && eta > 0; backtrack++) {
+			for (int i = 0; i < newPoint.length; i++) {
+				newPoint[i] = Math.max(0.0, this.point[i] + eta * dir[i]);
+			}
+			final double newValue = this.objectiveFunction.value(newPoint);
+			if (newValue < this.value) {
+				this.point = newPoint;
+				this.value = newValue;
+				return eta;
+			}
+			eta *= 0.5;
+		}
+		return 0.0;
+	}
+
+	/**
+	 * Moves the current point along dir, starting from the step length of the
+	 * line search. The line search only approximates the objective function;
+	 * if its step does not yield a descent, the step is searched again by
+	 * backtracking from maxStep on the objective function itself. Returns the
+	 * realized step length, which is zero if no descent was found.
+	 */
+	double step(final double[] dir, final double maxStep) {
+		final double approxEta = this.lineSearch.stepLength(this.point, dir);
+		if (approxEta > 0) {
+			final double eta = this.backtrack(dir, Math.min(maxStep, approxEta));
+			if (eta > 0 || approxEta >= maxStep) {
+				return eta;
+			}
+		}
+		return this.backtrack(dir, maxStep);
+	}
+
+	double[] point() {
+		return this.point;
+	}
+
+	abstract boolean iterate();
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	@Override
+	public double[] getPoint() {
+		return this.point;
+	}
+
+	@Override
+	public double getValue() {
+		return this.value;
+	}
+
+	public int getIterations() {
+		return this.iterations;
+	}
+
+	@Override
+	public void run(final double[] initialPoint) {
+		this.point = new double[initialPoint.length];
+		System.arraycopy(initialPoint, 0, this.point, 0, initialPoint.length);
+		this.value = this.objectiveFunction.value(this.point);
+		this.iterations = 0;
+		while ((this.iterations < this.maxIts) && this.iterate()) {
+			this.iterations++;
+		}
+		Logger.getLogger(this.getClass().getName()).info(
+				this.iterations + " iterations: val = " + this.value);
+	}
+}
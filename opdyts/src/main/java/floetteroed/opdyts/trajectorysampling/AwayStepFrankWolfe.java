@@ -0,0 +1,102 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.opdyts.trajectorysampling;
+
+import org.apache.commons.math3.analysis.MultivariateFunction;
+import org.apache.commons.math3.analysis.MultivariateVectorFunction;
+
+import floetteroed.opdyts.trajectorysampling.FrankWolfe.LineSearch;
+
+/**
+ * Frank-Wolfe with away steps on the probability simplex. The linear
+ * minimization over the simplex is solved in closed form by the vertex of the
+ * smallest gradient coordinate. Away steps move weight off the worst vertex
+ * of the current support, which lets the iterates reach faces of the simplex
+ * instead of zig-zagging towards them.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class AwayStepFrankWolfe extends AbstractSimplexMinimizer {
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public AwayStepFrankWolfe(final MultivariateFunction objectiveFunction,
+			final MultivariateVectorFunction gradientFunction,
+			final LineSearch lineSearch, final double eps) {
+		super(objectiveFunction, gradientFunction, lineSearch, eps);
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	@Override
+	boolean iterate() {
+
+		final double[] point = this.point();
+		final double[] grad = this.gradient(point);
+		final double gradTimesPoint = FrankWolfe.innerProd(grad, point);
+
+		// toward vertex: smallest gradient coordinate
+		final int toward = argMin(grad);
+		final double towardGap = gradTimesPoint - grad[toward];
+		if (this.converged(towardGap)) {
+			return false;
+		}
+
+		// away vertex: largest gradient coordinate in the support
+		int away = -1;
+		for (int i = 0; i < point.length; i++) {
+			if (point[i] > 0 && (away < 0 || grad[i] > grad[away])) {
+				away = i;
+			}
+		}
+		final double awayGap = grad[away] - gradTimesPoint;
+
+		if (awayGap > towardGap && point[away] < 1.0) {
+			final double[] dir = new double[point.length];
+			for (int i = 0; i < point.length; i++) {
+				dir[i] = point[i];
+			}
+			dir[away] -= 1.0;
+			final double maxStep = point[away] / (1.0 - point[away]);
+			final double eta = this.step(dir, maxStep);
+			if (eta == maxStep) {
+				// drop step: the away vertex leaves the support
+				this.point()[away] = 0.0;
+			}
+			if (eta > 0) {
+				return true;
+			}
+		}
+
+		// toward step, also if the away step yields no descent
+		final double[] dir = new double[point.length];
+		for (int i = 0; i < point.length; i++) {
+			dir[i] = -point[i];
+		}
+		dir[toward] += 1.0;
+		return (this.step(dir, 1.0) > 0);
+	}
+}
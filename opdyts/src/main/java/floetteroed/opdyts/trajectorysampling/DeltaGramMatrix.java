@@ -0,0 +1,150 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.opdyts.trajectorysampling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import floetteroed.opdyts.DecisionVariable;
+import floetteroed.utilities.math.Matrix;
+
+/**
+ * Maintains the inner products of the deltas of a list of transitions across
+ * changes of that list. Transitions that disappear from the list drop their
+ * row and column, and transitions that are appended to the list add one row
+ * of inner products, such that an update costs O(n·d) for a new transition
+ * instead of the O(n²·d) of a computation from scratch. The entries are
+ * bitwise identical to those of a computation from scratch.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+class DeltaGramMatrix<U extends DecisionVariable> {
+
+	// -------------------- MEMBERS --------------------
+
+	private final List<Transition<U>> transitions = new ArrayList<>();
+
+	// rows.get(i)[j] is the inner product of deltas i and j, for j <= i
+	private final List<double[]> rows = new ArrayList<>();
+
+	private long innerProductCnt = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	DeltaGramMatrix() {
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private void removeRow(final int k) {
+		this.transitions.remove(k);
+		this.rows.remove(k);
+		for (int i = k; i < this.rows.size(); i++) {
+			final double[] oldRow = this.rows.get(i);
+			final double[] newRow = new double[i + 1];
+			System.arraycopy(oldRow, 0, newRow, 0, k);
+			System.arraycopy(oldRow, k + 1, newRow, k, i - k + 1);
+			this.rows.set(i, newRow);
+		}
+	}
+
+	private void appendRow(final Transition<U> transition) {
+		final double[] row = new double[this.transitions.size() + 1];
+		for (int j = 0; j < this.transitions.size(); j++) {
+			row[j] = transition.getDelta().innerProd(
+					this.transitions.get(j).getDelta());
+		}
+		row[row.length - 1] = transition.getDelta().innerProd(
+				transition.getDelta());
+		this.innerProductCnt += row.length;
+		this.transitions.add(transition);
+		this.rows.add(row);
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * Brings this matrix in line with the given list of transitions. Cheap if
+	 * the list only differs from the previous one by removed transitions and
+	 * transitions appended at its end; otherwise, the matrix is recomputed.
+	 */
+	void update(final List<Transition<U>> newTransitions) {
+
+		final Set<Transition<U>> retained = Collections
+				.newSetFromMap(new IdentityHashMap<Transition<U>, Boolean>());
+		retained.addAll(newTransitions);
+		for (int k = this.transitions.size() - 1; k >= 0; k--) {
+			if (!retained.contains(this.transitions.get(k))) {
+				this.removeRow(k);
+			}
+		}
+
+		int i = 0;
+		for (Transition<U> transition : newTransitions) {
+			if (i < this.transitions.size()) {
+				if (this.transitions.get(i) != transition) {
+					// reordered; should not happen
+					this.transitions.clear();
+					this.rows.clear();
+					this.update(newTransitions);
+					return;
+				}
+			} else {
+				this.appendRow(transition);
+			}
+			i++;
+		}
+	}
+
+	int size() {
+		return this.transitions.size();
+	}
+
+	/**
+	 * Returns the number of inner products of deltas computed so far.
+	 */
+	long getInnerProductCnt() {
+		return this.innerProductCnt;
+	}
+
+	/**
+	 * Returns a new symmetric matrix of all inner products.
+	 */
+	Matrix newMatrix() {
+		final Matrix result = new Matrix(this.size(), this.size());
+		for (int i = 0; i < this.size(); i++) {
+			final double[] row = this.rows.get(i);
+			for (int j = 0; j <= i; j++) {
+				result.getRow(i).set(j, row[j]);
+				result.getRow(j).set(i, row[j]);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.opdyts.trajectorysampling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import floetteroed.opdyts.DecisionVariable;
+import floetteroed.opdyts.SimulatorState;
+import floetteroed.utilities.math.Matrix;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Feeds random transitions through a memory-limited TransitionSequenceSet and
+ * compares the incrementally maintained inner products of their deltas with a
+ * computation from scratch, for 50 to 500 stored transitions. Reports the
+ * time per simulator iteration of both and whether matrices and optimal
+ * sampling points are identical.
+ * <p>
+ * Usage: <code>DeltaGramMatrixBenchmark [stateDimension [iterations]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class DeltaGramMatrixBenchmark {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int DECISION_VARIABLE_CNT = 10;
+
+	private static final int[] TRANSITION_CNTS = { 50, 100, 200, 500 };
+
+	private DeltaGramMatrixBenchmark() {
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static SimulatorState newState(final Vector vector) {
+		return new SimulatorState() {
+			@Override
+			public Vector getReferenceToVectorRepresentation() {
+				return vector;
+			}
+
+			@Override
+			public void implementInSimulation() {
+			}
+		};
+	}
+
+	private static boolean identical(final Matrix a, final Matrix b) {
+		for (int i = 0; i < a.rowSize(); i++) {
+			for (int j = 0; j < a.columnSize(); j++) {
+				if (Double.doubleToLongBits(a.get(i, j)) != Double
+						.doubleToLongBits(b.get(i, j))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) {
+
+		final int dim = (args.length > 0 ? Integer.parseInt(args[0])
+				: 20 * 1000);
+		final int iterations = (args.length > 1 ? Integer.parseInt(args[1])
+				: 3);
+
+		final List<DecisionVariable> decisionVariables = new ArrayList<>();
+		for (int k = 0; k < DECISION_VARIABLE_CNT; k++) {
+			decisionVariables.add(new DecisionVariable() {
+				@Override
+				public void implementInSimulation() {
+				}
+			});
+		}
+
+		for (int transitionCnt : TRANSITION_CNTS) {
+			final Random rnd = new Random(4711);
+			final TransitionSequenceSet<DecisionVariable> set = new TransitionSequenceSet<>(
+					transitionCnt, Integer.MAX_VALUE, false);
+			SimulatorState fromState = newState(new Vector(dim));
+			long incremental_ns = 0;
+			long scratch_ns = 0;
+			boolean identical = true;
+			for (int it = 0; it < transitionCnt + iterations; it++) {
+				final Vector toVector = new Vector(dim);
+				for (int i = 0; i < dim; i++) {
+					toVector.set(i, rnd.nextDouble());
+				}
+				final SimulatorState toState = newState(toVector);
+				final DecisionVariable decisionVariable = decisionVariables
+						.get(rnd.nextInt(DECISION_VARIABLE_CNT));
+
+				final long start_ns = System.nanoTime();
+				set.addTransition(fromState, decisionVariable, toState,
+						rnd.nextDouble());
+				final Matrix incremental = set.newDeltaInnerProducts();
+				final long mid_ns = System.nanoTime();
+				if (it >= transitionCnt) {
+					final Matrix scratch = SurrogateObjectiveFunction
+							.newDeltaCovariances(set
+									.getAllTransitionsInInsertionOrder());
+					scratch_ns += System.nanoTime() - mid_ns;
+					incremental_ns += mid_ns - start_ns;
+					identical &= identical(incremental, scratch);
+				}
+				fromState = toState;
+			}
+
+			final double[] incrementalPoint = new TransitionSequencesAnalyzer<>(
+					set.getAllTransitionsInInsertionOrder(),
+					set.newDeltaInnerProducts(), 1.0, 1.0)
+					.newOptimalPoint(null);
+			final double[] scratchPoint = new TransitionSequencesAnalyzer<>(
+					set.getAllTransitionsInInsertionOrder(), 1.0, 1.0)
+					.newOptimalPoint(null);
+			for (int i = 0; i < incrementalPoint.length; i++) {
+				identical &= (Double.doubleToLongBits(incrementalPoint[i]) == Double
+						.doubleToLongBits(scratchPoint[i]));
+			}
+
+			System.out.println(transitionCnt + " transitions, dimension "
+					+ dim + ": incremental " + (incremental_ns / iterations / 1000)
+					+ " us/iteration, from scratch "
+					+ (scratch_ns / iterations / 1000) + " us/iteration, "
+					+ (identical ? "identical" : "DIFFERENT"));
+		}
+	}
+}
@@ -39,11 +39,14 @@ import org.apache.commons.math3.optim.linear.Relationship;
 import org.apache.commons.math3.optim.linear.SimplexSolver;
 
 /**
+ * Frank-Wolfe over the probability simplex that solves the linear
+ * approximation of every iteration as a linear program.
  * 
  * @author Gunnar Flötteröd
  *
+ * @see AwayStepFrankWolfe
  */
-public class FrankWolfe {
+public class FrankWolfe implements SimplexMinimizer {
 
 	// -------------------- MEMBERS --------------------
 
@@ -114,14 +117,17 @@ public class FrankWolfe {
 
 	// -------------------- IMPLEMENTATION --------------------
 
+	@Override
 	public double[] getPoint() {
 		return this.point;
 	}
 
+	@Override
 	public double getValue() {
 		return this.value;
 	}
 
+	@Override
 	public void run(final double[] initialPoint) {
 
 		int it = 0;
@@ -28,6 +28,7 @@ import static java.util.Collections.unmodifiableMap;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -51,6 +52,7 @@ import floetteroed.opdyts.logging.SurrogateObjectiveFunctionValue;
 import floetteroed.opdyts.logging.TotalMemory;
 import floetteroed.opdyts.logging.UniformityGap;
 import floetteroed.opdyts.logging.UniformityGapWeight;
+import floetteroed.utilities.math.MathHelpers;
 import floetteroed.utilities.statisticslogging.Statistic;
 import floetteroed.utilities.statisticslogging.StatisticsMultiWriter;
 
@@ -92,13 +94,8 @@ public class MultiTrajectorySampler<U extends DecisionVariable, X extends Simula
 
 	private TransitionSequenceSet<U> allTransitionSequences;
 
-	// the common initial state of all simulation trajectories
-	private SimulatorState initialState = null;
-
-	// the previously visited state
-	private SimulatorState fromState = null;
-
-	private U currentDecisionVariable = null;
+	// one per simulator; a single simulator uses only the first one
+	private final List<Lane<U>> lanes = new ArrayList<>();
 
 	private Map<U, ConvergenceCriterionResult> decisionVariable2convergenceResult = new LinkedHashMap<>();
 
@@ -123,6 +120,86 @@ public class MultiTrajectorySampler<U extends DecisionVariable, X extends Simula
 		this.statisticsWriter = new StatisticsMultiWriter<>(appendToLogFile);
 		this.allTransitionSequences = new TransitionSequenceSet<U>(maxTotalMemory, maxMemoryPerTrajectory,
 				maintainAllTrajectories);
+		this.lanes.add(new Lane<U>());
+	}
+
+	// -------------------- LANES AND ASSIGNMENTS --------------------
+
+	/**
+	 * The trajectory that one simulator is currently advancing.
+	 */
+	private static class Lane<U extends DecisionVariable> {
+
+		// the common initial state of all trajectories of this simulator
+		private SimulatorState initialState = null;
+
+		// the previously visited state
+		private SimulatorState fromState = null;
+
+		private U currentDecisionVariable = null;
+
+		// if the simulator is currently advancing currentDecisionVariable
+		private boolean running = true;
+
+		// if that is a warm-up iteration
+		private boolean warmup = true;
+	}
+
+	/**
+	 * What a simulator is to do in its next iteration.
+	 */
+	public static class Assignment<U extends DecisionVariable> {
+
+		private final U decisionVariable;
+
+		private final SimulatorState fromState;
+
+		private final boolean implementFromState;
+
+		private Assignment(final U decisionVariable, final SimulatorState fromState,
+				final boolean implementFromState) {
+			this.decisionVariable = decisionVariable;
+			this.fromState = fromState;
+			this.implementFromState = implementFromState;
+		}
+
+		public U getDecisionVariable() {
+			return this.decisionVariable;
+		}
+
+		public SimulatorState getFromState() {
+			return this.fromState;
+		}
+
+		/**
+		 * Implements the from-state (unless the simulator just continues its
+		 * trajectory) and then the decision variable in the simulation. Must
+		 * be called by the thread that runs the assigned simulator.
+		 */
+		public void implementInSimulation() {
+			if (this.implementFromState) {
+				this.fromState.implementInSimulation();
+			}
+			this.decisionVariable.implementInSimulation();
+		}
+	}
+
+	private Lane<U> lane(final int simulatorIndex) {
+		while (this.lanes.size() <= simulatorIndex) {
+			this.lanes.add(new Lane<U>());
+		}
+		return this.lanes.get(simulatorIndex);
+	}
+
+	// decision variables that other simulators are currently advancing
+	private Set<U> busyDecisionVariables(final Lane<U> lane) {
+		final Set<U> result = new LinkedHashSet<>();
+		for (Lane<U> other : this.lanes) {
+			if ((other != lane) && other.running && (other.currentDecisionVariable != null)) {
+				result.add(other.currentDecisionVariable);
+			}
+		}
+		return result;
 	}
 
 	// -------------------- SETTERS AND GETTERS --------------------
@@ -150,7 +227,7 @@ public class MultiTrajectorySampler<U extends DecisionVariable, X extends Simula
 
 	@Override
 	public U getCurrentDecisionVariable() {
-		return this.currentDecisionVariable;
+		return this.lanes.get(0).currentDecisionVariable;
 	}
 
 	public int getTotalTransitionCnt() {
@@ -191,6 +268,22 @@ public class MultiTrajectorySampler<U extends DecisionVariable, X extends Simula
 	// -------------------- IMPLEMENTATION --------------------
 
 	public void afterIteration(final X newState) {
+		// with a single simulator, there always is a next assignment
+		this.afterIteration(0, newState).implementInSimulation();
+	}
+
+	/**
+	 * Like afterIteration(X) but for one of several simulators that advance
+	 * different decision variables in parallel. The caller feeds the new
+	 * states in a deterministic order and implements the returned assignment
+	 * in the respective simulator. Returns null if there is currently nothing
+	 * to do for that simulator; it should then ask again through
+	 * nextAssignment(int) after the other simulators' states have been fed.
+	 */
+	public Assignment<U> afterIteration(final int simulatorIndex, final X newState) {
+
+		final Lane<U> lane = this.lane(simulatorIndex);
+		lane.running = false;
 
 		/*
 		 * When this function is called for the first time, all of the following
@@ -208,7 +301,8 @@ public class MultiTrajectorySampler<U extends DecisionVariable, X extends Simula
 		 */
 
 		this.totalTransitionCnt++;
-		Logger.getLogger(this.getClass().getName()).info("Trajectory sampling iteration " + this.totalTransitionCnt);
+		Logger.getLogger(this.getClass().getName()).info("Trajectory sampling iteration " + this.totalTransitionCnt
+				+ (this.lanes.size() > 1 ? " (simulator " + simulatorIndex + ")" : ""));
 
 		/*
 		 * If the currentDecisionVariable is null then one has just observed the first
@@ -224,11 +318,11 @@ public class MultiTrajectorySampler<U extends DecisionVariable, X extends Simula
 
 		Double justObservedObjectiveFunctionValue = null; // only for logging
 
-		if ((this.currentDecisionVariable != null) && (this.useAllWarmupIterations
-				|| (this.decisionVariable2remainingWarmupIterations.get(this.currentDecisionVariable) == null))) {
+		if ((lane.currentDecisionVariable != null) && (this.useAllWarmupIterations
+				|| (this.decisionVariable2remainingWarmupIterations.get(lane.currentDecisionVariable) == null))) {
 
 			justObservedObjectiveFunctionValue = this.objectiveFunction.value(newState);
-			this.allTransitionSequences.addTransition(this.fromState, this.currentDecisionVariable, newState,
+			this.allTransitionSequences.addTransition(lane.fromState, lane.currentDecisionVariable, newState,
 					// this.objectiveFunction.value(newState)
 					justObservedObjectiveFunctionValue);
 		}
@@ -237,39 +331,42 @@ public class MultiTrajectorySampler<U extends DecisionVariable, X extends Simula
 		 * Prepare the next iteration.
 		 */
 
-		if (this.decisionVariable2remainingWarmupIterations.size() > 0) {
+		final U warmupDecisionVariable = this.nextWarmupDecisionVariable(lane);
+		if (warmupDecisionVariable != null) {
 
 			// Still in the warm-up phase.
 
-			if (this.currentDecisionVariable == null) {
+			final boolean implementFromState;
+			if (lane.currentDecisionVariable == null) {
 				// very first iteration
-				this.initialState = newState;
-				this.fromState = newState;
-			} else if (!this.decisionVariable2remainingWarmupIterations.containsKey(this.currentDecisionVariable)) {
+				lane.initialState = newState;
+				lane.fromState = newState;
+				implementFromState = false;
+			} else if (!this.decisionVariable2remainingWarmupIterations.containsKey(lane.currentDecisionVariable)) {
 				// switch to new warm-up trajectory
-				this.fromState = this.initialState;
-				this.fromState.implementInSimulation();
+				lane.fromState = lane.initialState;
+				implementFromState = true;
 			} else {
 				// continue a warm-up trajectory
-				this.fromState = newState;
+				lane.fromState = newState;
+				implementFromState = false;
 			}
 
 			this.statisticsWriter.writeToFile(null, LastObjectiveFunctionValue.LABEL,
 					Statistic.toString(justObservedObjectiveFunctionValue), EquilibriumGapWeight.LABEL,
 					Double.toString(this.equilibriumWeight), UniformityGapWeight.LABEL,
 					Double.toString(this.uniformityWeight), LastDecisionVariable.LABEL,
-					Statistic.toString(this.currentDecisionVariable));
+					Statistic.toString(lane.currentDecisionVariable));
 
-			this.currentDecisionVariable = this.decisionVariable2remainingWarmupIterations.keySet().iterator().next(); // relies
-			this.currentDecisionVariable.implementInSimulation();
+			lane.currentDecisionVariable = warmupDecisionVariable;
 
 			{
 				final int remainingWarmupIterations = this.decisionVariable2remainingWarmupIterations
-						.get(this.currentDecisionVariable);
+						.get(lane.currentDecisionVariable);
 				if (remainingWarmupIterations == 1) {
-					this.decisionVariable2remainingWarmupIterations.remove(this.currentDecisionVariable);
+					this.decisionVariable2remainingWarmupIterations.remove(lane.currentDecisionVariable);
 				} else {
-					this.decisionVariable2remainingWarmupIterations.put(this.currentDecisionVariable,
+					this.decisionVariable2remainingWarmupIterations.put(lane.currentDecisionVariable,
 							remainingWarmupIterations - 1);
 				}
 			}
@@ -278,35 +375,129 @@ public class MultiTrajectorySampler<U extends DecisionVariable, X extends Simula
 			// Double.toString(this.equilibriumWeight),
 			// UniformityGapWeight.LABEL, Double.toString(this.uniformityWeight));
 
+			lane.running = true;
+			lane.warmup = true;
+			return new Assignment<U>(lane.currentDecisionVariable, lane.fromState, implementFromState);
+
 		} else {
 
-			// Warm-up phase is over.
+			if (lane.initialState == null) {
+				lane.initialState = newState;
+				lane.fromState = newState;
+			}
+			return this.nextAssignment(simulatorIndex);
+		}
+	}
+
+	/*
+	 * With several simulators, a simulator continues its own warm-up
+	 * trajectory or starts the first one that no other simulator is running.
+	 * With a single simulator, this is always the first remaining one.
+	 */
+	private U nextWarmupDecisionVariable(final Lane<U> lane) {
+		if (this.decisionVariable2remainingWarmupIterations.containsKey(lane.currentDecisionVariable)) {
+			return lane.currentDecisionVariable;
+		}
+		final Set<U> busy = this.busyDecisionVariables(lane);
+		for (U decisionVariable : this.decisionVariable2remainingWarmupIterations.keySet()) {
+			if (!busy.contains(decisionVariable)) {
+				return decisionVariable;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the next assignment for a simulator that received none from
+	 * afterIteration(int, X), or null if there still is nothing to do for it.
+	 */
+	public Assignment<U> nextAssignment(final int simulatorIndex) {
+
+		final Lane<U> lane = this.lane(simulatorIndex);
+		if (lane.running) {
+			throw new IllegalStateException("simulator " + simulatorIndex + " is still running");
+		}
+		if (this.decisionVariable2remainingWarmupIterations.size() > 0) {
+			// wait until the other simulators are through with the warm-up
+			return null;
+		}
+		for (Lane<U> other : this.lanes) {
+			if (other.running && other.warmup) {
+				return null;
+			}
+		}
+		final Set<U> busy = this.busyDecisionVariables(lane);
+		if (!busy.isEmpty()) {
+			boolean available = false;
+			for (Transition<U> transition : this.allTransitionSequences.getAllTransitionsInInsertionOrder()) {
+				available |= !busy.contains(transition.getDecisionVariable());
+			}
+			if (!available) {
+				// wait until another simulator releases a decision variable
+				return null;
+			}
+		}
 
-			// Check for convergence.
-			final ConvergenceCriterionResult convergenceResult = this.convergenceCriterion.evaluate(
-					this.allTransitionSequences.getTransitions(this.currentDecisionVariable),
-					this.allTransitionSequences.additionCnt(this.currentDecisionVariable));
+		// Warm-up phase is over.
+
+		// Check for convergence.
+		final Transition<U> lastTransition;
+		final ConvergenceCriterionResult convergenceResult;
+		if (lane.currentDecisionVariable != null) {
+			convergenceResult = this.convergenceCriterion.evaluate(
+					this.allTransitionSequences.getTransitions(lane.currentDecisionVariable),
+					this.allTransitionSequences.additionCnt(lane.currentDecisionVariable));
 			if (convergenceResult.converged) {
-				this.decisionVariable2convergenceResult.put(this.currentDecisionVariable, convergenceResult);
+				this.decisionVariable2convergenceResult.put(lane.currentDecisionVariable, convergenceResult);
 			}
+			lastTransition = this.allTransitionSequences.getTransitions(lane.currentDecisionVariable).getLast();
+		} else {
+			// a simulator that has not advanced any trajectory yet
+			convergenceResult = null;
+			lastTransition = this.allTransitionSequences.getAllTransitionsInInsertionOrder().getLast();
+		}
 
-			// Process the most recent sampling stage.
-			final TransitionSequencesAnalyzer<U> samplingStageEvaluator = new TransitionSequencesAnalyzer<U>(
-					this.allTransitionSequences.getAllTransitionsInInsertionOrder(), this.equilibriumWeight,
-					this.uniformityWeight);
-			final SamplingStage<U> samplingStage = samplingStageEvaluator.newOptimalSamplingStage(
-					this.allTransitionSequences.getTransitions(this.currentDecisionVariable).getLast(),
-					convergenceResult.finalObjectiveFunctionValue, (this.samplingStages.size() == 0) ? null
-							: this.samplingStages.get(samplingStages.size() - 1).transition2lastSolutionView());
-			this.samplingStages.add(samplingStage);
-			this.statisticsWriter.writeToFile(samplingStage);
-
-			// Decide what to do next.
-			this.currentDecisionVariable = samplingStage.drawDecisionVariable(this.rnd);
-			this.fromState = this.allTransitionSequences.getLastState(this.currentDecisionVariable);
-			this.fromState.implementInSimulation();
-			this.currentDecisionVariable.implementInSimulation();
+		// Process the most recent sampling stage.
+		final TransitionSequencesAnalyzer<U> samplingStageEvaluator = new TransitionSequencesAnalyzer<U>(
+				this.allTransitionSequences.getAllTransitionsInInsertionOrder(),
+				this.allTransitionSequences.newDeltaInnerProducts(), this.equilibriumWeight,
+				this.uniformityWeight);
+		final SamplingStage<U> samplingStage = samplingStageEvaluator.newOptimalSamplingStage(lastTransition,
+				(convergenceResult != null ? convergenceResult.finalObjectiveFunctionValue : null),
+				(this.samplingStages.size() == 0) ? null
+						: this.samplingStages.get(samplingStages.size() - 1).transition2lastSolutionView());
+		this.samplingStages.add(samplingStage);
+		this.statisticsWriter.writeToFile(samplingStage);
+
+		// Decide what to do next.
+		lane.currentDecisionVariable = this.drawDecisionVariable(samplingStage, busy);
+		lane.fromState = this.allTransitionSequences.getLastState(lane.currentDecisionVariable);
+		lane.running = true;
+		lane.warmup = false;
+		return new Assignment<U>(lane.currentDecisionVariable, lane.fromState, true);
+	}
 
+	/*
+	 * Draws among the decision variables that no other simulator is currently
+	 * advancing, of which there is at least one.
+	 */
+	private U drawDecisionVariable(final SamplingStage<U> samplingStage, final Set<U> busy) {
+		if (busy.isEmpty()) {
+			return samplingStage.drawDecisionVariable(this.rnd);
+		}
+		final Map<U, Double> decisionVariable2weight = new LinkedHashMap<>();
+		double weightSum = 0;
+		for (U decisionVariable : samplingStage.getDecisionVariables()) {
+			if (!busy.contains(decisionVariable)) {
+				final double weight = samplingStage.getAlphaSum(decisionVariable);
+				decisionVariable2weight.put(decisionVariable, weight);
+				weightSum += weight;
+			}
+		}
+		if (weightSum > 0) {
+			return MathHelpers.draw(decisionVariable2weight, weightSum, this.rnd);
+		} else {
+			return MathHelpers.draw(decisionVariable2weight.keySet(), this.rnd);
 		}
 	}
 }
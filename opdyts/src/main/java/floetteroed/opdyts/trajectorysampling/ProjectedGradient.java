@@ -0,0 +1,150 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.opdyts.trajectorysampling;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.analysis.MultivariateFunction;
+import org.apache.commons.math3.analysis.MultivariateVectorFunction;
+
+import floetteroed.opdyts.trajectorysampling.FrankWolfe.LineSearch;
+
+/**
+ * Projected gradient descent on the probability simplex. Each iteration
+ * projects a gradient step, scaled with the Barzilai-Borwein rule, onto the
+ * simplex; the projection sets the coordinates of the active bounds to zero,
+ * such that the active set is identified along the way. The line search then
+ * chooses how far to move towards the projected point.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class ProjectedGradient extends AbstractSimplexMinimizer {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int MAX_SCALE_REDUCTIONS = 10;
+
+	// -------------------- MEMBERS --------------------
+
+	private double scale = 1.0;
+
+	private double[] previousPoint = null;
+
+	private double[] previousGrad = null;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public ProjectedGradient(final MultivariateFunction objectiveFunction,
+			final MultivariateVectorFunction gradientFunction,
+			final LineSearch lineSearch, final double eps) {
+		super(objectiveFunction, gradientFunction, lineSearch, eps);
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	/**
+	 * Euclidean projection of v onto the probability simplex.
+	 */
+	static double[] projectOntoSimplex(final double[] v) {
+		final double[] sorted = v.clone();
+		Arrays.sort(sorted);
+		double cumSum = 0;
+		double theta = 0;
+		for (int j = 1; j <= sorted.length; j++) {
+			final double u = sorted[sorted.length - j];
+			cumSum += u;
+			if (u - (cumSum - 1.0) / j > 0) {
+				theta = (cumSum - 1.0) / j;
+			}
+		}
+		final double[] result = new double[v.length];
+		for (int i = 0; i < v.length; i++) {
+			result[i] = Math.max(v[i] - theta, 0.0);
+		}
+		return result;
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	@Override
+	public void run(final double[] initialPoint) {
+		this.scale = 1.0;
+		this.previousPoint = null;
+		this.previousGrad = null;
+		super.run(initialPoint);
+	}
+
+	@Override
+	boolean iterate() {
+
+		final double[] point = this.point();
+		final double[] grad = this.gradient(point);
+		if (this.converged(frankWolfeGap(point, grad))) {
+			return false;
+		}
+
+		// Barzilai-Borwein scaling from the previous step
+		if (this.previousPoint != null) {
+			double ss = 0;
+			double sy = 0;
+			for (int i = 0; i < point.length; i++) {
+				final double s = point[i] - this.previousPoint[i];
+				ss += s * s;
+				sy += s * (grad[i] - this.previousGrad[i]);
+			}
+			this.scale = (sy > 0 ? ss / sy : 2.0 * this.scale);
+		} else {
+			this.scale = 1.0 / Math.max(1e-8, maxAbs(grad));
+		}
+
+		// shrink the scale until the projected step yields a descent
+		final double[] trial = new double[point.length];
+		for (int attempt = 0; attempt <= MAX_SCALE_REDUCTIONS; attempt++) {
+			for (int i = 0; i < point.length; i++) {
+				trial[i] = point[i] - this.scale * grad[i];
+			}
+			final double[] dir = projectOntoSimplex(trial);
+			for (int i = 0; i < point.length; i++) {
+				dir[i] -= point[i];
+			}
+			if (this.step(dir, 1.0) > 0) {
+				this.previousPoint = point;
+				this.previousGrad = grad;
+				return true;
+			}
+			this.scale *= 0.1;
+		}
+		return false;
+	}
+
+	private static double maxAbs(final double[] v) {
+		double result = 0;
+		for (double val : v) {
+			result = Math.max(result, Math.abs(val));
+		}
+		return result;
+	}
+}
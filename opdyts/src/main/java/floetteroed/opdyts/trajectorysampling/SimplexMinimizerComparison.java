@@ -0,0 +1,178 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.opdyts.trajectorysampling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import floetteroed.opdyts.DecisionVariable;
+import floetteroed.opdyts.SimulatorState;
+import floetteroed.opdyts.trajectorysampling.TransitionSequencesAnalyzer.Solver;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Regression check of the surrogate minimizers: solves randomly generated
+ * sampling stages of converging trajectories with every Solver of
+ * TransitionSequencesAnalyzer and compares the resulting transition weights
+ * (alphas) and surrogate objective function values with those of the linear
+ * programming Frank-Wolfe. Reports run times and the largest deviations.
+ * <p>
+ * Usage: <code>SimplexMinimizerComparison [stateDimension [seeds]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class SimplexMinimizerComparison {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int DECISION_VARIABLE_CNT = 8;
+
+	private static final int[] TRANSITION_CNTS = { 5, 20, 50, 100, 200 };
+
+	private static final double[][] WEIGHTS = { { 1.0, 1.0 }, { 10.0, 0.1 },
+			{ 0.1, 10.0 } };
+
+	private SimplexMinimizerComparison() {
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static SimulatorState newState(final Vector vector) {
+		return new SimulatorState() {
+			@Override
+			public Vector getReferenceToVectorRepresentation() {
+				return vector;
+			}
+
+			@Override
+			public void implementInSimulation() {
+			}
+		};
+	}
+
+	/**
+	 * Each decision variable pulls the state towards its own fixed point; the
+	 * objective function value is the squared distance to a common target.
+	 */
+	static List<Transition<DecisionVariable>> newTransitions(
+			final int transitionCnt, final int dim, final Random rnd) {
+		final List<DecisionVariable> decisionVariables = new ArrayList<>();
+		final List<Vector> fixedPoints = new ArrayList<>();
+		for (int k = 0; k < DECISION_VARIABLE_CNT; k++) {
+			decisionVariables.add(new DecisionVariable() {
+				@Override
+				public void implementInSimulation() {
+				}
+			});
+			final Vector fixedPoint = new Vector(dim);
+			for (int i = 0; i < dim; i++) {
+				fixedPoint.set(i, rnd.nextGaussian());
+			}
+			fixedPoints.add(fixedPoint);
+		}
+		final TransitionSequenceSet<DecisionVariable> set = new TransitionSequenceSet<>(
+				transitionCnt, Integer.MAX_VALUE, false);
+		final Vector[] lastStates = new Vector[DECISION_VARIABLE_CNT];
+		for (int it = 0; it < transitionCnt; it++) {
+			final int k = rnd.nextInt(DECISION_VARIABLE_CNT);
+			final Vector from = (lastStates[k] != null ? lastStates[k]
+					: new Vector(dim));
+			final Vector to = new Vector(dim);
+			double objectiveFunctionValue = 0;
+			for (int i = 0; i < dim; i++) {
+				to.set(i, 0.5 * from.get(i) + 0.5 * fixedPoints.get(k).get(i)
+						+ 0.1 * rnd.nextGaussian());
+				objectiveFunctionValue += (to.get(i) - 1.0)
+						* (to.get(i) - 1.0) / dim;
+			}
+			set.addTransition(newState(from), decisionVariables.get(k),
+					newState(to), objectiveFunctionValue);
+			lastStates[k] = to;
+		}
+		return new ArrayList<>(set.getAllTransitionsInInsertionOrder());
+	}
+
+	// -------------------- MAIN --------------------
+
+	public static void main(String[] args) {
+
+		final int dim = (args.length > 0 ? Integer.parseInt(args[0]) : 500);
+		final int seeds = (args.length > 1 ? Integer.parseInt(args[1]) : 3);
+		Logger.getLogger("floetteroed.opdyts").setLevel(Level.WARNING);
+
+		final Solver[] solvers = Solver.values();
+		final long[] time_ns = new long[solvers.length];
+		final double[] maxAlphaDev = new double[solvers.length];
+		final double[] maxRelValueExcess = new double[solvers.length];
+		final double[] maxRelValueGain = new double[solvers.length];
+
+		for (int transitionCnt : TRANSITION_CNTS) {
+			for (int seed = 0; seed < seeds; seed++) {
+				final List<Transition<DecisionVariable>> transitions = newTransitions(
+						transitionCnt, dim, new Random(seed));
+				for (double[] weights : WEIGHTS) {
+					final TransitionSequencesAnalyzer<DecisionVariable> analyzer = new TransitionSequencesAnalyzer<>(
+							transitions, weights[0], weights[1]);
+					final double[][] alphas = new double[solvers.length][];
+					final double[] values = new double[solvers.length];
+					for (int s = 0; s < solvers.length; s++) {
+						analyzer.setSolver(solvers[s]);
+						final long start_ns = System.nanoTime();
+						alphas[s] = analyzer.newOptimalPoint(null);
+						time_ns[s] += System.nanoTime() - start_ns;
+						values[s] = analyzer
+								.surrogateObjectiveFunctionValue(new Vector(
+										alphas[s]));
+					}
+					final double scale = Math.max(1.0, Math.abs(values[0]));
+					for (int s = 1; s < solvers.length; s++) {
+						for (int i = 0; i < transitionCnt; i++) {
+							maxAlphaDev[s] = Math.max(maxAlphaDev[s],
+									Math.abs(alphas[s][i] - alphas[0][i]));
+						}
+						maxRelValueExcess[s] = Math.max(maxRelValueExcess[s],
+								(values[s] - values[0]) / scale);
+						maxRelValueGain[s] = Math.max(maxRelValueGain[s],
+								(values[0] - values[s]) / scale);
+					}
+				}
+			}
+		}
+
+		System.out.println(solvers[0] + ": " + (time_ns[0] / 1000000)
+				+ " ms (reference)");
+		for (int s = 1; s < solvers.length; s++) {
+			System.out.println(solvers[s] + ": " + (time_ns[s] / 1000000)
+					+ " ms, max |alpha - reference alpha| = " + maxAlphaDev[s]
+					+ ", surrogate value at most " + maxRelValueExcess[s]
+					+ " above and at most " + maxRelValueGain[s]
+					+ " below reference (relative)");
+		}
+	}
+}
@@ -51,20 +51,42 @@ public class SurrogateObjectiveFunction<U extends DecisionVariable> {
 
 	public SurrogateObjectiveFunction(final List<Transition<U>> transitions,
 			final double equilibriumGapWeight, final double uniformityWeight) {
+		this(transitions, newDeltaCovariances(transitions),
+				equilibriumGapWeight, uniformityWeight);
+	}
+
+	/**
+	 * Uses the given inner products of the transitions' deltas, for instance
+	 * those maintained by a DeltaGramMatrix, instead of computing them.
+	 */
+	SurrogateObjectiveFunction(final List<Transition<U>> transitions,
+			final Matrix deltaCovariances, final double equilibriumGapWeight,
+			final double uniformityWeight) {
+		if (deltaCovariances.rowSize() != transitions.size()
+				|| deltaCovariances.columnSize() != transitions.size()) {
+			throw new IllegalArgumentException(
+					"dimension of delta covariances is inconsistent with "
+							+ "number of transitions");
+		}
 		this.transitions = transitions;
 		this.equilibriumGapWeight = equilibriumGapWeight;
 		this.uniformityGapWeight = uniformityWeight;
+		this.deltaCovariances = deltaCovariances;
+	}
 
-		this.deltaCovariances = new Matrix(transitions.size(),
+	static <U extends DecisionVariable> Matrix newDeltaCovariances(
+			final List<Transition<U>> transitions) {
+		final Matrix result = new Matrix(transitions.size(),
 				transitions.size());
 		for (int i = 0; i < transitions.size(); i++) {
 			for (int j = 0; j <= i; j++) {
 				final double val = transitions.get(i).getDelta()
 						.innerProd(transitions.get(j).getDelta());
-				deltaCovariances.getRow(i).set(j, val);
-				deltaCovariances.getRow(j).set(i, val);
+				result.getRow(i).set(j, val);
+				result.getRow(j).set(i, val);
 			}
 		}
+		return result;
 	}
 
 	// -------------------- PARAMETERS --------------------
@@ -102,12 +124,59 @@ public class SurrogateObjectiveFunction<U extends DecisionVariable> {
 		return Math.sqrt(Math.max(result, 0.0));
 	}
 
+	/**
+	 * Returns the inner product of the delta combinations with weights a and
+	 * b, without touching the deltas themselves.
+	 */
+	double deltaInnerProd(final double[] a, final double[] b) {
+		double result = 0;
+		for (int i = 0; i < a.length; i++) {
+			result += a[i] * b[i] * this.deltaCovariances.get(i, i);
+			for (int j = 0; j < i; j++) {
+				result += (a[i] * b[j] + a[j] * b[i])
+						* this.deltaCovariances.get(i, j);
+			}
+		}
+		return result;
+	}
+
 	double surrogateObjectiveFunctionValue(final Vector alphas) {
 		return this.interpolatedObjectiveFunctionValue(alphas)
 				+ this.equilibriumGapWeight * this.equilibriumGap(alphas)
 				+ this.uniformityGapWeight * alphas.innerProd(alphas);
 	}
 
+	/**
+	 * The equilibrium gap smoothed by mu > 0. Unlike the gap itself, it is
+	 * differentiable where the gap vanishes, and it exceeds the gap by at most
+	 * mu.
+	 */
+	double smoothedEquilibriumGap(final Vector alphas, final double mu) {
+		final double equilibriumGap = this.equilibriumGap(alphas);
+		return Math.sqrt(equilibriumGap * equilibriumGap + mu * mu);
+	}
+
+	double smoothedSurrogateObjectiveFunctionValue(final Vector alphas,
+			final double mu) {
+		return this.interpolatedObjectiveFunctionValue(alphas)
+				+ this.equilibriumGapWeight
+				* this.smoothedEquilibriumGap(alphas, mu)
+				+ this.uniformityGapWeight * alphas.innerProd(alphas);
+	}
+
+	/**
+	 * The largest equilibrium gap of a single transition, which is attained
+	 * in a vertex of the simplex.
+	 */
+	double maxDeltaNorm() {
+		double result = 0;
+		for (int i = 0; i < this.transitions.size(); i++) {
+			result = Math.max(result,
+					Math.sqrt(this.deltaCovariances.get(i, i)));
+		}
+		return result;
+	}
+
 	// -------------------- GRADIENTS --------------------
 
 	Vector dInterpolObjFctVal_dAlpha(final Vector alphas) {
@@ -129,6 +198,17 @@ public class SurrogateObjectiveFunction<U extends DecisionVariable> {
 		return result;
 	}
 
+	Vector dSmoothedEquilibriumGap_dAlpha(final Vector alphas,
+			final double mu) {
+		final Vector result = new Vector(alphas.size());
+		final double smoothedGap = this.smoothedEquilibriumGap(alphas, mu);
+		for (int i = 0; i < alphas.size(); i++) {
+			result.set(i, alphas.innerProd(this.deltaCovariances.getRow(i))
+					/ smoothedGap);
+		}
+		return result;
+	}
+
 	Vector dUniformityGap_dAlpha(final Vector alphas) {
 		final Vector result = alphas.copy();
 		result.mult(2.0);
@@ -142,4 +222,12 @@ public class SurrogateObjectiveFunction<U extends DecisionVariable> {
 		result.add(this.dUniformityGap_dAlpha(alphas), this.uniformityGapWeight);
 		return result;
 	}
+
+	Vector dSmoothedSurrObjFctVal_dAlpha(final Vector alphas, final double mu) {
+		final Vector result = this.dInterpolObjFctVal_dAlpha(alphas);
+		result.add(this.dSmoothedEquilibriumGap_dAlpha(alphas, mu),
+				this.equilibriumGapWeight);
+		result.add(this.dUniformityGap_dAlpha(alphas), this.uniformityGapWeight);
+		return result;
+	}
 }
@@ -33,6 +33,7 @@ import java.util.Set;
 
 import floetteroed.opdyts.DecisionVariable;
 import floetteroed.opdyts.SimulatorState;
+import floetteroed.utilities.math.Matrix;
 
 /**
  * 
@@ -53,6 +54,8 @@ class TransitionSequenceSet<U extends DecisionVariable> {
 
 	private final LinkedList<Transition<U>> transitionsInInsertionOrder = new LinkedList<Transition<U>>();
 
+	private final DeltaGramMatrix<U> deltaInnerProducts = new DeltaGramMatrix<>();
+
 	// -------------------- CONSTRUCTION --------------------
 
 	TransitionSequenceSet(final int maxTotalMemory,
@@ -122,6 +125,13 @@ class TransitionSequenceSet<U extends DecisionVariable> {
 				candidateRemovalIndex++;
 			}
 		}
+
+		/*
+		 * Keep the inner products of the deltas in line with the retained
+		 * transitions.
+		 */
+
+		this.deltaInnerProducts.update(this.transitionsInInsertionOrder);
 	}
 
 	// -------------------- GETTERS --------------------
@@ -144,6 +154,18 @@ class TransitionSequenceSet<U extends DecisionVariable> {
 		return this.transitionsInInsertionOrder;
 	}
 
+	/**
+	 * Returns the inner products of the deltas of all transitions, in
+	 * insertion order.
+	 */
+	Matrix newDeltaInnerProducts() {
+		return this.deltaInnerProducts.newMatrix();
+	}
+
+	long getDeltaInnerProductCnt() {
+		return this.deltaInnerProducts.getInnerProductCnt();
+	}
+
 	SimulatorState getLastState(final U decisionVariable) {
 		return this.decisionVariable2transitionSequence.get(decisionVariable)
 				.getLastState();
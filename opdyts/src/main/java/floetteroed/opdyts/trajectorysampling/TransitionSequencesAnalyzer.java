@@ -34,6 +34,7 @@ import org.apache.commons.math3.analysis.MultivariateVectorFunction;
 
 import floetteroed.opdyts.DecisionVariable;
 import floetteroed.opdyts.trajectorysampling.FrankWolfe.LineSearch;
+import floetteroed.utilities.math.Matrix;
 import floetteroed.utilities.math.Vector;
 
 /**
@@ -45,6 +46,33 @@ public class TransitionSequencesAnalyzer<U extends DecisionVariable> {
 
 	// -------------------- CONSTANTS --------------------
 
+	/**
+	 * The available minimizers of the surrogate objective function over the
+	 * simplex of transition weights.
+	 */
+	public static enum Solver {
+		/** Frank-Wolfe that solves a linear program per iteration. */
+		LP_FRANK_WOLFE,
+		/**
+		 * Frank-Wolfe with closed-form vertex selection and away steps, applied
+		 * to a sequence of smoothed equilibrium gaps.
+		 */
+		AWAY_STEP_FRANK_WOLFE,
+		/**
+		 * Projected gradient descent with Barzilai-Borwein scaling, applied to a
+		 * sequence of smoothed equilibrium gaps.
+		 */
+		PROJECTED_GRADIENT
+	};
+
+	public static final Solver DEFAULT_SOLVER = Solver.PROJECTED_GRADIENT;
+
+	private static final double EPS = 1e-6;
+
+	private static final double SMOOTHING_REDUCTION = 0.1;
+
+	private Solver solver = DEFAULT_SOLVER;
+
 	private final List<Transition<U>> transitions;
 
 	private SurrogateObjectiveFunction<U> surrogateObjectiveFunction;
@@ -53,18 +81,42 @@ public class TransitionSequencesAnalyzer<U extends DecisionVariable> {
 
 	public TransitionSequencesAnalyzer(final List<Transition<U>> transitions,
 			final double equilibriumGapWeight, final double uniformityGapWeight) {
+		this(transitions, null, equilibriumGapWeight, uniformityGapWeight);
+	}
+
+	/**
+	 * Uses the given inner products of the transitions' deltas; null means
+	 * that they are computed from scratch.
+	 */
+	TransitionSequencesAnalyzer(final List<Transition<U>> transitions,
+			final Matrix deltaCovariances, final double equilibriumGapWeight,
+			final double uniformityGapWeight) {
 		if ((transitions == null) || (transitions.size() == 0)) {
 			throw new IllegalArgumentException(
 					"there must be at least one transition");
 		}
 		this.transitions = transitions;
 		this.surrogateObjectiveFunction = new SurrogateObjectiveFunction<>(
-				transitions, equilibriumGapWeight, Math.max(0.0,
-						uniformityGapWeight));
+				transitions,
+				(deltaCovariances != null ? deltaCovariances
+						: SurrogateObjectiveFunction
+								.newDeltaCovariances(transitions)),
+				equilibriumGapWeight, Math.max(0.0, uniformityGapWeight));
 	}
 
 	// -------------------- SETTERS AND GETTERS --------------------
 
+	public void setSolver(final Solver solver) {
+		if (solver == null) {
+			throw new IllegalArgumentException("solver must not be null");
+		}
+		this.solver = solver;
+	}
+
+	public Solver getSolver() {
+		return this.solver;
+	}
+
 	public double getEquilibriumGapWeight() {
 		return this.surrogateObjectiveFunction.getEquilibriumGapWeight();
 	}
@@ -117,11 +169,44 @@ public class TransitionSequencesAnalyzer<U extends DecisionVariable> {
 
 	public double[] newOptimalPoint(
 			final Map<Transition<?>, Double> transition2initialSolution) {
-		final FrankWolfe fw = new FrankWolfe(new MyObjectiveFunction(),
-				new MyGradient(), new MyLineSearch(), 1e-6);
-		fw.run(this.newInitialPoint(this.transitions.size(),
-				transition2initialSolution));
-		return fw.getPoint();
+		final double[] initialPoint = this.newInitialPoint(
+				this.transitions.size(), transition2initialSolution);
+		if (Solver.LP_FRANK_WOLFE.equals(this.solver)) {
+			final SimplexMinimizer minimizer = new FrankWolfe(
+					new MyObjectiveFunction(0.0), new MyGradient(0.0),
+					new MyLineSearch(0.0), EPS);
+			minimizer.run(initialPoint);
+			return minimizer.getPoint();
+		}
+
+		/*
+		 * The equilibrium gap is a norm, which is not differentiable where it
+		 * vanishes, and this is where the optimum typically lies. Gradient
+		 * steps and the Frank-Wolfe gap are meaningless there. Minimize
+		 * instead a sequence of ever less smoothed objective functions, each
+		 * starting from the solution of the previous one, until the smoothing
+		 * changes the objective function value by less than the tolerance.
+		 */
+		double[] point = initialPoint;
+		double mu = Math.max(this.surrogateObjectiveFunction.maxDeltaNorm(),
+				Double.MIN_NORMAL);
+		while (true) {
+			final SimplexMinimizer minimizer;
+			if (Solver.AWAY_STEP_FRANK_WOLFE.equals(this.solver)) {
+				minimizer = new AwayStepFrankWolfe(new MyObjectiveFunction(mu),
+						new MyGradient(mu), new MyLineSearch(mu), EPS);
+			} else {
+				minimizer = new ProjectedGradient(new MyObjectiveFunction(mu),
+						new MyGradient(mu), new MyLineSearch(mu), EPS);
+			}
+			minimizer.run(point);
+			point = minimizer.getPoint();
+			if (this.getEquilibriumGapWeight() * mu <= EPS
+					* Math.max(1.0, Math.abs(minimizer.getValue()))) {
+				return point;
+			}
+			mu *= SMOOTHING_REDUCTION;
+		}
 	}
 
 	// -------------------- SOLUTION BOOKKEEPING --------------------
@@ -162,51 +247,81 @@ public class TransitionSequencesAnalyzer<U extends DecisionVariable> {
 
 	// -------------------- OPTIMIZATION INTERNALS --------------------
 
+	/**
+	 * The surrogate objective function, with the equilibrium gap smoothed by
+	 * mu if mu is positive.
+	 */
 	private class MyObjectiveFunction implements MultivariateFunction {
+
+		private final double mu;
+
+		private MyObjectiveFunction(final double mu) {
+			this.mu = mu;
+		}
+
 		@Override
 		public double value(double[] point) {
 			final Vector alphas = new Vector(point);
-			return surrogateObjectiveFunctionValue(alphas);
+			if (this.mu > 0) {
+				return surrogateObjectiveFunction
+						.smoothedSurrogateObjectiveFunctionValue(alphas,
+								this.mu);
+			} else {
+				return surrogateObjectiveFunctionValue(alphas);
+			}
 		}
 	}
 
 	private class MyGradient implements MultivariateVectorFunction {
+
+		private final double mu;
+
+		private MyGradient(final double mu) {
+			this.mu = mu;
+		}
+
 		@Override
 		public double[] value(double[] point) {
 			final Vector alphas = new Vector(point);
-			return surrogateObjectiveFunction.dSurrObjFctVal_dAlpha(alphas)
-					.toArray();
+			if (this.mu > 0) {
+				return surrogateObjectiveFunction
+						.dSmoothedSurrObjFctVal_dAlpha(alphas, this.mu)
+						.toArray();
+			} else {
+				return surrogateObjectiveFunction.dSurrObjFctVal_dAlpha(alphas)
+						.toArray();
+			}
 		}
 	}
 
 	private class MyLineSearch implements LineSearch {
+
+		private final double mu;
+
+		private MyLineSearch(final double mu) {
+			this.mu = mu;
+		}
+
 		@Override
 		public double stepLength(final double[] pnt, final double[] dir) {
 
 			final double v = surrogateObjectiveFunction
 					.getEquilibriumGapWeight();
 			final double w = surrogateObjectiveFunction.getUniformityWeight();
-			final double eg = surrogateObjectiveFunction
-					.equilibriumGap(new Vector(pnt));
-
-			final Vector deltaSumTimesDir = new Vector(transitions.get(0)
-					.getDelta().size());
-			final Vector deltaSumTimesPnt = new Vector(transitions.get(0)
-					.getDelta().size());
-			for (int i = 0; i < transitions.size(); i++) {
-				deltaSumTimesDir.add(transitions.get(i).getDelta(), dir[i]);
-				deltaSumTimesPnt.add(transitions.get(i).getDelta(), pnt[i]);
-			}
+			final double eg = (this.mu > 0 ? surrogateObjectiveFunction
+					.smoothedEquilibriumGap(new Vector(pnt), this.mu)
+					: surrogateObjectiveFunction.equilibriumGap(new Vector(pnt)));
 
 			double num = 0;
 			for (int i = 0; i < transitions.size(); i++) {
 				num -= eg * dir[i]
 						* transitions.get(i).getToStateObjectiveFunctionValue();
 			}
-			num -= v * deltaSumTimesDir.innerProd(deltaSumTimesPnt);
+			num -= v * surrogateObjectiveFunction.deltaInnerProd(dir, pnt);
 			num -= 2.0 * w * eg * FrankWolfe.innerProd(dir, pnt);
 
-			double denom = v * deltaSumTimesDir.innerProd(deltaSumTimesDir);
+			double denom = v
+					* surrogateObjectiveFunction.deltaInnerProd(dir, dir);
 			denom += 2.0 * w * eg * FrankWolfe.innerProd(dir, dir);
 
 			if (Math.abs(num) > 0) {
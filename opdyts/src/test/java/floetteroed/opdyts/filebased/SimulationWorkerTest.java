@@ -0,0 +1,176 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.opdyts.filebased;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+/**
+ * Runs a {@link SimulationWorker} against a {@link ReferenceSimulation}
+ * process, once undisturbed and once with a process that crashes or hangs at
+ * every 7th request. All runs must produce the trajectory of the reference
+ * simulation, and the failures must be counted as restarts.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class SimulationWorkerTest {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int STATE_DIMENSION = 10;
+
+	private static final int ITERATIONS_PER_DECISION_VARIABLE = 5;
+
+	private static final double[] DECISION_VARIABLES = { 0.1, 0.2, 0.3, 0.4 };
+
+	private static final int FAIL_EVERY = 7;
+
+	private static final long TIMEOUT_MS = 2000;
+
+	// -------------------- INTERNALS --------------------
+
+	private static String javaCommand() {
+		final StringBuffer classPath = new StringBuffer();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if (classPath.length() > 0) {
+				classPath.append(File.pathSeparator);
+			}
+			classPath.append(new File(entry).getAbsolutePath());
+		}
+		return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java -cp " + classPath
+				+ " " + ReferenceSimulation.class.getName();
+	}
+
+	private static String decisionVariableId(final int iteration) {
+		if (iteration % ITERATIONS_PER_DECISION_VARIABLE == 0) {
+			return Double.toString(
+					DECISION_VARIABLES[(iteration / ITERATIONS_PER_DECISION_VARIABLE) % DECISION_VARIABLES.length]);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * The state trajectory of the reference simulation, computed in this JVM.
+	 */
+	private static List<double[]> expectedTrajectory(final int iterations) {
+		final List<double[]> result = new ArrayList<>();
+		final double[] x = new double[STATE_DIMENSION];
+		double u = 0;
+		for (int it = 0; it < iterations; it++) {
+			if (decisionVariableId(it) != null) {
+				u = Double.parseDouble(decisionVariableId(it));
+			}
+			for (int i = 0; i < x.length; i++) {
+				x[i] = 0.5 * x[i] + 0.5 * Math.sin(u * (i + 1));
+			}
+			result.add(x.clone());
+		}
+		return result;
+	}
+
+	private static double objectiveFunctionValue(final double[] x) {
+		double mean = 0;
+		for (double xi : x) {
+			mean += xi;
+		}
+		mean /= x.length;
+		return (mean - 0.3) * (mean - 0.3);
+	}
+
+	private static void assertTrajectory(final String workerArgs, final long timeout_ms, final int iterations,
+			final int expectedRestarts) throws IOException {
+		Logger.getLogger(SimulationWorker.class.getName()).setLevel(Level.SEVERE);
+		final File folder = Files.createTempDirectory("opdyts").toFile();
+		final SimulationWorker worker = new SimulationWorker(folder.getAbsolutePath(),
+				javaCommand() + " worker " + STATE_DIMENSION + workerArgs, timeout_ms,
+				SimulationWorker.DEFAULT_MAX_RESTARTS);
+		try {
+			final List<double[]> expected = expectedTrajectory(iterations);
+			for (int it = 0; it < iterations; it++) {
+				final FileBasedSimulatorState state = worker.advance(decisionVariableId(it));
+				assertArrayEquals("iteration " + it, expected.get(it),
+						state.getReferenceToVectorRepresentation().toArray(), 0.0);
+				assertEquals("iteration " + it, objectiveFunctionValue(expected.get(it)),
+						state.getObjectiveFunctionValue(), 0.0);
+			}
+			assertEquals(expectedRestarts, worker.getFailureCnt());
+		} finally {
+			worker.close();
+			folder.delete();
+		}
+	}
+
+	// -------------------- TESTS --------------------
+
+	@Test
+	public void testNormalRun() throws IOException {
+		assertTrajectory("", SimulationWorker.DEFAULT_TIMEOUT_MS, 20, 0);
+	}
+
+	@Test
+	public void testCrash() throws IOException {
+		// every process serves FAIL_EVERY - 1 requests: fails at 7, 13, 19
+		assertTrajectory(" " + FAIL_EVERY + " crash", SimulationWorker.DEFAULT_TIMEOUT_MS, 20, 3);
+	}
+
+	@Test
+	public void testHangAndTimeout() throws IOException {
+		// every process serves FAIL_EVERY - 1 requests: times out at 7, 13
+		assertTrajectory(" " + FAIL_EVERY + " hang", TIMEOUT_MS, 14, 2);
+	}
+
+	@Test
+	public void testGiveUp() throws IOException {
+		Logger.getLogger(SimulationWorker.class.getName()).setLevel(Level.SEVERE);
+		final File folder = Files.createTempDirectory("opdyts").toFile();
+		final SimulationWorker worker = new SimulationWorker(folder.getAbsolutePath(),
+				javaCommand() + " worker " + STATE_DIMENSION + " 1 crash", SimulationWorker.DEFAULT_TIMEOUT_MS,
+				SimulationWorker.DEFAULT_MAX_RESTARTS);
+		try {
+			worker.advance(decisionVariableId(0));
+			fail("a process that crashes at every request must be given up");
+		} catch (RuntimeException e) {
+			assertNotNull(e.getCause());
+			assertEquals(SimulationWorker.DEFAULT_MAX_RESTARTS + 1, worker.getFailureCnt());
+		} finally {
+			worker.close();
+			folder.delete();
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.opdyts.trajectorysampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import floetteroed.opdyts.DecisionVariable;
+import floetteroed.opdyts.SimulatorState;
+import floetteroed.utilities.math.Matrix;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Checks that the incrementally maintained inner products of a
+ * DeltaGramMatrix are bitwise identical to those computed from scratch by
+ * SurrogateObjectiveFunction.newDeltaCovariances.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class DeltaGramMatrixTest {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int STATE_DIMENSION = 100;
+
+	private static final int DECISION_VARIABLE_CNT = 5;
+
+	private static final int UPDATE_CNT = 500;
+
+	// -------------------- INTERNALS --------------------
+
+	private static final DecisionVariable DECISION_VARIABLE = new DecisionVariable() {
+		@Override
+		public void implementInSimulation() {
+		}
+	};
+
+	private static Vector newVector(final Random rnd) {
+		final Vector result = new Vector(STATE_DIMENSION);
+		for (int i = 0; i < STATE_DIMENSION; i++) {
+			result.set(i, rnd.nextGaussian());
+		}
+		return result;
+	}
+
+	private static Transition<DecisionVariable> newTransition(final Random rnd) {
+		return new Transition<DecisionVariable>(DECISION_VARIABLE,
+				newVector(rnd), null, rnd.nextDouble());
+	}
+
+	private static SimulatorState newState(final Vector vector) {
+		return new SimulatorState() {
+			@Override
+			public Vector getReferenceToVectorRepresentation() {
+				return vector;
+			}
+
+			@Override
+			public void implementInSimulation() {
+			}
+		};
+	}
+
+	private static void assertIdentical(final String context,
+			final Matrix expected, final Matrix actual) {
+		assertEquals(context, expected.rowSize(), actual.rowSize());
+		assertEquals(context, expected.columnSize(), actual.columnSize());
+		for (int i = 0; i < expected.rowSize(); i++) {
+			for (int j = 0; j < expected.columnSize(); j++) {
+				assertEquals(context + ", entry (" + i + "," + j + ")",
+						Double.doubleToLongBits(expected.get(i, j)),
+						Double.doubleToLongBits(actual.get(i, j)));
+			}
+		}
+	}
+
+	private static void assertIdentical(final String context,
+			final List<Transition<DecisionVariable>> transitions,
+			final DeltaGramMatrix<DecisionVariable> gram) {
+		assertEquals(context, transitions.size(), gram.size());
+		assertIdentical(context,
+				SurrogateObjectiveFunction.newDeltaCovariances(transitions),
+				gram.newMatrix());
+	}
+
+	// -------------------- TESTS --------------------
+
+	@Test
+	public void testInterleavedAppendAndEvict() {
+		final Random rnd = new Random(4711);
+		final List<Transition<DecisionVariable>> transitions = new ArrayList<>();
+		final DeltaGramMatrix<DecisionVariable> gram = new DeltaGramMatrix<>();
+		for (int it = 0; it < UPDATE_CNT; it++) {
+			// evict up to three transitions anywhere in the list, keep one
+			final int evictCnt = Math.min(rnd.nextInt(4),
+					transitions.size() - 1);
+			for (int k = 0; k < evictCnt; k++) {
+				transitions.remove(rnd.nextInt(transitions.size()));
+			}
+			// append up to three transitions at the end of the list
+			final int appendCnt = (transitions.isEmpty() ? 1 : 0)
+					+ rnd.nextInt(4);
+			long expectedInnerProductCnt = gram.getInnerProductCnt();
+			for (int k = 0; k < appendCnt; k++) {
+				transitions.add(newTransition(rnd));
+				expectedInnerProductCnt += transitions.size();
+			}
+			gram.update(transitions);
+			assertIdentical("update " + it, transitions, gram);
+			// only the appended rows are computed
+			assertEquals("update " + it, expectedInnerProductCnt,
+					gram.getInnerProductCnt());
+		}
+	}
+
+	@Test
+	public void testReorderFallback() {
+		final Random rnd = new Random(4711);
+		final List<Transition<DecisionVariable>> transitions = new ArrayList<>();
+		final DeltaGramMatrix<DecisionVariable> gram = new DeltaGramMatrix<>();
+		for (int k = 0; k < 20; k++) {
+			transitions.add(newTransition(rnd));
+		}
+		gram.update(transitions);
+		assertIdentical("initial", transitions, gram);
+
+		for (int it = 0; it < 50; it++) {
+			final int i = rnd.nextInt(transitions.size() - 1);
+			final int j = i + 1 + rnd.nextInt(transitions.size() - i - 1);
+			Collections.swap(transitions, i, j);
+			if (rnd.nextBoolean()) {
+				transitions.remove(rnd.nextInt(transitions.size()));
+			}
+			transitions.add(newTransition(rnd));
+			final long innerProductCnt = gram.getInnerProductCnt();
+			gram.update(transitions);
+			assertIdentical("reorder " + it, transitions, gram);
+			// the matrix is recomputed from scratch
+			final long n = transitions.size();
+			assertEquals("reorder " + it, innerProductCnt + n * (n + 1) / 2,
+					gram.getInnerProductCnt());
+		}
+	}
+
+	@Test
+	public void testTransitionSequenceSetEviction() {
+		final Random rnd = new Random(4711);
+		final List<DecisionVariable> decisionVariables = new ArrayList<>();
+		for (int k = 0; k < DECISION_VARIABLE_CNT; k++) {
+			decisionVariables.add(new DecisionVariable() {
+				@Override
+				public void implementInSimulation() {
+				}
+			});
+		}
+		for (boolean maintainAllTrajectories : new boolean[] { false, true }) {
+			final TransitionSequenceSet<DecisionVariable> set = new TransitionSequenceSet<>(
+					12, 4, maintainAllTrajectories);
+			SimulatorState fromState = newState(newVector(rnd));
+			long expectedInnerProductCnt = 0;
+			for (int it = 0; it < UPDATE_CNT; it++) {
+				final SimulatorState toState = newState(newVector(rnd));
+				set.addTransition(fromState, decisionVariables.get(rnd
+						.nextInt(DECISION_VARIABLE_CNT)), toState, rnd
+						.nextDouble());
+				final String context = "maintainAllTrajectories="
+						+ maintainAllTrajectories + ", addition " + it;
+				assertTrue(context, set.size() <= 12);
+				assertIdentical(context, SurrogateObjectiveFunction
+						.newDeltaCovariances(set
+								.getAllTransitionsInInsertionOrder()), set
+						.newDeltaInnerProducts());
+				// evictions never trigger a recomputation
+				expectedInnerProductCnt += set.size();
+				assertEquals(context, expectedInnerProductCnt,
+						set.getDeltaInnerProductCnt());
+				fromState = toState;
+			}
+		}
+	}
+}
@@ -0,0 +1,343 @@
+/*
+ * Opdyts - Optimization of dynamic traffic simulations
+ *
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ *
+ * This file is part of Opdyts.
+ *
+ * Opdyts is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Opdyts is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Opdyts.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.opdyts.trajectorysampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import floetteroed.opdyts.DecisionVariable;
+import floetteroed.opdyts.trajectorysampling.TransitionSequencesAnalyzer.Solver;
+import floetteroed.utilities.math.Matrix;
+import floetteroed.utilities.math.Vector;
+
+/**
+ * Compares the transition weights (alphas) and surrogate objective function
+ * values of the Solvers with the optimum of the surrogate objective function
+ * on the sampling stages generated by SimplexMinimizerComparison. The optimum
+ * is computed independently by a textbook log-barrier interior point method,
+ * which bounds its own distance to the optimal value.
+ * 
+ * @author Gunnar Flötteröd
+ *
+ */
+public class TransitionSequencesAnalyzerTest {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int STATE_DIMENSION = 20;
+
+	private static final int SEEDS = 2;
+
+	private static final int[] TRANSITION_CNTS = { 5, 20, 50, 100, 200 };
+
+	private static final int[] LP_TRANSITION_CNTS = { 5, 20, 50 };
+
+	private static final double[][] WEIGHTS = { { 1.0, 1.0 }, { 10.0, 0.1 },
+			{ 0.1, 10.0 } };
+
+	private static final double SIMPLEX_TOL = 1e-8;
+
+	private static final double REFERENCE_TOL = 1e-7;
+
+	private static final double MAX_ALPHA_DEVIATION = 0.1;
+
+	private static final double MAX_RELATIVE_VALUE_EXCESS = 1e-2;
+
+	// -------------------- REFERENCE SOLUTION --------------------
+
+	private static double innerProd(final double[] a, final double[] b) {
+		double result = 0;
+		for (int i = 0; i < a.length; i++) {
+			result += a[i] * b[i];
+		}
+		return result;
+	}
+
+	private static double[] prod(final double[][] a, final double[] x) {
+		final double[] result = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			result[i] = innerProd(a[i], x);
+		}
+		return result;
+	}
+
+	/**
+	 * Solves a x = b by Gaussian elimination with partial pivoting.
+	 */
+	private static double[] solve(final double[][] a, final double[] b) {
+		final int m = b.length;
+		final double[][] lhs = new double[m][];
+		for (int i = 0; i < m; i++) {
+			lhs[i] = a[i].clone();
+		}
+		final double[] x = b.clone();
+		for (int c = 0; c < m; c++) {
+			int pivot = c;
+			for (int r = c + 1; r < m; r++) {
+				if (Math.abs(lhs[r][c]) > Math.abs(lhs[pivot][c])) {
+					pivot = r;
+				}
+			}
+			final double[] row = lhs[c];
+			lhs[c] = lhs[pivot];
+			lhs[pivot] = row;
+			final double val = x[c];
+			x[c] = x[pivot];
+			x[pivot] = val;
+			for (int r = c + 1; r < m; r++) {
+				final double factor = lhs[r][c] / lhs[c][c];
+				for (int k = c; k < m; k++) {
+					lhs[r][k] -= factor * lhs[c][k];
+				}
+				x[r] -= factor * x[c];
+			}
+		}
+		for (int c = m - 1; c >= 0; c--) {
+			double sum = x[c];
+			for (int k = c + 1; k < m; k++) {
+				sum -= lhs[c][k] * x[k];
+			}
+			x[c] = sum / lhs[c][c];
+		}
+		return x;
+	}
+
+	/**
+	 * Barrier function of min f'a + v t + w a'a subject to a on the simplex
+	 * and sqrt(a'Ca) <= t, scaled by 1/mu; infinite outside of the domain.
+	 */
+	private static double barrier(final double[][] c, final double[] f,
+			final double v, final double w, final double mu,
+			final double[] a, final double t) {
+		final double r = t * t - innerProd(a, prod(c, a));
+		if (t <= 0 || r <= 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double result = (innerProd(f, a) + v * t + w * innerProd(a, a)) / mu
+				- Math.log(r);
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] <= 0) {
+				return Double.POSITIVE_INFINITY;
+			}
+			result -= Math.log(a[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Minimizes f'a + v sqrt(a'Ca) + w a'a over the simplex with the barrier
+	 * method of Boyd and Vandenberghe (2004, Section 11.3). The barrier
+	 * parameter is n + 2, such that the returned value exceeds the optimum by
+	 * at most (n + 2) mu.
+	 */
+	private static double[] newReferencePoint(final double[][] c,
+			final double[] f, final double v, final double w) {
+		final int n = f.length;
+		double[] a = new double[n];
+		Arrays.fill(a, 1.0 / n);
+		double t = Math.sqrt(Math.max(0.0, innerProd(a, prod(c, a)))) + 1.0;
+		for (double mu = 1.0; true; mu *= 0.1) {
+			// centering with equality-constrained Newton steps
+			for (int newtonIt = 0; newtonIt < 100; newtonIt++) {
+				final double[] ca = prod(c, a);
+				final double r = t * t - innerProd(a, ca);
+				final double[][] kkt = new double[n + 2][n + 2];
+				final double[] rhs = new double[n + 2];
+				for (int i = 0; i < n; i++) {
+					rhs[i] = -((f[i] + 2.0 * w * a[i]) / mu - 1.0 / a[i] + 2.0
+							* ca[i] / r);
+					for (int j = 0; j < n; j++) {
+						kkt[i][j] = 2.0 * c[i][j] / r + 4.0 * ca[i] * ca[j]
+								/ (r * r);
+					}
+					kkt[i][i] += 2.0 * w / mu + 1.0 / (a[i] * a[i]);
+					kkt[i][n] = kkt[n][i] = -4.0 * t * ca[i] / (r * r);
+					kkt[i][n + 1] = kkt[n + 1][i] = 1.0;
+				}
+				rhs[n] = -(v / mu - 2.0 * t / r);
+				kkt[n][n] = -2.0 / r + 4.0 * t * t / (r * r);
+				final double[] step = solve(kkt, rhs);
+				double decrement = 0;
+				for (int i = 0; i <= n; i++) {
+					decrement += step[i] * rhs[i];
+				}
+				if (decrement <= 1e-10) {
+					break;
+				}
+				final double oldBarrier = barrier(c, f, v, w, mu, a, t);
+				for (double eta = 1.0; eta > 1e-20; eta *= 0.5) {
+					final double[] newA = new double[n];
+					for (int i = 0; i < n; i++) {
+						newA[i] = a[i] + eta * step[i];
+					}
+					final double newT = t + eta * step[n];
+					if (barrier(c, f, v, w, mu, newA, newT) <= oldBarrier
+							- 0.25 * eta * decrement) {
+						a = newA;
+						t = newT;
+						break;
+					}
+				}
+			}
+			final double value = innerProd(f, a) + v
+					* Math.sqrt(Math.max(0.0, innerProd(a, prod(c, a)))) + w
+					* innerProd(a, a);
+			if ((n + 2) * mu <= REFERENCE_TOL * Math.max(1.0, Math.abs(value))) {
+				return a;
+			}
+		}
+	}
+
+	private static double[] newReferencePoint(
+			final List<Transition<DecisionVariable>> transitions,
+			final double equilibriumGapWeight, final double uniformityWeight) {
+		final int n = transitions.size();
+		final Matrix deltaCovariances = SurrogateObjectiveFunction
+				.newDeltaCovariances(transitions);
+		final double[][] c = new double[n][n];
+		final double[] f = new double[n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				c[i][j] = deltaCovariances.get(i, j);
+			}
+			f[i] = transitions.get(i).getToStateObjectiveFunctionValue();
+		}
+		return newReferencePoint(c, f, equilibriumGapWeight, uniformityWeight);
+	}
+
+	private static void assertOnSimplex(final String context,
+			final int transitionCnt, final double[] alphas) {
+		assertEquals(context, transitionCnt, alphas.length);
+		double alphaSum = 0;
+		for (int i = 0; i < alphas.length; i++) {
+			assertTrue(context, alphas[i] >= -SIMPLEX_TOL);
+			alphaSum += alphas[i];
+		}
+		assertEquals(context, 1.0, alphaSum, SIMPLEX_TOL);
+	}
+
+	// -------------------- TESTS --------------------
+
+	@Test
+	public void testDefaultSolver() {
+		assertEquals(Solver.PROJECTED_GRADIENT,
+				TransitionSequencesAnalyzer.DEFAULT_SOLVER);
+		assertEquals(Solver.PROJECTED_GRADIENT,
+				new TransitionSequencesAnalyzer<>(
+						SimplexMinimizerComparison.newTransitions(5,
+								STATE_DIMENSION, new Random(0)), 1.0, 1.0)
+						.getSolver());
+	}
+
+	@Test
+	public void testSolversReachOptimum() {
+		for (int transitionCnt : TRANSITION_CNTS) {
+			for (int seed = 0; seed < SEEDS; seed++) {
+				final List<Transition<DecisionVariable>> transitions = SimplexMinimizerComparison
+						.newTransitions(transitionCnt, STATE_DIMENSION,
+								new Random(seed));
+				for (double[] weights : WEIGHTS) {
+					final TransitionSequencesAnalyzer<DecisionVariable> analyzer = new TransitionSequencesAnalyzer<>(
+							transitions, weights[0], weights[1]);
+					final double[] referenceAlphas = newReferencePoint(
+							transitions, weights[0], weights[1]);
+					final double referenceValue = analyzer
+							.surrogateObjectiveFunctionValue(new Vector(
+									referenceAlphas));
+					final double scale = Math.max(1.0,
+							Math.abs(referenceValue));
+					for (Solver solver : new Solver[] {
+							Solver.AWAY_STEP_FRANK_WOLFE,
+							Solver.PROJECTED_GRADIENT }) {
+						final String context = solver + ", " + transitionCnt
+								+ " transitions, seed " + seed + ", weights "
+								+ weights[0] + "/" + weights[1];
+						analyzer.setSolver(solver);
+						final double[] alphas = analyzer.newOptimalPoint(null);
+						assertOnSimplex(context, transitionCnt, alphas);
+						for (int i = 0; i < alphas.length; i++) {
+							assertEquals(context, referenceAlphas[i],
+									alphas[i], MAX_ALPHA_DEVIATION);
+						}
+						final double value = analyzer
+								.surrogateObjectiveFunctionValue(new Vector(
+										alphas));
+						// the reference is optimal up to its tolerance
+						assertTrue(context + ": surrogate value " + value
+								+ " below optimum " + referenceValue,
+								value >= referenceValue - REFERENCE_TOL
+										* scale);
+						assertTrue(context + ": surrogate value " + value
+								+ " exceeds optimum " + referenceValue,
+								value <= referenceValue
+										+ MAX_RELATIVE_VALUE_EXCESS * scale);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSolversNotWorseThanLinearProgrammingFrankWolfe() {
+		for (int transitionCnt : LP_TRANSITION_CNTS) {
+			for (int seed = 0; seed < SEEDS; seed++) {
+				final List<Transition<DecisionVariable>> transitions = SimplexMinimizerComparison
+						.newTransitions(transitionCnt, STATE_DIMENSION,
+								new Random(seed));
+				for (double[] weights : WEIGHTS) {
+					final TransitionSequencesAnalyzer<DecisionVariable> analyzer = new TransitionSequencesAnalyzer<>(
+							transitions, weights[0], weights[1]);
+					analyzer.setSolver(Solver.LP_FRANK_WOLFE);
+					final double[] lpAlphas = analyzer.newOptimalPoint(null);
+					assertOnSimplex("LP_FRANK_WOLFE", transitionCnt, lpAlphas);
+					final double lpValue = analyzer
+							.surrogateObjectiveFunctionValue(new Vector(
+									lpAlphas));
+					for (Solver solver : new Solver[] {
+							Solver.AWAY_STEP_FRANK_WOLFE,
+							Solver.PROJECTED_GRADIENT }) {
+						final String context = solver + ", " + transitionCnt
+								+ " transitions, seed " + seed + ", weights "
+								+ weights[0] + "/" + weights[1];
+						analyzer.setSolver(solver);
+						final double value = analyzer
+								.surrogateObjectiveFunctionValue(new Vector(
+										analyzer.newOptimalPoint(null)));
+						assertTrue(context + ": surrogate value " + value
+								+ " exceeds LP Frank-Wolfe value " + lpValue,
+								value <= lpValue + REFERENCE_TOL
+										* Math.max(1.0, Math.abs(lpValue)));
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import floetteroed.utilities.math.MathHelpers;
+
+/**
+ * Dense alternative to <code>DynamicData</code>. Every key is mapped once to
+ * a row index, and all bins of all rows are stored in a single flat array
+ * (row-major, keys x bins). Once a caller has obtained the row index of a key,
+ * it can access that key's time series without any hashing; the
+ * <code>(row, bin)</code> methods and the bulk <code>add</code> exist for
+ * this purpose.
+ * <p>
+ * Keys are never removed except by <code>clear()</code>, which invalidates all
+ * row indices. The content access methods have the same semantics as those of
+ * <code>DynamicData</code>.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param <K>
+ *            the key type
+ */
+public class DenseDynamicData<K> implements Serializable {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int INITIAL_ROW_CAPACITY = 16;
+
+	private final int startTime_s;
+
+	private final int binSize_s;
+
+	private int binCnt;
+
+	// -------------------- MEMBER VARIABLES --------------------
+
+	private final Map<K, Integer> key2row = new HashMap<K, Integer>();
+
+	private final List<K> row2key = new ArrayList<K>();
+
+	// values[row * binCnt + bin]
+	private double[] values;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public DenseDynamicData(final int startTime_s, final int binSize_s, final int binCnt) {
+
+		// CHECK
+
+		if (binSize_s <= 0) {
+			throw new IllegalArgumentException("binSize_s must be strictly positive");
+		}
+
+		if (binCnt <= 0) {
+			throw new IllegalArgumentException("binCnt must be strictly positive");
+		}
+
+		// CONTINUE
+
+		this.startTime_s = startTime_s;
+		this.binSize_s = binSize_s;
+		this.binCnt = binCnt;
+		this.values = new double[INITIAL_ROW_CAPACITY * binCnt];
+	}
+
+	public DenseDynamicData(final TimeDiscretization timeDiscr) {
+		this(timeDiscr.getStartTime_s(), timeDiscr.getBinSize_s(), timeDiscr.getBinCnt());
+	}
+
+	/**
+	 * Copies the content of source, assigning row indices in the iteration
+	 * order of its key set.
+	 */
+	public DenseDynamicData(final DynamicData<K> source) {
+		this(source.getStartTime_s(), source.getBinSize_s(), source.getBinCnt());
+		this.ensureRowCapacity(source.keySet().size());
+		for (K key : source.keySet()) {
+			final int offset = this.index(key) * this.binCnt;
+			for (int bin = 0; bin < this.binCnt; bin++) {
+				this.values[offset + bin] = source.getBinValue(key, bin);
+			}
+		}
+	}
+
+	public DynamicData<K> toDynamicData() {
+		final DynamicData<K> result = new DynamicData<K>(this.startTime_s, this.binSize_s, this.binCnt);
+		for (int row = 0; row < this.row2key.size(); row++) {
+			final K key = this.row2key.get(row);
+			final int offset = row * this.binCnt;
+			for (int bin = 0; bin < this.binCnt; bin++) {
+				result.put(key, bin, this.values[offset + bin]);
+			}
+		}
+		return result;
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private void ensureRowCapacity(final int rowCnt) {
+		final int capacity = this.values.length / this.binCnt;
+		if (rowCnt > capacity) {
+			final long newCapacity = Math.max(rowCnt, 2L * capacity);
+			final long newLength = Math.min(newCapacity, Integer.MAX_VALUE / this.binCnt) * this.binCnt;
+			if (newLength < (long) rowCnt * this.binCnt) {
+				throw new IllegalStateException("cannot store " + rowCnt + " rows of " + this.binCnt + " bins");
+			}
+			this.values = Arrays.copyOf(this.values, (int) newLength);
+		}
+	}
+
+	// -------------------- KEY INDEXING --------------------
+
+	/**
+	 * Returns the row index of key, adding an all-zero row if key is new.
+	 */
+	public int index(final K key) {
+		Integer row = this.key2row.get(key);
+		if (row == null) {
+			row = this.row2key.size();
+			this.ensureRowCapacity(row + 1);
+			this.key2row.put(key, row);
+			this.row2key.add(key);
+		}
+		return row;
+	}
+
+	/**
+	 * Returns the row index of key, or -1 if there is no such row.
+	 */
+	public int getIndex(final K key) {
+		final Integer row = this.key2row.get(key);
+		return (row == null ? -1 : row);
+	}
+
+	public K getKey(final int row) {
+		return this.row2key.get(row);
+	}
+
+	public int getRowCnt() {
+		return this.row2key.size();
+	}
+
+	// -------------------- BASIC CONTENT ACCESS --------------------
+
+	public int getStartTime_s() {
+		return this.startTime_s;
+	}
+
+	public int getBinSize_s() {
+		return this.binSize_s;
+	}
+
+	public int getBinCnt() {
+		return this.binCnt;
+	}
+
+	public int bin(final int time_s) {
+		return (time_s - this.startTime_s) / this.binSize_s;
+	}
+
+	public int binStart_s(final int bin) {
+		return this.startTime_s + bin * this.binSize_s;
+	}
+
+	public void put(final K key, final int bin, final double value) {
+		this.put(this.index(key), bin, value);
+	}
+
+	public void put(final int row, final int bin, final double value) {
+		this.values[row * this.binCnt + bin] = value;
+	}
+
+	public void add(final K key, final int bin, final double value) {
+		this.add(this.index(key), bin, value);
+	}
+
+	public void add(final int row, final int bin, final double value) {
+		this.values[row * this.binCnt + bin] += value;
+	}
+
+	/**
+	 * Adds values[i] to entry (rows[i], bins[i]) for all i in [0, cnt).
+	 */
+	public void add(final int[] rows, final int[] bins, final double[] values, final int cnt) {
+		final double[] data = this.values;
+		final int binCnt = this.binCnt;
+		for (int i = 0; i < cnt; i++) {
+			data[rows[i] * binCnt + bins[i]] += values[i];
+		}
+	}
+
+	/**
+	 * Adds binValues[bin] to entry (row, bin) for all bins.
+	 */
+	public void addRow(final int row, final double[] binValues) {
+		final int offset = row * this.binCnt;
+		for (int bin = 0; bin < this.binCnt; bin++) {
+			this.values[offset + bin] += binValues[bin];
+		}
+	}
+
+	public void clear() {
+		this.key2row.clear();
+		this.row2key.clear();
+		this.values = new double[INITIAL_ROW_CAPACITY * this.binCnt];
+	}
+
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(this.key2row.keySet());
+	}
+
+	public double getBinValue(final K key, final int bin) {
+		final Integer row = this.key2row.get(key);
+		if (row == null) {
+			return 0;
+		} else {
+			return this.values[row * this.binCnt + bin];
+		}
+	}
+
+	public double getBinValue(final int row, final int bin) {
+		return this.values[row * this.binCnt + bin];
+	}
+
+	// -------------------- ADVANCED CONTENT ACCESS --------------------
+
+	/**
+	 * See <code>DynamicData.getSum(K, int, int)</code>.
+	 */
+	public double getSum(final K key, final int startTime_s, final int endTime_s) {
+		final Integer row = this.key2row.get(key);
+		if (row == null) {
+			return 0;
+		}
+		return this.getSum((int) row, startTime_s, endTime_s);
+	}
+
+	public double getSum(final int row, final int startTime_s, final int endTime_s) {
+
+		final int startBin = Math.max(bin(startTime_s), 0);
+		final int endBin = Math.min(bin(endTime_s - 1), this.getBinCnt() - 1);
+
+		final int offset = row * this.binCnt;
+		double result = 0;
+		for (int bin = startBin; bin <= endBin; bin++) {
+			if (bin == startBin || bin == endBin) {
+				final double weight = MathHelpers.overlap(binStart_s(bin), binStart_s(bin) + getBinSize_s(),
+						startTime_s, endTime_s) / this.getBinSize_s();
+				result += weight * this.values[offset + bin];
+			} else {
+				// inner bins are entirely contained, their weight is one
+				result += this.values[offset + bin];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * See <code>DynamicData.getAverage(K, int, int)</code>.
+	 */
+	public double getAverage(final K key, final int startTime_s, final int endTime_s) {
+		final double binCnt = ((double) (endTime_s - startTime_s)) / this.getBinSize_s();
+		return this.getSum(key, startTime_s, endTime_s) / binCnt;
+	}
+
+	public double getAverage(final int row, final int startTime_s, final int endTime_s) {
+		final double binCnt = ((double) (endTime_s - startTime_s)) / this.getBinSize_s();
+		return this.getSum(row, startTime_s, endTime_s) / binCnt;
+	}
+
+	/**
+	 * Overrides all entries in this instance for which other has a non-zero
+	 * entry by the latter; all other entries of this remain unchanged. Keys of
+	 * source that are new to this instance are added.
+	 */
+	public void overrideWithNonZeros(final DenseDynamicData<K> source) {
+		for (int sourceRow = 0; sourceRow < source.getRowCnt(); sourceRow++) {
+			final int sourceOffset = sourceRow * source.binCnt;
+			final int offset = this.index(source.getKey(sourceRow)) * this.binCnt;
+			for (int bin = 0; bin < source.binCnt; bin++) {
+				final double value = source.values[sourceOffset + bin];
+				if (value != 0.0) {
+					this.values[offset + bin] = value;
+				}
+			}
+		}
+	}
+
+	public void resize(final int newBinCnt) {
+		if (newBinCnt == this.binCnt) {
+			return;
+		}
+		if (newBinCnt <= 0) {
+			throw new IllegalArgumentException("binCnt must be strictly positive");
+		}
+		final int rowCapacity = Math.max(this.getRowCnt(), INITIAL_ROW_CAPACITY);
+		if ((long) rowCapacity * newBinCnt > Integer.MAX_VALUE) {
+			throw new IllegalStateException("cannot store " + rowCapacity + " rows of " + newBinCnt + " bins");
+		}
+		final double[] newValues = new double[rowCapacity * newBinCnt];
+		final int copyCnt = Math.min(this.binCnt, newBinCnt);
+		for (int row = 0; row < this.getRowCnt(); row++) {
+			System.arraycopy(this.values, row * this.binCnt, newValues, row * newBinCnt, copyCnt);
+		}
+		this.values = newValues;
+		this.binCnt = newBinCnt;
+	}
+
+	public double sumOfEntries2() {
+		double result = 0;
+		final int length = this.getRowCnt() * this.binCnt;
+		for (int i = 0; i < length; i++) {
+			result += this.values[i] * this.values[i];
+		}
+		return result;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares <code>DynamicData</code> and <code>DenseDynamicData</code> on
+ * filling a table of linkCnt string keys x binCnt bins, on random reads and on
+ * interval sums.
+ * <p>
+ * Usage: <code>DenseDynamicDataBenchmark [linkCnt [binCnt [seed]]]</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class DenseDynamicDataBenchmark {
+
+	private static final int BIN_SIZE_S = 900;
+
+	private DenseDynamicDataBenchmark() {
+	}
+
+	private static void report(final String label, final long tick_ns, final long operationCnt) {
+		final double time_s = (System.nanoTime() - tick_ns) * 1e-9;
+		System.out.println(label + ": " + Math.round(time_s * 1000) + " ms, "
+				+ Math.round(operationCnt / time_s / 1e6) + "M ops/s");
+	}
+
+	public static void main(String[] args) {
+
+		final int linkCnt = (args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+		final int binCnt = (args.length > 1 ? Integer.parseInt(args[1]) : 96);
+		final long seed = (args.length > 2 ? Long.parseLong(args[2]) : 4711);
+		final long cellCnt = (long) linkCnt * binCnt;
+		System.out.println("links = " + linkCnt + ", bins = " + binCnt);
+
+		final String[] keys = new String[linkCnt];
+		for (int i = 0; i < linkCnt; i++) {
+			keys[i] = Integer.toString(i);
+		}
+		final int readCnt = 10 * linkCnt;
+		final int[] readRows = new int[readCnt];
+		final int[] readBins = new int[readCnt];
+		final Random rnd = new Random(seed);
+		for (int i = 0; i < readCnt; i++) {
+			readRows[i] = rnd.nextInt(linkCnt);
+			readBins[i] = rnd.nextInt(binCnt);
+		}
+		final int windowEnd_s = binCnt * BIN_SIZE_S;
+		final int windowStart_s = windowEnd_s / 3 + BIN_SIZE_S / 2;
+		double checksum = 0;
+
+		/*
+		 * DynamicData
+		 */
+		{
+			long tick_ns = System.nanoTime();
+			final DynamicData<String> data = new DynamicData<String>(0, BIN_SIZE_S, binCnt);
+			for (int i = 0; i < linkCnt; i++) {
+				for (int bin = 0; bin < binCnt; bin++) {
+					data.add(keys[i], bin, i + bin);
+				}
+			}
+			report("DynamicData add", tick_ns, cellCnt);
+
+			tick_ns = System.nanoTime();
+			for (int i = 0; i < readCnt; i++) {
+				checksum += data.getBinValue(keys[readRows[i]], readBins[i]);
+			}
+			report("DynamicData getBinValue", tick_ns, readCnt);
+
+			tick_ns = System.nanoTime();
+			for (int i = 0; i < linkCnt; i++) {
+				checksum += data.getSum(keys[i], windowStart_s, windowEnd_s);
+			}
+			report("DynamicData getSum", tick_ns, linkCnt);
+		}
+		System.out.println("checksum = " + checksum);
+		checksum = 0;
+		System.gc();
+
+		/*
+		 * DenseDynamicData
+		 */
+		{
+			long tick_ns = System.nanoTime();
+			DenseDynamicData<String> data = new DenseDynamicData<String>(0, BIN_SIZE_S, binCnt);
+			for (int i = 0; i < linkCnt; i++) {
+				for (int bin = 0; bin < binCnt; bin++) {
+					data.add(keys[i], bin, i + bin);
+				}
+			}
+			report("DenseDynamicData add by key", tick_ns, cellCnt);
+
+			data.clear();
+			tick_ns = System.nanoTime();
+			final int[] rows = new int[linkCnt];
+			for (int i = 0; i < linkCnt; i++) {
+				rows[i] = data.index(keys[i]);
+			}
+			final double[] binValues = new double[binCnt];
+			for (int i = 0; i < linkCnt; i++) {
+				for (int bin = 0; bin < binCnt; bin++) {
+					binValues[bin] = i + bin;
+				}
+				data.addRow(rows[i], binValues);
+			}
+			report("DenseDynamicData index + addRow", tick_ns, cellCnt);
+
+			tick_ns = System.nanoTime();
+			for (int i = 0; i < readCnt; i++) {
+				checksum += data.getBinValue(keys[readRows[i]], readBins[i]);
+			}
+			report("DenseDynamicData getBinValue by key", tick_ns, readCnt);
+
+			double rowChecksum = 0;
+			tick_ns = System.nanoTime();
+			for (int i = 0; i < readCnt; i++) {
+				rowChecksum += data.getBinValue(rows[readRows[i]], readBins[i]);
+			}
+			report("DenseDynamicData getBinValue by row", tick_ns, readCnt);
+			if (rowChecksum != checksum) {
+				System.out.println("MISMATCH between reads by key and by row");
+			}
+
+			tick_ns = System.nanoTime();
+			for (int i = 0; i < linkCnt; i++) {
+				checksum += data.getSum(rows[i], windowStart_s, windowEnd_s);
+			}
+			report("DenseDynamicData getSum by row", tick_ns, linkCnt);
+
+			final double[] ones = new double[readCnt];
+			Arrays.fill(ones, 1.0);
+			tick_ns = System.nanoTime();
+			data.add(readRows, readBins, ones, readCnt);
+			report("DenseDynamicData bulk add", tick_ns, readCnt);
+		}
+		System.out.println("checksum = " + checksum);
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary counterpart of <code>DynamicDataXMLFileIO</code>. A file consists
+ * of, all little-endian:
+ * <ul>
+ * <li>a header: <code>MAGIC</code>, <code>VERSION</code>, startTime_s,
+ * binSize_s, binCnt and keyCnt (ints) and the byte offset of the data block
+ * (long);
+ * <li>the key dictionary: per key the length of its UTF-8 representation
+ * (int) and the UTF-8 bytes, followed by zero padding to a multiple of eight
+ * bytes;
+ * <li>the data block: keyCnt x binCnt doubles, row-major in dictionary order;
+ * <li>a CRC32 checksum of everything before it (long).
+ * </ul>
+ * Because of the fixed data layout, <code>map(String)</code> can serve
+ * individual values without reading the whole table.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param <K>
+ *            the key type
+ */
+public abstract class DynamicDataBinaryFileIO<K> {
+
+	// -------------------- CONSTANTS --------------------
+
+	public static final int MAGIC = 0x54414444; // "DDAT" in little-endian
+
+	public static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 32;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	protected DynamicDataBinaryFileIO() {
+	}
+
+	// -------------------- INTERFACE DEFINTION --------------------
+
+	protected DynamicData<K> newInstance(final int startTime_s,
+			final int binSize_s, final int binCnt) {
+		return new DynamicData<K>(startTime_s, binSize_s, binCnt);
+	}
+
+	protected abstract String key2string(final K key);
+
+	protected abstract K string2key(final String string);
+
+	// -------------------- HELPERS --------------------
+
+	/**
+	 * Returns true if the file starts with <code>MAGIC</code>. Any problem
+	 * with reading the file results in false.
+	 */
+	public static boolean isBinaryFile(final String filename) {
+		try {
+			final RandomAccessFile file = new RandomAccessFile(filename, "r");
+			try {
+				return (file.length() >= HEADER_SIZE && Integer
+						.reverseBytes(file.readInt()) == MAGIC);
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	static long align8(final long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * Sequential little-endian writer that keeps a CRC32 of everything
+	 * written.
+	 */
+	private static class ChecksumWriter {
+
+		private final FileChannel channel;
+
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		private final CRC32 crc = new CRC32();
+
+		private long position = 0;
+
+		private ChecksumWriter(final FileChannel channel) {
+			this.channel = channel;
+		}
+
+		private void ensureRemaining(final int byteCnt) throws IOException {
+			if (this.buffer.remaining() < byteCnt) {
+				this.flush();
+			}
+		}
+
+		private void flush() throws IOException {
+			this.buffer.flip();
+			this.crc.update(this.buffer.array(), 0, this.buffer.limit());
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+
+		private void putInt(final int value) throws IOException {
+			this.ensureRemaining(4);
+			this.buffer.putInt(value);
+			this.position += 4;
+		}
+
+		private void putLong(final long value) throws IOException {
+			this.ensureRemaining(8);
+			this.buffer.putLong(value);
+			this.position += 8;
+		}
+
+		private void putDouble(final double value) throws IOException {
+			this.ensureRemaining(8);
+			this.buffer.putDouble(value);
+			this.position += 8;
+		}
+
+		private void putBytes(final byte[] bytes) throws IOException {
+			for (byte b : bytes) {
+				this.ensureRemaining(1);
+				this.buffer.put(b);
+			}
+			this.position += bytes.length;
+		}
+
+		private void pad8() throws IOException {
+			while (this.position % 8 != 0) {
+				this.ensureRemaining(1);
+				this.buffer.put((byte) 0);
+				this.position++;
+			}
+		}
+
+		private void finish() throws IOException {
+			this.flush();
+			// the checksum does not cover itself
+			this.buffer.putLong(this.crc.getValue());
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+		}
+	}
+
+	// -------------------- WRITE IMPLEMENTATION --------------------
+
+	public void write(final String filename, final DynamicData<K> dd)
+			throws IOException {
+
+		final List<K> keys = new ArrayList<K>(dd.keySet());
+		final List<byte[]> keyBytes = new ArrayList<byte[]>(keys.size());
+		long dataOffset = HEADER_SIZE;
+		for (K key : keys) {
+			final byte[] bytes = key2string(key).getBytes(
+					StandardCharsets.UTF_8);
+			keyBytes.add(bytes);
+			dataOffset += 4 + bytes.length;
+		}
+		dataOffset = align8(dataOffset);
+
+		final RandomAccessFile file = new RandomAccessFile(filename, "rw");
+		try {
+			file.setLength(0);
+			final ChecksumWriter writer = new ChecksumWriter(
+					file.getChannel());
+			writer.putInt(MAGIC);
+			writer.putInt(VERSION);
+			writer.putInt(dd.getStartTime_s());
+			writer.putInt(dd.getBinSize_s());
+			writer.putInt(dd.getBinCnt());
+			writer.putInt(keys.size());
+			writer.putLong(dataOffset);
+			for (byte[] bytes : keyBytes) {
+				writer.putInt(bytes.length);
+				writer.putBytes(bytes);
+			}
+			writer.pad8();
+			for (K key : keys) {
+				for (int bin = 0; bin < dd.getBinCnt(); bin++) {
+					writer.putDouble(dd.getBinValue(key, bin));
+				}
+			}
+			writer.finish();
+		} finally {
+			file.close();
+		}
+	}
+
+	// -------------------- READ IMPLEMENTATION --------------------
+
+	/**
+	 * Maps the file into memory. Only the key dictionary is read; values are
+	 * read on demand. The checksum is not verified, see
+	 * <code>MappedDynamicData.verifyChecksum()</code>.
+	 */
+	public MappedDynamicData<K> map(final String filename) throws IOException {
+		return new MappedDynamicData<K>(new File(filename), this);
+	}
+
+	/**
+	 * Reads the entire file into a <code>DynamicData</code> instance after
+	 * verifying its checksum.
+	 */
+	public DynamicData<K> read(final String filename) throws IOException {
+		final MappedDynamicData<K> mapped = this.map(filename);
+		try {
+			if (!mapped.verifyChecksum()) {
+				throw new IOException("checksum mismatch in " + filename);
+			}
+			final DynamicData<K> result = newInstance(
+					mapped.getStartTime_s(), mapped.getBinSize_s(),
+					mapped.getBinCnt());
+			for (int row = 0; row < mapped.getRowCnt(); row++) {
+				final double[] values = new double[mapped.getBinCnt()];
+				for (int bin = 0; bin < values.length; bin++) {
+					values[bin] = mapped.getBinValue(row, bin);
+				}
+				result.data.put(mapped.getKey(row), values);
+			}
+			return result;
+		} finally {
+			mapped.close();
+		}
+	}
+
+	// package-private hook for MappedDynamicData
+	K toKey(final String string) {
+		return string2key(string);
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities;
+
+import java.io.IOException;
+
+/**
+ * Converts dynamic data files between the XML format of
+ * <code>DynamicDataXMLFileIO</code> and the binary format of
+ * <code>DynamicDataBinaryFileIO</code>. The direction is determined by the
+ * content of the input file; keys are passed through as strings.
+ * <p>
+ * Usage: <code>DynamicDataFileConverter inputFile outputFile</code>
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public class DynamicDataFileConverter {
+
+	private DynamicDataFileConverter() {
+	}
+
+	public static DynamicDataXMLFileIO<String> newXMLFileIO() {
+		return new DynamicDataXMLFileIO<String>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected String key2attrValue(final String key) {
+				return key;
+			}
+
+			@Override
+			protected String attrValue2key(final String string) {
+				return string;
+			}
+		};
+	}
+
+	public static DynamicDataBinaryFileIO<String> newBinaryFileIO() {
+		return new DynamicDataBinaryFileIO<String>() {
+			@Override
+			protected String key2string(final String key) {
+				return key;
+			}
+
+			@Override
+			protected String string2key(final String string) {
+				return string;
+			}
+		};
+	}
+
+	public static void convert(final String inputFile, final String outputFile)
+			throws IOException {
+		if (DynamicDataBinaryFileIO.isBinaryFile(inputFile)) {
+			newXMLFileIO().write(outputFile,
+					newBinaryFileIO().read(inputFile));
+		} else {
+			final DynamicData<String> data = newXMLFileIO().read(inputFile);
+			if (data == null) {
+				throw new IOException("could not read " + inputFile);
+			}
+			newBinaryFileIO().write(outputFile, data);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("usage: DynamicDataFileConverter "
+					+ "inputFile outputFile");
+			System.exit(-1);
+		}
+		final long tick_ms = System.currentTimeMillis();
+		convert(args[0], args[1]);
+		System.out.println("converted " + args[0] + " into " + args[1]
+				+ " in " + (System.currentTimeMillis() - tick_ms) + " ms");
+	}
+}
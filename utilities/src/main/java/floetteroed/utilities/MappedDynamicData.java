@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import floetteroed.utilities.math.MathHelpers;
+
+/**
+ * Read-only view of a file written by <code>DynamicDataBinaryFileIO</code>.
+ * Only the key dictionary is held on the heap; the values are served from a
+ * memory mapping of the file, such that the operating system pages in only
+ * what is actually accessed.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param <K>
+ *            the key type
+ */
+public class MappedDynamicData<K> implements Closeable {
+
+	// -------------------- CONSTANTS --------------------
+
+	// doubles per mapped chunk, keeps every chunk below the 2GB mapping limit
+	private static final int CHUNK_SHIFT = 27;
+
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	private final RandomAccessFile file;
+
+	private final int startTime_s;
+
+	private final int binSize_s;
+
+	private final int binCnt;
+
+	private final long dataOffset;
+
+	private final Map<K, Integer> key2row;
+
+	private final List<K> row2key;
+
+	private final DoubleBuffer[] chunks;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	MappedDynamicData(final File file, final DynamicDataBinaryFileIO<K> io)
+			throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = this.file.getChannel();
+
+			final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, Math.min(channel.size(),
+							DynamicDataBinaryFileIO.HEADER_SIZE)).order(
+					ByteOrder.LITTLE_ENDIAN);
+			if (header.limit() < DynamicDataBinaryFileIO.HEADER_SIZE
+					|| header.getInt() != DynamicDataBinaryFileIO.MAGIC) {
+				throw new IOException(file + " is not a binary dynamic data file");
+			}
+			final int version = header.getInt();
+			if (version != DynamicDataBinaryFileIO.VERSION) {
+				throw new IOException("unsupported dynamic data file version "
+						+ version);
+			}
+			this.startTime_s = header.getInt();
+			this.binSize_s = header.getInt();
+			this.binCnt = header.getInt();
+			final int keyCnt = header.getInt();
+			this.dataOffset = header.getLong();
+			final long valueCnt = (long) keyCnt * this.binCnt;
+			if (this.binSize_s <= 0 || this.binCnt <= 0 || keyCnt < 0
+					|| this.dataOffset % 8 != 0
+					|| channel.size() != this.dataOffset + 8 * valueCnt + 8) {
+				throw new IOException(file + " has an inconsistent layout");
+			}
+
+			final ByteBuffer dictionary = channel.map(
+					FileChannel.MapMode.READ_ONLY,
+					DynamicDataBinaryFileIO.HEADER_SIZE,
+					this.dataOffset - DynamicDataBinaryFileIO.HEADER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			this.key2row = new HashMap<K, Integer>();
+			this.row2key = new ArrayList<K>(keyCnt);
+			for (int row = 0; row < keyCnt; row++) {
+				final byte[] bytes = new byte[dictionary.getInt()];
+				dictionary.get(bytes);
+				final K key = io.toKey(new String(bytes,
+						StandardCharsets.UTF_8));
+				this.key2row.put(key, row);
+				this.row2key.add(key);
+			}
+
+			final int chunkCnt = (int) ((valueCnt + CHUNK_MASK) >>> CHUNK_SHIFT);
+			this.chunks = new DoubleBuffer[chunkCnt];
+			for (int c = 0; c < chunkCnt; c++) {
+				final long first = ((long) c) << CHUNK_SHIFT;
+				final long cnt = Math.min(valueCnt - first, 1L << CHUNK_SHIFT);
+				final MappedByteBuffer chunk = channel.map(
+						FileChannel.MapMode.READ_ONLY, this.dataOffset + 8
+								* first, 8 * cnt);
+				this.chunks[c] = chunk.order(ByteOrder.LITTLE_ENDIAN)
+						.asDoubleBuffer();
+			}
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	// -------------------- BASIC CONTENT ACCESS --------------------
+
+	public int getStartTime_s() {
+		return this.startTime_s;
+	}
+
+	public int getBinSize_s() {
+		return this.binSize_s;
+	}
+
+	public int getBinCnt() {
+		return this.binCnt;
+	}
+
+	public int bin(final int time_s) {
+		return (time_s - this.startTime_s) / this.binSize_s;
+	}
+
+	public int binStart_s(final int bin) {
+		return this.startTime_s + bin * this.binSize_s;
+	}
+
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(this.key2row.keySet());
+	}
+
+	public int getRowCnt() {
+		return this.row2key.size();
+	}
+
+	public K getKey(final int row) {
+		return this.row2key.get(row);
+	}
+
+	/**
+	 * Returns the row index of key, or -1 if there is no such row.
+	 */
+	public int getIndex(final K key) {
+		final Integer row = this.key2row.get(key);
+		return (row == null ? -1 : row);
+	}
+
+	public double getBinValue(final int row, final int bin) {
+		final long index = (long) row * this.binCnt + bin;
+		return this.chunks[(int) (index >>> CHUNK_SHIFT)]
+				.get((int) (index & CHUNK_MASK));
+	}
+
+	public double getBinValue(final K key, final int bin) {
+		final Integer row = this.key2row.get(key);
+		if (row == null) {
+			return 0;
+		} else {
+			return this.getBinValue((int) row, bin);
+		}
+	}
+
+	/**
+	 * See <code>DynamicData.getSum(K, int, int)</code>.
+	 */
+	public double getSum(final K key, final int startTime_s,
+			final int endTime_s) {
+		final Integer row = this.key2row.get(key);
+		if (row == null) {
+			return 0;
+		}
+		final int startBin = Math.max(bin(startTime_s), 0);
+		final int endBin = Math.min(bin(endTime_s - 1), this.getBinCnt() - 1);
+		double result = 0;
+		for (int bin = startBin; bin <= endBin; bin++) {
+			final double weight = MathHelpers.overlap(binStart_s(bin),
+					binStart_s(bin) + getBinSize_s(), startTime_s, endTime_s)
+					/ this.getBinSize_s();
+			result += weight * this.getBinValue((int) row, bin);
+		}
+		return result;
+	}
+
+	/**
+	 * See <code>DynamicData.getAverage(K, int, int)</code>.
+	 */
+	public double getAverage(final K key, final int startTime_s,
+			final int endTime_s) {
+		final double binCnt = ((double) (endTime_s - startTime_s))
+				/ this.getBinSize_s();
+		return this.getSum(key, startTime_s, endTime_s) / binCnt;
+	}
+
+	// -------------------- MISC --------------------
+
+	/**
+	 * Reads the entire file and compares its CRC32 with the stored checksum.
+	 */
+	public boolean verifyChecksum() throws IOException {
+		final FileChannel channel = this.file.getChannel();
+		final long checksumPosition = channel.size() - 8;
+		final CRC32 crc = new CRC32();
+		for (long position = 0; position < checksumPosition; position += 1L << 30) {
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+					Math.min(checksumPosition - position, 1L << 30)));
+		}
+		final ByteBuffer stored = channel.map(FileChannel.MapMode.READ_ONLY,
+				checksumPosition, 8).order(ByteOrder.LITTLE_ENDIAN);
+		return (stored.getLong() == crc.getValue());
+	}
+
+	/**
+	 * Closes the underlying file. The mapping itself is released by the
+	 * garbage collector.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.file.close();
+	}
+}
@@ -19,6 +19,9 @@
  */ 
 package floetteroed.utilities.math;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -69,6 +72,17 @@ public class BasicStatistics implements Serializable {
 		this.max = Math.max(this.max, val);
 		this.size++;
 	}
+
+	/**
+	 * Equivalent to cnt calls of add(0.0), but in constant time.
+	 */
+	public void addZeros(final int cnt) {
+		if (cnt > 0) {
+			this.min = Math.min(this.min, 0.0);
+			this.max = Math.max(this.max, 0.0);
+			this.size += cnt;
+		}
+	}
 	
 	// TODO NEW
 	public BasicStatistics(final Iterable<Double> iterable) {
@@ -111,4 +125,22 @@ public class BasicStatistics implements Serializable {
 	public double getMax() {
 		return this.max;
 	}
+
+	// -------------------- STATE SNAPSHOT --------------------
+
+	public void writeState(final DataOutput out) throws IOException {
+		out.writeInt(this.size);
+		out.writeDouble(this.sum);
+		out.writeDouble(this.sqrSum);
+		out.writeDouble(this.min);
+		out.writeDouble(this.max);
+	}
+
+	public void readState(final DataInput in) throws IOException {
+		this.size = in.readInt();
+		this.sum = in.readDouble();
+		this.sqrSum = in.readDouble();
+		this.min = in.readDouble();
+		this.max = in.readDouble();
+	}
 }
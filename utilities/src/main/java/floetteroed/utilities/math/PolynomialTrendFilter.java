@@ -19,6 +19,9 @@
  */ 
 package floetteroed.utilities.math;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 
@@ -73,4 +76,35 @@ public class PolynomialTrendFilter implements Serializable {
 	public Vector getRegressionCoefficients() {
 		return this.regr.getCoefficients().copy();
 	}
+
+	// -------------------- PRIMITIVE STATE --------------------
+
+	/**
+	 * Number of doubles written by <code>getState(double[], int)</code>.
+	 */
+	public int getStateSize() {
+		return this.regr.getStateSize() + 1;
+	}
+
+	public void getState(final double[] state, final int offset) {
+		this.regr.getState(state, offset);
+		state[offset + this.regr.getStateSize()] = this.it;
+	}
+
+	public void setState(final double[] state, final int offset) {
+		this.regr.setState(state, offset);
+		this.it = (int) state[offset + this.regr.getStateSize()];
+	}
+
+	// -------------------- STATE SNAPSHOT --------------------
+
+	public void writeState(final DataOutput out) throws IOException {
+		this.regr.writeState(out);
+		out.writeInt(this.it);
+	}
+
+	public void readState(final DataInput in) throws IOException {
+		this.regr.readState(in);
+		this.it = in.readInt();
+	}
 }
@@ -19,6 +19,9 @@
  */ 
 package floetteroed.utilities.math;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -262,4 +265,121 @@ public class Regression implements Serializable {
 		// current Matrix implementation does not exploit symmetry
 		this.precisionMatrix.symmetrize();
 	}
+
+	// -------------------- PRIMITIVE STATE --------------------
+
+	/**
+	 * Number of doubles written by <code>getState(double[], int)</code>.
+	 */
+	public int getStateSize() {
+		final int dim = this.getDimension();
+		return 2 + dim + dim * dim;
+	}
+
+	private void checkUncentered() {
+		for (SignalSmoother avgInput : this.avgInputs) {
+			if (avgInput != null) {
+				throw new IllegalStateException(
+						"primitive state of centered regression not supported");
+			}
+		}
+	}
+
+	/**
+	 * Copies the numerical state of this regression, which must not center
+	 * its inputs, into state, starting at offset.
+	 */
+	public void getState(final double[] state, int offset) {
+		this.checkUncentered();
+		final int dim = this.getDimension();
+		state[offset++] = this.inertia;
+		state[offset++] = this.offset;
+		for (int i = 0; i < dim; i++) {
+			state[offset++] = this.coefficients.get(i);
+		}
+		for (int i = 0; i < dim; i++) {
+			final Vector row = this.precisionMatrix.getRow(i);
+			for (int j = 0; j < dim; j++) {
+				state[offset++] = row.get(j);
+			}
+		}
+	}
+
+	/**
+	 * Restores a state that was copied with
+	 * <code>getState(double[], int)</code> from a regression of the same
+	 * dimension.
+	 */
+	public void setState(final double[] state, int offset) {
+		this.checkUncentered();
+		final int dim = this.getDimension();
+		this.inertia = state[offset++];
+		this.offset = state[offset++];
+		for (int i = 0; i < dim; i++) {
+			this.coefficients.set(i, state[offset++]);
+		}
+		for (int i = 0; i < dim; i++) {
+			final Vector row = this.precisionMatrix.getRow(i);
+			for (int j = 0; j < dim; j++) {
+				row.set(j, state[offset++]);
+			}
+		}
+	}
+
+	// -------------------- STATE SNAPSHOT --------------------
+
+	/**
+	 * Writes the numerical state of this regression, which can be restored
+	 * into a regression of the same dimension with
+	 * <code>readState(DataInput)</code>.
+	 */
+	public void writeState(final DataOutput out) throws IOException {
+		final int dim = this.getDimension();
+		out.writeInt(dim);
+		out.writeDouble(this.inertia);
+		out.writeDouble(this.offset);
+		for (int i = 0; i < dim; i++) {
+			out.writeDouble(this.coefficients.get(i));
+		}
+		for (int i = 0; i < dim; i++) {
+			for (int j = 0; j < dim; j++) {
+				out.writeDouble(this.precisionMatrix.getRow(i).get(j));
+			}
+		}
+		for (int i = 0; i < dim; i++) {
+			final SignalSmoother avgInput = this.avgInputs.get(i);
+			out.writeBoolean(avgInput != null);
+			if (avgInput != null) {
+				avgInput.writeState(out);
+			}
+		}
+	}
+
+	public void readState(final DataInput in) throws IOException {
+		final int dim = in.readInt();
+		if (dim != this.getDimension()) {
+			throw new IOException("regression dimension is " + dim
+					+ " but should be " + this.getDimension());
+		}
+		this.inertia = in.readDouble();
+		this.offset = in.readDouble();
+		for (int i = 0; i < dim; i++) {
+			this.coefficients.set(i, in.readDouble());
+		}
+		for (int i = 0; i < dim; i++) {
+			for (int j = 0; j < dim; j++) {
+				this.precisionMatrix.getRow(i).set(j, in.readDouble());
+			}
+		}
+		for (int i = 0; i < dim; i++) {
+			if (in.readBoolean()) {
+				if (this.avgInputs.get(i) == null) {
+					this.avgInputs.set(i, new SignalSmoother(1.0));
+				}
+				this.avgInputs.get(i).readState(in);
+			} else {
+				this.avgInputs.set(i, null);
+			}
+		}
+	}
 }
@@ -19,6 +19,9 @@
  */ 
 package floetteroed.utilities.math;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -71,4 +74,16 @@ public class SignalSmoother implements Serializable {
 	public double getSmoothedValue() {
 		return this.smoothedValue;
 	}
+
+	// -------------------- STATE SNAPSHOT --------------------
+
+	public void writeState(final DataOutput out) throws IOException {
+		this.smoothingWeight.writeState(out);
+		out.writeDouble(this.smoothedValue);
+	}
+
+	public void readState(final DataInput in) throws IOException {
+		this.smoothingWeight.readState(in);
+		this.smoothedValue = in.readDouble();
+	}
 }
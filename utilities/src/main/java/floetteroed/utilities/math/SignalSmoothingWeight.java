@@ -19,6 +19,9 @@
  */ 
 package floetteroed.utilities.math;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.logging.Logger;
 
@@ -101,4 +104,18 @@ public class SignalSmoothingWeight implements Serializable {
 			return this.innovationWeight;
 		}
 	}
+
+	// -------------------- STATE SNAPSHOT --------------------
+
+	public void writeState(final DataOutput out) throws IOException {
+		out.writeDouble(this.innovationWeight);
+		out.writeDouble(this.freezeIteration);
+		out.writeInt(this.iteration);
+	}
+
+	public void readState(final DataInput in) throws IOException {
+		this.innovationWeight = in.readDouble();
+		this.freezeIteration = in.readDouble();
+		this.iteration = in.readInt();
+	}
 }
@@ -99,6 +99,19 @@ public class MHAlgorithm<S extends Object> {
 		return this.lastCompTime_ms;
 	}
 
+	// -------------------- INTERNALS --------------------
+
+	@SuppressWarnings("unchecked")
+	static <S> double logWeight(final MHWeight<S> weight, final S newState,
+			final S oldState, final double oldLogWeight) {
+		if (weight instanceof MHIncrementalWeight) {
+			return ((MHIncrementalWeight<S>) weight).logWeight(newState,
+					oldState, oldLogWeight);
+		} else {
+			return weight.logWeight(newState);
+		}
+	}
+
 	// -------------------- IMPLEMENTATION --------------------
 
 	public void run(final int iterations) {
@@ -141,7 +154,8 @@ public class MHAlgorithm<S extends Object> {
 			final MHTransition<S> proposalTransition = this.proposal
 					.newTransition(currentState);
 			final S proposalState = proposalTransition.getNewState();
-			double proposalLogWeight = this.weight.logWeight(proposalState);
+			double proposalLogWeight = logWeight(this.weight, proposalState,
+					currentState, currentLogWeight);
 			final double logAlpha = (proposalLogWeight - currentLogWeight)
 					+ (proposalTransition.getBwdLogProb() - proposalTransition
 							.getFwdLogProb());
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.utilities.math.metropolishastings;
+
+/**
+ * A weight that can exploit that a proposed state was derived from the
+ * current state of the chain, e.g. by replacing only a part of it.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param <S>
+ */
+public interface MHIncrementalWeight<S extends Object> extends MHWeight<S> {
+
+	/**
+	 * Returns the same value as <code>logWeight(newState)</code>.
+	 * 
+	 * @param newState
+	 *            the proposed state
+	 * @param oldState
+	 *            the state from which newState was proposed
+	 * @param oldLogWeight
+	 *            the log weight of oldState
+	 * @return the log weight of newState
+	 */
+	public double logWeight(final S newState, final S oldState,
+			final double oldLogWeight);
+
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */ 
+package floetteroed.utilities.math.metropolishastings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several independent Metropolis-Hastings chains in parallel and stops
+ * as soon as they have converged.
+ * <p>
+ * The chains advance in rounds of <code>checkInterval</code> iterations. Each
+ * chain has its own proposal (see <code>MHProposalFactory</code>) and its own
+ * random number generator; the weight is shared and must be thread-safe.
+ * After every round, the states of that round are passed to the state
+ * processors from the calling thread, chain after chain, and the
+ * Gelman-Rubin potential scale reduction factor (R-hat) and the effective
+ * sample size (ESS, from batch means) of the log weights are computed over
+ * the second half of every chain. The run stops once R-hat is at most
+ * <code>maxRHat</code> and the ESS is at least <code>minEffectiveSampleSize</code>,
+ * or after the maximum number of iterations per chain.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param <S>
+ */
+public class MHMultiChainAlgorithm<S extends Object> {
+
+	// -------------------- CONSTANTS --------------------
+
+	public static final int DEFAULT_CHECKINTERVAL = 1000;
+
+	public static final double DEFAULT_MAXRHAT = 1.05;
+
+	public static final double DEFAULT_MINEFFECTIVESAMPLESIZE = 1000;
+
+	private final MHWeight<S> weight;
+
+	private final List<Chain> chains;
+
+	// -------------------- MEMBERS --------------------
+
+	private S initialState = null;
+
+	private List<MHStateProcessor<S>> stateProcessors = new ArrayList<MHStateProcessor<S>>();
+
+	private int msgInterval = Integer.MAX_VALUE;
+
+	private int checkInterval = DEFAULT_CHECKINTERVAL;
+
+	private double maxRHat = DEFAULT_MAXRHAT;
+
+	private double minEffectiveSampleSize = DEFAULT_MINEFFECTIVESAMPLESIZE;
+
+	private long lastCompTime_ms = 0;
+
+	private int lastIterations = 0;
+
+	private double lastRHat = Double.NaN;
+
+	private double lastEffectiveSampleSize = Double.NaN;
+
+	// -------------------- INNER CLASSES --------------------
+
+	private class Chain implements Callable<Void> {
+
+		private final MHProposal<S> proposal;
+
+		private final Random rnd;
+
+		private S currentState;
+
+		private double currentLogWeight;
+
+		/*
+		 * Prefix sums of the (shifted) log weights of all states visited so
+		 * far, such that mean and variance of any range are available in
+		 * constant time. The shift by the initial log weight reduces
+		 * cancellation errors.
+		 */
+		private double shift = 0;
+
+		private double[] sum = new double[DEFAULT_CHECKINTERVAL + 1];
+
+		private double[] sumOfSquares = new double[DEFAULT_CHECKINTERVAL + 1];
+
+		private int size = 0;
+
+		// the states of the current round
+		private final List<S> buffer = new ArrayList<S>();
+
+		private int iterations = 0;
+
+		private Chain(final MHProposal<S> proposal, final Random rnd) {
+			this.proposal = proposal;
+			this.rnd = rnd;
+		}
+
+		private void record(final S state, final double logWeight) {
+			if (this.size + 1 == this.sum.length) {
+				this.sum = Arrays.copyOf(this.sum, 2 * this.sum.length);
+				this.sumOfSquares = Arrays.copyOf(this.sumOfSquares,
+						2 * this.sumOfSquares.length);
+			}
+			final double x = logWeight - this.shift;
+			this.sum[this.size + 1] = this.sum[this.size] + x;
+			this.sumOfSquares[this.size + 1] = this.sumOfSquares[this.size]
+					+ x * x;
+			this.size++;
+			this.buffer.add(state);
+		}
+
+		private void initialize(final S initialState) {
+			this.currentState = (initialState != null ? initialState
+					: this.proposal.newInitialState());
+			this.currentLogWeight = weight.logWeight(this.currentState);
+			this.shift = this.currentLogWeight;
+			this.size = 0;
+			this.buffer.clear();
+			this.record(this.currentState, this.currentLogWeight);
+		}
+
+		@Override
+		public Void call() {
+			for (int i = 0; i < this.iterations; i++) {
+				final MHTransition<S> proposalTransition = this.proposal
+						.newTransition(this.currentState);
+				final S proposalState = proposalTransition.getNewState();
+				final double proposalLogWeight = MHAlgorithm.logWeight(weight,
+						proposalState, this.currentState,
+						this.currentLogWeight);
+				final double logAlpha = (proposalLogWeight - this.currentLogWeight)
+						+ (proposalTransition.getBwdLogProb() - proposalTransition
+								.getFwdLogProb());
+				if (Math.log(this.rnd.nextDouble()) < logAlpha) {
+					this.currentState = proposalState;
+					this.currentLogWeight = proposalLogWeight;
+				}
+				this.record(this.currentState, this.currentLogWeight);
+			}
+			return null;
+		}
+
+		private double mean(final int from, final int to) {
+			return this.shift + (this.sum[to] - this.sum[from]) / (to - from);
+		}
+
+		private double variance(final int from, final int to) {
+			final int n = to - from;
+			final double shiftedMean = (this.sum[to] - this.sum[from]) / n;
+			return Math.max(0.0, (this.sumOfSquares[to]
+					- this.sumOfSquares[from] - n * shiftedMean
+					* shiftedMean)
+					/ (n - 1));
+		}
+	}
+
+	// -------------------- CONSTRUCTION --------------------
+
+	/**
+	 * @param proposalFactory
+	 *            creates the proposal of every chain
+	 * @param weight
+	 *            the (thread-safe) weight, shared by all chains
+	 * @param chainCnt
+	 *            the number of chains, at least two
+	 * @param rnd
+	 *            draws the random seeds of the chains
+	 */
+	public MHMultiChainAlgorithm(final MHProposalFactory<S> proposalFactory,
+			final MHWeight<S> weight, final int chainCnt, final Random rnd) {
+		if (proposalFactory == null) {
+			throw new IllegalArgumentException("proposal factory is null");
+		}
+		if (weight == null) {
+			throw new IllegalArgumentException("weight is null");
+		}
+		if (chainCnt < 2) {
+			throw new IllegalArgumentException("less than two chains");
+		}
+		if (rnd == null) {
+			throw new IllegalArgumentException("rnd is null");
+		}
+		this.weight = weight;
+		this.chains = new ArrayList<Chain>(chainCnt);
+		for (int c = 0; c < chainCnt; c++) {
+			final Random chainRnd = new Random(rnd.nextLong());
+			this.chains.add(new Chain(proposalFactory.newProposal(chainRnd),
+					chainRnd));
+		}
+	}
+
+	// -------------------- SETTERS AND GETTERS --------------------
+
+	/**
+	 * Sets a common initial state of all chains. If it is null (the
+	 * default), every chain's proposal creates its own initial state.
+	 */
+	public void setInitialState(final S initialState) {
+		this.initialState = initialState;
+	}
+
+	public S getInitialState() {
+		return this.initialState;
+	}
+
+	public void setMsgInterval(final int msgInterval) {
+		if (msgInterval < 1) {
+			throw new IllegalArgumentException("message interval < 1");
+		}
+		this.msgInterval = msgInterval;
+	}
+
+	public int getMsgInterval() {
+		return this.msgInterval;
+	}
+
+	public void setCheckInterval(final int checkInterval) {
+		if (checkInterval < 1) {
+			throw new IllegalArgumentException("check interval < 1");
+		}
+		this.checkInterval = checkInterval;
+	}
+
+	public int getCheckInterval() {
+		return this.checkInterval;
+	}
+
+	public void setMaxRHat(final double maxRHat) {
+		this.maxRHat = maxRHat;
+	}
+
+	public double getMaxRHat() {
+		return this.maxRHat;
+	}
+
+	public void setMinEffectiveSampleSize(final double minEffectiveSampleSize) {
+		this.minEffectiveSampleSize = minEffectiveSampleSize;
+	}
+
+	public double getMinEffectiveSampleSize() {
+		return this.minEffectiveSampleSize;
+	}
+
+	public void addStateProcessor(final MHStateProcessor<S> stateProcessor) {
+		if (stateProcessor == null) {
+			throw new IllegalArgumentException("state processor is null");
+		}
+		this.stateProcessors.add(stateProcessor);
+	}
+
+	public int getChainCnt() {
+		return this.chains.size();
+	}
+
+	public long getLastCompTime_ms() {
+		return this.lastCompTime_ms;
+	}
+
+	/**
+	 * The number of iterations per chain of the last run.
+	 */
+	public int getLastIterations() {
+		return this.lastIterations;
+	}
+
+	public double getLastRHat() {
+		return this.lastRHat;
+	}
+
+	public double getLastEffectiveSampleSize() {
+		return this.lastEffectiveSampleSize;
+	}
+
+	// -------------------- DIAGNOSTICS --------------------
+
+	/**
+	 * Gelman-Rubin potential scale reduction factor over the second half of
+	 * all chains.
+	 */
+	double rHat() {
+		final int size = this.chains.get(0).size;
+		final int from = size / 2;
+		final int n = size - from;
+		if (n < 2) {
+			return Double.NaN;
+		}
+		final double[] means = new double[this.chains.size()];
+		double meanOfMeans = 0;
+		double withinVariance = 0;
+		for (int c = 0; c < this.chains.size(); c++) {
+			final Chain chain = this.chains.get(c);
+			means[c] = chain.mean(from, size);
+			meanOfMeans += means[c];
+			withinVariance += chain.variance(from, size);
+		}
+		meanOfMeans /= means.length;
+		withinVariance /= means.length;
+		double betweenVarianceByN = 0;
+		for (double mean : means) {
+			betweenVarianceByN += (mean - meanOfMeans) * (mean - meanOfMeans);
+		}
+		betweenVarianceByN /= (means.length - 1);
+		if (withinVariance == 0) {
+			return (betweenVarianceByN == 0 ? 1.0 : Double.POSITIVE_INFINITY);
+		}
+		return Math.sqrt(((n - 1.0) / n * withinVariance + betweenVarianceByN)
+				/ withinVariance);
+	}
+
+	/**
+	 * Effective sample size over the second half of all chains, summed over
+	 * the chains. The autocorrelation of a chain is accounted for by
+	 * comparing the variance of means of batches of sqrt(n) consecutive
+	 * samples with the sample variance.
+	 */
+	double effectiveSampleSize() {
+		final int size = this.chains.get(0).size;
+		final int from = size / 2;
+		final int n = size - from;
+		final int batchSize = (int) Math.sqrt(n);
+		final int batchCnt = (batchSize == 0 ? 0 : n / batchSize);
+		if (batchCnt < 2) {
+			return 0;
+		}
+		double result = 0;
+		for (Chain chain : this.chains) {
+			final double mean = chain.mean(from, size);
+			final double variance = chain.variance(from, size);
+			if (variance == 0) {
+				result += n;
+				continue;
+			}
+			double batchMeanVariance = 0;
+			for (int b = 0; b < batchCnt; b++) {
+				final double dev = chain.mean(from + b * batchSize, from
+						+ (b + 1) * batchSize)
+						- mean;
+				batchMeanVariance += dev * dev;
+			}
+			batchMeanVariance /= (batchCnt - 1);
+			result += Math.min(n, n * variance
+					/ (batchSize * batchMeanVariance));
+		}
+		return result;
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * Runs all chains for at most maxIterations iterations each.
+	 */
+	public void run(final int maxIterations) {
+
+		this.lastCompTime_ms = 0;
+		this.lastIterations = 0;
+		this.lastRHat = Double.NaN;
+		this.lastEffectiveSampleSize = Double.NaN;
+
+		final ExecutorService threadPool = Executors
+				.newFixedThreadPool(this.chains.size());
+		try {
+
+			/*
+			 * initialize (iteration 0)
+			 */
+			for (MHStateProcessor<S> processor : this.stateProcessors) {
+				processor.start();
+			}
+			long tick_ms = System.currentTimeMillis();
+			for (Chain chain : this.chains) {
+				chain.initialize(this.initialState);
+			}
+			this.lastCompTime_ms += System.currentTimeMillis() - tick_ms;
+
+			/*
+			 * iterate in rounds of checkInterval iterations
+			 */
+			boolean converged = false;
+			while (!converged && this.lastIterations < maxIterations) {
+
+				final int iterations = Math.min(this.checkInterval,
+						maxIterations - this.lastIterations);
+				tick_ms = System.currentTimeMillis();
+				for (Chain chain : this.chains) {
+					chain.iterations = iterations;
+				}
+				for (Future<Void> future : threadPool.invokeAll(this.chains)) {
+					future.get();
+				}
+				this.lastCompTime_ms += System.currentTimeMillis() - tick_ms;
+				final int previousIterations = this.lastIterations;
+				this.lastIterations += iterations;
+
+				for (Chain chain : this.chains) {
+					for (S state : chain.buffer) {
+						for (MHStateProcessor<S> processor : this.stateProcessors) {
+							processor.processState(state);
+						}
+					}
+					chain.buffer.clear();
+				}
+
+				this.lastRHat = this.rHat();
+				this.lastEffectiveSampleSize = this.effectiveSampleSize();
+				converged = (this.lastRHat <= this.maxRHat && this.lastEffectiveSampleSize >= this.minEffectiveSampleSize);
+
+				if (converged
+						|| this.lastIterations / this.msgInterval > previousIterations
+								/ this.msgInterval) {
+					System.out.println("MH iteration " + this.lastIterations
+							+ " of " + this.chains.size() + " chains");
+					System.out.println("  R-hat = " + this.lastRHat);
+					System.out.println("  ESS   = "
+							+ this.lastEffectiveSampleSize);
+				}
+			}
+
+			/*
+			 * wrap up
+			 */
+			for (MHStateProcessor<S> processor : this.stateProcessors) {
+				processor.end();
+			}
+
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			threadPool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities.networks.shortestpaths;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import floetteroed.utilities.networks.basic.BasicLink;
+import floetteroed.utilities.networks.basic.BasicNetwork;
+import floetteroed.utilities.networks.basic.BasicNode;
+
+/**
+ * Integer-indexed, read-only view of a <code>BasicNetwork</code>. Nodes and
+ * links are numbered in the iteration order of the network; the out- and
+ * in-links of every node are stored in compressed sparse row (CSR) format.
+ * <p>
+ * The view is a snapshot: it does not reflect nodes or links that are added
+ * to the network after its construction.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+public class CompiledNetwork {
+
+	// -------------------- CONSTANTS --------------------
+
+	private final BasicNetwork network;
+
+	private final BasicNode[] nodes;
+
+	private final BasicLink[] links;
+
+	private final Map<BasicNode, Integer> node2index;
+
+	private final Map<BasicLink, Integer> link2index;
+
+	private final int[] linkFromNode;
+
+	private final int[] linkToNode;
+
+	// out-links of node n are outLinks[outStart[n]] .. outLinks[outStart[n+1]-1]
+	private final int[] outStart;
+
+	private final int[] outLinks;
+
+	// in-links of node n are inLinks[inStart[n]] .. inLinks[inStart[n+1]-1]
+	private final int[] inStart;
+
+	private final int[] inLinks;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public CompiledNetwork(final BasicNetwork network) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		this.network = network;
+
+		/*
+		 * (1) enumerate nodes and links
+		 */
+		this.nodes = network.getNodes().toArray(
+				new BasicNode[network.getNodes().size()]);
+		this.node2index = new HashMap<BasicNode, Integer>(
+				2 * this.nodes.length);
+		for (int i = 0; i < this.nodes.length; i++) {
+			this.node2index.put(this.nodes[i], i);
+		}
+		this.links = network.getLinks().toArray(
+				new BasicLink[network.getLinks().size()]);
+		this.link2index = new HashMap<BasicLink, Integer>(
+				2 * this.links.length);
+		this.linkFromNode = new int[this.links.length];
+		this.linkToNode = new int[this.links.length];
+		for (int i = 0; i < this.links.length; i++) {
+			this.link2index.put(this.links[i], i);
+			this.linkFromNode[i] = this.indexOfKnownNode(this.links[i]
+					.getFromNode());
+			this.linkToNode[i] = this.indexOfKnownNode(this.links[i]
+					.getToNode());
+		}
+
+		/*
+		 * (2) build the adjacency arrays
+		 */
+		this.outStart = new int[this.nodes.length + 1];
+		this.inStart = new int[this.nodes.length + 1];
+		for (int l = 0; l < this.links.length; l++) {
+			this.outStart[this.linkFromNode[l] + 1]++;
+			this.inStart[this.linkToNode[l] + 1]++;
+		}
+		for (int n = 0; n < this.nodes.length; n++) {
+			this.outStart[n + 1] += this.outStart[n];
+			this.inStart[n + 1] += this.inStart[n];
+		}
+		this.outLinks = new int[this.links.length];
+		this.inLinks = new int[this.links.length];
+		final int[] outFill = new int[this.nodes.length];
+		final int[] inFill = new int[this.nodes.length];
+		for (int l = 0; l < this.links.length; l++) {
+			final int from = this.linkFromNode[l];
+			this.outLinks[this.outStart[from] + outFill[from]++] = l;
+			final int to = this.linkToNode[l];
+			this.inLinks[this.inStart[to] + inFill[to]++] = l;
+		}
+	}
+
+	private int indexOfKnownNode(final BasicNode node) {
+		final Integer result = this.node2index.get(node);
+		if (result == null) {
+			throw new IllegalArgumentException("node " + node.getId()
+					+ " is connected to a link but not part of the network");
+		}
+		return result;
+	}
+
+	// -------------------- GETTERS --------------------
+
+	public BasicNetwork getNetwork() {
+		return this.network;
+	}
+
+	public int getNodeCnt() {
+		return this.nodes.length;
+	}
+
+	public int getLinkCnt() {
+		return this.links.length;
+	}
+
+	public BasicNode getNode(final int index) {
+		return this.nodes[index];
+	}
+
+	public BasicLink getLink(final int index) {
+		return this.links[index];
+	}
+
+	/**
+	 * Returns the index of <code>node</code>, or <code>-1</code> if the node
+	 * is not part of this network.
+	 */
+	public int getIndex(final BasicNode node) {
+		final Integer result = this.node2index.get(node);
+		return (result == null ? -1 : result);
+	}
+
+	/**
+	 * Returns the index of <code>link</code>, or <code>-1</code> if the link
+	 * is not part of this network.
+	 */
+	public int getIndex(final BasicLink link) {
+		final Integer result = this.link2index.get(link);
+		return (result == null ? -1 : result);
+	}
+
+	public int getFromNode(final int link) {
+		return this.linkFromNode[link];
+	}
+
+	public int getToNode(final int link) {
+		return this.linkToNode[link];
+	}
+
+	public int getOutBegin(final int node) {
+		return this.outStart[node];
+	}
+
+	public int getOutEnd(final int node) {
+		return this.outStart[node + 1];
+	}
+
+	public int getOutLink(final int position) {
+		return this.outLinks[position];
+	}
+
+	public int getInBegin(final int node) {
+		return this.inStart[node];
+	}
+
+	public int getInEnd(final int node) {
+		return this.inStart[node + 1];
+	}
+
+	public int getInLink(final int position) {
+		return this.inLinks[position];
+	}
+}
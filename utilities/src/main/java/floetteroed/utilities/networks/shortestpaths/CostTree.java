@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities.networks.shortestpaths;
+
+import java.util.LinkedList;
+
+import floetteroed.utilities.networks.basic.BasicNode;
+
+/**
+ * Immutable snapshot of a complete one-to-all (forward) or all-to-one
+ * (backward) cost tree, stored in primitive arrays over the node indices of
+ * a <code>CompiledNetwork</code>.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+public class CostTree {
+
+	// -------------------- CONSTANTS --------------------
+
+	private final CompiledNetwork network;
+
+	private final int root;
+
+	private final boolean fwd;
+
+	private final double[] cost;
+
+	private final int[] predLink;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	/**
+	 * Copies the result of the last (full tree) search in workspace.
+	 */
+	public CostTree(final RouterWorkspace workspace) {
+		this.network = workspace.getNetwork();
+		this.root = workspace.getRoot();
+		this.fwd = workspace.isForward();
+		this.cost = new double[this.network.getNodeCnt()];
+		this.predLink = new int[this.network.getNodeCnt()];
+		for (int n = 0; n < this.cost.length; n++) {
+			this.cost[n] = workspace.getCost(n);
+			this.predLink[n] = workspace.getPredLink(n);
+		}
+	}
+
+	// -------------------- CONTENT ACCESS --------------------
+
+	public CompiledNetwork getNetwork() {
+		return this.network;
+	}
+
+	public int getRoot() {
+		return this.root;
+	}
+
+	public boolean isForward() {
+		return this.fwd;
+	}
+
+	public double getCost(final int node) {
+		return this.cost[node];
+	}
+
+	public double getCost(final BasicNode node) {
+		final int index = this.network.getIndex(node);
+		return (index < 0 ? Double.POSITIVE_INFINITY : this.cost[index]);
+	}
+
+	public int getPredLink(final int node) {
+		return this.predLink[node];
+	}
+
+	/**
+	 * Route between root and node, oriented from origin to destination, or
+	 * null if node is not reachable.
+	 */
+	public LinkedList<BasicNode> getRoute(final BasicNode node) {
+		final int index = this.network.getIndex(node);
+		if (index < 0 || Double.isInfinite(this.cost[index])) {
+			return null;
+		}
+		final LinkedList<BasicNode> result = new LinkedList<BasicNode>();
+		int current = index;
+		result.add(this.network.getNode(current));
+		while (current != this.root) {
+			if (this.fwd) {
+				current = this.network.getFromNode(this.predLink[current]);
+				result.addFirst(this.network.getNode(current));
+			} else {
+				current = this.network.getToNode(this.predLink[current]);
+				result.addLast(this.network.getNode(current));
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities.networks.shortestpaths;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import floetteroed.utilities.networks.basic.BasicNode;
+
+/**
+ * Size-bounded, least-recently-used cache of complete cost trees, keyed by
+ * network, root node, direction and link cost function. A
+ * <code>VersionedLinkCost</code> additionally enters the key with its
+ * version, such that trees computed for outdated link costs are never
+ * returned; any other <code>LinkCost</code> is assumed to be constant.
+ * <p>
+ * Thread-safe; concurrent misses on the same key may compute the same tree
+ * twice.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+public class CostTreeCache {
+
+	// -------------------- INNER CLASSES --------------------
+
+	private static class Key {
+
+		private final CompiledNetwork network;
+
+		private final LinkCost linkCost;
+
+		private final long version;
+
+		private final int root;
+
+		private final boolean fwd;
+
+		private Key(final CompiledNetwork network, final LinkCost linkCost,
+				final long version, final int root, final boolean fwd) {
+			this.network = network;
+			this.linkCost = linkCost;
+			this.version = version;
+			this.root = root;
+			this.fwd = fwd;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) o;
+			return (this.network == other.network
+					&& this.linkCost == other.linkCost
+					&& this.version == other.version
+					&& this.root == other.root && this.fwd == other.fwd);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = System.identityHashCode(this.network);
+			result = 31 * result + System.identityHashCode(this.linkCost);
+			result = 31 * result + Long.hashCode(this.version);
+			result = 31 * result + this.root;
+			result = 31 * result + (this.fwd ? 1 : 0);
+			return result;
+		}
+	}
+
+	// -------------------- CONSTANTS --------------------
+
+	private final int maxSize;
+
+	// -------------------- MEMBERS --------------------
+
+	private final LinkedHashMap<Key, CostTree> trees;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private long evictions = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	/**
+	 * @param maxSize
+	 *            the maximum number of cached trees; zero disables caching
+	 */
+	public CostTreeCache(final int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("maxSize is negative");
+		}
+		this.maxSize = maxSize;
+		this.trees = new LinkedHashMap<Key, CostTree>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					final Map.Entry<Key, CostTree> eldest) {
+				if (this.size() > CostTreeCache.this.maxSize) {
+					CostTreeCache.this.evictions++;
+					return true;
+				} else {
+					return false;
+				}
+			}
+		};
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private CostTree getTree(final Router router, final BasicNode root,
+			final boolean fwd, final RouterWorkspace workspace) {
+		final LinkCost linkCost = router.getLinkCost();
+		final long version = (linkCost instanceof VersionedLinkCost ? ((VersionedLinkCost) linkCost)
+				.getVersion() : 0);
+		final Key key = new Key(router.getCompiledNetwork(), linkCost,
+				version, router.getCompiledNetwork().getIndex(root), fwd);
+		synchronized (this) {
+			final CostTree result = this.trees.get(key);
+			if (result != null) {
+				this.hits++;
+				return result;
+			}
+			this.misses++;
+		}
+		if (fwd) {
+			router.fwdTree(root, workspace);
+		} else {
+			router.bwdTree(root, workspace);
+		}
+		final CostTree result = new CostTree(workspace);
+		if (this.maxSize > 0) {
+			synchronized (this) {
+				this.trees.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * Returns the forward cost tree of origin, computing it in workspace if
+	 * it is not cached.
+	 */
+	public CostTree getFwdTree(final Router router, final BasicNode origin,
+			final RouterWorkspace workspace) {
+		return this.getTree(router, origin, true, workspace);
+	}
+
+	/**
+	 * Returns the backward cost tree of destination, computing it in
+	 * workspace if it is not cached.
+	 */
+	public CostTree getBwdTree(final Router router,
+			final BasicNode destination, final RouterWorkspace workspace) {
+		return this.getTree(router, destination, false, workspace);
+	}
+
+	public synchronized void clear() {
+		this.trees.clear();
+	}
+
+	// -------------------- STATISTICS --------------------
+
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	public synchronized int size() {
+		return this.trees.size();
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return this.getClass().getSimpleName() + "(size = " + this.trees.size()
+				+ "/" + this.maxSize + ", hits = " + this.hits
+				+ ", misses = " + this.misses + ", evictions = "
+				+ this.evictions + ")";
+	}
+}
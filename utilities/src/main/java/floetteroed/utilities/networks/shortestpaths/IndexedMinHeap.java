@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities.networks.shortestpaths;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over the integers 0..capacity-1 with primitive double keys
+ * and decrease-key support. Ties are broken by the smaller element, which
+ * makes the settling order of a shortest path search deterministic.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+class IndexedMinHeap {
+
+	// -------------------- MEMBERS --------------------
+
+	private final int[] heap;
+
+	// position of every element in heap, -1 if not contained
+	private final int[] pos;
+
+	private final double[] key;
+
+	private int size = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	IndexedMinHeap(final int capacity) {
+		this.heap = new int[capacity];
+		this.pos = new int[capacity];
+		this.key = new double[capacity];
+		Arrays.fill(this.pos, -1);
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private boolean less(final int element1, final int element2) {
+		final double key1 = this.key[element1];
+		final double key2 = this.key[element2];
+		return (key1 < key2) || (key1 == key2 && element1 < element2);
+	}
+
+	private void place(final int element, final int position) {
+		this.heap[position] = element;
+		this.pos[element] = position;
+	}
+
+	private void siftUp(int position) {
+		final int element = this.heap[position];
+		while (position > 0) {
+			final int parentPosition = (position - 1) >>> 1;
+			final int parent = this.heap[parentPosition];
+			if (!this.less(element, parent)) {
+				break;
+			}
+			this.place(parent, position);
+			position = parentPosition;
+		}
+		this.place(element, position);
+	}
+
+	private void siftDown(int position) {
+		final int element = this.heap[position];
+		final int half = this.size >>> 1;
+		while (position < half) {
+			int childPosition = 2 * position + 1;
+			int child = this.heap[childPosition];
+			final int rightPosition = childPosition + 1;
+			if (rightPosition < this.size
+					&& this.less(this.heap[rightPosition], child)) {
+				childPosition = rightPosition;
+				child = this.heap[childPosition];
+			}
+			if (!this.less(child, element)) {
+				break;
+			}
+			this.place(child, position);
+			position = childPosition;
+		}
+		this.place(element, position);
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	boolean isEmpty() {
+		return (this.size == 0);
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	boolean contains(final int element) {
+		return (this.pos[element] >= 0);
+	}
+
+	/**
+	 * Inserts element with the given key or, if it is already contained,
+	 * lowers its key. Returns false if the element is contained with a key
+	 * that is not larger than the given one.
+	 */
+	boolean insertOrDecrease(final int element, final double newKey) {
+		final int position = this.pos[element];
+		if (position < 0) {
+			this.key[element] = newKey;
+			this.place(element, this.size++);
+			this.siftUp(this.size - 1);
+			return true;
+		} else if (newKey < this.key[element]) {
+			this.key[element] = newKey;
+			this.siftUp(position);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	int peek() {
+		return this.heap[0];
+	}
+
+	double peekKey() {
+		return this.key[this.heap[0]];
+	}
+
+	int poll() {
+		final int result = this.heap[0];
+		this.pos[result] = -1;
+		this.size--;
+		if (this.size > 0) {
+			this.place(this.heap[this.size], 0);
+			this.siftDown(0);
+		}
+		return result;
+	}
+
+	void clear() {
+		for (int i = 0; i < this.size; i++) {
+			this.pos[this.heap[i]] = -1;
+		}
+		this.size = 0;
+	}
+}
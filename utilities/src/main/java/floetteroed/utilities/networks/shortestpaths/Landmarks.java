@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities.networks.shortestpaths;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Landmark distance tables for A* search with landmarks and the triangle
+ * inequality (ALT). For every landmark L, the tables hold the tree costs
+ * d(L, n) and d(n, L) of all nodes n; they yield lower bounds on d(u, v) for
+ * any pair of nodes u, v.
+ * <p>
+ * The bounds are only valid as long as no link cost drops below the value it
+ * had when the tables were computed.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+public class Landmarks {
+
+	// -------------------- CONSTANTS --------------------
+
+	public static final String FILE_SUFFIX = ".landmarks";
+
+	private static final int MAGIC = 0x4c4d4b53; // "LMKS"
+
+	private static final int VERSION = 1;
+
+	private final CompiledNetwork network;
+
+	private final int[] landmarks;
+
+	// fromLandmark[l][n] = d(landmark l, node n)
+	private final double[][] fromLandmark;
+
+	// toLandmark[l][n] = d(node n, landmark l)
+	private final double[][] toLandmark;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	private Landmarks(final CompiledNetwork network, final int[] landmarks,
+			final double[][] fromLandmark, final double[][] toLandmark) {
+		this.network = network;
+		this.landmarks = landmarks;
+		this.fromLandmark = fromLandmark;
+		this.toLandmark = toLandmark;
+	}
+
+	/**
+	 * Selects landmarkCnt landmarks by the farthest-first heuristic, starting
+	 * from node 0, and computes their distance tables with the given router.
+	 */
+	public static Landmarks compute(final Router router, int landmarkCnt) {
+		final CompiledNetwork network = router.getCompiledNetwork();
+		landmarkCnt = Math.min(landmarkCnt, network.getNodeCnt());
+		final int[] landmarks = new int[landmarkCnt];
+		final double[][] fromLandmark = new double[landmarkCnt][];
+		final double[][] toLandmark = new double[landmarkCnt][];
+		final RouterWorkspace workspace = router.newWorkspace();
+
+		// smallest finite distance of every node to any landmark so far
+		final double[] minDist = new double[network.getNodeCnt()];
+		Arrays.fill(minDist, Double.POSITIVE_INFINITY);
+		int next = 0;
+		for (int l = 0; l < landmarkCnt; l++) {
+			landmarks[l] = next;
+			router.fwdTree(network.getNode(next), workspace);
+			fromLandmark[l] = costs(workspace);
+			router.bwdTree(network.getNode(next), workspace);
+			toLandmark[l] = costs(workspace);
+
+			double maxMinDist = -1;
+			for (int n = 0; n < network.getNodeCnt(); n++) {
+				final double dist = Math.min(fromLandmark[l][n],
+						toLandmark[l][n]);
+				if (dist < Double.POSITIVE_INFINITY) {
+					minDist[n] = Math.min(minDist[n], dist);
+				}
+				if (minDist[n] < Double.POSITIVE_INFINITY
+						&& minDist[n] > maxMinDist) {
+					maxMinDist = minDist[n];
+					next = n;
+				}
+			}
+		}
+		return new Landmarks(network, landmarks, fromLandmark, toLandmark);
+	}
+
+	private static double[] costs(final RouterWorkspace workspace) {
+		final double[] result = new double[workspace.getNetwork()
+				.getNodeCnt()];
+		for (int n = 0; n < result.length; n++) {
+			result[n] = workspace.getCost(n);
+		}
+		return result;
+	}
+
+	// -------------------- FILE IO --------------------
+
+	public static File defaultFile(final String networkFileName) {
+		return new File(networkFileName + FILE_SUFFIX);
+	}
+
+	private static long fingerprint(final CompiledNetwork network) {
+		long result = 17;
+		for (int n = 0; n < network.getNodeCnt(); n++) {
+			result = 31 * result + network.getNode(n).getId().hashCode();
+		}
+		for (int l = 0; l < network.getLinkCnt(); l++) {
+			result = 31 * result + network.getFromNode(l);
+			result = 31 * result + network.getToNode(l);
+		}
+		return result;
+	}
+
+	public void write(final File file) throws IOException {
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.network.getNodeCnt());
+			out.writeInt(this.network.getLinkCnt());
+			out.writeLong(fingerprint(this.network));
+			out.writeInt(this.landmarks.length);
+			for (int l = 0; l < this.landmarks.length; l++) {
+				out.writeInt(this.landmarks[l]);
+				for (double cost : this.fromLandmark[l]) {
+					out.writeDouble(cost);
+				}
+				for (double cost : this.toLandmark[l]) {
+					out.writeDouble(cost);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads landmark tables that were written for the same network. Throws an
+	 * IOException if the file does not match the network.
+	 */
+	public static Landmarks read(final File file,
+			final CompiledNetwork network) throws IOException {
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a landmark file");
+			}
+			final int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("unsupported landmark file version "
+						+ version);
+			}
+			if (in.readInt() != network.getNodeCnt()
+					|| in.readInt() != network.getLinkCnt()
+					|| in.readLong() != fingerprint(network)) {
+				throw new IOException(file
+						+ " was written for a different network");
+			}
+			final int landmarkCnt = in.readInt();
+			final int[] landmarks = new int[landmarkCnt];
+			final double[][] fromLandmark = new double[landmarkCnt][network
+					.getNodeCnt()];
+			final double[][] toLandmark = new double[landmarkCnt][network
+					.getNodeCnt()];
+			for (int l = 0; l < landmarkCnt; l++) {
+				landmarks[l] = in.readInt();
+				for (int n = 0; n < network.getNodeCnt(); n++) {
+					fromLandmark[l][n] = in.readDouble();
+				}
+				for (int n = 0; n < network.getNodeCnt(); n++) {
+					toLandmark[l][n] = in.readDouble();
+				}
+			}
+			return new Landmarks(network, landmarks, fromLandmark,
+					toLandmark);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the landmarks from file if it exists and matches the router's
+	 * network; otherwise computes them and (over)writes the file.
+	 */
+	public static Landmarks readOrCompute(final File file,
+			final Router router, final int landmarkCnt) throws IOException {
+		if (file.exists()) {
+			try {
+				final Landmarks result = read(file,
+						router.getCompiledNetwork());
+				if (result.getLandmarkCnt() == Math.min(landmarkCnt, router
+						.getCompiledNetwork().getNodeCnt())) {
+					return result;
+				}
+			} catch (IOException e) {
+				System.out.println("recomputing landmarks: " + e.getMessage());
+			}
+		}
+		final Landmarks result = compute(router, landmarkCnt);
+		result.write(file);
+		return result;
+	}
+
+	// -------------------- CONTENT ACCESS --------------------
+
+	public CompiledNetwork getNetwork() {
+		return this.network;
+	}
+
+	public int getLandmarkCnt() {
+		return this.landmarks.length;
+	}
+
+	public int getLandmark(final int l) {
+		return this.landmarks[l];
+	}
+
+	/**
+	 * Lower bound on the cost of the best route from node from to node to.
+	 * Returns POSITIVE_INFINITY if the tables prove that to cannot be reached
+	 * from from.
+	 */
+	public double lowerBound(final int from, final int to) {
+		double result = 0.0;
+		for (int l = 0; l < this.landmarks.length; l++) {
+			// d(L,to) <= d(L,from) + d(from,to)
+			final double fromL = this.fromLandmark[l][from];
+			final double toL = this.fromLandmark[l][to];
+			if (fromL < Double.POSITIVE_INFINITY) {
+				if (toL == Double.POSITIVE_INFINITY) {
+					return Double.POSITIVE_INFINITY;
+				}
+				result = Math.max(result, toL - fromL);
+			}
+			// d(from,L) <= d(from,to) + d(to,L)
+			final double fromToL = this.toLandmark[l][from];
+			final double toToL = this.toLandmark[l][to];
+			if (toToL < Double.POSITIVE_INFINITY) {
+				if (fromToL == Double.POSITIVE_INFINITY) {
+					return Double.POSITIVE_INFINITY;
+				}
+				result = Math.max(result, fromToL - toToL);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities.networks.shortestpaths;
+
+import java.util.BitSet;
+
+import floetteroed.utilities.networks.basic.BasicNode;
+
+/**
+ * Set of nodes of a <code>CompiledNetwork</code>, represented as a bit set
+ * over the node indices. Meant to be filled and cleared incrementally around
+ * a search, such that its maintenance costs only scale with the number of
+ * affected nodes.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+public class NodeMask {
+
+	// -------------------- CONSTANTS --------------------
+
+	private final CompiledNetwork network;
+
+	// -------------------- MEMBERS --------------------
+
+	private final BitSet bits;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public NodeMask(final CompiledNetwork network) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		this.network = network;
+		this.bits = new BitSet(network.getNodeCnt());
+	}
+
+	// -------------------- CONTENT ACCESS --------------------
+
+	public CompiledNetwork getNetwork() {
+		return this.network;
+	}
+
+	public boolean contains(final int node) {
+		return this.bits.get(node);
+	}
+
+	public boolean contains(final BasicNode node) {
+		final int index = this.network.getIndex(node);
+		return (index >= 0 && this.bits.get(index));
+	}
+
+	public boolean isEmpty() {
+		return this.bits.isEmpty();
+	}
+
+	// -------------------- CONTENT MODIFICATION --------------------
+
+	public void add(final int node) {
+		this.bits.set(node);
+	}
+
+	public void remove(final int node) {
+		this.bits.clear(node);
+	}
+
+	/**
+	 * Adds all given nodes; nodes that are not part of the network are
+	 * ignored.
+	 */
+	public void addAll(final Iterable<BasicNode> nodes) {
+		for (BasicNode node : nodes) {
+			final int index = this.network.getIndex(node);
+			if (index >= 0) {
+				this.bits.set(index);
+			}
+		}
+	}
+
+	/**
+	 * Removes all given nodes; nodes that are not part of the network are
+	 * ignored.
+	 */
+	public void removeAll(final Iterable<BasicNode> nodes) {
+		for (BasicNode node : nodes) {
+			final int index = this.network.getIndex(node);
+			if (index >= 0) {
+				this.bits.clear(index);
+			}
+		}
+	}
+
+	public void clear() {
+		this.bits.clear();
+	}
+}
@@ -19,10 +19,10 @@
  */ 
 package floetteroed.utilities.networks.shortestpaths;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -46,13 +46,49 @@ public class Router {
 		FWD, BWD
 	};
 
-	protected final BasicNetwork network;
+	/**
+	 * Algorithm used for point-to-point queries. DIJKSTRA and ALT apply to all
+	 * single-target searches; BIDIRECTIONAL applies to bestRoute(origin,
+	 * destination) and bestRouteCost(origin, destination) only, all other
+	 * single-target searches then fall back to DIJKSTRA.
+	 */
+	public enum PointToPointMode {
+		DIJKSTRA, BIDIRECTIONAL, ALT
+	};
+
+	protected final CompiledNetwork network;
 
 	protected final LinkCost linkCost;
 
+	// -------------------- MEMBERS --------------------
+
+	// one lazily created workspace per thread that uses this router
+	private final ThreadLocal<RouterWorkspace> workspaces = new ThreadLocal<RouterWorkspace>() {
+		@Override
+		protected RouterWorkspace initialValue() {
+			return newWorkspace();
+		}
+	};
+
+	// backward half of a bidirectional search
+	private final ThreadLocal<RouterWorkspace> bwdWorkspaces = new ThreadLocal<RouterWorkspace>() {
+		@Override
+		protected RouterWorkspace initialValue() {
+			return newWorkspace();
+		}
+	};
+
+	private PointToPointMode pointToPointMode = PointToPointMode.DIJKSTRA;
+
+	private Landmarks landmarks = null;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	public Router(final BasicNetwork network, final LinkCost linkCost) {
+		this(new CompiledNetwork(network), linkCost);
+	}
+
+	public Router(final CompiledNetwork network, final LinkCost linkCost) {
 		if (network == null) {
 			throw new IllegalArgumentException("network is null");
 		}
@@ -67,9 +103,46 @@ public class Router {
 
 	// TODO check if needed -- network is only required internally!
 	public BasicNetwork getNetwork() {
+		return this.network.getNetwork();
+	}
+
+	public CompiledNetwork getCompiledNetwork() {
 		return this.network;
 	}
 
+	public LinkCost getLinkCost() {
+		return this.linkCost;
+	}
+
+	// -------------------- SETTERS AND GETTERS --------------------
+
+	/**
+	 * The landmarks must have been computed for this router's network and
+	 * with link costs that are nowhere larger than the current ones.
+	 */
+	public void setLandmarks(final Landmarks landmarks) {
+		if (landmarks != null && landmarks.getNetwork() != this.network) {
+			throw new IllegalArgumentException(
+					"landmarks belong to a different network");
+		}
+		this.landmarks = landmarks;
+	}
+
+	public Landmarks getLandmarks() {
+		return this.landmarks;
+	}
+
+	public void setPointToPointMode(final PointToPointMode pointToPointMode) {
+		if (pointToPointMode == null) {
+			throw new IllegalArgumentException("point-to-point mode is null");
+		}
+		this.pointToPointMode = pointToPointMode;
+	}
+
+	public PointToPointMode getPointToPointMode() {
+		return this.pointToPointMode;
+	}
+
 	// -------------------- INTERNALS --------------------
 
 	static double treeCost(final BasicNode node, final Map<BasicNode, Double> treeCost) {
@@ -81,84 +154,284 @@ public class Router {
 		}
 	}
 
-	private void expand(final BasicNode currentNode, final BasicNode candidateNode,
-			final BasicLink connectingLink, final UnsettledNodes unsettled) {
-		final double oldCost = unsettled.cost(candidateNode);
-		final double newCost = this.linkCost.getCost(connectingLink)
-				+ unsettled.cost(currentNode);
-		unsettled.update(candidateNode, Math.min(oldCost, newCost));
+	private int indexOfKnownNode(final BasicNode root) {
+		final int result = this.network.getIndex(root);
+		if (result < 0) {
+			throw new IllegalArgumentException("node " + root.getId()
+					+ " is not part of the network");
+		}
+		return result;
 	}
 
-	protected Map<BasicNode, Double> treeCost(final BasicNode root,
-			final Set<BasicNode> targets, final Direction direction,
-			UnsettledNodes unsettled, Set<BasicNode> settled) {
-		/*
-		 * (1) define set of feasible targets
-		 */
-		final Set<BasicNode> targetsLeft;
+	/**
+	 * Label-setting (Dijkstra) search from root into the given workspace. The
+	 * search stops as soon as all targets are settled; null targets mean all
+	 * nodes.
+	 */
+	protected void search(final int root, final Set<BasicNode> targets,
+			final Direction direction, final RouterWorkspace workspace) {
+		workspace.reset(root, Direction.FWD.equals(direction));
+		int targetsLeft;
 		if (targets == null) {
-			targetsLeft = new HashSet<BasicNode>();
-			// TODO NEW >>>>>
-			targetsLeft.add(new BasicNode(">>>>> NON-EXISTING NODE <<<<<"));
-			// targetsLeft.add(new Node(new Object()));
-			// TODO NEW <<<<<
+			targetsLeft = this.network.getNodeCnt();
 		} else {
-			targetsLeft = new HashSet<BasicNode>(targets);
+			targetsLeft = 0;
+			for (BasicNode target : targets) {
+				final int index = this.network.getIndex(target);
+				if (index >= 0 && workspace.markTarget(index)) {
+					targetsLeft++;
+				}
+			}
 		}
-		/*
-		 * (2) initialize data structures and search loop
-		 */
-		BasicNode currentNode;
-		if (unsettled == null) {
-			unsettled = new UnsettledNodes();
-			currentNode = root;
-			unsettled.update(root, 0.0);
+		this.search(targetsLeft, targets == null, null, -1, null, workspace);
+	}
+
+	/**
+	 * Single-target variant of the search that never enters (but may start
+	 * from) an excluded node. A null mask excludes nothing.
+	 */
+	protected void search(final int root, final int target,
+			final Direction direction, final NodeMask excludedNodes,
+			final RouterWorkspace workspace) {
+		workspace.reset(root, Direction.FWD.equals(direction));
+		workspace.markTarget(target);
+		final Landmarks potential;
+		if (PointToPointMode.ALT.equals(this.pointToPointMode)) {
+			if (this.landmarks == null) {
+				throw new IllegalStateException(
+						"ALT mode requires landmarks to be set");
+			}
+			potential = this.landmarks;
 		} else {
-			currentNode = unsettled.first();
-		}
-		if (settled == null) {
-			settled = new HashSet<BasicNode>();
+			potential = null;
 		}
-		/*
-		 * (3) search until all reachable targets are found
-		 */
-		while (currentNode != null && !targetsLeft.isEmpty()) {
-			if (Direction.FWD.equals(direction)) {
-				/*
-				 * (3-A) expand forwards
-				 */
-				for (BasicLink outLink : currentNode.getOutLinks()) {
-					final BasicNode outNode = outLink.getToNode();
-					if (!settled.contains(outNode)) {
-						this.expand(currentNode, outNode, outLink, unsettled);
-					}
+		this.search(1, false, excludedNodes, target, potential, workspace);
+	}
+
+	/*
+	 * Heap keys are tree costs plus, if landmarks are given, a lower bound on
+	 * the remaining cost to the goal (A*). The landmark bound is consistent,
+	 * such that no node needs to be settled twice.
+	 */
+	private void search(int targetsLeft, final boolean allTargets,
+			final NodeMask excludedNodes, final int goal,
+			final Landmarks potential, final RouterWorkspace workspace) {
+		final boolean fwd = workspace.isForward();
+		final IndexedMinHeap unsettled = workspace.heap();
+		workspace.label(workspace.getRoot(), 0.0, -1);
+		unsettled.insertOrDecrease(workspace.getRoot(), 0.0);
+		while (!unsettled.isEmpty() && targetsLeft > 0) {
+			final int node = unsettled.poll();
+			workspace.settle(node);
+			if (allTargets || workspace.isTarget(node)) {
+				targetsLeft--;
+			}
+			final double nodeCost = workspace.getCost(node);
+			final int begin = (fwd ? this.network.getOutBegin(node)
+					: this.network.getInBegin(node));
+			final int end = (fwd ? this.network.getOutEnd(node)
+					: this.network.getInEnd(node));
+			for (int k = begin; k < end; k++) {
+				final int link;
+				final int next;
+				if (fwd) {
+					link = this.network.getOutLink(k);
+					next = this.network.getToNode(link);
+				} else {
+					link = this.network.getInLink(k);
+					next = this.network.getFromNode(link);
 				}
-			} else {
-				/*
-				 * (3-B) expand backwards
-				 */
-				for (BasicLink inLink : currentNode.getInLinks()) {
-					final BasicNode inNode = inLink.getFromNode();
-					if (!settled.contains(inNode)) {
-						this.expand(currentNode, inNode, inLink, unsettled);
+				if (!workspace.isSettled(next)
+						&& (excludedNodes == null || !excludedNodes
+								.contains(next))) {
+					final double newCost = nodeCost
+							+ this.linkCost.getCost(this.network.getLink(link));
+					if (newCost < workspace.getCost(next)) {
+						if (potential == null) {
+							workspace.label(next, newCost, link);
+							unsettled.insertOrDecrease(next, newCost);
+						} else {
+							final double bound = (fwd ? potential.lowerBound(
+									next, goal) : potential.lowerBound(goal,
+									next));
+							if (bound < Double.POSITIVE_INFINITY) {
+								workspace.label(next, newCost, link);
+								unsettled.insertOrDecrease(next, newCost
+										+ bound);
+							}
+						}
 					}
 				}
 			}
-			settled.add(currentNode);
-			unsettled.remove(currentNode);
-			targetsLeft.remove(currentNode);
-			if (unsettled.isEmpty()) {
-				currentNode = null;
-			} else {
-				currentNode = unsettled.first();
+		}
+	}
+
+	/*
+	 * Bidirectional Dijkstra. Alternately settles the node with the smaller
+	 * key on either side and tracks the best connection mu over all nodes
+	 * that are labeled in both directions; stops once the sum of both heap
+	 * minima reaches mu. Returns the meeting node, or -1.
+	 */
+	private int bidirectionalSearch(final int origin, final int destination,
+			final RouterWorkspace fwdWorkspace,
+			final RouterWorkspace bwdWorkspace) {
+		fwdWorkspace.reset(origin, true);
+		bwdWorkspace.reset(destination, false);
+		fwdWorkspace.label(origin, 0.0, -1);
+		fwdWorkspace.heap().insertOrDecrease(origin, 0.0);
+		bwdWorkspace.label(destination, 0.0, -1);
+		bwdWorkspace.heap().insertOrDecrease(destination, 0.0);
+		if (origin == destination) {
+			return origin;
+		}
+		double mu = Double.POSITIVE_INFINITY;
+		int meeting = -1;
+		final IndexedMinHeap fwdHeap = fwdWorkspace.heap();
+		final IndexedMinHeap bwdHeap = bwdWorkspace.heap();
+		while (!fwdHeap.isEmpty() && !bwdHeap.isEmpty()
+				&& fwdHeap.peekKey() + bwdHeap.peekKey() < mu) {
+			final boolean fwd = (fwdHeap.peekKey() <= bwdHeap.peekKey());
+			final RouterWorkspace workspace = (fwd ? fwdWorkspace
+					: bwdWorkspace);
+			final RouterWorkspace other = (fwd ? bwdWorkspace : fwdWorkspace);
+			final int node = workspace.heap().poll();
+			workspace.settle(node);
+			final double nodeCost = workspace.getCost(node);
+			final int begin = (fwd ? this.network.getOutBegin(node)
+					: this.network.getInBegin(node));
+			final int end = (fwd ? this.network.getOutEnd(node)
+					: this.network.getInEnd(node));
+			for (int k = begin; k < end; k++) {
+				final int link;
+				final int next;
+				if (fwd) {
+					link = this.network.getOutLink(k);
+					next = this.network.getToNode(link);
+				} else {
+					link = this.network.getInLink(k);
+					next = this.network.getFromNode(link);
+				}
+				if (!workspace.isSettled(next)) {
+					final double newCost = nodeCost
+							+ this.linkCost.getCost(this.network.getLink(link));
+					if (newCost < workspace.getCost(next)) {
+						workspace.label(next, newCost, link);
+						workspace.heap().insertOrDecrease(next, newCost);
+						final double connection = newCost
+								+ other.getCost(next);
+						if (connection < mu) {
+							mu = connection;
+							meeting = next;
+						}
+					}
+				}
 			}
 		}
-		return unsettled.cost();
+		return meeting;
+	}
+
+	private LinkedList<BasicNode> bidirectionalRoute(final int meeting,
+			final RouterWorkspace fwdWorkspace,
+			final RouterWorkspace bwdWorkspace) {
+		if (meeting < 0) {
+			return null;
+		}
+		final LinkedList<BasicNode> result = fwdWorkspace.getRoute(meeting);
+		final LinkedList<BasicNode> tail = bwdWorkspace.getRoute(meeting);
+		tail.removeFirst();
+		result.addAll(tail);
+		return result;
+	}
+
+	private RouterWorkspace workspace() {
+		return this.workspaces.get();
+	}
+
+	private Map<BasicNode, Double> toCostMap(final RouterWorkspace workspace) {
+		final Map<BasicNode, Double> result = new HashMap<BasicNode, Double>();
+		for (int i = 0; i < workspace.getLabeledCnt(); i++) {
+			final int node = workspace.getLabeled(i);
+			result.put(this.network.getNode(node), workspace.getCost(node));
+		}
+		return result;
 	}
 
 	private Map<BasicNode, Double> treeCost(final BasicNode root,
 			final Set<BasicNode> targets, final Direction direction) {
-		return this.treeCost(root, targets, direction, null, null);
+		final RouterWorkspace workspace = this.workspace();
+		this.search(this.indexOfKnownNode(root), targets, direction, workspace);
+		return this.toCostMap(workspace);
+	}
+
+	// -------------------- WORKSPACE-BASED ROUTING --------------------
+
+	/**
+	 * Creates a new workspace for this router's network. Workspaces can be
+	 * reused for any number of searches, but not concurrently.
+	 */
+	public RouterWorkspace newWorkspace() {
+		return new RouterWorkspace(this.network);
+	}
+
+	/**
+	 * Computes the full forward cost tree of origin into workspace.
+	 */
+	public RouterWorkspace fwdTree(final BasicNode origin,
+			final RouterWorkspace workspace) {
+		this.search(this.indexOfKnownNode(origin), null, Direction.FWD, workspace);
+		return workspace;
+	}
+
+	/**
+	 * Computes the full backward cost tree of destination into workspace.
+	 */
+	public RouterWorkspace bwdTree(final BasicNode destination,
+			final RouterWorkspace workspace) {
+		this.search(this.indexOfKnownNode(destination), null, Direction.BWD,
+				workspace);
+		return workspace;
+	}
+
+	/**
+	 * Searches forward from origin until destination is settled.
+	 */
+	public RouterWorkspace fwdTree(final BasicNode origin,
+			final BasicNode destination, final RouterWorkspace workspace) {
+		return this.fwdTree(origin, destination, null, workspace);
+	}
+
+	/**
+	 * Searches backward from destination until origin is settled.
+	 */
+	public RouterWorkspace bwdTree(final BasicNode origin,
+			final BasicNode destination, final RouterWorkspace workspace) {
+		return this.bwdTree(origin, destination, null, workspace);
+	}
+
+	/**
+	 * Searches forward from origin until destination is settled, without
+	 * entering any node in excludedNodes. The origin is never excluded.
+	 */
+	public RouterWorkspace fwdTree(final BasicNode origin,
+			final BasicNode destination, final NodeMask excludedNodes,
+			final RouterWorkspace workspace) {
+		this.search(this.indexOfKnownNode(origin),
+				this.indexOfKnownNode(destination), Direction.FWD,
+				excludedNodes, workspace);
+		return workspace;
+	}
+
+	/**
+	 * Searches backward from destination until origin is settled, without
+	 * entering any node in excludedNodes. The destination is never excluded.
+	 */
+	public RouterWorkspace bwdTree(final BasicNode origin,
+			final BasicNode destination, final NodeMask excludedNodes,
+			final RouterWorkspace workspace) {
+		this.search(this.indexOfKnownNode(destination),
+				this.indexOfKnownNode(origin), Direction.BWD, excludedNodes,
+				workspace);
+		return workspace;
 	}
 
 	// -------------------- ROUTING IMPLEMENTATIONS --------------------
@@ -174,24 +447,21 @@ public class Router {
 	}
 
 	public Map<BasicNode, Double> fwdCost(final BasicNode origin, final BasicNode destination) {
-		final Set<BasicNode> destinations = new HashSet<BasicNode>();
-		destinations.add(destination);
-		return this.fwdCost(origin, destinations);
+		return this.toCostMap(this.fwdTree(origin, destination,
+				this.workspace()));
 	}
 
 	public Map<BasicNode, Double> fwdCost(final BasicNode origin) {
-		return this.fwdCost(origin, new HashSet<BasicNode>(this.network.getNodes()));
+		return this.fwdCost(origin, (Set<BasicNode>) null);
 	}
 
 	public Map<BasicNode, Double> bwdCost(final BasicNode destination) {
-		return this.bwdCost(new HashSet<BasicNode>(this.network.getNodes()),
-				destination);
+		return this.bwdCost((Set<BasicNode>) null, destination);
 	}
 
 	public Map<BasicNode, Double> bwdCost(final BasicNode origin, final BasicNode destination) {
-		final Set<BasicNode> origins = new HashSet<BasicNode>();
-		origins.add(origin);
-		return this.bwdCost(origins, destination);
+		return this.toCostMap(this.bwdTree(origin, destination,
+				this.workspace()));
 	}
 
 	private Map<BasicNode, LinkedList<BasicNode>> bestRoutes(final Set<BasicNode> origins,
@@ -268,26 +538,69 @@ public class Router {
 
 	public Map<BasicNode, LinkedList<BasicNode>> bestRoutes(final BasicNode origin,
 			final Set<BasicNode> destinations) {
-		final Map<BasicNode, Double> fwdCost = this.fwdCost(origin, destinations);
-		return this.bestRoutes(origin, destinations, fwdCost);
+		final RouterWorkspace workspace = this.workspace();
+		this.search(this.indexOfKnownNode(origin), destinations, Direction.FWD,
+				workspace);
+		final Map<BasicNode, LinkedList<BasicNode>> result = new HashMap<BasicNode, LinkedList<BasicNode>>();
+		for (BasicNode destination : destinations) {
+			result.put(destination, workspace.getRoute(destination));
+		}
+		return result;
 	}
 
 	public Map<BasicNode, LinkedList<BasicNode>> bestRoutes(final Set<BasicNode> origins,
 			final BasicNode destination) {
-		final Map<BasicNode, Double> bwdCost = this.bwdCost(origins, destination);
-		return this.bestRoutes(origins, destination, bwdCost);
+		final RouterWorkspace workspace = this.workspace();
+		this.search(this.indexOfKnownNode(destination), origins, Direction.BWD,
+				workspace);
+		final Map<BasicNode, LinkedList<BasicNode>> result = new HashMap<BasicNode, LinkedList<BasicNode>>();
+		for (BasicNode origin : origins) {
+			result.put(origin, workspace.getRoute(origin));
+		}
+		return result;
 	}
 
 	public LinkedList<BasicNode> bestRoute(final BasicNode origin, final BasicNode destination) {
-		final Set<BasicNode> destinations = new HashSet<BasicNode>();
-		destinations.add(destination);
-		return this.bestRoutes(origin, destinations).get(destination);
+		if (PointToPointMode.BIDIRECTIONAL.equals(this.pointToPointMode)) {
+			final RouterWorkspace fwdWorkspace = this.workspace();
+			final RouterWorkspace bwdWorkspace = this.bwdWorkspaces.get();
+			final int meeting = this.bidirectionalSearch(
+					this.indexOfKnownNode(origin),
+					this.indexOfKnownNode(destination), fwdWorkspace,
+					bwdWorkspace);
+			return this.bidirectionalRoute(meeting, fwdWorkspace,
+					bwdWorkspace);
+		} else {
+			return this.bestRoute(origin, destination, this.workspace());
+		}
+	}
+
+	/**
+	 * Cost of the best route from origin to destination, POSITIVE_INFINITY if
+	 * there is none.
+	 */
+	public double bestRouteCost(final BasicNode origin,
+			final BasicNode destination) {
+		if (PointToPointMode.BIDIRECTIONAL.equals(this.pointToPointMode)) {
+			final RouterWorkspace fwdWorkspace = this.workspace();
+			final RouterWorkspace bwdWorkspace = this.bwdWorkspaces.get();
+			final int meeting = this.bidirectionalSearch(
+					this.indexOfKnownNode(origin),
+					this.indexOfKnownNode(destination), fwdWorkspace,
+					bwdWorkspace);
+			return (meeting < 0 ? Double.POSITIVE_INFINITY : fwdWorkspace
+					.getCost(meeting) + bwdWorkspace.getCost(meeting));
+		} else {
+			return this.fwdTree(origin, destination, this.workspace())
+					.getCost(destination);
+		}
 	}
 
-	// public double bestRouteCost(final Node origin, final Node destination) {
-	//
-	//
-	// }
+	public LinkedList<BasicNode> bestRoute(final BasicNode origin,
+			final BasicNode destination, final RouterWorkspace workspace) {
+		return this.fwdTree(origin, destination, workspace).getRoute(
+				destination);
+	}
 
 	// -------------------- SUPPLEMENTARY IMPLEMENTATIONS --------------------
 
@@ -321,14 +634,18 @@ public class Router {
 
 	public static List<BasicLink> toLinkRoute(final List<BasicNode> nodeRoute) {
 		final List<BasicLink> linkRoute = new LinkedList<BasicLink>();
-		for (int i = 0; i < nodeRoute.size() - 1; i++) {
-			final BasicLink link = Router.connectingLink(nodeRoute.get(i),
-					nodeRoute.get(i + 1));
-			if (link == null) {
-				return null;
-			} else {
-				linkRoute.add(link);
+		// iterates because nodeRoute typically is a LinkedList
+		BasicNode from = null;
+		for (BasicNode to : nodeRoute) {
+			if (from != null) {
+				final BasicLink link = Router.connectingLink(from, to);
+				if (link == null) {
+					return null;
+				} else {
+					linkRoute.add(link);
+				}
 			}
+			from = to;
 		}
 		return linkRoute;
 	}
@@ -359,19 +676,18 @@ public class Router {
 					"trying to compute SP cost tree to forbidden target");
 		}
 		/*
-		 * (2) compute completely new tree cost
+		 * (2) compute completely new tree cost, stopping at the target
 		 */
-		final Set<BasicNode> targets = new LinkedHashSet<BasicNode>();
-		targets.add(target);
-		final LinkCost myLinkCost = new LinkCostExcludingNodes(this.linkCost,
-				excludedNodes);
-		final Router myRouter = new Router(this.getNetwork(), myLinkCost);
-		final Map<BasicNode, Double> myTreeCost = myRouter.treeCost(root, targets,
-				direction, null, null);
+		final NodeMask excludedMask = new NodeMask(this.network);
+		excludedMask.addAll(excludedNodes);
+		final RouterWorkspace workspace = this.workspace();
+		this.search(this.indexOfKnownNode(root),
+				this.indexOfKnownNode(target), direction, excludedMask,
+				workspace);
 		/*
 		 * (3) simply return the result
 		 */
-		return myTreeCost;
+		return this.toCostMap(workspace);
 	}
 
 	public Map<BasicNode, Double> fwdCostWithoutExcludedNodes(final BasicNode origin,
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities.networks.shortestpaths;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import floetteroed.utilities.networks.basic.BasicNode;
+
+/**
+ * Reusable search state of a <code>Router</code>: tree cost, predecessor link
+ * and visit stamps per node of a <code>CompiledNetwork</code>, plus the heap.
+ * <p>
+ * Every search starts with <code>reset()</code>, which only increments a
+ * generation counter; array entries are valid only if their stamp equals the
+ * current generation. A workspace may hence be reused for arbitrarily many
+ * searches without clearing or re-allocating anything. It is not
+ * thread-safe; use one workspace per thread.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+public class RouterWorkspace {
+
+	// -------------------- CONSTANTS --------------------
+
+	private final CompiledNetwork network;
+
+	// -------------------- MEMBERS --------------------
+
+	private final double[] cost;
+
+	private final int[] predLink;
+
+	private final int[] labelStamp;
+
+	private final int[] settledStamp;
+
+	private final int[] targetStamp;
+
+	// the nodes labeled in the current generation, in labeling order
+	private final int[] labeled;
+
+	private int labeledCnt = 0;
+
+	private int generation = 0;
+
+	private final IndexedMinHeap heap;
+
+	private int root = -1;
+
+	private boolean fwd = true;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public RouterWorkspace(final CompiledNetwork network) {
+		if (network == null) {
+			throw new IllegalArgumentException("network is null");
+		}
+		this.network = network;
+		final int nodeCnt = network.getNodeCnt();
+		this.cost = new double[nodeCnt];
+		this.predLink = new int[nodeCnt];
+		this.labelStamp = new int[nodeCnt];
+		this.settledStamp = new int[nodeCnt];
+		this.targetStamp = new int[nodeCnt];
+		this.labeled = new int[nodeCnt];
+		this.heap = new IndexedMinHeap(nodeCnt);
+	}
+
+	// -------------------- SEARCH INTERNALS --------------------
+
+	void reset(final int root, final boolean fwd) {
+		if (this.generation == Integer.MAX_VALUE) {
+			Arrays.fill(this.labelStamp, 0);
+			Arrays.fill(this.settledStamp, 0);
+			Arrays.fill(this.targetStamp, 0);
+			this.generation = 0;
+		}
+		this.generation++;
+		this.labeledCnt = 0;
+		this.heap.clear();
+		this.root = root;
+		this.fwd = fwd;
+	}
+
+	IndexedMinHeap heap() {
+		return this.heap;
+	}
+
+	void label(final int node, final double cost, final int predLink) {
+		if (this.labelStamp[node] != this.generation) {
+			this.labelStamp[node] = this.generation;
+			this.labeled[this.labeledCnt++] = node;
+		}
+		this.cost[node] = cost;
+		this.predLink[node] = predLink;
+	}
+
+	void settle(final int node) {
+		this.settledStamp[node] = this.generation;
+	}
+
+	boolean markTarget(final int node) {
+		if (this.targetStamp[node] == this.generation) {
+			return false;
+		}
+		this.targetStamp[node] = this.generation;
+		return true;
+	}
+
+	boolean isTarget(final int node) {
+		return (this.targetStamp[node] == this.generation);
+	}
+
+	// -------------------- RESULT ACCESS --------------------
+
+	public CompiledNetwork getNetwork() {
+		return this.network;
+	}
+
+	/**
+	 * Root node index of the last search, or -1 if there was none.
+	 */
+	public int getRoot() {
+		return this.root;
+	}
+
+	/**
+	 * True if the last search was a forward search (tree costs from the
+	 * root), false if it was a backward search (tree costs to the root).
+	 */
+	public boolean isForward() {
+		return this.fwd;
+	}
+
+	public boolean isLabeled(final int node) {
+		return (this.labelStamp[node] == this.generation);
+	}
+
+	public boolean isSettled(final int node) {
+		return (this.settledStamp[node] == this.generation);
+	}
+
+	/**
+	 * Tree cost of the given node in the last search; the tentative cost if
+	 * the node was labeled but not settled, POSITIVE_INFINITY if it was not
+	 * reached at all.
+	 */
+	public double getCost(final int node) {
+		return (this.isLabeled(node) ? this.cost[node]
+				: Double.POSITIVE_INFINITY);
+	}
+
+	public double getCost(final BasicNode node) {
+		final int index = this.network.getIndex(node);
+		return (index < 0 ? Double.POSITIVE_INFINITY : this.getCost(index));
+	}
+
+	/**
+	 * Index of the link through which the given node is reached in the last
+	 * search, or -1.
+	 */
+	public int getPredLink(final int node) {
+		return (this.isLabeled(node) ? this.predLink[node] : -1);
+	}
+
+	public int getLabeledCnt() {
+		return this.labeledCnt;
+	}
+
+	public int getLabeled(final int i) {
+		return this.labeled[i];
+	}
+
+	/**
+	 * Route between root and node of the last search, oriented from origin to
+	 * destination, or null if the node was not reached.
+	 */
+	public LinkedList<BasicNode> getRoute(final int node) {
+		if (node < 0 || !this.isLabeled(node)) {
+			return null;
+		}
+		final LinkedList<BasicNode> result = new LinkedList<BasicNode>();
+		int current = node;
+		result.add(this.network.getNode(current));
+		while (current != this.root) {
+			if (this.fwd) {
+				current = this.network.getFromNode(this.predLink[current]);
+				result.addFirst(this.network.getNode(current));
+			} else {
+				current = this.network.getToNode(this.predLink[current]);
+				result.addLast(this.network.getNode(current));
+			}
+		}
+		return result;
+	}
+
+	public LinkedList<BasicNode> getRoute(final BasicNode node) {
+		return this.getRoute(this.network.getIndex(node));
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2015, 2016 Gunnar Flötteröd
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * contact: gunnar.floetteroed@abe.kth.se
+ *
+ */
+package floetteroed.utilities.networks.shortestpaths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+import floetteroed.utilities.networks.basic.BasicLink;
+import floetteroed.utilities.networks.basic.BasicNetwork;
+import floetteroed.utilities.networks.basic.BasicNode;
+import floetteroed.utilities.networks.construction.AbstractNetwork;
+
+/**
+ * Checks all point-to-point modes of <code>Router</code> against a textbook
+ * Dijkstra on random origin/destination pairs of random grid networks.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+public class RouterTest {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final long[] SEEDS = { 4711, 4712, 4713 };
+
+	private static final int GRID_SIZE = 30;
+
+	private static final int OD_PAIR_CNT = 200;
+
+	private static final int LANDMARK_CNT = 8;
+
+	// -------------------- INTERNALS --------------------
+
+	/**
+	 * A gridSize x gridSize grid in which every potential link between
+	 * neighboring nodes exists with probability 0.9, with uniform costs in
+	 * [1, 10).
+	 */
+	private static BasicNetwork newRandomGrid(final int gridSize, final Random rnd,
+			final Map<BasicLink, Double> link2cost) {
+		final BasicNetwork result = new BasicNetwork("grid", "random");
+		for (int i = 0; i < gridSize * gridSize; i++) {
+			result.addNode(new BasicNode(Integer.toString(i)));
+		}
+		int linkCnt = 0;
+		for (int row = 0; row < gridSize; row++) {
+			for (int col = 0; col < gridSize; col++) {
+				final int[][] neighbors = new int[][] { { row + 1, col },
+						{ row - 1, col }, { row, col + 1 }, { row, col - 1 } };
+				for (int[] neighbor : neighbors) {
+					if (neighbor[0] >= 0 && neighbor[0] < gridSize
+							&& neighbor[1] >= 0 && neighbor[1] < gridSize
+							&& rnd.nextDouble() < 0.9) {
+						final BasicLink link = new BasicLink(
+								Integer.toString(linkCnt++));
+						result.addLink(link);
+						AbstractNetwork.connect(
+								result.getNode(Integer.toString(row * gridSize
+										+ col)),
+								result.getNode(Integer.toString(neighbor[0]
+										* gridSize + neighbor[1])), link);
+						link2cost.put(link, 1.0 + 9.0 * rnd.nextDouble());
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static class QueueEntry implements Comparable<QueueEntry> {
+
+		private final double cost;
+
+		private final BasicNode node;
+
+		private QueueEntry(final double cost, final BasicNode node) {
+			this.cost = cost;
+			this.node = node;
+		}
+
+		@Override
+		public int compareTo(final QueueEntry other) {
+			return Double.compare(this.cost, other.cost);
+		}
+	}
+
+	/**
+	 * Textbook Dijkstra with a priority queue in which outdated entries are
+	 * skipped. Independent of <code>Router</code> and
+	 * <code>CompiledNetwork</code>.
+	 */
+	private static double referenceCost(final BasicNode origin,
+			final BasicNode destination, final Map<BasicLink, Double> link2cost) {
+		final Map<BasicNode, Double> node2cost = new HashMap<BasicNode, Double>();
+		final PriorityQueue<QueueEntry> queue = new PriorityQueue<QueueEntry>();
+		node2cost.put(origin, 0.0);
+		queue.add(new QueueEntry(0.0, origin));
+		while (!queue.isEmpty()) {
+			final QueueEntry entry = queue.poll();
+			if (entry.cost > node2cost.get(entry.node)) {
+				continue;
+			}
+			if (entry.node.equals(destination)) {
+				return entry.cost;
+			}
+			for (BasicLink link : entry.node.getOutLinks()) {
+				final double newCost = entry.cost + link2cost.get(link);
+				final Double oldCost = node2cost.get(link.getToNode());
+				if (oldCost == null || newCost < oldCost) {
+					node2cost.put(link.getToNode(), newCost);
+					queue.add(new QueueEntry(newCost, link.getToNode()));
+				}
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	private static void assertCost(final String context,
+			final double expected, final double actual) {
+		if (Double.isInfinite(expected)) {
+			assertTrue(context, Double.isInfinite(actual));
+		} else {
+			assertEquals(context, expected, actual,
+					1e-8 * Math.max(1.0, Math.abs(expected)));
+		}
+	}
+
+	private static void assertRoute(final String context,
+			final List<BasicNode> route, final BasicNode origin,
+			final BasicNode destination, final double expectedCost,
+			final Router router) {
+		if (Double.isInfinite(expectedCost)) {
+			assertNull(context, route);
+			return;
+		}
+		assertNotNull(context, route);
+		assertEquals(context, origin, route.get(0));
+		assertEquals(context, destination, route.get(route.size() - 1));
+		final List<BasicLink> links = Router.toLinkRoute(route);
+		assertNotNull(context, links);
+		assertCost(context, expectedCost, router.cost(links));
+	}
+
+	// -------------------- TESTS --------------------
+
+	@Test
+	public void testPointToPointModesAgainstReference() throws IOException {
+		for (long seed : SEEDS) {
+			final Random rnd = new Random(seed);
+			final Map<BasicLink, Double> link2cost = new HashMap<BasicLink, Double>();
+			final BasicNetwork network = newRandomGrid(GRID_SIZE, rnd,
+					link2cost);
+			final LinkCost linkCost = new LinkCost() {
+				@Override
+				public double getCost(final BasicLink link) {
+					return link2cost.get(link);
+				}
+			};
+			final CompiledNetwork compiled = new CompiledNetwork(network);
+
+			final Router dijkstra = new Router(compiled, linkCost);
+			final Router bidirectional = new Router(compiled, linkCost);
+			bidirectional
+					.setPointToPointMode(Router.PointToPointMode.BIDIRECTIONAL);
+			final Router alt = new Router(compiled, linkCost);
+
+			// landmarks, including a round trip through the file format
+			final File landmarkFile = File.createTempFile("grid",
+					Landmarks.FILE_SUFFIX);
+			landmarkFile.deleteOnExit();
+			Landmarks.compute(alt, LANDMARK_CNT).write(landmarkFile);
+			alt.setLandmarks(Landmarks.read(landmarkFile, compiled));
+			alt.setPointToPointMode(Router.PointToPointMode.ALT);
+			landmarkFile.delete();
+
+			for (int i = 0; i < OD_PAIR_CNT; i++) {
+				final BasicNode origin = compiled.getNode(rnd.nextInt(compiled
+						.getNodeCnt()));
+				final BasicNode destination = (i == 0 ? origin : compiled
+						.getNode(rnd.nextInt(compiled.getNodeCnt())));
+				final double expected = referenceCost(origin, destination,
+						link2cost);
+				for (Router router : new Router[] { dijkstra, bidirectional,
+						alt }) {
+					final String context = router.getPointToPointMode()
+							+ ", seed " + seed + ", " + origin + " -> "
+							+ destination;
+					assertCost(context, expected,
+							router.bestRouteCost(origin, destination));
+					assertRoute(context,
+							router.bestRoute(origin, destination), origin,
+							destination, expected, router);
+				}
+			}
+		}
+	}
+}